@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.apm.bootstrap;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * 启动类advice注册表
+ * <p>该类会在增强开始前注入到启动类加载器中，内联到启动类中的advice代码通过常量下标直接获取预先解析好的拦截器列表和方法句柄，
+ * 避免每次调用时的类加载、反射查找和字符串拼接
+ * <p>槽位按动态advice类名登记，同一方法重新增强时复用原槽位；注销后槽位中的引用被清空，下标留给后续注册复用，
+ * 避免拦截器和方法句柄及其类加载器无法回收
+ * <p>注意：该类只能依赖启动类加载器可见的类
+ *
+ * @author HapThorin
+ * @version 1.0.0
+ * @since 2021/11/12
+ */
+public final class BootstrapAdviceRegistry {
+    /**
+     * 初始容量
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 拦截器列表槽位
+     */
+    private static volatile List<?>[] interceptorLists = new List<?>[INITIAL_CAPACITY];
+
+    /**
+     * 前置方法句柄槽位
+     */
+    private static volatile MethodHandle[] enterHandles = new MethodHandle[INITIAL_CAPACITY];
+
+    /**
+     * 后置方法句柄槽位
+     */
+    private static volatile MethodHandle[] exitHandles = new MethodHandle[INITIAL_CAPACITY];
+
+    /**
+     * 已使用过的槽位数量
+     */
+    private static int size = 0;
+
+    /**
+     * 动态advice类名到槽位下标的映射
+     */
+    private static final Map<String, Integer> INDEXES = new HashMap<String, Integer>();
+
+    /**
+     * 已注销可复用的槽位下标
+     */
+    private static int[] freeIndexes = new int[INITIAL_CAPACITY];
+
+    /**
+     * 可复用的槽位数量
+     */
+    private static int freeSize = 0;
+
+    private BootstrapAdviceRegistry() {
+    }
+
+    /**
+     * 注册动态advice类，返回其槽位下标，该下标将作为常量内联到被增强方法中
+     * <p>同名的动态advice类已注册时覆盖原槽位并返回原下标
+     *
+     * @param adviceClsName 动态advice类名
+     * @param interceptors  拦截器列表
+     * @param enterHandle   前置方法句柄
+     * @param exitHandle    后置方法句柄
+     * @return 槽位下标
+     */
+    public static synchronized int register(String adviceClsName, List<?> interceptors, MethodHandle enterHandle,
+            MethodHandle exitHandle) {
+        final Integer registered = INDEXES.get(adviceClsName);
+        final int index;
+        if (registered != null) {
+            index = registered;
+        } else if (freeSize > 0) {
+            index = freeIndexes[--freeSize];
+        } else {
+            index = size++;
+        }
+        setSlot(index, interceptors, enterHandle, exitHandle);
+        INDEXES.put(adviceClsName, index);
+        return index;
+    }
+
+    /**
+     * 注销动态advice类，清空其槽位，下标留给后续注册复用
+     * <p>只能在不再有被增强方法使用该下标时调用，例如增强失败或被增强类已卸载
+     *
+     * @param adviceClsName 动态advice类名
+     * @return 是否注销了槽位
+     */
+    public static synchronized boolean unregister(String adviceClsName) {
+        final Integer index = INDEXES.remove(adviceClsName);
+        if (index == null) {
+            return false;
+        }
+        setSlot(index, null, null, null);
+        if (freeSize >= freeIndexes.length) {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeIndexes.length << 1);
+        }
+        freeIndexes[freeSize++] = index;
+        return true;
+    }
+
+    /**
+     * 获取动态advice类的槽位下标
+     *
+     * @param adviceClsName 动态advice类名
+     * @return 槽位下标，未注册时返回-1
+     */
+    public static synchronized int indexOf(String adviceClsName) {
+        final Integer index = INDEXES.get(adviceClsName);
+        return index == null ? -1 : index;
+    }
+
+    private static void setSlot(int index, List<?> interceptors, MethodHandle enterHandle, MethodHandle exitHandle) {
+        if (index >= interceptorLists.length) {
+            final int newCapacity = interceptorLists.length << 1;
+            final List<?>[] newInterceptorLists = Arrays.copyOf(interceptorLists, newCapacity);
+            final MethodHandle[] newEnterHandles = Arrays.copyOf(enterHandles, newCapacity);
+            final MethodHandle[] newExitHandles = Arrays.copyOf(exitHandles, newCapacity);
+            newInterceptorLists[index] = interceptors;
+            newEnterHandles[index] = enterHandle;
+            newExitHandles[index] = exitHandle;
+            exitHandles = newExitHandles;
+            enterHandles = newEnterHandles;
+            interceptorLists = newInterceptorLists;
+        } else {
+            // 先写入后发布，volatile写保证槽位对其他线程可见
+            final List<?>[] curInterceptorLists = interceptorLists;
+            final MethodHandle[] curEnterHandles = enterHandles;
+            final MethodHandle[] curExitHandles = exitHandles;
+            curInterceptorLists[index] = interceptors;
+            curEnterHandles[index] = enterHandle;
+            curExitHandles[index] = exitHandle;
+            exitHandles = curExitHandles;
+            enterHandles = curEnterHandles;
+            interceptorLists = curInterceptorLists;
+        }
+    }
+
+    /**
+     * 获取拦截器的双向迭代器
+     *
+     * @param index 槽位下标
+     * @return 拦截器的双向迭代器
+     */
+    public static ListIterator<?> getInterceptorItr(int index) {
+        return interceptorLists[index].listIterator();
+    }
+
+    /**
+     * 获取前置方法句柄
+     *
+     * @param index 槽位下标
+     * @return 前置方法句柄
+     */
+    public static MethodHandle getEnterHandle(int index) {
+        return enterHandles[index];
+    }
+
+    /**
+     * 获取后置方法句柄
+     *
+     * @param index 槽位下标
+     * @return 后置方法句柄
+     */
+    public static MethodHandle getExitHandle(int index) {
+        return exitHandles[index];
+    }
+}
@@ -2,16 +2,38 @@ package com.huawei.apm.core.agent;
 
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.loading.ClassInjector;
 
+import java.io.File;
 import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.logging.Logger;
 
 import com.huawei.apm.core.agent.transformer.DelegateTransformer;
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 
 /**
  * 插件增强Builder
  */
 public class ByteBuddyAgentBuilder {
+    private static final Logger LOGGER = LogFactory.getLogger();
+
+    /**
+     * 需要注入启动类加载器的类，这些类只能依赖启动类加载器可见的类
+     */
+    private static final String[] BOOTSTRAP_CLASSES = {"com.huawei.apm.bootstrap.BootstrapAdviceRegistry"};
+
+    /**
+     * 启动类增强所需的类是否已注入启动类加载器
+     */
+    private static volatile boolean bootstrapInjected;
+
     public static void initialize(Instrumentation instrumentation) {
+        injectBootstrapClasses(instrumentation);
         new AgentBuilder.Default(new ByteBuddy())
             .ignore(new IgnoreClassMatcher())
             .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
@@ -20,4 +42,67 @@ public class ByteBuddyAgentBuilder {
             .with(new LoadListener())
             .installOn(instrumentation);
     }
+
+    /**
+     * 将启动类增强所需的类注入启动类加载器，必须在这些类被系统类加载器加载之前执行
+     *
+     * @param instrumentation Instrumentation
+     */
+    private static void injectBootstrapClasses(Instrumentation instrumentation) {
+        final ClassFileLocator locator =
+                ClassFileLocator.ForClassLoader.of(ByteBuddyAgentBuilder.class.getClassLoader());
+        final File folder = new File(System.getProperty("java.io.tmpdir"), "javamesh-bootstrap-" + System.nanoTime());
+        if (!folder.mkdirs()) {
+            LOGGER.warning(String.format(Locale.ROOT, "Create bootstrap injection folder [%s] failed. ", folder));
+            return;
+        }
+        // 先登记目录，退出时最后删除
+        folder.deleteOnExit();
+        try {
+            final ClassInjector injector = ClassInjector.UsingInstrumentation.of(folder,
+                    ClassInjector.UsingInstrumentation.Target.BOOTSTRAP, instrumentation);
+            for (String className : BOOTSTRAP_CLASSES) {
+                final byte[] bytes = locator.locate(className).resolve();
+                injector.inject(Collections.singletonMap(new TypeDescription.Latent(className,
+                        Modifier.PUBLIC | Modifier.FINAL, TypeDescription.Generic.OBJECT), bytes));
+            }
+            bootstrapInjected = true;
+        } catch (Exception e) {
+            LOGGER.warning(String.format(Locale.ROOT,
+                    "Inject bootstrap classes failed, bootstrap classes will not be enhanced, caused by [%s]. ",
+                    e.getMessage()));
+        } finally {
+            deleteInjectionFolder(folder);
+        }
+    }
+
+    /**
+     * 启动类增强所需的类是否已注入启动类加载器，未注入时内联的advice无法解析，不能增强启动类
+     *
+     * @return 注入成功返回true
+     */
+    public static boolean isBootstrapInjected() {
+        return bootstrapInjected;
+    }
+
+    /**
+     * 删除注入用的临时jar和目录，注入时类已经被启动类加载器加载，jar不再需要
+     * <p>文件被占用无法删除时（如windows），改为退出时删除
+     *
+     * @param folder 临时目录
+     */
+    private static void deleteInjectionFolder(File folder) {
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!folder.delete()) {
+            LOGGER.fine(String.format(Locale.ROOT, "Bootstrap injection folder [%s] will be deleted on exit. ",
+                    folder));
+        }
+    }
 }
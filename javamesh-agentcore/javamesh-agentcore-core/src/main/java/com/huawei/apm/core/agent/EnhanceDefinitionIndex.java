@@ -0,0 +1,303 @@
+package com.huawei.apm.core.agent;
+
+import com.huawei.apm.core.agent.definition.EnhanceDefinition;
+import com.huawei.apm.core.agent.matcher.AnnotationMatcher;
+import com.huawei.apm.core.agent.matcher.ClassMatcher;
+import com.huawei.apm.core.agent.matcher.MultiClassMatcher;
+import com.huawei.apm.core.agent.matcher.NameMatcher;
+import com.huawei.apm.core.agent.matcher.NonNameMatcher;
+import com.huawei.apm.core.agent.matcher.PrefixMatcher;
+import com.huawei.apm.core.agent.matcher.SuperTypeMatcher;
+import com.huawei.apm.core.agent.matcher.TypeHierarchyCache;
+
+import net.bytebuddy.description.type.TypeDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增强定义索引
+ * <p>按匹配器类型为增强定义建立索引，每个类型只需与少量候选增强定义做匹配：
+ * <pre>
+ * {@link NameMatcher}、{@link MultiClassMatcher}：类名哈希索引
+ * {@link PrefixMatcher}：类名前缀字典树
+ * {@link SuperTypeMatcher}：以第一个父类型为键的倒排索引，解析一次类型层级后取候选
+ * {@link AnnotationMatcher}：以第一个注解为键的倒排索引
+ * 其他{@link NonNameMatcher}：线性匹配
+ * </pre>
+ * 索引在插件加载完成后构建，之后只读，可以并发访问
+ */
+class EnhanceDefinitionIndex {
+    /**
+     * 类名索引
+     */
+    private final Map<String, List<EnhanceDefinition>> nameIndex = new HashMap<String, List<EnhanceDefinition>>();
+
+    /**
+     * 类名前缀字典树
+     */
+    private final PrefixNode prefixRoot = new PrefixNode();
+
+    /**
+     * 父类型倒排索引
+     */
+    private final Map<String, List<EnhanceDefinition>> superTypeIndex =
+            new HashMap<String, List<EnhanceDefinition>>();
+
+    /**
+     * 注解倒排索引
+     */
+    private final Map<String, List<EnhanceDefinition>> annotationIndex =
+            new HashMap<String, List<EnhanceDefinition>>();
+
+    /**
+     * 无法建立索引的增强定义
+     */
+    private final List<EnhanceDefinition> otherDefinitions = new ArrayList<EnhanceDefinition>();
+
+    /**
+     * 增强定义的注册顺序，用于保证匹配结果的顺序稳定
+     */
+    private final Map<EnhanceDefinition, Integer> ordinals = new IdentityHashMap<EnhanceDefinition, Integer>();
+
+    private final Comparator<EnhanceDefinition> ordinalComparator = new Comparator<EnhanceDefinition>() {
+        @Override
+        public int compare(EnhanceDefinition o1, EnhanceDefinition o2) {
+            return ordinals.get(o1).compareTo(ordinals.get(o2));
+        }
+    };
+
+    /**
+     * 添加增强定义
+     *
+     * @param definition 增强定义
+     */
+    void add(EnhanceDefinition definition) {
+        final ClassMatcher classMatcher = definition.enhanceClass();
+        if (classMatcher == null || ordinals.containsKey(definition)) {
+            return;
+        }
+        ordinals.put(definition, ordinals.size());
+        if (classMatcher instanceof NameMatcher) {
+            addTo(nameIndex, ((NameMatcher) classMatcher).getClassName(), definition);
+        } else if (classMatcher instanceof MultiClassMatcher) {
+            for (String className : ((MultiClassMatcher) classMatcher).getClassNames()) {
+                addTo(nameIndex, className, definition);
+            }
+        } else if (classMatcher instanceof PrefixMatcher) {
+            prefixRoot.add(((PrefixMatcher) classMatcher).getPrefix(), definition);
+        } else if (classMatcher instanceof SuperTypeMatcher) {
+            addTo(superTypeIndex, ((SuperTypeMatcher) classMatcher).getSuperTypes()[0], definition);
+        } else if (classMatcher instanceof AnnotationMatcher) {
+            addTo(annotationIndex, ((AnnotationMatcher) classMatcher).getAnnotationNames()[0], definition);
+        } else if (classMatcher instanceof NonNameMatcher) {
+            otherDefinitions.add(definition);
+        }
+    }
+
+    private void addTo(Map<String, List<EnhanceDefinition>> index, String key, EnhanceDefinition definition) {
+        List<EnhanceDefinition> definitions = index.get(key);
+        if (definitions == null) {
+            definitions = new ArrayList<EnhanceDefinition>();
+            index.put(key, definitions);
+        }
+        definitions.add(definition);
+    }
+
+    /**
+     * 判断目标类型是否有匹配的增强定义，找到第一个即返回
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 有匹配的增强定义时返回true
+     */
+    boolean hasMatch(TypeDescription typeDescription, ClassLoader classLoader) {
+        final String typeName = typeDescription.getActualName();
+        if (nameIndex.containsKey(typeName) || prefixRoot.hasMatch(typeName)) {
+            return true;
+        }
+        if (!annotationIndex.isEmpty() && !collectAnnotations(typeDescription, classLoader, null).isEmpty()) {
+            return true;
+        }
+        if (!superTypeIndex.isEmpty() && !collectSuperTypes(typeDescription, classLoader, null).isEmpty()) {
+            return true;
+        }
+        for (EnhanceDefinition definition : otherDefinitions) {
+            if (((NonNameMatcher) definition.enhanceClass()).isMatch(typeDescription)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查找目标类型匹配的所有增强定义，结果按注册顺序排列
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 匹配的增强定义
+     */
+    List<EnhanceDefinition> findMatches(TypeDescription typeDescription, ClassLoader classLoader) {
+        final String typeName = typeDescription.getActualName();
+        final List<EnhanceDefinition> result = new ArrayList<EnhanceDefinition>();
+        final List<EnhanceDefinition> nameMatches = nameIndex.get(typeName);
+        if (nameMatches != null) {
+            result.addAll(nameMatches);
+        }
+        prefixRoot.collect(typeName, result);
+        if (!annotationIndex.isEmpty()) {
+            collectAnnotations(typeDescription, classLoader, result);
+        }
+        if (!superTypeIndex.isEmpty()) {
+            collectSuperTypes(typeDescription, classLoader, result);
+        }
+        for (EnhanceDefinition definition : otherDefinitions) {
+            if (((NonNameMatcher) definition.enhanceClass()).isMatch(typeDescription)) {
+                result.add(definition);
+            }
+        }
+        if (result.size() > 1) {
+            Collections.sort(result, ordinalComparator);
+        }
+        return result;
+    }
+
+    /**
+     * 收集注解匹配的增强定义
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @param result          结果集，为null时找到第一个即返回
+     * @return 匹配的增强定义，result不为null时返回result
+     */
+    private List<EnhanceDefinition> collectAnnotations(TypeDescription typeDescription, ClassLoader classLoader,
+            List<EnhanceDefinition> result) {
+        if (typeDescription.isInterface()) {
+            return result == null ? Collections.<EnhanceDefinition>emptyList() : result;
+        }
+        return collectCandidates(annotationIndex, TypeHierarchyCache.getAnnotationNames(typeDescription, classLoader),
+                typeDescription, classLoader, result);
+    }
+
+    /**
+     * 收集父类型匹配的增强定义，类型层级通过{@link TypeHierarchyCache}解析并缓存
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @param result          结果集，为null时找到第一个即返回
+     * @return 匹配的增强定义，result不为null时返回result
+     */
+    private List<EnhanceDefinition> collectSuperTypes(TypeDescription typeDescription, ClassLoader classLoader,
+            List<EnhanceDefinition> result) {
+        if (typeDescription.isInterface()) {
+            return result == null ? Collections.<EnhanceDefinition>emptyList() : result;
+        }
+        return collectCandidates(superTypeIndex, TypeHierarchyCache.getSuperTypeNames(typeDescription, classLoader),
+                typeDescription, classLoader, result);
+    }
+
+    /**
+     * 以目标类型的所有父类型名称或注解名称为键查找候选增强定义，并由候选的匹配器校验所有条件是否都被满足
+     *
+     * @param index           倒排索引
+     * @param keys            目标类型的父类型名称或注解名称
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @param result          结果集，为null时找到第一个即返回
+     * @return 匹配的增强定义，result不为null时返回result
+     */
+    private List<EnhanceDefinition> collectCandidates(Map<String, List<EnhanceDefinition>> index, Set<String> keys,
+            TypeDescription typeDescription, ClassLoader classLoader, List<EnhanceDefinition> result) {
+        for (String key : keys) {
+            final List<EnhanceDefinition> candidates = index.get(key);
+            if (candidates == null) {
+                continue;
+            }
+            for (EnhanceDefinition candidate : candidates) {
+                if (!isMatch(candidate.enhanceClass(), typeDescription, classLoader)) {
+                    continue;
+                }
+                if (result == null) {
+                    return Collections.singletonList(candidate);
+                }
+                result.add(candidate);
+            }
+        }
+        return result == null ? Collections.<EnhanceDefinition>emptyList() : result;
+    }
+
+    /**
+     * 通过缓存的类型层级校验父类型或注解匹配器，与倒排索引共用{@link TypeHierarchyCache}中已解析的结果
+     */
+    private boolean isMatch(ClassMatcher classMatcher, TypeDescription typeDescription, ClassLoader classLoader) {
+        if (classMatcher instanceof SuperTypeMatcher) {
+            return ((SuperTypeMatcher) classMatcher).isMatch(typeDescription, classLoader);
+        }
+        return ((AnnotationMatcher) classMatcher).isMatch(typeDescription, classLoader);
+    }
+
+    /**
+     * 类名前缀字典树节点
+     */
+    private static class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<Character, PrefixNode>();
+
+        private List<EnhanceDefinition> definitions;
+
+        private void add(String prefix, EnhanceDefinition definition) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                final Character ch = prefix.charAt(i);
+                PrefixNode child = node.children.get(ch);
+                if (child == null) {
+                    child = new PrefixNode();
+                    node.children.put(ch, child);
+                }
+                node = child;
+            }
+            if (node.definitions == null) {
+                node.definitions = new ArrayList<EnhanceDefinition>();
+            }
+            node.definitions.add(definition);
+        }
+
+        /**
+         * 空前缀的增强定义挂在根节点上，匹配所有类型，所以先检查当前节点再向下查找
+         */
+        private boolean hasMatch(String typeName) {
+            PrefixNode node = this;
+            for (int i = 0; node.definitions == null; i++) {
+                if (i >= typeName.length()) {
+                    return false;
+                }
+                node = node.children.get(typeName.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void collect(String typeName, List<EnhanceDefinition> result) {
+            PrefixNode node = this;
+            for (int i = 0; ; i++) {
+                if (node.definitions != null) {
+                    result.addAll(node.definitions);
+                }
+                if (i >= typeName.length() || node.children.isEmpty()) {
+                    return;
+                }
+                node = node.children.get(typeName.charAt(i));
+                if (node == null) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -6,23 +6,19 @@ import com.huawei.apm.core.classloader.PluginClassLoader;
 import com.huawei.apm.core.lubanops.bootstrap.NamedListener;
 import com.huawei.apm.core.lubanops.bootstrap.TransformerMethod;
 import com.huawei.apm.core.lubanops.bootstrap.utils.Util;
-import com.huawei.apm.core.agent.matcher.ClassMatcher;
-import com.huawei.apm.core.agent.matcher.NameMatcher;
-import com.huawei.apm.core.agent.matcher.NonNameMatcher;
 import com.huawei.apm.core.lubanops.bootstrap.Listener;
+import com.huawei.apm.core.agent.matcher.TypeHierarchyCache;
 
+import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.description.type.TypeDescription;
-import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.utility.JavaModule;
 
+import java.security.ProtectionDomain;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static net.bytebuddy.matcher.ElementMatchers.isInterface;
-import static net.bytebuddy.matcher.ElementMatchers.not;
-
 /**
  * 插件加载器
  * 加载NamedListener以及EnhanceDefinition插件
@@ -30,10 +26,10 @@ import static net.bytebuddy.matcher.ElementMatchers.not;
 public enum EnhanceDefinitionLoader {
     INSTANCE;
 
-    private final Map<String, LinkedList<EnhanceDefinition>> nameDefinitions =
-        new HashMap<String, LinkedList<EnhanceDefinition>>();
-
-    private final List<EnhanceDefinition> nonNameDefinitions = new LinkedList<EnhanceDefinition>();
+    /**
+     * 增强定义索引
+     */
+    private final EnhanceDefinitionIndex definitionIndex = new EnhanceDefinitionIndex();
 
     /**
      * key : 增强类
@@ -48,21 +44,7 @@ public enum EnhanceDefinitionLoader {
     public void load() {
         // 加载插件
         for (EnhanceDefinition definition : loadEnhanceDefinition()) {
-            ClassMatcher classMatcher = definition.enhanceClass();
-            if (classMatcher == null) {
-                continue;
-            }
-            if (classMatcher instanceof NameMatcher) {
-                String className = ((NameMatcher) classMatcher).getClassName();
-                LinkedList<EnhanceDefinition> definitions = nameDefinitions.get(className);
-                if (definitions == null) {
-                    definitions = new LinkedList<EnhanceDefinition>();
-                    nameDefinitions.put(className, definitions);
-                }
-                definitions.add(definition);
-            } else {
-                nonNameDefinitions.add(definition);
-            }
+            definitionIndex.add(definition);
         }
         // 原来的Listener
         for (Listener listener : loadNamedListener()) {
@@ -110,32 +92,44 @@ public enum EnhanceDefinitionLoader {
         return PluginClassLoader.load(EnhanceDefinition.class);
     }
 
-    public ElementMatcher<TypeDescription> buildMatch() {
-        ElementMatcher.Junction<TypeDescription> junction =
-            new ElementMatcher.Junction.AbstractBase<TypeDescription>() {
-                @Override
-                public boolean matches(TypeDescription target) {
-                    return nameDefinitions.containsKey(target.getActualName())
-                            || originMatchNamedListeners.containsKey(target.getActualName());
+    /**
+     * 构建类型匹配器，通过增强定义索引匹配，每个类型只与少量候选增强定义做比较
+     *
+     * @return 类型匹配器
+     */
+    public AgentBuilder.RawMatcher buildMatch() {
+        return new AgentBuilder.RawMatcher() {
+            @Override
+            public boolean matches(TypeDescription typeDescription, ClassLoader classLoader, JavaModule module,
+                    Class<?> classBeingRedefined, ProtectionDomain protectionDomain) {
+                if (typeDescription.isInterface()) {
+                    return false;
                 }
-            };
-        for (EnhanceDefinition nonNameDefinition : nonNameDefinitions) {
-            junction = junction.or(((NonNameMatcher) nonNameDefinition.enhanceClass()).buildJunction());
-        }
-        return junction.and(not(isInterface()));
+                final long startTime = System.nanoTime();
+                try {
+                    return originMatchNamedListeners.containsKey(typeDescription.getActualName())
+                            || definitionIndex.hasMatch(typeDescription, classLoader);
+                } finally {
+                    TypeHierarchyCache.recordMatchTime(System.nanoTime() - startTime);
+                }
+            }
+        };
     }
 
-    public List<EnhanceDefinition> findDefinitions(TypeDescription typeDescription) {
-        LinkedList<EnhanceDefinition> matchDefinitions = nameDefinitions.get(typeDescription.getTypeName());
-        if (matchDefinitions == null) {
-            matchDefinitions = new LinkedList<EnhanceDefinition>();
-        }
-        for (EnhanceDefinition definition : nonNameDefinitions) {
-            if (((NonNameMatcher) definition.enhanceClass()).isMatch(typeDescription)) {
-                matchDefinitions.add(definition);
-            }
+    /**
+     * 查找目标类型匹配的增强定义
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 匹配的增强定义
+     */
+    public List<EnhanceDefinition> findDefinitions(TypeDescription typeDescription, ClassLoader classLoader) {
+        final long startTime = System.nanoTime();
+        try {
+            return definitionIndex.findMatches(typeDescription, classLoader);
+        } finally {
+            TypeHierarchyCache.recordMatchTime(System.nanoTime() - startTime);
         }
-        return matchDefinitions;
     }
 
     public Listener findNameListener(TypeDescription typeDescription) {
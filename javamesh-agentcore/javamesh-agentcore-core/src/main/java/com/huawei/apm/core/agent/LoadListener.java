@@ -1,5 +1,7 @@
 package com.huawei.apm.core.agent;
 
+import com.huawei.apm.core.agent.matcher.TypeHierarchyCache;
+import com.huawei.apm.core.agent.transformer.BootstrapTransformer;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 import com.huawei.apm.core.lubanops.bootstrap.utils.StringUtils;
 import net.bytebuddy.agent.builder.AgentBuilder;
@@ -9,12 +11,23 @@ import net.bytebuddy.utility.JavaModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * byte buddy增强监听器，用于保存增强后的字节码
  */
 class LoadListener implements AgentBuilder.Listener {
+    /**
+     * 每增强该数量的类输出一次类型层级缓存统计
+     */
+    private static final long STATISTICS_INTERVAL = 256L;
+
     private final String exportPath = System.getProperty("apm.agent.class.export.path");
+
+    private final AtomicLong enhancedCount = new AtomicLong();
+
     @Override
     public void onDiscovery(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
     }
@@ -34,6 +47,13 @@ class LoadListener implements AgentBuilder.Listener {
             LogFactory.getLogger()
                     .warning(String.format("save class {%s} byte code failed", typeDescription.getTypeName()));
         }
+        final long count = enhancedCount.incrementAndGet();
+        if (count % STATISTICS_INTERVAL == 0) {
+            final Logger logger = LogFactory.getLogger();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("enhanced [%d] classes, %s", count, TypeHierarchyCache.getStatistics()));
+            }
+        }
     }
 
     @Override
@@ -51,6 +71,8 @@ class LoadListener implements AgentBuilder.Listener {
             final JavaModule module,
             final boolean loaded,
             final Throwable throwable) {
+        // 增强失败的启动类不会使用已注册的advice槽位
+        BootstrapTransformer.releaseAdvices(typeName);
     }
 
     @Override
@@ -21,4 +21,12 @@ public class BeforeResult {
     public Object getResult() {
         return result;
     }
+
+    /**
+     * 重置为继续执行原方法，由增强框架在复用实例前调用
+     */
+    public void reset() {
+        result = null;
+        isContinue = true;
+    }
 }
@@ -0,0 +1,60 @@
+package com.huawei.apm.core.agent.common;
+
+import java.util.Arrays;
+
+/**
+ * 线程内按调用深度复用的前置结果
+ * <p>拦截器或原方法中可能再次调用被增强方法，每层调用取用各自深度的实例，出栈前必须用完，不能继续持有
+ */
+public final class BeforeResultStack {
+    private static final int INITIAL_DEPTH = 8;
+
+    private static final ThreadLocal<BeforeResultStack> STACK = new ThreadLocal<BeforeResultStack>() {
+        @Override
+        protected BeforeResultStack initialValue() {
+            return new BeforeResultStack();
+        }
+    };
+
+    private BeforeResult[] results = new BeforeResult[INITIAL_DEPTH];
+
+    private int depth;
+
+    private BeforeResultStack() {
+    }
+
+    /**
+     * 获取当前线程的前置结果栈
+     *
+     * @return 前置结果栈
+     */
+    public static BeforeResultStack current() {
+        return STACK.get();
+    }
+
+    /**
+     * 入栈，返回已重置的前置结果
+     *
+     * @return 前置结果
+     */
+    public BeforeResult push() {
+        if (depth == results.length) {
+            results = Arrays.copyOf(results, depth << 1);
+        }
+        BeforeResult result = results[depth];
+        if (result == null) {
+            result = new BeforeResult();
+            results[depth] = result;
+        }
+        depth++;
+        result.reset();
+        return result;
+    }
+
+    /**
+     * 出栈，清空前置结果中的引用
+     */
+    public void pop() {
+        results[--depth].reset();
+    }
+}
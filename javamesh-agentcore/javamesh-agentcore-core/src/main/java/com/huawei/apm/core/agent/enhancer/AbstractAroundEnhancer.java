@@ -6,11 +6,19 @@ import com.huawei.apm.core.exception.BizException;
 import com.huawei.apm.core.lubanops.bootstrap.Interceptor;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 /**
  * 抽象环绕增强委派类
  */
 public abstract class AbstractAroundEnhancer  extends OriginEnhancer {
+    private static final ThreadLocal<EnhanceContextStack> CONTEXT_STACK = new ThreadLocal<EnhanceContextStack>() {
+        @Override
+        protected EnhanceContextStack initialValue() {
+            return new EnhanceContextStack();
+        }
+    };
+
     protected AbstractAroundEnhancer(Interceptor originInterceptor) {
         super(originInterceptor);
     }
@@ -30,24 +38,29 @@ public abstract class AbstractAroundEnhancer  extends OriginEnhancer {
             final OverrideArgumentsCall callable,
             Object[] arguments) throws Throwable {
         arguments = onStart(origin, arguments, method);
-        final EnhanceContext context = new EnhanceContext(origin, method, arguments);
-        BeforeResult beforeResult = doBefore(context);
-        Object result = null;
+        final EnhanceContextStack contextStack = CONTEXT_STACK.get();
+        final EnhanceContext context = contextStack.push(origin, method, arguments);
         try {
-            if (beforeResult.isContinue()) {
-                result = callable.call(arguments);
-            } else {
-                result = beforeResult.getResult();
+            BeforeResult beforeResult = doBefore(context);
+            Object result = null;
+            try {
+                if (beforeResult.isContinue()) {
+                    result = callable.call(arguments);
+                } else {
+                    result = beforeResult.getResult();
+                }
+            } catch (Throwable t) {
+                doOnThrow(context, t);
+                onError(origin, arguments, method, t);
+                throw t;
+            } finally {
+                result = doAfter(context, result);
+                onFinally(origin, arguments, method, result);
             }
-        } catch (Throwable t) {
-            doOnThrow(context, t);
-            onError(origin, arguments, method, t);
-            throw t;
+            return result;
         } finally {
-            result = doAfter(context, result);
-            onFinally(origin, arguments, method, result);
+            contextStack.pop();
         }
-        return result;
     }
 
     /**
@@ -88,21 +101,30 @@ public abstract class AbstractAroundEnhancer  extends OriginEnhancer {
 
     /**
      * 增强上下文，封装了增强过程中的参数
+     * <p>上下文由线程按调用深度复用，只在本次调用内有效，拦截器不能在调用结束后继续持有其中的对象
      */
     protected static class EnhanceContext {
 
+        private final BeforeResult beforeResult = new BeforeResult();
+
         private int invokedIndex;
 
-        private final Object origin;
+        private Object origin;
 
-        private final Method method;
+        private Method method;
 
-        private final Object[] arguments;
+        private Object[] arguments;
 
-        public EnhanceContext(Object origin, Method method, Object[] arguments) {
+        private void reset(Object origin, Method method, Object[] arguments) {
+            this.invokedIndex = 0;
             this.origin = origin;
             this.method = method;
             this.arguments = arguments;
+            this.beforeResult.reset();
+        }
+
+        private void clear() {
+            reset(null, null, null);
         }
 
         public void increaseInvokedIndex() {
@@ -124,5 +146,44 @@ public abstract class AbstractAroundEnhancer  extends OriginEnhancer {
         public Object[] getArguments() {
             return arguments;
         }
+
+        /**
+         * 获取本次调用的前置结果，已重置为继续执行原方法
+         *
+         * @return 前置结果
+         */
+        public BeforeResult getBeforeResult() {
+            return beforeResult;
+        }
+    }
+
+    /**
+     * 线程内的增强上下文栈
+     * <p>拦截器或原方法中可能再次调用被增强方法，每层调用按深度取用各自的上下文，出栈时清空引用
+     */
+    private static final class EnhanceContextStack {
+        private static final int INITIAL_DEPTH = 8;
+
+        private EnhanceContext[] contexts = new EnhanceContext[INITIAL_DEPTH];
+
+        private int depth;
+
+        EnhanceContext push(Object origin, Method method, Object[] arguments) {
+            if (depth == contexts.length) {
+                contexts = Arrays.copyOf(contexts, depth << 1);
+            }
+            EnhanceContext context = contexts[depth];
+            if (context == null) {
+                context = new EnhanceContext();
+                contexts[depth] = context;
+            }
+            depth++;
+            context.reset(origin, method, arguments);
+            return context;
+        }
+
+        void pop() {
+            contexts[--depth].clear();
+        }
     }
 }
@@ -7,7 +7,6 @@ import net.bytebuddy.implementation.bind.annotation.AllArguments;
 import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 import net.bytebuddy.implementation.bind.annotation.This;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -18,11 +17,14 @@ public final class ConstructorEnhancer extends OriginEnhancer {
 
     private final static Logger LOGGER = LogFactory.getLogger();
 
-    private final List<ConstructorInterceptor> interceptors;
+    /**
+     * 按优先级排好序的拦截器，增强时固定下来
+     */
+    private final ConstructorInterceptor[] interceptors;
 
     public ConstructorEnhancer(Interceptor originInterceptor, List<ConstructorInterceptor> interceptors) {
         super(originInterceptor);
-        this.interceptors = Collections.unmodifiableList(interceptors);
+        this.interceptors = interceptors.toArray(new ConstructorInterceptor[0]);
     }
 
     /**
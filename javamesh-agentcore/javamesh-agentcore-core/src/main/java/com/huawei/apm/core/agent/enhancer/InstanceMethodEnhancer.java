@@ -12,7 +12,6 @@ import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 import net.bytebuddy.implementation.bind.annotation.This;
 
 import java.lang.reflect.Method;
-import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -23,11 +22,14 @@ public final class InstanceMethodEnhancer extends AbstractAroundEnhancer {
 
     private final static Logger LOGGER = LogFactory.getLogger();
 
-    private final List<InstanceMethodInterceptor> interceptors;
+    /**
+     * 按优先级排好序的拦截器，增强时固定下来
+     */
+    private final InstanceMethodInterceptor[] interceptors;
 
     public InstanceMethodEnhancer(Interceptor originInterceptor, List<InstanceMethodInterceptor> interceptors) {
         super(originInterceptor);
-        this.interceptors = Collections.unmodifiableList(interceptors);
+        this.interceptors = interceptors.toArray(new InstanceMethodInterceptor[0]);
     }
 
     /**
@@ -50,7 +52,7 @@ public final class InstanceMethodEnhancer extends AbstractAroundEnhancer {
 
     @Override
     protected BeforeResult doBefore(final EnhanceContext context) {
-        BeforeResult beforeResult = new BeforeResult();
+        BeforeResult beforeResult = context.getBeforeResult();
         for (InstanceMethodInterceptor interceptor : interceptors) {
             context.increaseInvokedIndex();
             execBefore(interceptor, context, beforeResult);
@@ -65,7 +67,7 @@ public final class InstanceMethodEnhancer extends AbstractAroundEnhancer {
     protected void doOnThrow(final EnhanceContext context,
             final Throwable originThrowable) {
         for (int i = context.getInvokedIndex() - 1; i >= 0; i--) {
-            InstanceMethodInterceptor interceptor = interceptors.get(i);
+            InstanceMethodInterceptor interceptor = interceptors[i];
             execOnThrow(interceptor, context, originThrowable);
         }
     }
@@ -74,7 +76,7 @@ public final class InstanceMethodEnhancer extends AbstractAroundEnhancer {
     protected Object doAfter(final EnhanceContext context, final Object result) {
         Object returnResult = result;
         for (int i = context.getInvokedIndex() - 1; i >= 0; i--) {
-            InstanceMethodInterceptor interceptor = interceptors.get(i);
+            InstanceMethodInterceptor interceptor = interceptors[i];
             returnResult = execAfter(interceptor, context, returnResult);
         }
         return returnResult;
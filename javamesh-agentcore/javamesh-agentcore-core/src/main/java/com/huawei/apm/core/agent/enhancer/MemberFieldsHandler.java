@@ -1,57 +1,79 @@
 package com.huawei.apm.core.agent.enhancer;
 
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
-import net.bytebuddy.implementation.bind.annotation.RuntimeType;
-import net.bytebuddy.implementation.bind.annotation.This;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.field.FieldList;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.collection.ArrayFactory;
+import net.bytebuddy.implementation.bytecode.constant.NullConstant;
+import net.bytebuddy.implementation.bytecode.member.FieldAccess;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
 
-import java.lang.reflect.Field;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.List;
 
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
 /**
  * 处理成员变量
+ * <p>
+ * 增强时直接生成getLopsFileds的字节码，按定义顺序读取字段并装箱放入数组，运行时不再经过反射
  */
-public class MemberFieldsHandler {
+public class MemberFieldsHandler implements Implementation {
     private final List<String> fields;
 
     public MemberFieldsHandler(List<String> fields) {
         this.fields = fields;
     }
 
-    @RuntimeType
-    public Object intercept(@This Object obj) {
-        if (fields == null || fields.isEmpty()) {
-            return new Object[0];
-        }
-        int size = fields.size();
-        Object[] convertedFields = new Object[size];
-        try {
-            for (int i = 0; i < size; i++) {
-                final Field declaredField = obj.getClass().getDeclaredField(fields.get(i));
-                AccessController.doPrivileged(new FieldAccessibleAction(declaredField));
-                convertedFields[i] = declaredField.get(obj);
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+        return instrumentedType;
+    }
+
+    @Override
+    public ByteCodeAppender appender(Target implementationTarget) {
+        final TypeDescription instrumentedType = implementationTarget.getInstrumentedType();
+        final List<StackManipulation> values = new ArrayList<StackManipulation>();
+        if (fields != null) {
+            for (String fieldName : fields) {
+                values.add(readField(instrumentedType, fieldName));
             }
-        } catch (Exception e) {
-            LogFactory.getLogger().warning(String.format("invoke method getLopsFileds failed when convert the member fields! reason:[%s]", e.getMessage()));
         }
-        return convertedFields;
+        return new ByteCodeAppender.Simple(
+                ArrayFactory.forType(TypeDescription.Generic.OBJECT).withValues(values),
+                MethodReturn.REFERENCE);
     }
 
     /**
-     * 设置字段访问
+     * 读取字段并转换为Object，字段不存在时以null占位
+     *
+     * @param instrumentedType 被增强的类
+     * @param fieldName        字段名
+     * @return 字段读取的字节码
      */
-    static class FieldAccessibleAction implements PrivilegedAction<Object> {
-        private final Field field;
-
-        FieldAccessibleAction(Field field) {
-            this.field = field;
+    private StackManipulation readField(TypeDescription instrumentedType, String fieldName) {
+        final FieldList<FieldDescription.InDefinedShape> candidates =
+                instrumentedType.getDeclaredFields().filter(named(fieldName));
+        if (candidates.size() != 1) {
+            LogFactory.getLogger().warning(String.format(
+                    "can not find member field [%s] in class [%s] when implement getLopsFileds!",
+                    fieldName, instrumentedType.getName()));
+            return NullConstant.INSTANCE;
         }
-
-        @Override
-        public Object run() {
-            field.setAccessible(true);
-            return null;
+        final FieldDescription.InDefinedShape field = candidates.getOnly();
+        final StackManipulation toObject =
+                Assigner.DEFAULT.assign(field.getType(), TypeDescription.Generic.OBJECT, Assigner.Typing.STATIC);
+        if (field.isStatic()) {
+            return new StackManipulation.Compound(FieldAccess.forField(field).read(), toObject);
         }
+        return new StackManipulation.Compound(MethodVariableAccess.loadThis(), FieldAccess.forField(field).read(),
+                toObject);
     }
 }
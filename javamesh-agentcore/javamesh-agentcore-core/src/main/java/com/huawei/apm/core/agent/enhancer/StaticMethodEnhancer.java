@@ -11,7 +11,6 @@ import net.bytebuddy.implementation.bind.annotation.Origin;
 import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 
 import java.lang.reflect.Method;
-import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -22,11 +21,14 @@ public final class StaticMethodEnhancer extends AbstractAroundEnhancer {
 
     private final static Logger LOGGER = LogFactory.getLogger();
 
-    private final List<StaticMethodInterceptor> interceptors;
+    /**
+     * 按优先级排好序的拦截器，增强时固定下来
+     */
+    private final StaticMethodInterceptor[] interceptors;
 
     public StaticMethodEnhancer(Interceptor originInterceptor, List<StaticMethodInterceptor> interceptors) {
         super(originInterceptor);
-        this.interceptors = Collections.unmodifiableList(interceptors);
+        this.interceptors = interceptors.toArray(new StaticMethodInterceptor[0]);
     }
 
     /**
@@ -49,7 +51,7 @@ public final class StaticMethodEnhancer extends AbstractAroundEnhancer {
 
     @Override
     protected BeforeResult doBefore(final EnhanceContext context) {
-        BeforeResult beforeResult = new BeforeResult();
+        BeforeResult beforeResult = context.getBeforeResult();
         for (StaticMethodInterceptor interceptor : interceptors) {
             context.increaseInvokedIndex();
             execBefore(interceptor, context, beforeResult);
@@ -63,7 +65,7 @@ public final class StaticMethodEnhancer extends AbstractAroundEnhancer {
     @Override
     protected void doOnThrow(final EnhanceContext context, final Throwable originThrowable) {
         for (int i = context.getInvokedIndex() - 1; i >= 0; i--) {
-            StaticMethodInterceptor interceptor = interceptors.get(i);
+            StaticMethodInterceptor interceptor = interceptors[i];
             execOnThrow(interceptor, context, originThrowable);
         }
     }
@@ -72,7 +74,7 @@ public final class StaticMethodEnhancer extends AbstractAroundEnhancer {
     protected Object doAfter(final EnhanceContext context, final Object result) {
         Object returnResult = result;
         for (int i = context.getInvokedIndex() - 1; i >= 0; i--) {
-            StaticMethodInterceptor interceptor = interceptors.get(i);
+            StaticMethodInterceptor interceptor = interceptors[i];
             returnResult = execAfter(interceptor, context, returnResult);
         }
         return returnResult;
@@ -28,22 +28,36 @@ public class InterceptorLoader {
 
     private static final InterceptorChain EMPTY_CHAIN = new InterceptorChain(new String[0]);
 
+    /**
+     * 获取按拦截器链优先级排好序的拦截器列表，在增强时调用一次，结果不可修改
+     * <p>按优先级稳定排序，优先级相同时保持声明顺序
+     *
+     * @param interceptorsName 拦截器名称
+     * @param classLoader      被增强类的类加载器
+     * @param interceptorType  拦截器类型
+     * @param <T>              拦截器类型
+     * @return 排好序的拦截器列表
+     */
     public static <T extends Interceptor> List<T> getInterceptors(Collection<String> interceptorsName,
         ClassLoader classLoader,
         Class<T> interceptorType) {
         final InterceptorChain chainConfig = getInterceptorChain(interceptorsName);
 
-        final List<T> interceptorList = new ArrayList<T>();
-        for (String interceptor : interceptorsName) {
-            interceptorList.add(getInterceptor(interceptor, classLoader, interceptorType));
+        final List<T> interceptorList = new ArrayList<T>(interceptorsName.size());
+        for (String interceptorName : interceptorsName) {
+            interceptorList.add(getInterceptor(interceptorName, classLoader, interceptorType));
         }
-        Collections.sort(interceptorList, new Comparator<Interceptor>() {
-            @Override
-            public int compare(Interceptor o1, Interceptor o2) {
-                return chainConfig.getPriority(o1.getClass().getName()) - chainConfig.getPriority(o2.getClass().getName());
-            }
-        });
-        return interceptorList;
+        if (interceptorList.size() > 1) {
+            Collections.sort(interceptorList, new Comparator<T>() {
+                @Override
+                public int compare(T o1, T o2) {
+                    final int priority1 = chainConfig.getPriority(o1.getClass().getName());
+                    final int priority2 = chainConfig.getPriority(o2.getClass().getName());
+                    return priority1 < priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+                }
+            });
+        }
+        return Collections.unmodifiableList(interceptorList);
     }
 
     private static InterceptorChain getInterceptorChain(Collection<String> interceptorsName) {
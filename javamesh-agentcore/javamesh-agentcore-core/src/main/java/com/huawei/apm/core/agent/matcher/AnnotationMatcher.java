@@ -1,15 +1,11 @@
 package com.huawei.apm.core.agent.matcher;
 
 import com.huawei.apm.core.util.Assert;
-import net.bytebuddy.description.annotation.AnnotationDescription;
-import net.bytebuddy.description.annotation.AnnotationList;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 import static net.bytebuddy.matcher.ElementMatchers.isAnnotatedWith;
 import static net.bytebuddy.matcher.ElementMatchers.isInterface;
@@ -35,6 +31,10 @@ public class AnnotationMatcher implements NonNameMatcher {
         this.annotationNames = annotationNames;
     }
 
+    public String[] getAnnotationNames() {
+        return annotationNames;
+    }
+
     @Override
     public ElementMatcher.Junction<TypeDescription> buildJunction() {
         ElementMatcher.Junction<TypeDescription> junction = ElementMatchers.not(isInterface());
@@ -46,13 +46,18 @@ public class AnnotationMatcher implements NonNameMatcher {
 
     @Override
     public boolean isMatch(TypeDescription typeDescription) {
-        final AnnotationList annotationsList = typeDescription.getDeclaredAnnotations();
-        final HashSet<String> declaredAnnotations = new HashSet<String>();
-        for (AnnotationDescription annotationDescription : annotationsList) {
-            declaredAnnotations.add(annotationDescription.getAnnotationType().getActualName());
-        }
-        Set<String> annotations = new HashSet<String>(Arrays.asList(annotationNames));
-        annotations.removeAll(declaredAnnotations);
-        return annotations.isEmpty();
+        return TypeHierarchyCache.resolveAnnotationNames(typeDescription).containsAll(Arrays.asList(annotationNames));
+    }
+
+    /**
+     * 判断目标类型是否匹配，声明的注解名称通过{@link TypeHierarchyCache}解析并缓存
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 如果匹配返回true，否则false
+     */
+    public boolean isMatch(TypeDescription typeDescription, ClassLoader classLoader) {
+        return TypeHierarchyCache.getAnnotationNames(typeDescription, classLoader)
+                .containsAll(Arrays.asList(annotationNames));
     }
 }
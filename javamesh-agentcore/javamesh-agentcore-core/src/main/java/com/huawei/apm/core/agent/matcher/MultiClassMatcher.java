@@ -20,6 +20,10 @@ public class MultiClassMatcher implements NonNameMatcher {
         this.classNames = new HashSet<String>(Arrays.asList(classNames));
     }
 
+    public Set<String> getClassNames() {
+        return classNames;
+    }
+
     @Override
     public ElementMatcher.Junction<TypeDescription> buildJunction() {
         return new ElementMatcher.Junction.AbstractBase<TypeDescription>() {
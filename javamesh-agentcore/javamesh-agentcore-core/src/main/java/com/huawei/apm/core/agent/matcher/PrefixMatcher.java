@@ -17,6 +17,10 @@ public class PrefixMatcher implements NonNameMatcher {
         this.prefix = prefix;
     }
 
+    public String getPrefix() {
+        return prefix;
+    }
+
     @Override
     public ElementMatcher.Junction<TypeDescription> buildJunction() {
         return ElementMatchers.nameStartsWith(prefix);
@@ -35,6 +35,10 @@ public class SuperTypeMatcher implements NonNameMatcher {
         this.superTypes = superTypeNames;
     }
 
+    public String[] getSuperTypes() {
+        return superTypes;
+    }
+
     @Override
     public ElementMatcher.Junction<TypeDescription> buildJunction() {
         ElementMatcher.Junction<TypeDescription> junction = ElementMatchers.not(isInterface());
@@ -65,4 +69,16 @@ public class SuperTypeMatcher implements NonNameMatcher {
         }
         return types.isEmpty();
     }
+
+    /**
+     * 判断目标类型是否匹配，父类型名称通过{@link TypeHierarchyCache}解析并缓存
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 如果匹配返回true，否则false
+     */
+    public boolean isMatch(TypeDescription typeDescription, ClassLoader classLoader) {
+        return TypeHierarchyCache.getSuperTypeNames(typeDescription, classLoader)
+                .containsAll(Arrays.asList(superTypes));
+    }
 }
@@ -0,0 +1,218 @@
+package com.huawei.apm.core.agent.matcher;
+
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.type.TypeDefinition;
+import net.bytebuddy.description.type.TypeDescription;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类型层级缓存
+ * <p>缓存类型自身及其所有父类、接口的名称集合，以及类型声明的注解名称集合，按类加载器隔离，类加载器被回收后缓存随之释放；
+ * 每个类加载器缓存的类型数有上限，按新旧两代淘汰：新一代写满后整体降为旧一代，原来的旧一代丢弃，
+ * 旧一代中再次被访问的类型提升回新一代，因此启动阶段反复匹配的类型不会因为缓存写满而全部失效
+ * <p>父类型集合按层级递归解析，兄弟类型可以复用已解析的祖先类型，不需要重复通过TypePool解析
+ * <p>同时统计缓存命中率和匹配耗时，用于评估启动阶段的匹配开销
+ */
+public class TypeHierarchyCache {
+    /**
+     * 父类型名称缓存
+     */
+    private static final Map<ClassLoader, TypeCache> SUPER_TYPES = new WeakHashMap<ClassLoader, TypeCache>();
+
+    /**
+     * 注解名称缓存
+     */
+    private static final Map<ClassLoader, TypeCache> ANNOTATIONS = new WeakHashMap<ClassLoader, TypeCache>();
+
+    /**
+     * 启动类加载器的父类型名称缓存
+     */
+    private static final TypeCache BOOTSTRAP_SUPER_TYPES = new TypeCache();
+
+    /**
+     * 启动类加载器的注解名称缓存
+     */
+    private static final TypeCache BOOTSTRAP_ANNOTATIONS = new TypeCache();
+
+    /**
+     * 每个类加载器最多缓存的类型数
+     */
+    private static final int MAX_CACHED_TYPES = 8192;
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+    private static final AtomicLong MATCH_COUNT = new AtomicLong();
+
+    private static final AtomicLong MATCH_NANOS = new AtomicLong();
+
+    private TypeHierarchyCache() {
+    }
+
+    /**
+     * 获取类型自身及其所有父类、接口的名称
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 不可修改的类型名称集合
+     */
+    public static Set<String> getSuperTypeNames(TypeDescription typeDescription, ClassLoader classLoader) {
+        return getSuperTypeNames(typeDescription, getCache(SUPER_TYPES, BOOTSTRAP_SUPER_TYPES, classLoader));
+    }
+
+    private static Set<String> getSuperTypeNames(TypeDefinition typeDefinition, TypeCache cache) {
+        final String typeName = typeDefinition.asErasure().getActualName();
+        Set<String> names = cache.get(typeName);
+        if (names != null) {
+            HIT_COUNT.incrementAndGet();
+            return names;
+        }
+        MISS_COUNT.incrementAndGet();
+        names = new HashSet<String>();
+        names.add(typeName);
+        final TypeDefinition superClass = typeDefinition.getSuperClass();
+        if (superClass != null) {
+            names.addAll(getSuperTypeNames(superClass, cache));
+        }
+        for (TypeDefinition anInterface : typeDefinition.getInterfaces()) {
+            names.addAll(getSuperTypeNames(anInterface, cache));
+        }
+        names = Collections.unmodifiableSet(names);
+        return cache.putIfAbsent(typeName, names);
+    }
+
+    /**
+     * 获取类型声明的注解名称
+     *
+     * @param typeDescription 目标类型
+     * @param classLoader     加载目标类型的类加载器
+     * @return 不可修改的注解名称集合
+     */
+    public static Set<String> getAnnotationNames(TypeDescription typeDescription, ClassLoader classLoader) {
+        final TypeCache cache = getCache(ANNOTATIONS, BOOTSTRAP_ANNOTATIONS, classLoader);
+        final String typeName = typeDescription.getActualName();
+        Set<String> names = cache.get(typeName);
+        if (names != null) {
+            HIT_COUNT.incrementAndGet();
+            return names;
+        }
+        MISS_COUNT.incrementAndGet();
+        names = resolveAnnotationNames(typeDescription);
+        return cache.putIfAbsent(typeName, names);
+    }
+
+    /**
+     * 不经过缓存解析类型声明的注解名称
+     *
+     * @param typeDescription 目标类型
+     * @return 不可修改的注解名称集合
+     */
+    static Set<String> resolveAnnotationNames(TypeDescription typeDescription) {
+        final Set<String> names = new HashSet<String>();
+        for (AnnotationDescription annotation : typeDescription.getDeclaredAnnotations()) {
+            names.add(annotation.getAnnotationType().getActualName());
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    private static TypeCache getCache(Map<ClassLoader, TypeCache> caches, TypeCache bootstrapCache,
+            ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapCache;
+        }
+        synchronized (caches) {
+            TypeCache cache = caches.get(classLoader);
+            if (cache == null) {
+                cache = new TypeCache();
+                caches.put(classLoader, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * 记录一次匹配耗时
+     *
+     * @param nanos 耗时，单位纳秒
+     */
+    public static void recordMatchTime(long nanos) {
+        MATCH_COUNT.incrementAndGet();
+        MATCH_NANOS.addAndGet(nanos);
+    }
+
+    /**
+     * 获取缓存命中率
+     *
+     * @return 缓存命中率，无访问时返回0
+     */
+    public static double getHitRate() {
+        final long hit = HIT_COUNT.get();
+        final long total = hit + MISS_COUNT.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * 获取匹配总耗时
+     *
+     * @return 匹配总耗时，单位纳秒
+     */
+    public static long getMatchNanos() {
+        return MATCH_NANOS.get();
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 统计信息
+     */
+    public static String getStatistics() {
+        return String.format(Locale.ROOT,
+                "type hierarchy cache hit rate: [%.4f], hit: [%d], miss: [%d], match count: [%d], match time: [%d]ms",
+                getHitRate(), HIT_COUNT.get(), MISS_COUNT.get(), MATCH_COUNT.get(), MATCH_NANOS.get() / 1000000L);
+    }
+
+    /**
+     * 单个类加载器的类型缓存，新旧两代各最多缓存{@link #MAX_CACHED_TYPES}的一半
+     */
+    private static class TypeCache {
+        private static final int GENERATION_SIZE = MAX_CACHED_TYPES / 2;
+
+        private volatile ConcurrentMap<String, Set<String>> young = new ConcurrentHashMap<String, Set<String>>();
+
+        private volatile ConcurrentMap<String, Set<String>> old = new ConcurrentHashMap<String, Set<String>>();
+
+        private Set<String> get(String typeName) {
+            final Set<String> names = young.get(typeName);
+            if (names != null) {
+                return names;
+            }
+            final Set<String> oldNames = old.get(typeName);
+            return oldNames == null ? null : putIfAbsent(typeName, oldNames);
+        }
+
+        private Set<String> putIfAbsent(String typeName, Set<String> names) {
+            ConcurrentMap<String, Set<String>> current = young;
+            if (current.size() >= GENERATION_SIZE) {
+                synchronized (this) {
+                    if (young == current) {
+                        old = current;
+                        young = new ConcurrentHashMap<String, Set<String>>();
+                    }
+                    current = young;
+                }
+            }
+            final Set<String> exists = current.putIfAbsent(typeName, names);
+            return exists == null ? names : exists;
+        }
+    }
+}
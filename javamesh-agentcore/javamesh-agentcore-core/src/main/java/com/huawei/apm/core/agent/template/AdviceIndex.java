@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.apm.core.agent.template;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 动态advice类在{@link com.huawei.apm.bootstrap.BootstrapAdviceRegistry}中的槽位下标
+ * <p>增强时通过byte buddy的自定义映射绑定为常量，内联到被增强方法中
+ *
+ * @author HapThorin
+ * @version 1.0.0
+ * @since 2021/11/12
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface AdviceIndex {
+}
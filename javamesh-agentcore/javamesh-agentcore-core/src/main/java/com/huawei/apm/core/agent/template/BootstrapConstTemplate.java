@@ -4,7 +4,7 @@
 
 package com.huawei.apm.core.agent.template;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
@@ -13,6 +13,7 @@ import java.util.logging.Logger;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
+import com.huawei.apm.bootstrap.BootstrapAdviceRegistry;
 import com.huawei.apm.core.agent.interceptor.ConstructorInterceptor;
 import com.huawei.apm.core.lubanops.bootstrap.Interceptor;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
@@ -43,41 +44,31 @@ public class BootstrapConstTemplate {
 
     /**
      * 方法执行前调用
-     * <p>由于类加载器限制，需要使用反射调用外部方法，需要构建出动态advice类的全限定名，再用当前类加载器加载
-     * <p>由于jvm重定义的限制，不能添加静态属性，动态advice类只能通过局部参数传递
+     * <p>由于类加载器限制，启动类中内联的代码无法直接访问动态advice类，需要通过注入启动类加载器的
+     * {@link BootstrapAdviceRegistry}，以增强时绑定的常量下标获取预先解析的拦截器列表和方法句柄
+     * <p>由于jvm重定义的限制，不能添加静态属性，拦截器迭代器只能通过局部参数传递
      *
+     * @param cls                 被构造的类
      * @param arguments           所有入参
-     * @param constructor         构造函数本身
-     * @param adviceCls           动态advice类
+     * @param adviceIndex         动态advice类的槽位下标
      * @param constInterceptorItr 构造拦截器双向迭代器
-     * @throws Exception 发生异常
+     * @throws Throwable 发生异常
      */
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static void OnMethodEnter(
+            @Advice.Origin Class<?> cls,
             @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] arguments,
-            @Advice.Origin Constructor<?> constructor,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
+            @AdviceIndex int adviceIndex,
             @Advice.Local(value = "CONST_INTERCEPTOR_ITR") ListIterator<?> constInterceptorItr
-    ) throws Exception {
-        final StringBuilder builder = new StringBuilder()
-                .append(constructor.getName())
-                .append("(");
-        Class<?>[] parameterTypes = constructor.getParameterTypes();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            if (i > 0) {
-                builder.append(',');
-            }
-            builder.append(parameterTypes[i].getName());
+    ) throws Throwable {
+        final MethodHandle enterHandle = BootstrapAdviceRegistry.getEnterHandle(adviceIndex);
+        if (enterHandle == null) {
+            // 槽位已释放，不再拦截
+            return;
         }
-        builder.append(')');
-        final String adviceClsName = "com.huawei.apm.core.agent.template.BootstrapConstTemplate_" +
-                Integer.toHexString(builder.toString().hashCode());
-        adviceCls = ClassLoader.getSystemClassLoader().loadClass(adviceClsName);
-        constInterceptorItr = (ListIterator<?>) adviceCls.getDeclaredMethod("getConstInterceptorItr").invoke(null);
+        constInterceptorItr = BootstrapAdviceRegistry.getInterceptorItr(adviceIndex);
         final Object[] dynamicArgs = arguments;
-        adviceCls.getDeclaredMethod("beforeConstructor",
-                Object[].class, Constructor.class, ListIterator.class
-        ).invoke(null, dynamicArgs, constructor, constInterceptorItr);
+        enterHandle.invokeExact(cls, dynamicArgs, constInterceptorItr);
         arguments = dynamicArgs;
     }
 
@@ -86,68 +77,60 @@ public class BootstrapConstTemplate {
      *
      * @param obj                 生成的对象
      * @param arguments           所有入参
-     * @param adviceCls           动态advice类
+     * @param adviceIndex         动态advice类的槽位下标
      * @param constInterceptorItr 构造拦截器双向迭代器
-     * @throws Exception 发生异常
+     * @throws Throwable 发生异常
      */
     @Advice.OnMethodExit(suppress = Throwable.class)
     public static void OnMethodExit(
             @Advice.This(typing = Assigner.Typing.DYNAMIC) Object obj,
             @Advice.AllArguments Object[] arguments,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
+            @AdviceIndex int adviceIndex,
             @Advice.Local(value = "CONST_INTERCEPTOR_ITR") ListIterator<?> constInterceptorItr
-    ) throws Exception {
-        adviceCls.getDeclaredMethod("afterConstructor",
-                Object.class, Object[].class, ListIterator.class
-        ).invoke(null, obj, arguments, constInterceptorItr);
-    }
-
-    /**
-     * 获取构造拦截器双向迭代器
-     *
-     * @return 构造拦截器双向迭代器
-     */
-    public static ListIterator<ConstructorInterceptor> getConstInterceptorItr() {
-        return INTERCEPTORS.listIterator();
+    ) throws Throwable {
+        final MethodHandle exitHandle = BootstrapAdviceRegistry.getExitHandle(adviceIndex);
+        if (exitHandle != null && constInterceptorItr != null) {
+            exitHandle.invokeExact(obj, arguments, constInterceptorItr);
+        }
     }
 
     /**
      * 调用luban拦截器的onStart方法
      *
+     * @param cls                 被构造的类
      * @param arguments           所有入参
-     * @param constructor         构造函数本身
      * @param constInterceptorItr 构造拦截器双向迭代器
      */
-    public static void beforeConstructor(Object[] arguments, Constructor<?> constructor,
+    public static void beforeConstructor(Class<?> cls, Object[] arguments,
             ListIterator<ConstructorInterceptor> constInterceptorItr) {
-        final Object[] dynamicArgs = beforeOriginIntercept(arguments, constructor);
+        final Object[] dynamicArgs = beforeOriginIntercept(cls, arguments);
         if (dynamicArgs != arguments && dynamicArgs != null && dynamicArgs.length == arguments.length) {
             System.arraycopy(dynamicArgs, 0, arguments, 0, arguments.length);
         }
-        beforeConstIntercept(arguments, constructor, constInterceptorItr);
+        beforeConstIntercept(cls, arguments, constInterceptorItr);
     }
 
     /**
      * 调用luban拦截器的onStart方法
      *
-     * @param arguments   所有入参
-     * @param constructor 构造函数本身
+     * @param cls       被构造的类
+     * @param arguments 所有入参
      * @return 修正的参数列表
      */
-    private static Object[] beforeOriginIntercept(Object[] arguments, Constructor<?> constructor) {
+    private static Object[] beforeOriginIntercept(Class<?> cls, Object[] arguments) {
         if (ORIGIN_INTERCEPTOR == null) {
             return arguments;
         }
         try {
             final Object[] dynamicArgs = ORIGIN_INTERCEPTOR.onStart(
-                    constructor.getDeclaringClass(), arguments, constructor.getName(), "constructor");
+                    cls, arguments, cls.getName(), "constructor");
             if (dynamicArgs != null && dynamicArgs.length == arguments.length) {
                 return dynamicArgs;
             }
         } catch (Throwable t) {
             LOGGER.severe(String.format(Locale.ROOT,
                     "invoke onStart method failed, class name:[{%s}], method name:[{%s}], reason:[{%s}]",
-                    constructor.getDeclaringClass().getName(), "constructor", t.getMessage()));
+                    cls.getName(), "constructor", t.getMessage()));
         }
         return arguments;
     }
@@ -155,11 +138,11 @@ public class BootstrapConstTemplate {
     /**
      * 构造拦截器空迭代（预留拓展空间）
      *
+     * @param cls                 被构造的类
      * @param arguments           所有入参
-     * @param constructor         构造函数本身
      * @param constInterceptorItr 构造拦截器双向迭代器
      */
-    private static void beforeConstIntercept(Object[] arguments, Constructor<?> constructor,
+    private static void beforeConstIntercept(Class<?> cls, Object[] arguments,
             ListIterator<ConstructorInterceptor> constInterceptorItr) {
         while (constInterceptorItr.hasNext()) {
             constInterceptorItr.next();
@@ -4,6 +4,7 @@
 
 package com.huawei.apm.core.agent.template;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.ListIterator;
@@ -13,7 +14,9 @@ import java.util.logging.Logger;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
+import com.huawei.apm.bootstrap.BootstrapAdviceRegistry;
 import com.huawei.apm.core.agent.common.BeforeResult;
+import com.huawei.apm.core.agent.common.BeforeResultStack;
 import com.huawei.apm.core.agent.interceptor.InstanceMethodInterceptor;
 import com.huawei.apm.core.lubanops.bootstrap.Interceptor;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
@@ -42,48 +45,51 @@ public class BootstrapInstTemplate {
      */
     public static List<InstanceMethodInterceptor> INTERCEPTORS;
 
+    /**
+     * 被增强方法的名称
+     */
+    public static String METHOD_NAME;
+
+    /**
+     * 被增强方法的参数类型
+     */
+    public static String[] PARAM_TYPES;
+
+    /**
+     * 被增强方法，首次调用时解析
+     */
+    private static volatile Method originMethod;
+
     /**
      * 方法执行前调用
-     * <p>由于类加载器限制，需要使用反射调用外部方法，需要构建出动态advice类的全限定名，再用当前类加载器加载
-     * <p>由于jvm重定义的限制，不能添加静态属性，动态advice类只能通过局部参数传递
+     * <p>由于类加载器限制，启动类中内联的代码无法直接访问动态advice类，需要通过注入启动类加载器的
+     * {@link BootstrapAdviceRegistry}，以增强时绑定的常量下标获取预先解析的拦截器列表和方法句柄
+     * <p>由于jvm重定义的限制，不能添加静态属性，拦截器迭代器只能通过局部参数传递
      *
      * @param obj                被增强对象
-     * @param method             被增强方法
+     * @param cls                被增强的类
      * @param arguments          所有参数
-     * @param adviceCls          动态advice类
+     * @param adviceIndex        动态advice类的槽位下标
      * @param instInterceptorItr 实例拦截器的双向迭代器
      * @return 是否进行主要流程
-     * @throws Exception 发生异常
+     * @throws Throwable 发生异常
      */
     @Advice.OnMethodEnter(suppress = Throwable.class, skipOn = Advice.OnDefaultValue.class)
     public static boolean onMethodEnter(
             @Advice.This(typing = Assigner.Typing.DYNAMIC) Object obj,
-            @Advice.Origin Method method,
+            @Advice.Origin Class<?> cls,
             @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] arguments,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
+            @AdviceIndex int adviceIndex,
             @Advice.Local(value = "INST_INTERCEPTOR_ITR") ListIterator<?> instInterceptorItr
-    ) throws Exception {
-        final StringBuilder builder = new StringBuilder()
-                .append(method.getDeclaringClass().getName())
-                .append('#')
-                .append(method.getName())
-                .append("(");
-        final Class<?>[] parameterTypes = method.getParameterTypes();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            if (i > 0) {
-                builder.append(',');
-            }
-            builder.append(parameterTypes[i].getName());
+    ) throws Throwable {
+        final MethodHandle enterHandle = BootstrapAdviceRegistry.getEnterHandle(adviceIndex);
+        if (enterHandle == null) {
+            // 槽位已释放，不再拦截，执行原方法
+            return true;
         }
-        builder.append(')');
-        final String adviceClsName = "com.huawei.apm.core.agent.template.BootstrapInstTemplate_" +
-                Integer.toHexString(builder.toString().hashCode());
-        adviceCls = ClassLoader.getSystemClassLoader().loadClass(adviceClsName);
-        instInterceptorItr = (ListIterator<?>) adviceCls.getDeclaredMethod("getInstInterceptorItr").invoke(null);
+        instInterceptorItr = BootstrapAdviceRegistry.getInterceptorItr(adviceIndex);
         final Object[] dynamicArgs = arguments;
-        final Boolean res = (Boolean) adviceCls.getDeclaredMethod("beforeInstMethod",
-                Object.class, Method.class, Object[].class, ListIterator.class
-        ).invoke(null, obj, method, dynamicArgs, instInterceptorItr);
+        final boolean res = (boolean) enterHandle.invokeExact(obj, cls, dynamicArgs, instInterceptorItr);
         arguments = dynamicArgs;
         return res;
     }
@@ -92,48 +98,56 @@ public class BootstrapInstTemplate {
      * 方法执行后调用
      *
      * @param obj                被拦截对象
-     * @param method             被拦截方法
+     * @param cls                被拦截的类
      * @param arguments          所有参数
      * @param result             调用结果
      * @param throwable          抛出异常
-     * @param adviceCls          动态advice类
+     * @param adviceIndex        动态advice类的槽位下标
      * @param instInterceptorItr 实例拦截器的双向迭代器
-     * @throws Exception 调用异常
+     * @throws Throwable 调用异常
      */
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void OnMethodExit(
             @Advice.This(typing = Assigner.Typing.DYNAMIC) Object obj,
-            @Advice.Origin Method method,
+            @Advice.Origin Class<?> cls,
             @Advice.AllArguments Object[] arguments,
             @Advice.Return(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object result,
             @Advice.Thrown Throwable throwable,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
-            @Advice.Local(value = "INST_INTERCEPTOR_ITR") ListIterator<?> instInterceptorItr) throws Exception {
-        result = adviceCls.getDeclaredMethod("afterInstMethod",
-                Object.class, Method.class, Object[].class, Object.class, Throwable.class, ListIterator.class
-        ).invoke(null, obj, method, arguments, result, throwable, instInterceptorItr);
+            @AdviceIndex int adviceIndex,
+            @Advice.Local(value = "INST_INTERCEPTOR_ITR") ListIterator<?> instInterceptorItr) throws Throwable {
+        final MethodHandle exitHandle = BootstrapAdviceRegistry.getExitHandle(adviceIndex);
+        if (exitHandle != null && instInterceptorItr != null) {
+            result = (Object) exitHandle.invokeExact(obj, cls, arguments, result, throwable, instInterceptorItr);
+        }
     }
 
     /**
-     * 获取实例拦截器的双向迭代器
+     * 获取被增强方法，首次调用时依据方法名和参数类型解析
      *
-     * @return 实例拦截器的双向迭代器
+     * @param cls 被增强的类
+     * @return 被增强方法
      */
-    public static ListIterator<InstanceMethodInterceptor> getInstInterceptorItr() {
-        return INTERCEPTORS.listIterator();
+    private static Method getOriginMethod(Class<?> cls) {
+        Method method = originMethod;
+        if (method == null) {
+            method = OriginMethodResolver.resolve(cls, METHOD_NAME, PARAM_TYPES);
+            originMethod = method;
+        }
+        return method;
     }
 
     /**
      * 调用luban拦截器的onStart方法和实例拦截器的before方法
      *
      * @param obj                被拦截的对象
-     * @param method             被拦截的方法
+     * @param cls                被拦截的类
      * @param arguments          所有参数
      * @param instInterceptorItr 实例拦截器的双向迭代器
      * @return 是否进行主要流程
      */
-    public static boolean beforeInstMethod(Object obj, Method method, Object[] arguments,
+    public static boolean beforeInstMethod(Object obj, Class<?> cls, Object[] arguments,
             ListIterator<InstanceMethodInterceptor> instInterceptorItr) {
+        final Method method = getOriginMethod(cls);
         final Object[] dynamicArgs = beforeOriginIntercept(obj, method, arguments);
         if (dynamicArgs != arguments && dynamicArgs != null && dynamicArgs.length == arguments.length) {
             System.arraycopy(dynamicArgs, 0, arguments, 0, arguments.length);
@@ -178,37 +192,43 @@ public class BootstrapInstTemplate {
      */
     private static boolean beforeInstIntercept(Object obj, Method method, Object[] arguments,
             ListIterator<InstanceMethodInterceptor> instInterceptorItr) {
-        final BeforeResult beforeResult = new BeforeResult();
-        while (instInterceptorItr.hasNext()) {
-            final InstanceMethodInterceptor interceptor = instInterceptorItr.next();
-            try {
-                interceptor.before(obj, method, arguments, beforeResult);
-            } catch (Throwable t) {
-                LOGGER.severe(String.format(Locale.ROOT,
-                        "An error occurred before [{%s}#{%s}] in interceptor [{%s}]: [{%s}]",
-                        obj.getClass().getName(), method.getName(), interceptor.getClass().getName(),
-                        t.getMessage()));
-            }
-            if (!beforeResult.isContinue()) {
-                return false;
+        final BeforeResultStack beforeResultStack = BeforeResultStack.current();
+        final BeforeResult beforeResult = beforeResultStack.push();
+        try {
+            while (instInterceptorItr.hasNext()) {
+                final InstanceMethodInterceptor interceptor = instInterceptorItr.next();
+                try {
+                    interceptor.before(obj, method, arguments, beforeResult);
+                } catch (Throwable t) {
+                    LOGGER.severe(String.format(Locale.ROOT,
+                            "An error occurred before [{%s}#{%s}] in interceptor [{%s}]: [{%s}]",
+                            obj.getClass().getName(), method.getName(), interceptor.getClass().getName(),
+                            t.getMessage()));
+                }
+                if (!beforeResult.isContinue()) {
+                    return false;
+                }
             }
+            return true;
+        } finally {
+            beforeResultStack.pop();
         }
-        return true;
     }
 
     /**
      * 调用luban拦截器的onFinally、onError方法和实例拦截器的after、onThrow方法
      *
      * @param obj                被拦截的对象
-     * @param method             被拦截方法
+     * @param cls                被拦截的类
      * @param arguments          所有参数
      * @param result             调用结果
      * @param throwable          抛出异常
      * @param instInterceptorItr 实例拦截器的双向迭代器
      * @return 调用结果
      */
-    public static Object afterInstMethod(Object obj, Method method, Object[] arguments, Object result,
+    public static Object afterInstMethod(Object obj, Class<?> cls, Object[] arguments, Object result,
             Throwable throwable, ListIterator<InstanceMethodInterceptor> instInterceptorItr) {
+        final Method method = getOriginMethod(cls);
         result = afterInstIntercept(obj, method, arguments, result, throwable, instInterceptorItr);
         afterOriginIntercept(obj, method, arguments, result, throwable);
         return result;
@@ -4,6 +4,7 @@
 
 package com.huawei.apm.core.agent.template;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.ListIterator;
@@ -13,7 +14,9 @@ import java.util.logging.Logger;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
+import com.huawei.apm.bootstrap.BootstrapAdviceRegistry;
 import com.huawei.apm.core.agent.common.BeforeResult;
+import com.huawei.apm.core.agent.common.BeforeResultStack;
 import com.huawei.apm.core.agent.interceptor.StaticMethodInterceptor;
 import com.huawei.apm.core.lubanops.bootstrap.Interceptor;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
@@ -42,48 +45,49 @@ public class BootstrapStaticTemplate {
      */
     public static List<StaticMethodInterceptor> INTERCEPTORS;
 
+    /**
+     * 被增强方法的名称
+     */
+    public static String METHOD_NAME;
+
+    /**
+     * 被增强方法的参数类型
+     */
+    public static String[] PARAM_TYPES;
+
+    /**
+     * 被增强方法，首次调用时解析
+     */
+    private static volatile Method originMethod;
+
     /**
      * 方法执行前调用
-     * <p>由于类加载器限制，需要使用反射调用外部方法，需要构建出动态advice类的全限定名，再用当前类加载器加载
-     * <p>由于jvm重定义的限制，不能添加静态属性，动态advice类只能通过局部参数传递
+     * <p>由于类加载器限制，启动类中内联的代码无法直接访问动态advice类，需要通过注入启动类加载器的
+     * {@link BootstrapAdviceRegistry}，以增强时绑定的常量下标获取预先解析的拦截器列表和方法句柄
+     * <p>由于jvm重定义的限制，不能添加静态属性，拦截器迭代器只能通过局部参数传递
      *
      * @param cls                  被增强的类
-     * @param method               被增强方法
      * @param arguments            所有参数
-     * @param adviceCls            动态advice类
+     * @param adviceIndex          动态advice类的槽位下标
      * @param staticInterceptorItr 静态插件的双向迭代器
      * @return 是否进行主要流程
-     * @throws Exception 发生异常
+     * @throws Throwable 发生异常
      */
     @Advice.OnMethodEnter(suppress = Throwable.class, skipOn = Advice.OnDefaultValue.class)
     public static boolean OnMethodEnter(
             @Advice.Origin Class<?> cls,
-            @Advice.Origin Method method,
             @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] arguments,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
+            @AdviceIndex int adviceIndex,
             @Advice.Local(value = "STATIC_INTERCEPTOR_ITR") ListIterator<?> staticInterceptorItr
-    ) throws Exception {
-        final StringBuilder builder = new StringBuilder()
-                .append(method.getDeclaringClass().getName())
-                .append('#')
-                .append(method.getName())
-                .append("(");
-        final Class<?>[] parameterTypes = method.getParameterTypes();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            if (i > 0) {
-                builder.append(',');
-            }
-            builder.append(parameterTypes[i].getName());
+    ) throws Throwable {
+        final MethodHandle enterHandle = BootstrapAdviceRegistry.getEnterHandle(adviceIndex);
+        if (enterHandle == null) {
+            // 槽位已释放，不再拦截，执行原方法
+            return true;
         }
-        builder.append(')');
-        final String adviceClsName = "com.huawei.apm.core.agent.template.BootstrapStaticTemplate_" +
-                Integer.toHexString(builder.toString().hashCode());
-        adviceCls = ClassLoader.getSystemClassLoader().loadClass(adviceClsName);
-        staticInterceptorItr = (ListIterator<?>) adviceCls.getDeclaredMethod("getStaticInterceptorItr").invoke(null);
+        staticInterceptorItr = BootstrapAdviceRegistry.getInterceptorItr(adviceIndex);
         final Object[] dynamicArgs = arguments;
-        final Boolean res = (Boolean) adviceCls.getDeclaredMethod("beforeStaticMethod",
-                Class.class, Method.class, Object[].class, ListIterator.class
-        ).invoke(null, cls, method, dynamicArgs, staticInterceptorItr);
+        final boolean res = (boolean) enterHandle.invokeExact(cls, dynamicArgs, staticInterceptorItr);
         arguments = dynamicArgs;
         return res;
     }
@@ -92,49 +96,54 @@ public class BootstrapStaticTemplate {
      * 方法执行后调用
      *
      * @param cls                  被拦截的类
-     * @param method               被拦截方法
      * @param arguments            所有参数
      * @param result               调用结果
      * @param throwable            抛出异常
-     * @param adviceCls            动态advice类
+     * @param adviceIndex          动态advice类的槽位下标
      * @param staticInterceptorItr 静态插件的双向迭代器
-     * @throws Exception 调用异常
+     * @throws Throwable 调用异常
      */
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void OnMethodExit(
             @Advice.Origin Class<?> cls,
-            @Advice.Origin Method method,
             @Advice.AllArguments Object[] arguments,
             @Advice.Return(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object result,
             @Advice.Thrown Throwable throwable,
-            @Advice.Local(value = "ADVICE_CLS") Class<?> adviceCls,
+            @AdviceIndex int adviceIndex,
             @Advice.Local(value = "STATIC_INTERCEPTOR_ITR") ListIterator<?> staticInterceptorItr
-    ) throws Exception {
-        result = adviceCls.getDeclaredMethod("afterStaticMethod",
-                Class.class, Method.class, Object[].class, Object.class, Throwable.class, ListIterator.class
-        ).invoke(null, cls, method, arguments, result, throwable, staticInterceptorItr);
+    ) throws Throwable {
+        final MethodHandle exitHandle = BootstrapAdviceRegistry.getExitHandle(adviceIndex);
+        if (exitHandle != null && staticInterceptorItr != null) {
+            result = (Object) exitHandle.invokeExact(cls, arguments, result, throwable, staticInterceptorItr);
+        }
     }
 
     /**
-     * 获取静态插件的双向迭代器
+     * 获取被增强方法，首次调用时依据方法名和参数类型解析
      *
-     * @return 静态插件的双向迭代器
+     * @param cls 被增强的类
+     * @return 被增强方法
      */
-    public static ListIterator<StaticMethodInterceptor> getStaticInterceptorItr() {
-        return INTERCEPTORS.listIterator();
+    private static Method getOriginMethod(Class<?> cls) {
+        Method method = originMethod;
+        if (method == null) {
+            method = OriginMethodResolver.resolve(cls, METHOD_NAME, PARAM_TYPES);
+            originMethod = method;
+        }
+        return method;
     }
 
     /**
      * 调用luban拦截器的onStart方法和静态拦截器的before方法
      *
      * @param cls                  被拦截的类
-     * @param method               被拦截的方法
      * @param arguments            所有参数
      * @param staticInterceptorItr 静态插件的双向迭代器
      * @return 是否进行主要流程
      */
-    public static boolean beforeStaticMethod(Class<?> cls, Method method, Object[] arguments,
+    public static boolean beforeStaticMethod(Class<?> cls, Object[] arguments,
             ListIterator<StaticMethodInterceptor> staticInterceptorItr) {
+        final Method method = getOriginMethod(cls);
         final Object[] dynamicArgs = beforeOriginIntercept(cls, method, arguments);
         if (dynamicArgs != arguments && dynamicArgs != null && dynamicArgs.length == arguments.length) {
             System.arraycopy(dynamicArgs, 0, arguments, 0, arguments.length);
@@ -178,36 +187,41 @@ public class BootstrapStaticTemplate {
      */
     private static boolean beforeStaticIntercept(Class<?> cls, Method method, Object[] arguments,
             ListIterator<StaticMethodInterceptor> staticInterceptorItr) {
-        final BeforeResult beforeResult = new BeforeResult();
-        while (staticInterceptorItr.hasNext()) {
-            final StaticMethodInterceptor interceptor = staticInterceptorItr.next();
-            try {
-                interceptor.before(cls, method, arguments, beforeResult);
-            } catch (Throwable t) {
-                LOGGER.severe(String.format(Locale.ROOT,
-                        "An error occurred before [{%s}#{%s}] in interceptor [{%s}]: [{%s}]",
-                        cls.getName(), method.getName(), interceptor.getClass().getName(), t.getMessage()));
-            }
-            if (!beforeResult.isContinue()) {
-                return false;
+        final BeforeResultStack beforeResultStack = BeforeResultStack.current();
+        final BeforeResult beforeResult = beforeResultStack.push();
+        try {
+            while (staticInterceptorItr.hasNext()) {
+                final StaticMethodInterceptor interceptor = staticInterceptorItr.next();
+                try {
+                    interceptor.before(cls, method, arguments, beforeResult);
+                } catch (Throwable t) {
+                    LOGGER.severe(String.format(Locale.ROOT,
+                            "An error occurred before [{%s}#{%s}] in interceptor [{%s}]: [{%s}]",
+                            cls.getName(), method.getName(), interceptor.getClass().getName(), t.getMessage()));
+                }
+                if (!beforeResult.isContinue()) {
+                    return false;
+                }
             }
+            return true;
+        } finally {
+            beforeResultStack.pop();
         }
-        return true;
     }
 
     /**
      * 调用luban拦截器的onFinally、onError方法和静态拦截器的after、onThrow方法
      *
      * @param cls                  被拦截的类
-     * @param method               被拦截方法
      * @param arguments            所有参数
      * @param result               调用结果
      * @param throwable            抛出异常
      * @param staticInterceptorItr 静态插件的双向迭代器
      * @return 调用结果
      */
-    public static Object afterStaticMethod(Class<?> cls, Method method, Object[] arguments, Object result,
+    public static Object afterStaticMethod(Class<?> cls, Object[] arguments, Object result,
             Throwable throwable, ListIterator<StaticMethodInterceptor> staticInterceptorItr) {
+        final Method method = getOriginMethod(cls);
         result = afterStaticIntercept(cls, method, arguments, result, throwable, staticInterceptorItr);
         afterOriginIntercept(cls, method, arguments, result, throwable);
         return result;
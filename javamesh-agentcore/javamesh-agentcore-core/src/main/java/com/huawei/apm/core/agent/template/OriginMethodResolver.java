@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.apm.core.agent.template;
+
+import java.lang.reflect.Method;
+
+/**
+ * 被增强方法解析器
+ * <p>动态advice类首次被调用时，依据增强时记录的方法名和参数类型解析出被增强方法，后续调用直接使用缓存
+ *
+ * @author HapThorin
+ * @version 1.0.0
+ * @since 2021/11/12
+ */
+public class OriginMethodResolver {
+    private OriginMethodResolver() {
+    }
+
+    /**
+     * 解析被增强方法
+     * <p>协变返回值等场景下编译器生成的桥接方法与被增强方法同名同参，需要跳过
+     *
+     * @param cls        被增强的类
+     * @param methodName 方法名
+     * @param paramTypes 参数类型的全限定名，格式同{@link Class#getName()}
+     * @return 被增强方法，找不到时返回null
+     */
+    public static Method resolve(Class<?> cls, String methodName, String[] paramTypes) {
+        for (Method method : cls.getDeclaredMethods()) {
+            if (method.isBridge() || method.isSynthetic()) {
+                continue;
+            }
+            if (method.getName().equals(methodName) && isParamTypesMatch(method.getParameterTypes(), paramTypes)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isParamTypesMatch(Class<?>[] parameterTypes, String[] paramTypes) {
+        if (parameterTypes.length != paramTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!parameterTypes[i].getName().equals(paramTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -4,9 +4,17 @@
 
 package com.huawei.apm.core.agent.transformer;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import net.bytebuddy.ByteBuddy;
@@ -22,6 +30,7 @@ import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
 
+import com.huawei.apm.bootstrap.BootstrapAdviceRegistry;
 import com.huawei.apm.core.agent.EnhanceDefinitionLoader;
 import com.huawei.apm.core.agent.definition.EnhanceDefinition;
 import com.huawei.apm.core.agent.interceptor.ConstructorInterceptor;
@@ -31,6 +40,7 @@ import com.huawei.apm.core.agent.interceptor.StaticMethodInterceptor;
 import com.huawei.apm.core.lubanops.bootstrap.Listener;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 import com.huawei.apm.core.plugin.PluginServiceManager;
+import com.huawei.apm.core.agent.template.AdviceIndex;
 import com.huawei.apm.core.agent.template.BootstrapConstTemplate;
 import com.huawei.apm.core.agent.template.BootstrapInstTemplate;
 import com.huawei.apm.core.agent.template.BootstrapStaticTemplate;
@@ -49,12 +59,33 @@ public class BootstrapTransformer implements AgentBuilder.Transformer {
      */
     private static final Logger LOGGER = LogFactory.getLogger();
 
+    /**
+     * 被增强类名到其动态advice类名的映射，用于释放{@link BootstrapAdviceRegistry}中的槽位
+     */
+    private static final ConcurrentMap<String, Set<String>> ADVICE_CLASS_NAMES =
+            new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * 释放被增强类的所有动态advice类在{@link BootstrapAdviceRegistry}中的槽位，在该类增强失败时调用
+     *
+     * @param typeName 被增强类名
+     */
+    public static void releaseAdvices(String typeName) {
+        final Set<String> adviceClsNames = ADVICE_CLASS_NAMES.remove(typeName);
+        if (adviceClsNames == null) {
+            return;
+        }
+        for (String adviceClsName : adviceClsNames) {
+            BootstrapAdviceRegistry.unregister(adviceClsName);
+        }
+    }
+
     @Override
     public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription typeDescription,
             ClassLoader classLoader, JavaModule module) {
         final EnhanceDefinitionLoader loader = EnhanceDefinitionLoader.getInstance();
         final Listener listener = loader.findNameListener(typeDescription);
-        final List<EnhanceDefinition> definitions = loader.findDefinitions(typeDescription);
+        final List<EnhanceDefinition> definitions = loader.findDefinitions(typeDescription, classLoader);
         if (listener == null && definitions.isEmpty()) {
             return builder;
         }
@@ -154,7 +185,9 @@ public class BootstrapTransformer implements AgentBuilder.Transformer {
             final List<? extends Interceptor> interceptors = InterceptorLoader.getInterceptors(
                     interceptorNames, classLoader, interceptorType);
             prepareAdviceClass(adviceCls, originInterceptor, interceptors);
-            return visitAdvice(builder, adviceCls, adviceClsBytes);
+            final int adviceIndex = registerAdviceClass(adviceCls, templateCls, interceptors);
+            recordAdviceClass(adviceClsName);
+            return visitAdvice(builder, adviceCls, adviceClsBytes, adviceIndex);
         }
 
         /**
@@ -212,7 +245,8 @@ public class BootstrapTransformer implements AgentBuilder.Transformer {
         }
 
         /**
-         * 将两组拦截器赋值为动态Advice增强器类的ORIGIN_INTERCEPTORS和INTERCEPTORS
+         * 将两组拦截器赋值为动态Advice增强器类的ORIGIN_INTERCEPTORS和INTERCEPTORS，非构造函数还需设置被增强方法的
+         * 名称和参数类型，用于首次调用时解析被增强方法
          *
          * @param adviceCls         动态Advice增强器类
          * @param originInterceptor luban拦截器列表
@@ -223,6 +257,67 @@ public class BootstrapTransformer implements AgentBuilder.Transformer {
                 List<? extends Interceptor> interceptors) throws Exception {
             adviceCls.getDeclaredField("ORIGIN_INTERCEPTOR").set(null, originInterceptor);
             adviceCls.getDeclaredField("INTERCEPTORS").set(null, interceptors);
+            if (!method.isConstructor()) {
+                final ParameterList<ParameterDescription.InDefinedShape> parameters = method.getParameters();
+                final String[] paramTypes = new String[parameters.size()];
+                for (int i = 0; i < paramTypes.length; i++) {
+                    paramTypes[i] = parameters.get(i).getType().asErasure().getName();
+                }
+                adviceCls.getDeclaredField("METHOD_NAME").set(null, method.getName());
+                adviceCls.getDeclaredField("PARAM_TYPES").set(null, paramTypes);
+            }
+        }
+
+        /**
+         * 将动态Advice增强器类的拦截器列表和前后置方法句柄以类名注册到{@link BootstrapAdviceRegistry}，返回槽位下标，
+         * 同一方法重新增强时复用原槽位
+         *
+         * @param adviceCls    动态Advice增强器类
+         * @param templateCls  模板类
+         * @param interceptors 拦截器列表
+         * @return 槽位下标
+         * @throws Exception 查找方法句柄失败
+         */
+        private int registerAdviceClass(Class<?> adviceCls, Class<?> templateCls,
+                List<? extends Interceptor> interceptors) throws Exception {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final MethodHandle enterHandle;
+            final MethodHandle exitHandle;
+            if (templateCls == BootstrapStaticTemplate.class) {
+                enterHandle = lookup.findStatic(adviceCls, "beforeStaticMethod", MethodType.methodType(
+                        boolean.class, Class.class, Object[].class, ListIterator.class));
+                exitHandle = lookup.findStatic(adviceCls, "afterStaticMethod", MethodType.methodType(
+                        Object.class, Class.class, Object[].class, Object.class, Throwable.class, ListIterator.class));
+            } else if (templateCls == BootstrapConstTemplate.class) {
+                enterHandle = lookup.findStatic(adviceCls, "beforeConstructor", MethodType.methodType(
+                        void.class, Class.class, Object[].class, ListIterator.class));
+                exitHandle = lookup.findStatic(adviceCls, "afterConstructor", MethodType.methodType(
+                        void.class, Object.class, Object[].class, ListIterator.class));
+            } else {
+                enterHandle = lookup.findStatic(adviceCls, "beforeInstMethod", MethodType.methodType(
+                        boolean.class, Object.class, Class.class, Object[].class, ListIterator.class));
+                exitHandle = lookup.findStatic(adviceCls, "afterInstMethod", MethodType.methodType(Object.class,
+                        Object.class, Class.class, Object[].class, Object.class, Throwable.class, ListIterator.class));
+            }
+            return BootstrapAdviceRegistry.register(adviceCls.getName(), interceptors, enterHandle, exitHandle);
+        }
+
+        /**
+         * 记录被增强类的动态advice类名，增强失败时据此释放槽位
+         *
+         * @param adviceClsName 动态advice类名
+         */
+        private void recordAdviceClass(String adviceClsName) {
+            final String typeName = method.getDeclaringType().getTypeName();
+            Set<String> adviceClsNames = ADVICE_CLASS_NAMES.get(typeName);
+            if (adviceClsNames == null) {
+                final Set<String> newNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                adviceClsNames = ADVICE_CLASS_NAMES.putIfAbsent(typeName, newNames);
+                if (adviceClsNames == null) {
+                    adviceClsNames = newNames;
+                }
+            }
+            adviceClsNames.add(adviceClsName);
         }
 
         /**
@@ -231,20 +326,22 @@ public class BootstrapTransformer implements AgentBuilder.Transformer {
          * @param builder        动态构造器
          * @param adviceCls      动态Advice增强器类
          * @param adviceClsBytes 动态Advice增强器字节码
+         * @param adviceIndex    动态Advice增强器的槽位下标，作为常量绑定到{@link AdviceIndex}修饰的参数
          * @return 动态构造器
          */
         private DynamicType.Builder<?> visitAdvice(DynamicType.Builder<?> builder, Class<?> adviceCls,
-                final byte[] adviceClsBytes) {
-            return builder.visit(Advice.to(adviceCls, new ClassFileLocator() {
-                @Override
-                public void close() {
-                }
+                final byte[] adviceClsBytes, int adviceIndex) {
+            return builder.visit(Advice.withCustomMapping().bind(AdviceIndex.class, adviceIndex).to(adviceCls,
+                    new ClassFileLocator() {
+                        @Override
+                        public void close() {
+                        }
 
-                @Override
-                public Resolution locate(String name) {
-                    return new Resolution.Explicit(adviceClsBytes);
-                }
-            }).on(ElementMatchers.<MethodDescription>is(method)));
+                        @Override
+                        public Resolution locate(String name) {
+                            return new Resolution.Explicit(adviceClsBytes);
+                        }
+                    }).on(ElementMatchers.<MethodDescription>is(method)));
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.huawei.apm.core.agent.transformer;
 
+import com.huawei.apm.core.agent.ByteBuddyAgentBuilder;
 import com.huawei.apm.core.agent.EnhanceDefinitionLoader;
 import com.huawei.apm.core.agent.common.OverrideArgumentsCall;
 import com.huawei.apm.core.agent.definition.EnhanceDefinition;
@@ -16,6 +17,7 @@ import com.huawei.apm.core.agent.enhancer.MemberFieldsHandler;
 import com.huawei.apm.core.agent.enhancer.StaticMethodEnhancer;
 import com.huawei.apm.core.plugin.PluginServiceManager;
 import com.huawei.apm.core.lubanops.bootstrap.Listener;
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
@@ -30,6 +32,8 @@ import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
 
 import static net.bytebuddy.matcher.ElementMatchers.named;
 
@@ -37,17 +41,26 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
  * 多次增强Transformer
  */
 public class DelegateTransformer implements AgentBuilder.Transformer {
+    private static final Logger LOGGER = LogFactory.getLogger();
+
     private static final String ENHANCED_FIELD_NAME = "_$lopsAttribute_enhanced";
 
     @Override
     public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription typeDescription,
             ClassLoader classLoader, JavaModule module) {
         if (classLoader == null) {
+            // 注入失败时内联的advice会抛出NoClassDefFoundError，被忽略后将跳过原方法，因此不增强启动类
+            if (!ByteBuddyAgentBuilder.isBootstrapInjected()) {
+                LOGGER.warning(String.format(Locale.ROOT,
+                        "Skip enhancing bootstrap class [%s], bootstrap classes are not injected. ",
+                        typeDescription.getActualName()));
+                return builder;
+            }
             return new BootstrapTransformer().transform(builder, typeDescription, null, module);
         }
         final EnhanceDefinitionLoader loader = EnhanceDefinitionLoader.getInstance();
         final Listener listener = loader.findNameListener(typeDescription);
-        final List<EnhanceDefinition> definitions = loader.findDefinitions(typeDescription);
+        final List<EnhanceDefinition> definitions = loader.findDefinitions(typeDescription, classLoader);
         if (listener == null && definitions.isEmpty()) {
             return builder;
         }
@@ -68,14 +81,15 @@ public class DelegateTransformer implements AgentBuilder.Transformer {
         boolean flag = false;
         for (MethodDescription.InDefinedShape method : typeDescription.getDeclaredMethods()) {
             final MultiInterMethodHolder methodHolder = new MultiInterMethodHolder(method);
-            if (listener != null && methodHolder.setOriginInterceptor(listener)) {
-                newBuilder = addListenerFields(newBuilder, listener.getFields());
+            if (listener != null) {
+                methodHolder.setOriginInterceptor(listener);
             }
             methodHolder.addInterceptors(definitions);
             newBuilder = methodHolder.build(newBuilder, classLoader);
             flag |= methodHolder.hasOriginInterceptor();
         }
         if (flag) {
+            newBuilder = addListenerFields(newBuilder, listener.getFields());
             newBuilder = addEnhancedField(newBuilder);
         }
         return newBuilder;
@@ -100,7 +114,7 @@ public class DelegateTransformer implements AgentBuilder.Transformer {
         }
         return newBuilder.implement(AttributeAccess.class)
                 .method(named("getLopsFileds"))
-                .intercept(MethodDelegation.withDefaultConfiguration().to(new MemberFieldsHandler(fields)));
+                .intercept(new MemberFieldsHandler(fields));
     }
 
     private static class MultiInterMethodHolder extends InterceptorCollector {
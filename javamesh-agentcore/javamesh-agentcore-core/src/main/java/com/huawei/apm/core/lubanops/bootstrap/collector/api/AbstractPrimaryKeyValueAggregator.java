@@ -1,17 +1,26 @@
 package com.huawei.apm.core.lubanops.bootstrap.collector.api;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.huawei.apm.core.lubanops.bootstrap.exception.ApmRuntimeException;
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 import com.huawei.apm.core.lubanops.bootstrap.plugin.common.DefaultSectionStats;
+import com.huawei.apm.core.lubanops.bootstrap.plugin.common.LatencyHistogram;
 
 /**
  * 抽象的聚合器类，包含了数据收割的流程，以及内存键值对的收割流程 <br>
+ * 主键个数有上限：超过上限的主键计入默认主键(其他)，同时由{@link HeavyHitterSketch}统计这些主键的访问次数；
+ * 每次收割时把访问次数超过最冷主键的候选主键换入：冷主键先标记为换出，此后的数据记入默认主键，
+ * 下次收割输出它的最后一行后才移除并换入候选主键，因此各周期的总量是精确的，且每次收割最多输出上限加一行 <br>
  * @author
  * @since 2020年3月9日
  */
@@ -25,8 +34,52 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
 
     private AtomicReference<V> defaultValueRef = new AtomicReference<V>();
 
+    /**
+     * 候选主键统计的最大容量
+     */
+    private static final int MAX_CANDIDATE_COUNT = 1024;
+
+    private static final int MIN_CANDIDATE_COUNT = 16;
+
+    private static final Comparator<HeavyHitterSketch.Hit<?>> ASCENDING = new Comparator<HeavyHitterSketch.Hit<?>>() {
+        @Override
+        public int compare(HeavyHitterSketch.Hit<?> o1, HeavyHitterSketch.Hit<?> o2) {
+            return o1.getCount() < o2.getCount() ? -1 : (o1.getCount() == o2.getCount() ? 0 : 1);
+        }
+    };
+
+    /**
+     * 已占用的主键个数，不含默认主键
+     */
+    private final AtomicInteger admittedCount = new AtomicInteger();
+
+    /**
+     * 各主键在本周期内的访问次数，用于挑选换出的冷主键；已占用但不在其中的主键(默认主键除外)正在换出
+     */
+    private final ConcurrentMap<K, AtomicLong> hitCounts = new ConcurrentHashMap<K, AtomicLong>();
+
+    /**
+     * 超过上限的主键的访问统计，为null表示还未超过上限
+     */
+    private volatile HeavyHitterSketch<K> candidates;
+
+    /**
+     * 候选主键是否已完整统计过一个周期；开始统计的那个周期里已有主键的次数不完整，不参与换入换出
+     */
+    private boolean candidatesWarm;
+
+    /**
+     * 上次收割时标记为换出的主键，本次收割输出最后一行后移除
+     */
+    private List<K> evicting = Collections.emptyList();
+
     private int[] ranges = getDefaultRanges();
 
+    /**
+     * 耗时直方图精度，见{@link LatencyHistogram}
+     */
+    private int histogramPrecision = LatencyHistogram.DEFAULT_PRECISION;
+
     public AbstractPrimaryKeyValueAggregator() {
         this(16);
     }
@@ -40,26 +93,86 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
      */
     @Override
     public List<MonitorDataRow> harvest() {
-        if (valueStats.isEmpty()) {
-            return null;
+        List<MonitorDataRow> rowList = null;
+        if (!valueStats.isEmpty()) {
+            rowList = new ArrayList<MonitorDataRow>();
+            for (Map.Entry<K, V> entry : valueStats.entrySet()) {
+                harvestRow(entry.getKey(), entry.getValue(), rowList);
+            }
         }
-        List<MonitorDataRow> rowList = new ArrayList<MonitorDataRow>();
-        for (Map.Entry<K, V> entry : valueStats.entrySet()) {
-            K pk = entry.getKey();
-            V stats = entry.getValue();
-            MonitorDataRow row = null;
-            if (stats instanceof DefaultSectionStats) {
-                row = ((DefaultSectionStats) stats).harvest(ranges);
-            } else {
-                row = stats.harvest();
+        for (K key : evicting) {
+            if (valueStats.remove(key) != null) {
+                admittedCount.decrementAndGet();
             }
+        }
+        evicting = rebalance();
+        return rowList;
+    }
 
-            if (row != null) {
-                setPrimaryKey(row, pk);
-                rowList.add(row);
+    private void harvestRow(K pk, V stats, List<MonitorDataRow> rowList) {
+        MonitorDataRow row = null;
+        if (stats instanceof DefaultSectionStats) {
+            row = ((DefaultSectionStats) stats).harvest(ranges);
+        } else {
+            row = stats.harvest();
+        }
+
+        if (row != null) {
+            setPrimaryKey(row, pk);
+            rowList.add(row);
+        }
+    }
+
+    /**
+     * 候选主键先占用空闲的位置；没有空闲位置时，访问次数更高的候选主键把最冷的主键标记为换出，
+     * 等下次收割空出位置后再换入。主键个数超过上限时(上限被调小)也在这里标记换出 <br>
+     * 收割是单线程的，换入换出只发生在收割中；标记换出的主键在下次收割前仍占着位置，
+     * 所以输出的行数不会超过上限加默认主键
+     *
+     * @return 本次标记为换出的主键
+     */
+    private List<K> rebalance() {
+        HeavyHitterSketch<K> sketch = candidates;
+        if (sketch == null) {
+            return Collections.emptyList();
+        }
+        List<HeavyHitterSketch.Hit<K>> hot = sketch.drain();
+        if (!candidatesWarm) {
+            candidatesWarm = true;
+            hot = Collections.emptyList();
+        }
+        List<HeavyHitterSketch.Hit<K>> cold = new ArrayList<HeavyHitterSketch.Hit<K>>(hitCounts.size());
+        for (Map.Entry<K, AtomicLong> entry : hitCounts.entrySet()) {
+            cold.add(new HeavyHitterSketch.Hit<K>(entry.getKey(), entry.getValue().getAndSet(0)));
+        }
+        Collections.sort(cold, ASCENDING);
+
+        List<K> marked = new ArrayList<K>();
+        int maxRowCount = getMaxRowCount();
+        int coldIndex = 0;
+        while (admittedCount.get() - marked.size() > maxRowCount && coldIndex < cold.size()) {
+            markEvicting(cold.get(coldIndex++).getKey(), marked);
+        }
+        for (HeavyHitterSketch.Hit<K> candidate : hot) {
+            if (valueStats.containsKey(candidate.getKey())) {
+                continue;
+            }
+            if (admittedCount.get() < maxRowCount) {
+                admit(candidate.getKey());
+                continue;
             }
+            if (coldIndex >= cold.size() || candidate.getCount() <= cold.get(coldIndex).getCount()) {
+                break;
+            }
+            markEvicting(cold.get(coldIndex++).getKey(), marked);
+        }
+        return marked;
+    }
+
+    private void markEvicting(K key, List<K> marked) {
+        if (hitCounts.remove(key) != null) {
+            marked.add(key);
         }
-        return rowList;
     }
 
     @Override
@@ -110,11 +223,29 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
     /**
      * 出世化一个用户数据类型的对象的方法
      * @return 用户类型对象
+     * @deprecated 覆写{@link #newValue()}直接创建对象，此方法仅供未覆写newValue的聚合器通过反射创建
      */
-    protected abstract Class<V> getValueType();
+    @Deprecated
+    protected Class<V> getValueType() {
+        return null;
+    }
 
     /**
-     * 当主键个数超过规定最大值的时候，由于内存有限，那么就都映射到一个默认的主键
+     * 创建一个用户数据类型的对象，子类应覆写此方法直接new对象；默认通过{@link #getValueType()}反射创建
+     * @return 用户类型对象
+     */
+    protected V newValue() {
+        try {
+            return getValueType().newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException("must have a default construct method!", e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("IllegalAccessException!", e);
+        }
+    }
+
+    /**
+     * 当主键个数超过规定最大值的时候，由于内存有限，未被统计的主键都映射到一个默认的主键
      */
     protected abstract K defaultKey();
 
@@ -127,39 +258,80 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
     protected V getValue(K key) {
         V v = valueStats.get(key); // 如果包含了就返回
         if (v != null) {
-            return v;
+            if (candidates == null) {
+                return v;
+            }
+            AtomicLong hits = hitCounts.get(key);
+            if (hits != null) {
+                hits.incrementAndGet();
+                return v;
+            }
+            if (key.equals(defaultKey())) {
+                return v;
+            }
+            // 正在换出的主键，与未占用的主键一样记入默认主键
+        } else {
+            v = admit(key);
+            if (v != null) {
+                return v;
+            }
         }
 
         /**
-         * 如果key值个数达到了上限
+         * 如果key值个数达到了上限，记入默认主键，并统计该主键的访问次数，供收割时换入
          */
-        if (isFull) {
-            v = defaultValueRef.get();
-            if (null == v) {
-                defaultValueRef.compareAndSet(null, createValueInstance());
-                v = defaultValueRef.get();
-                valueStats.putIfAbsent(defaultKey(), v);
-            }
-            return v;
+        HeavyHitterSketch<K> sketch = candidates;
+        if (sketch == null) {
+            sketch = startCandidates();
         }
+        sketch.offer(key);
+        return defaultValue();
+    }
 
-        /**
-         * 此处因为并发的竞争，可能照成总的key的个数超过阈值，以后有办法就要改掉
-         */
-        v = createValueInstance();
+    /**
+     * 主键个数未达上限时为主键创建对象
+     *
+     * @param key 主键
+     * @return 主键对应的对象，达到上限时返回null
+     */
+    private V admit(K key) {
+        if (admittedCount.incrementAndGet() > getMaxRowCount()) {
+            admittedCount.decrementAndGet();
+            return null;
+        }
+        V v = createValueInstance();
+        // 先登记访问次数，保证已占用的主键不会被getValue当成正在换出
+        hitCounts.putIfAbsent(key, new AtomicLong());
         V oldvalue = valueStats.putIfAbsent(key, v);
-
-        if (valueStats.size() > this.getMaxRowCount()) {
-            this.setFull(true);
-            this.setEnable(false);
+        if (oldvalue != null) {
+            admittedCount.decrementAndGet();
+            return oldvalue;
         }
+        return v;
+    }
 
-        if (oldvalue != null) {
-            v = oldvalue;
+    private V defaultValue() {
+        V v = defaultValueRef.get();
+        if (null == v) {
+            defaultValueRef.compareAndSet(null, createValueInstance());
+            v = defaultValueRef.get();
+            valueStats.putIfAbsent(defaultKey(), v);
         }
         return v;
     }
 
+    private synchronized HeavyHitterSketch<K> startCandidates() {
+        if (candidates == null) {
+            setFull(true);
+            int capacity = Math.max(MIN_CANDIDATE_COUNT, Math.min(getMaxRowCount(), MAX_CANDIDATE_COUNT));
+            candidates = new HeavyHitterSketch<K>(capacity);
+            LogFactory.getLogger().info(
+                    "row count reaches the limitation:" + getMaxRowCount() + ", aggr:" + getName()
+                            + ", cold keys are aggregated into " + defaultKey());
+        }
+        return candidates;
+    }
+
     /**
      * 获取内存里面的值 <br>
      * @param key
@@ -172,18 +344,12 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
     }
 
     private V createValueInstance() {
-        try {
-            V v = getValueType().newInstance();
-            if (v instanceof DefaultSectionStats) {
-                ((DefaultSectionStats) v).initRanges(ranges);
-            }
-            return v;
-        } catch (InstantiationException e) {
-            throw new RuntimeException("must have a default construct method!", e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("IllegalAccessException!", e);
+        V v = newValue();
+        if (v instanceof DefaultSectionStats) {
+            ((DefaultSectionStats) v).initRanges(ranges);
+            ((DefaultSectionStats) v).initHistogramPrecision(histogramPrecision);
         }
-
+        return v;
     }
 
     /**
@@ -193,15 +359,19 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
      * @since 2020年3月13日
      */
     protected void removeValue(K key) {
-        valueStats.remove(key);
+        hitCounts.remove(key);
+        if (valueStats.remove(key) != null && !key.equals(defaultKey())) {
+            admittedCount.decrementAndGet();
+        }
     }
 
     /**
-     * 如果超过了行的最大值，知否还采集
+     * 如果超过了行的最大值，知否还采集 <br>
+     * 超过上限的主键记入默认主键，其余主键照常采集，因此满了之后仍然采集
      */
     @Override
     public boolean isCollectAfterFull() {
-        return false;
+        return true;
     }
 
     public int size() {
@@ -216,7 +386,13 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
     public void clear() {
         this.setFull(false);
         this.setFullOutputted(false);
+        candidates = null;
+        candidatesWarm = false;
+        evicting = Collections.emptyList();
+        hitCounts.clear();
         valueStats.clear();
+        admittedCount.set(0);
+        defaultValueRef.set(null);
     }
 
     @Override
@@ -232,6 +408,14 @@ public abstract class AbstractPrimaryKeyValueAggregator<K, V extends StatsBase>
         this.ranges = ranges;
     }
 
+    public int getHistogramPrecision() {
+        return histogramPrecision;
+    }
+
+    public void setHistogramPrecision(int histogramPrecision) {
+        this.histogramPrecision = histogramPrecision;
+    }
+
     public static int[] getDefaultRanges() {
         return DEFAULT_RANGES.clone();
     }
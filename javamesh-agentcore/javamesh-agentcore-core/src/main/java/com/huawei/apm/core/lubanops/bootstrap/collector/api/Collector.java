@@ -126,10 +126,15 @@ public abstract class Collector {
                 sb.append(".");
                 sb.append(agg.getName());
                 metricSetItem.setMsg(sb.toString());
-
+            }
+            if (agg.isFull() && !agg.isCollectAfterFull()) {
                 dumpFull(agg, metricSetItem); // 将日志打印到本地文件，并且放入数据的attachment
-
             } else {
+                if (agg.isFull() && !agg.isFullOutputted()) {
+                    // 超过上限的主键已记入默认主键，照常收割，只告警一次
+                    agg.setFullOutputted(true);
+                    LogFactory.getLogger().warning(metricSetItem.getMsg());
+                }
                 rows = agg.harvest();
                 if (rows != null && !rows.isEmpty()) {
                     metricSetItem.setDataRows(rows);
@@ -0,0 +1,219 @@
+package com.huawei.apm.core.lubanops.bootstrap.collector.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 固定容量的高频主键统计，采用Space-Saving算法 <br>
+ * 容量满时新主键替换计数最小的主键，并继承其计数作为误差，因此任意主键的真实次数落在[count - error, count]之间。
+ * 计数器按最小堆组织，每次记录的代价为O(log capacity)，内存只与容量有关 <br>
+ * 主键按hash分到多个分片，每个分片是独立加锁的Space-Saving统计，同一主键总落在同一分片，
+ * 因此误差界限在分片内成立，收割时直接合并各分片结果；记录时只竞争主键所在分片的锁
+ *
+ * @param <K> 主键类型
+ */
+final class HeavyHitterSketch<K> {
+    private static final Comparator<Hit<?>> DESCENDING = new Comparator<Hit<?>>() {
+        @Override
+        public int compare(Hit<?> o1, Hit<?> o2) {
+            return o1.count < o2.count ? 1 : (o1.count == o2.count ? 0 : -1);
+        }
+    };
+
+    /**
+     * 最大分片数
+     */
+    private static final int MAX_SHARD_COUNT = 16;
+
+    /**
+     * 每个分片的最小容量
+     */
+    private static final int MIN_SHARD_CAPACITY = 8;
+
+    private final Shard<K>[] shards;
+
+    private final int mask;
+
+    HeavyHitterSketch(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings("unchecked")
+    HeavyHitterSketch(int capacity, int concurrency) {
+        int shardCount = 1;
+        while (shardCount < concurrency && shardCount < MAX_SHARD_COUNT
+                && capacity / (shardCount << 1) >= MIN_SHARD_CAPACITY) {
+            shardCount <<= 1;
+        }
+        this.shards = new Shard[shardCount];
+        this.mask = shardCount - 1;
+        int shardCapacity = (capacity + shardCount - 1) / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<K>(shardCapacity);
+        }
+    }
+
+    /**
+     * 记录一次主键访问
+     *
+     * @param key 主键
+     */
+    void offer(K key) {
+        int h = key.hashCode();
+        shards[(h ^ (h >>> 16)) & mask].offer(key);
+    }
+
+    /**
+     * 取出当前所有主键的保底次数(count - error)，按次数从大到小排列，并清空统计。
+     * 各分片在自身的锁内取出并清空，并发的记录要么计入本次结果，要么计入清空后的下一周期，不会丢失
+     *
+     * @return 主键及其保底次数
+     */
+    List<Hit<K>> drain() {
+        List<Hit<K>> hits = new ArrayList<Hit<K>>();
+        for (Shard<K> shard : shards) {
+            shard.drainTo(hits);
+        }
+        Collections.sort(hits, DESCENDING);
+        return hits;
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 单个分片，即一个加锁的Space-Saving统计
+     *
+     * @param <K> 主键类型
+     */
+    private static final class Shard<K> {
+        private final Map<K, Counter<K>> counters;
+
+        private final Counter<K>[] heap;
+
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private Shard(int capacity) {
+            this.counters = new HashMap<K, Counter<K>>(capacity * 2);
+            this.heap = new Counter[capacity];
+        }
+
+        private synchronized void offer(K key) {
+            Counter<K> counter = counters.get(key);
+            if (counter != null) {
+                counter.count++;
+                siftDown(counter.index);
+                return;
+            }
+            if (size < heap.length) {
+                counter = new Counter<K>(key);
+                counter.count = 1;
+                counter.index = size;
+                heap[size++] = counter;
+                counters.put(key, counter);
+                siftUp(counter.index);
+                return;
+            }
+            // 替换计数最小的主键，其计数作为新主键的误差
+            counter = heap[0];
+            counters.remove(counter.key);
+            counter.key = key;
+            counter.error = counter.count;
+            counter.count++;
+            counters.put(key, counter);
+            siftDown(0);
+        }
+
+        private synchronized void drainTo(List<Hit<K>> hits) {
+            for (int i = 0; i < size; i++) {
+                Counter<K> counter = heap[i];
+                hits.add(new Hit<K>(counter.key, counter.count - counter.error));
+                heap[i] = null;
+            }
+            size = 0;
+            counters.clear();
+        }
+
+        private void siftUp(int index) {
+            int child = index;
+            Counter<K> counter = heap[child];
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (heap[parent].count <= counter.count) {
+                    break;
+                }
+                place(heap[parent], child);
+                child = parent;
+            }
+            place(counter, child);
+        }
+
+        private void siftDown(int index) {
+            int parent = index;
+            Counter<K> counter = heap[parent];
+            int half = size >>> 1;
+            while (parent < half) {
+                int child = (parent << 1) + 1;
+                int right = child + 1;
+                if (right < size && heap[right].count < heap[child].count) {
+                    child = right;
+                }
+                if (counter.count <= heap[child].count) {
+                    break;
+                }
+                place(heap[child], parent);
+                parent = child;
+            }
+            place(counter, parent);
+        }
+
+        private void place(Counter<K> counter, int index) {
+            heap[index] = counter;
+            counter.index = index;
+        }
+    }
+
+    private static final class Counter<K> {
+        private K key;
+
+        private long count;
+
+        private long error;
+
+        private int index;
+
+        private Counter(K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 主键及其次数
+     *
+     * @param <K> 主键类型
+     */
+    static final class Hit<K> {
+        private final K key;
+
+        private final long count;
+
+        Hit(K key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -57,7 +57,7 @@ public abstract class MultiPrimaryKeyAggregator<T extends StatsBase>
                     "primary key field count must equal with what you defined:" + c + ",actual:" + pks.length);
         }
         PrimaryKey pk = new PrimaryKey(pks);
-        super.removeValue(pk);
+        removeValue(pk);
     }
 
     @Override
@@ -28,6 +28,12 @@ public class AgentConfigManager {
 
     public final static String EVENT_THREAD_COUNT = "event.thread.count";
 
+    public final static String EVENT_QUEUE_SIZE = "event.queue.size";
+
+    public final static String EVENT_BATCH_COUNT = "event.batch.count";
+
+    public final static String EVENT_BATCH_BYTES = "event.batch.bytes";
+
     public final static String MASTER_ACCESS_KEY = "access.key";
 
     public final static String MASTER_SECRET_KEY = "secret.key";
@@ -42,6 +48,28 @@ public class AgentConfigManager {
 
     public final static String NETTY_SERVER_PORT = "nettyServerPort";
 
+    public final static String NETTY_QUEUE_CAPACITY = "nettyQueueCapacity";
+
+    public final static String NETTY_BATCH_COUNT = "nettyBatchCount";
+
+    public final static String NETTY_BATCH_BYTES = "nettyBatchBytes";
+
+    public final static String NETTY_FLUSH_INTERVAL = "nettyFlushInterval";
+
+    public final static String NETTY_SPILL_DIR = "nettySpillDir";
+
+    public final static String NETTY_SPILL_MAX_BYTES = "nettySpillMaxBytes";
+
+    private final static int DEFAULT_NETTY_QUEUE_CAPACITY = 8192;
+
+    private final static int DEFAULT_NETTY_BATCH_COUNT = 512;
+
+    private final static int DEFAULT_NETTY_BATCH_BYTES = 1024 * 1024;
+
+    private final static int DEFAULT_NETTY_FLUSH_INTERVAL = 10000;
+
+    private final static int DEFAULT_NETTY_SPILL_MAX_BYTES = 64 * 1024 * 1024;
+
     /**
      * master地址
      */
@@ -53,6 +81,22 @@ public class AgentConfigManager {
 
     private static int eventThreadCount = 3;
 
+    /**
+     * 待上报event队列容量，队列已满时丢弃
+     */
+    private static int eventQueueSize = 4096;
+
+    /**
+     * 单个上报请求的event条数上限，为1时每个event单独上报
+     * <p>大于1时使用批量上报消息，需要接入服务端支持，默认关闭
+     */
+    private static int eventBatchCount = 1;
+
+    /**
+     * 单个上报请求的event估算字节数上限
+     */
+    private static int eventBatchBytes = 512 * 1024;
+
     /**
      * proxy地址
      */
@@ -72,6 +116,35 @@ public class AgentConfigManager {
      */
     private static String nettyServerPort;
 
+    /**
+     * netty发送队列容量，队列已满时丢弃新消息
+     */
+    private static int nettyQueueCapacity = DEFAULT_NETTY_QUEUE_CAPACITY;
+
+    /**
+     * netty单个批次的消息条数上限，队列积压达到该值时立即发送
+     */
+    private static int nettyBatchCount = DEFAULT_NETTY_BATCH_COUNT;
+
+    /**
+     * netty单个批次压缩前的字节数上限
+     */
+    private static int nettyBatchBytes = DEFAULT_NETTY_BATCH_BYTES;
+
+    /**
+     * netty定时发送间隔，单位毫秒
+     */
+    private static int nettyFlushInterval = DEFAULT_NETTY_FLUSH_INTERVAL;
+
+    /**
+     * netty溢写目录，为空时使用临时目录
+     */
+    private static String nettySpillDir;
+
+    /**
+     * netty溢写文件总大小上限
+     */
+    private static int nettySpillMaxBytes = DEFAULT_NETTY_SPILL_MAX_BYTES;
 
     /**
      * 忽略Exception监控项的异常的消息，只打印堆栈信息，一旦agent配置了这个值，那么监控项的配置就失效
@@ -86,9 +159,21 @@ public class AgentConfigManager {
         masterAddress = properties.getProperty(MASTER_ADDRESS);
         nettyServerIp = properties.getProperty(NETTY_SERVER_IP, LubanApmConstants.NETTY_SERVER_IP_COMMON);
         nettyServerPort = properties.getProperty(NETTY_SERVER_PORT, LubanApmConstants.NETTY_SERVER_PORT_COMMON);
+        nettyQueueCapacity = StringUtils.string2Int(properties.getProperty(NETTY_QUEUE_CAPACITY),
+                DEFAULT_NETTY_QUEUE_CAPACITY);
+        nettyBatchCount = StringUtils.string2Int(properties.getProperty(NETTY_BATCH_COUNT), DEFAULT_NETTY_BATCH_COUNT);
+        nettyBatchBytes = StringUtils.string2Int(properties.getProperty(NETTY_BATCH_BYTES), DEFAULT_NETTY_BATCH_BYTES);
+        nettyFlushInterval = StringUtils.string2Int(properties.getProperty(NETTY_FLUSH_INTERVAL),
+                DEFAULT_NETTY_FLUSH_INTERVAL);
+        nettySpillDir = properties.getProperty(NETTY_SPILL_DIR);
+        nettySpillMaxBytes = StringUtils.string2Int(properties.getProperty(NETTY_SPILL_MAX_BYTES),
+                DEFAULT_NETTY_SPILL_MAX_BYTES);
         setAccessAddress(properties.getProperty(ACCESS_ADDRESS));
         setLogLevel(properties.getProperty(LOG_LEVEL));
         setEventThreadCount(StringUtils.string2Int(properties.getProperty(EVENT_THREAD_COUNT), 3));
+        eventQueueSize = StringUtils.string2Int(properties.getProperty(EVENT_QUEUE_SIZE), eventQueueSize);
+        eventBatchCount = StringUtils.string2Int(properties.getProperty(EVENT_BATCH_COUNT), eventBatchCount);
+        eventBatchBytes = StringUtils.string2Int(properties.getProperty(EVENT_BATCH_BYTES), eventBatchBytes);
         String filterLogMessage = properties.getProperty(FILTER_LOG_MESSAGE);
         if ("true".equals(filterLogMessage)) {
             AgentConfigManager.filterLogMessage = true;
@@ -180,6 +265,18 @@ public class AgentConfigManager {
         AgentConfigManager.eventThreadCount = eventThreadCount;
     }
 
+    public static int getEventQueueSize() {
+        return eventQueueSize;
+    }
+
+    public static int getEventBatchCount() {
+        return eventBatchCount;
+    }
+
+    public static int getEventBatchBytes() {
+        return eventBatchBytes;
+    }
+
     public static Level getLevel(String levelStr) {
         if (levelStr != null) {
             if ("error".equals(levelStr.toLowerCase())) {
@@ -206,4 +303,28 @@ public class AgentConfigManager {
     public static String getNettyServerPort() {
         return nettyServerPort;
     }
+
+    public static int getNettyQueueCapacity() {
+        return nettyQueueCapacity;
+    }
+
+    public static int getNettyBatchCount() {
+        return nettyBatchCount;
+    }
+
+    public static int getNettyBatchBytes() {
+        return nettyBatchBytes;
+    }
+
+    public static int getNettyFlushInterval() {
+        return nettyFlushInterval;
+    }
+
+    public static String getNettySpillDir() {
+        return nettySpillDir;
+    }
+
+    public static int getNettySpillMaxBytes() {
+        return nettySpillMaxBytes;
+    }
 }
@@ -31,8 +31,8 @@ public class DetailAggregator extends SinglePrimaryKeyAggregator<APMStats> {
     public static final String AGGREAGET_METRIC_SLOWTIME = "slowTime";
 
     @Override
-    protected Class<APMStats> getValueType() {
-        return APMStats.class;
+    protected APMStats newValue() {
+        return new APMStats();
     }
 
     public void onStart(String type, int queueSize) {
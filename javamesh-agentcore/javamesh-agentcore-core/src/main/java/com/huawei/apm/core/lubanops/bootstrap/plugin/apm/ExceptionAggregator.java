@@ -20,8 +20,8 @@ public class ExceptionAggregator extends MultiPrimaryKeyAggregator<ExceptionValu
     public static final String AGGREGATE_METRIC_STACKTRACE = "stackTrace";
 
     @Override
-    protected Class<ExceptionValue> getValueType() {
-        return ExceptionValue.class;
+    protected ExceptionValue newValue() {
+        return new ExceptionValue();
     }
 
     public void onThrowable(String type, Throwable t) {
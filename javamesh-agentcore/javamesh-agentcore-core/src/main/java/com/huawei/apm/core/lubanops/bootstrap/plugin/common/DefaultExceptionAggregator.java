@@ -27,8 +27,8 @@ public class DefaultExceptionAggregator extends MultiPrimaryKeyAggregator<Defaul
     }
 
     @Override
-    protected Class<DefaultExceptionStats> getValueType() {
-        return DefaultExceptionStats.class;
+    protected DefaultExceptionStats newValue() {
+        return new DefaultExceptionStats();
     }
 
     @Override
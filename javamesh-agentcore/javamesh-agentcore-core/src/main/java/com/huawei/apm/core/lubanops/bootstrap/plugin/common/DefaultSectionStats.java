@@ -1,12 +1,10 @@
 package com.huawei.apm.core.lubanops.bootstrap.plugin.common;
 
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.huawei.apm.core.lubanops.bootstrap.api.APIService;
 import com.huawei.apm.core.lubanops.bootstrap.collector.api.MonitorDataRow;
-import com.huawei.apm.core.lubanops.bootstrap.utils.HarvestUtil;
 import com.huawei.apm.core.lubanops.bootstrap.utils.StringUtils;
 
 /**
@@ -16,67 +14,63 @@ import com.huawei.apm.core.lubanops.bootstrap.utils.StringUtils;
  * {@code onFinally} 方法； 获取数据时调用 {@code getStatus} 方法； 收割数据时调用 {@code harvest}
  * 方法
  * </p>
+ * <p>
+ * 耗时记录在{@link LatencyHistogram}中，收割时输出分位数和编码后的直方图；range1~range6由直方图按区间边界换算，
+ * 是近似值：区间边界落在桶内部时，与边界同桶的耗时都计入上一个区间，偏差范围为边界的2^-precision（默认约6%）
+ * </p>
  */
 public class DefaultSectionStats extends DefaultStats {
     private final static String STATS_PERFORMANCE_RANGES = "ranges";
 
     private final static int STATS_PERFORMANCE_RANGES_LEANGTH = 5;
 
-    // 存储总数，不清空
-    protected final AtomicLong range1 = new AtomicLong(0L);
-
-    protected final AtomicLong range2 = new AtomicLong(0L);
+    private final static String HISTOGRAM = "histogram";
 
-    protected final AtomicLong range3 = new AtomicLong(0L);
+    private final static String[] RANGE_KEYS = {"range1", "range2", "range3", "range4", "range5", "range6"};
 
-    protected final AtomicLong range4 = new AtomicLong(0L);
+    private final static String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
 
-    protected final AtomicLong range5 = new AtomicLong(0L);
+    private final static double[] PERCENTILES = {50D, 90D, 99D, 99.9D};
 
-    protected final AtomicLong range6 = new AtomicLong(0L);
+    private final static double MICRO_TO_MILLI = 1000D;
 
     protected final AtomicReference<int[]> rangesAtomic = new AtomicReference<int[]>(
             new int[] {10, 100, 500, 1000, 10000});
 
-    // 记录上一次读取的值，用于获取差值
-    private volatile long range1Old;
-
-    private volatile long range2Old;
-
-    private volatile long range3Old;
-
-    private volatile long range4Old;
-
-    private volatile long range5Old;
-
-    private volatile long range6Old;
+    protected volatile LatencyHistogram histogram = new LatencyHistogram();
 
     protected static void merge(MonitorDataRow dataRowFrom, MonitorDataRow dataRowDes) {
         DefaultStats.merge(dataRowFrom, dataRowDes);
-        dataRowDes.put("range1", dataRowDes.get("range1") == null
-                ? (Long) dataRowFrom.get("range1")
-                : (Long) dataRowDes.get("range1") + (Long) dataRowFrom.get("range1"));
-        dataRowDes.put("range2", dataRowDes.get("range2") == null
-                ? (Long) dataRowFrom.get("range2")
-                : (Long) dataRowDes.get("range2") + (Long) dataRowFrom.get("range2"));
-        dataRowDes.put("range3", dataRowDes.get("range3") == null
-                ? (Long) dataRowFrom.get("range3")
-                : (Long) dataRowDes.get("range3") + (Long) dataRowFrom.get("range3"));
-        dataRowDes.put("range4", dataRowDes.get("range4") == null
-                ? (Long) dataRowFrom.get("range4")
-                : (Long) dataRowDes.get("range4") + (Long) dataRowFrom.get("range4"));
-        dataRowDes.put("range5", dataRowDes.get("range5") == null
-                ? (Long) dataRowFrom.get("range5")
-                : (Long) dataRowDes.get("range5") + (Long) dataRowFrom.get("range5"));
-        dataRowDes.put("range6", dataRowDes.get("range6") == null
-                ? (Long) dataRowFrom.get("range6")
-                : (Long) dataRowDes.get("range6") + (Long) dataRowFrom.get("range6"));
+        String histogramFrom = (String) dataRowFrom.get(HISTOGRAM);
+        if (histogramFrom == null) {
+            return;
+        }
+        LatencyHistogram.Snapshot snapshot = LatencyHistogram.Snapshot.decode(histogramFrom);
+        String histogramDes = (String) dataRowDes.get(HISTOGRAM);
+        if (histogramDes != null) {
+            snapshot = LatencyHistogram.Snapshot.decode(histogramDes).merge(snapshot);
+        }
+        String rangesStr = (String) dataRowDes.get(STATS_PERFORMANCE_RANGES);
+        if (rangesStr == null) {
+            rangesStr = (String) dataRowFrom.get(STATS_PERFORMANCE_RANGES);
+        }
+        int[] ranges = rangesStr == null ? null : APIService.getJsonApi().parseIntArray(rangesStr);
+        putHistogram(dataRowDes, snapshot, ranges);
     }
 
     public void initRanges(int[] newRanges) {
-        if (newRanges != null && newRanges.length == 5) {
+        if (newRanges != null && newRanges.length == STATS_PERFORMANCE_RANGES_LEANGTH) {
             rangesAtomic.set(newRanges);
-            reset();
+        }
+    }
+
+    /**
+     * 设置直方图精度，精度变化时丢弃已记录的耗时
+     * @param precision 精度
+     */
+    public void initHistogramPrecision(int precision) {
+        if (histogram.getPrecision() != precision) {
+            histogram = new LatencyHistogram(precision);
         }
     }
 
@@ -93,44 +87,23 @@ public class DefaultSectionStats extends DefaultStats {
     @Override
     public boolean onFinally(long timeInNanos) {
         boolean flag = super.onFinally(timeInNanos);
-        getRanges(timeInNanos);
+        histogram.recordNanos(timeInNanos);
         return flag;
     }
 
     public boolean onFinallyNoRunningCount(long timeInNanos) {
         boolean flag = super.onFinallyNoRunningCount(timeInNanos);
-        getRanges(timeInNanos);
+        histogram.recordNanos(timeInNanos);
         return flag;
     }
 
-    private void getRanges(long timeInNanos) {
-        long timeInMills = timeInNanos / DefaultStats.NANO_TO_MILLI;
-        int[] ranges = rangesAtomic.get();
-        if (timeInMills < ranges[0]) {
-            range1.incrementAndGet();
-        } else if (timeInMills < ranges[1]) {
-            range2.incrementAndGet();
-        } else if (timeInMills < ranges[2]) {
-            range3.incrementAndGet();
-        } else if (timeInMills < ranges[3]) {
-            range4.incrementAndGet();
-        } else if (timeInMills < ranges[4]) {
-            range5.incrementAndGet();
-        } else {
-            range6.incrementAndGet();
-        }
-    }
-
+    /**
+     * 获取状态，区间和分位数为上次收割以来的数据
+     */
     @Override
     public MonitorDataRow getStatus() {
         MonitorDataRow row = super.getStatus();
-        row.put("range1", range1.get());
-        row.put("range2", range2.get());
-        row.put("range3", range3.get());
-        row.put("range4", range4.get());
-        row.put("range5", range5.get());
-        row.put("range6", range6.get());
-        row.put("ranges", APIService.getJsonApi().toJSONString(rangesAtomic.get()));
+        putHistogram(row, histogram.snapshot(), rangesAtomic.get());
         return row;
     }
 
@@ -141,35 +114,34 @@ public class DefaultSectionStats extends DefaultStats {
 
     public MonitorDataRow harvest(int[] newRanges) {
         int[] oldRanges = rangesAtomic.get();
-        if (newRanges != null && newRanges.length == 5) {
+        if (newRanges != null && newRanges.length == STATS_PERFORMANCE_RANGES_LEANGTH) {
             rangesAtomic.compareAndSet(oldRanges, newRanges);
         }
         MonitorDataRow row = super.harvest();
         if (row != null) {
-            range1Old = HarvestUtil.getMetricCount(range1, range1Old, "range1", row);
-            range2Old = HarvestUtil.getMetricCount(range2, range2Old, "range2", row);
-            range3Old = HarvestUtil.getMetricCount(range3, range3Old, "range3", row);
-            range4Old = HarvestUtil.getMetricCount(range4, range4Old, "range4", row);
-            range5Old = HarvestUtil.getMetricCount(range5, range5Old, "range5", row);
-            range6Old = HarvestUtil.getMetricCount(range6, range6Old, "range6", row);
-            row.put("ranges", APIService.getJsonApi().toJSONString(oldRanges));
+            putHistogram(row, histogram.harvest(), oldRanges);
         }
         return row;
     }
 
-    private void reset() {
-        range1.getAndSet(0L);
-        range2.getAndSet(0L);
-        range3.getAndSet(0L);
-        range4.getAndSet(0L);
-        range5.getAndSet(0L);
-        range6.getAndSet(0L);
-        range1Old = 0L;
-        range2Old = 0L;
-        range3Old = 0L;
-        range4Old = 0L;
-        range5Old = 0L;
-        range6Old = 0L;
+    /**
+     * 将直方图换算为区间计数和分位数写入行，分位数单位毫秒
+     */
+    private static void putHistogram(MonitorDataRow row, LatencyHistogram.Snapshot snapshot, int[] ranges) {
+        if (ranges != null && ranges.length == STATS_PERFORMANCE_RANGES_LEANGTH) {
+            long below = 0L;
+            for (int i = 0; i < ranges.length; i++) {
+                long current = snapshot.getCountBelow(ranges[i] * (long) MICRO_TO_MILLI);
+                row.put(RANGE_KEYS[i], current - below);
+                below = current;
+            }
+            row.put(RANGE_KEYS[ranges.length], snapshot.getTotalCount() - below);
+            row.put(STATS_PERFORMANCE_RANGES, APIService.getJsonApi().toJSONString(ranges));
+        }
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            row.put(PERCENTILE_KEYS[i], snapshot.getValueAtPercentile(PERCENTILES[i]) / MICRO_TO_MILLI);
+        }
+        row.put(HISTOGRAM, snapshot.encode());
     }
 
 }
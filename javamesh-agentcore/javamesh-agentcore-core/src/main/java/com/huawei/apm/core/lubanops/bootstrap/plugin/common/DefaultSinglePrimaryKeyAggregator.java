@@ -13,8 +13,8 @@ public abstract class DefaultSinglePrimaryKeyAggregator extends SinglePrimaryKey
     private static ThreadLocal<Long> timeLocal = new ThreadLocal<Long>();
 
     @Override
-    protected Class<DefaultSectionStats> getValueType() {
-        return DefaultSectionStats.class;
+    protected DefaultSectionStats newValue() {
+        return new DefaultSectionStats();
     }
 
     @Override
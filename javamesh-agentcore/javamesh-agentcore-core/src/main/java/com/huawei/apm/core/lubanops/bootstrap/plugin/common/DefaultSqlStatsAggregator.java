@@ -30,8 +30,8 @@ public class DefaultSqlStatsAggregator extends SinglePrimaryKeyAggregator<Defaul
     }
 
     @Override
-    protected Class<DefaultSqlSectionStats> getValueType() {
-        return DefaultSqlSectionStats.class;
+    protected DefaultSqlSectionStats newValue() {
+        return new DefaultSqlSectionStats();
     }
 
     @Override
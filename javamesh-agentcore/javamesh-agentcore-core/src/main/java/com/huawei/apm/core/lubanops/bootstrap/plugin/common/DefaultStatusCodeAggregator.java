@@ -29,8 +29,8 @@ public class DefaultStatusCodeAggregator extends SinglePrimaryKeyAggregator<Defa
     }
 
     @Override
-    protected Class<DefaultStatusCodeStats> getValueType() {
-        return DefaultStatusCodeStats.class;
+    protected DefaultStatusCodeStats newValue() {
+        return new DefaultStatusCodeStats();
     }
 
     public void onStatusCode(String url, int code) {
@@ -0,0 +1,340 @@
+package com.huawei.apm.core.lubanops.bootstrap.plugin.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 对数线性延迟直方图，单位微秒
+ * <p>
+ * 小于2^precision的值每个值一个桶，之后每个2的幂区间再等分为2^precision个桶，相对误差不超过2^-precision；
+ * 桶按2的幂区间分段，每段2^precision个计数器，某段第一次有值落入时才分配，
+ * 内存只与实际出现的耗时跨度有关，例如耗时都在1ms~10ms之间时只分配4段。
+ * 记录只做一次原子自增，不加锁；收割时逐桶置零取出增量，得到{@link Snapshot}，
+ * 快照只保存有值的分段范围，可以合并、计算分位数，并编码为紧凑的字符串上报
+ * </p>
+ */
+public class LatencyHistogram {
+    /**
+     * 默认精度，相对误差约6%
+     */
+    public final static int DEFAULT_PRECISION = 4;
+
+    public final static int MIN_PRECISION = 1;
+
+    public final static int MAX_PRECISION = 10;
+
+    private final static long NANO_TO_MICRO = 1000L;
+
+    /**
+     * 可区分的最大值为2^MAX_EXPONENT - 1微秒（约71分钟），超过的值计入最后一个桶
+     */
+    private final static int MAX_EXPONENT = 32;
+
+    private final int precision;
+
+    /**
+     * 分段的桶计数器，下标为桶下标右移precision位，未分配的段为null
+     */
+    private final AtomicReferenceArray<AtomicLongArray> segments;
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public LatencyHistogram(int precision) {
+        this.precision = checkPrecision(precision);
+        this.segments = new AtomicReferenceArray<AtomicLongArray>(bucketCount(this.precision) >>> this.precision);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void recordNanos(long timeInNanos) {
+        recordValue(timeInNanos / NANO_TO_MICRO);
+    }
+
+    /**
+     * 记录一个值
+     * @param valueInMicros 微秒
+     */
+    public void recordValue(long valueInMicros) {
+        int index = bucketIndex(precision, valueInMicros);
+        segment(index >>> precision).incrementAndGet(index & ((1 << precision) - 1));
+    }
+
+    private AtomicLongArray segment(int segmentIndex) {
+        AtomicLongArray segment = segments.get(segmentIndex);
+        if (segment == null) {
+            segments.compareAndSet(segmentIndex, null, new AtomicLongArray(1 << precision));
+            segment = segments.get(segmentIndex);
+        }
+        return segment;
+    }
+
+    /**
+     * 读取当前计数，不清空
+     * @return 快照
+     */
+    public Snapshot snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * 取出上次收割以来的计数并清空
+     * @return 快照
+     */
+    public Snapshot harvest() {
+        return collect(true);
+    }
+
+    private Snapshot collect(boolean clear) {
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < segments.length(); i++) {
+            if (segments.get(i) != null) {
+                first = first < 0 ? i : first;
+                last = i;
+            }
+        }
+        if (first < 0) {
+            return new Snapshot(precision, 0, new long[0]);
+        }
+        int subBucketCount = 1 << precision;
+        long[] values = new long[(last - first + 1) << precision];
+        for (int i = first; i <= last; i++) {
+            AtomicLongArray segment = segments.get(i);
+            if (segment == null) {
+                continue;
+            }
+            int base = (i - first) << precision;
+            for (int j = 0; j < subBucketCount; j++) {
+                if (segment.get(j) != 0) {
+                    values[base + j] = clear ? segment.getAndSet(j, 0L) : segment.get(j);
+                }
+            }
+        }
+        return new Snapshot(precision, first << precision, values);
+    }
+
+    public void reset() {
+        for (int i = 0; i < segments.length(); i++) {
+            AtomicLongArray segment = segments.get(i);
+            if (segment != null) {
+                for (int j = 0; j < segment.length(); j++) {
+                    segment.set(j, 0L);
+                }
+            }
+        }
+    }
+
+    private static int checkPrecision(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("histogram precision must between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + ":" + precision);
+        }
+        return precision;
+    }
+
+    static int bucketCount(int precision) {
+        int subBucketCount = 1 << precision;
+        return subBucketCount + (MAX_EXPONENT - precision) * subBucketCount;
+    }
+
+    static int bucketIndex(int precision, long value) {
+        int subBucketCount = 1 << precision;
+        if (value < subBucketCount) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return bucketCount(precision) - 1;
+        }
+        int shift = exponent - precision;
+        int mantissa = (int) (value >>> shift);
+        return subBucketCount + shift * subBucketCount + (mantissa - subBucketCount);
+    }
+
+    static long lowestEquivalentValue(int precision, int index) {
+        int subBucketCount = 1 << precision;
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) >>> precision;
+        long mantissa = ((index - subBucketCount) & (subBucketCount - 1)) + subBucketCount;
+        return mantissa << shift;
+    }
+
+    static long highestEquivalentValue(int precision, int index) {
+        int subBucketCount = 1 << precision;
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) >>> precision;
+        long mantissa = ((index - subBucketCount) & (subBucketCount - 1)) + subBucketCount;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照，不可并发修改；只保存从offset开始的连续桶
+     */
+    public static class Snapshot {
+        private final int precision;
+
+        /**
+         * counts[0]对应的桶下标
+         */
+        private final int offset;
+
+        private final long[] counts;
+
+        private final long totalCount;
+
+        Snapshot(int precision, int offset, long[] counts) {
+            this.precision = precision;
+            this.offset = offset;
+            this.counts = counts;
+            long total = 0L;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * 获取分位数
+         * @param percentile 百分位，例如99.9
+         * @return 分位数对应桶的上界，单位微秒，没有数据时返回0
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0L;
+            }
+            double ratio = Math.min(Math.max(percentile, 0D), 100D) / 100D;
+            long target = Math.max(1L, (long) Math.ceil(ratio * totalCount));
+            long accumulated = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= target) {
+                    return highestEquivalentValue(precision, offset + i);
+                }
+            }
+            return highestEquivalentValue(precision, offset + counts.length - 1);
+        }
+
+        /**
+         * 统计小于给定值的计数，与给定值同桶的计数视为不小于给定值，给定值不是桶下界时为近似值
+         * @param valueInMicros 微秒
+         * @return 计数
+         */
+        public long getCountBelow(long valueInMicros) {
+            int end = Math.min(bucketIndex(precision, valueInMicros) - offset, counts.length);
+            long count = 0L;
+            for (int i = 0; i < end; i++) {
+                count += counts[i];
+            }
+            return count;
+        }
+
+        /**
+         * 合并另一个相同精度的快照
+         * @param other 另一个快照
+         * @return 新的快照
+         */
+        public Snapshot merge(Snapshot other) {
+            if (other.precision != precision) {
+                throw new IllegalArgumentException("can not merge histograms with different precision");
+            }
+            if (other.counts.length == 0) {
+                return this;
+            }
+            if (counts.length == 0) {
+                return other;
+            }
+            int start = Math.min(offset, other.offset);
+            int end = Math.max(offset + counts.length, other.offset + other.counts.length);
+            long[] merged = new long[end - start];
+            System.arraycopy(counts, 0, merged, offset - start, counts.length);
+            for (int i = 0; i < other.counts.length; i++) {
+                merged[other.offset - start + i] += other.counts[i];
+            }
+            return new Snapshot(precision, start, merged);
+        }
+
+        /**
+         * 编码为紧凑字符串：精度，之后每个非零桶依次为与上一个非零桶的下标差和计数，均为变长整数，整体base64编码
+         * @return 编码结果
+         */
+        public String encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarLong(out, precision);
+            int last = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    writeVarLong(out, offset + i - last);
+                    writeVarLong(out, counts[i]);
+                    last = offset + i;
+                }
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        }
+
+        public static Snapshot decode(String encoded) {
+            byte[] bytes = Base64.getDecoder().decode(encoded);
+            int[] position = new int[1];
+            int precision = checkPrecision((int) readVarLong(bytes, position));
+            int bucketCount = bucketCount(precision);
+            int[] indexes = new int[bucketCount];
+            long[] values = new long[bucketCount];
+            int size = 0;
+            int index = -1;
+            while (position[0] < bytes.length) {
+                index += (int) readVarLong(bytes, position);
+                if (index < 0 || index >= bucketCount) {
+                    throw new IllegalArgumentException("histogram bucket index out of range:" + index);
+                }
+                indexes[size] = index;
+                values[size++] = readVarLong(bytes, position);
+            }
+            if (size == 0) {
+                return new Snapshot(precision, 0, new long[0]);
+            }
+            long[] counts = new long[indexes[size - 1] - indexes[0] + 1];
+            for (int i = 0; i < size; i++) {
+                counts[indexes[i] - indexes[0]] = values[i];
+            }
+            return new Snapshot(precision, indexes[0], counts);
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                out.write((int) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            out.write((int) remaining);
+        }
+
+        private static long readVarLong(byte[] bytes, int[] position) {
+            long value = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.huawei.apm.core.lubanops.bootstrap.plugin.common.url;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.huawei.apm.core.lubanops.bootstrap.collector.api.MonitorDataRow;
@@ -16,6 +19,11 @@ import com.huawei.apm.core.lubanops.bootstrap.sample.SampleType;
 
 public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats> {
 
+    /**
+     * 没有method时在查找缓存中使用的占位
+     */
+    private static final String NO_METHOD = "";
+
     /**
      * 慢请求的阈值，比如800毫秒，或者1秒，由用户自己定义,这个定义是通用的，对于单个url也可以自己定义自己的慢请求的阈值
      */
@@ -38,6 +46,17 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
      */
     private List<String> errorUrl = new ArrayList<String>();
 
+    /**
+     * 错误url和慢url的索引，随errorUrl、slowUrl一起重建，错误url优先
+     */
+    private volatile Map<String, UrlCategory> urlCategories = Collections.emptyMap();
+
+    /**
+     * 采样时url、method到统计对象的查找缓存，避免每次采样新建主键；只缓存已存在的统计对象，收割和清空时失效，删除主键时移除对应的缓存项
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, UrlStats>> sampleStatsCache =
+            new ConcurrentHashMap<String, ConcurrentMap<String, UrlStats>>();
+
     private AtomicInteger sampleCount = new AtomicInteger(0);
 
     private AtomicInteger invokeCount = new AtomicInteger(0);
@@ -63,6 +82,7 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
 
     public void setSlowUrl(List<String> slowUrl) {
         this.slowUrl = slowUrl;
+        rebuildUrlCategories();
     }
 
     public List<String> getErrorUrl() {
@@ -71,6 +91,24 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
 
     public void setErrorUrl(List<String> errorUrl) {
         this.errorUrl = errorUrl;
+        rebuildUrlCategories();
+    }
+
+    private void rebuildUrlCategories() {
+        List<String> slow = slowUrl;
+        List<String> error = errorUrl;
+        Map<String, UrlCategory> categories = new HashMap<String, UrlCategory>();
+        if (slow != null) {
+            for (String url : slow) {
+                categories.put(url, UrlCategory.SLOW);
+            }
+        }
+        if (error != null) {
+            for (String url : error) {
+                categories.put(url, UrlCategory.ERROR);
+            }
+        }
+        this.urlCategories = categories;
     }
 
     @Override
@@ -80,7 +118,28 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
         requestTranceCountStats.sampleCount.set(0);
         sampleCount.set(0);
         invokeCount.set(0);
-        return super.harvest();
+        try {
+            return super.harvest();
+        } finally {
+            // 收割时可能换出了主键，缓存的统计对象需要重新查找
+            sampleStatsCache.clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        sampleStatsCache.clear();
+    }
+
+    @Override
+    protected void removeValue(PrimaryKey key) {
+        super.removeValue(key);
+        // 删除的统计对象不能再从缓存中取到
+        ConcurrentMap<String, UrlStats> methodStats = sampleStatsCache.get(key.get(0));
+        if (methodStats != null) {
+            methodStats.remove(key.getKeyLength() > 1 ? key.get(1) : NO_METHOD);
+        }
     }
 
     /**
@@ -97,9 +156,10 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
             type = SampleType.automatic.value();
         }
         if (SampleType.automatic.value().equals(type)) {
-            if (this.getErrorUrl().contains(url)) {
+            UrlCategory category = urlCategories.get(url);
+            if (category == UrlCategory.ERROR) {
                 return resolveSampleStat(url, method, errorRequestTraceCounStats);
-            } else if (this.getSlowUrl().contains(url)) {
+            } else if (category == UrlCategory.SLOW) {
                 return resolveSampleStat(url, method, slowRequestTraceCountStats);
             } else {
                 return resolveSampleStat(url, method, requestTranceCountStats);
@@ -122,18 +182,63 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
      * @return
      */
     private boolean resolveSampleStat(String url, String method, Stats stats) {
-        PrimaryKey ppk = method == null ? new PrimaryKey(url) : new PrimaryKey(url, method);
-        UrlStats urlst = this.obtainValue(ppk);
+        UrlStats urlst = obtainSampleStats(url, method);
         if (urlst == null) {
             return false;
         }
-        if (stats.sampleCount.addAndGet(1) <= stats.getThreshold()) {
+        if (tryIncrement(stats.sampleCount, stats.getThreshold())) {
             urlst.getSampleCount().addAndGet(1);
             return true;
-        } else if (urlst.getSampleCount().addAndGet(1) <= stats.getMinPerUrl()) {
-            return true;
-        } else {
-            return false;
+        }
+        return tryIncrement(urlst.getSampleCount(), stats.getMinPerUrl());
+    }
+
+    /**
+     * 获取url对应的统计对象，优先从查找缓存中获取
+     * @param url
+     * @param method
+     * @return 统计对象，不存在时返回null
+     */
+    private UrlStats obtainSampleStats(String url, String method) {
+        String methodKey = method == null ? NO_METHOD : method;
+        ConcurrentMap<String, UrlStats> methodStats = sampleStatsCache.get(url);
+        if (methodStats != null) {
+            UrlStats urlst = methodStats.get(methodKey);
+            if (urlst != null) {
+                return urlst;
+            }
+        }
+        PrimaryKey ppk = method == null ? new PrimaryKey(url) : new PrimaryKey(url, method);
+        UrlStats urlst = this.obtainValue(ppk);
+        if (urlst == null) {
+            return null;
+        }
+        if (methodStats == null) {
+            methodStats = new ConcurrentHashMap<String, UrlStats>(2);
+            ConcurrentMap<String, UrlStats> old = sampleStatsCache.putIfAbsent(url, methodStats);
+            if (old != null) {
+                methodStats = old;
+            }
+        }
+        methodStats.put(methodKey, urlst);
+        return urlst;
+    }
+
+    /**
+     * 计数未达到上限时加一，达到上限后不再修改计数
+     * @param counter 计数
+     * @param limit 加一后允许的最大值
+     * @return 是否加一
+     */
+    private static boolean tryIncrement(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
         }
     }
 
@@ -146,20 +251,13 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
      */
     private boolean sampleFrequency(String url, String method, SampleConfig sampleConfig) {
         AtomicInteger urlSampleCount;
-        PrimaryKey ppk = method == null ? new PrimaryKey(url) : new PrimaryKey(url, method);
-        UrlStats urlst = this.obtainValue(ppk);
+        UrlStats urlst = obtainSampleStats(url, method);
         if (urlst != null) {
             urlSampleCount = urlst.getSampleCount();
         } else {
             urlSampleCount = this.sampleCount;
         }
-        int count = urlSampleCount.addAndGet(1);
-        if (count < sampleConfig.getPeriodCount()) {
-            return true;
-        } else {
-            urlSampleCount.decrementAndGet();
-            return false;
-        }
+        return tryIncrement(urlSampleCount, sampleConfig.getPeriodCount() - 1);
     }
 
     /**
@@ -172,8 +270,7 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
     private boolean samplePercentage(String url, String method, SampleConfig sampleConfig) {
         AtomicInteger sampleCount;
         long invokeCount;
-        PrimaryKey ppk = method == null ? new PrimaryKey(url) : new PrimaryKey(url, method);
-        UrlStats urlst = this.obtainValue(ppk);
+        UrlStats urlst = obtainSampleStats(url, method);
         if (urlst != null) {
             sampleCount = urlst.getSampleCount();
             invokeCount = urlst.getInvokeCount();
@@ -181,19 +278,15 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
             sampleCount = this.sampleCount;
             invokeCount = this.invokeCount.get();
         }
-        int count = sampleCount.addAndGet(1);
-        if (invokeCount == 0) {
-            if (sampleConfig.getPercentage() > 0) {
-                return true;
-            } else {
-                sampleCount.decrementAndGet();
+        int percentage = sampleConfig.getPercentage();
+        while (true) {
+            int count = sampleCount.get() + 1;
+            if (invokeCount == 0 ? percentage <= 0 : count * 100L / invokeCount >= percentage) {
                 return false;
             }
-        } else if (count * 100 / invokeCount < sampleConfig.getPercentage()) {
-            return true;
-        } else {
-            sampleCount.decrementAndGet();
-            return false;
+            if (sampleCount.compareAndSet(count - 1, count)) {
+                return true;
+            }
         }
     }
 
@@ -314,4 +407,10 @@ public abstract class UrlAggregator extends MultiPrimaryKeyAggregator<UrlStats>
         return null;
     }
 
+    /**
+     * 自动采样时url的分类
+     */
+    private enum UrlCategory {
+        ERROR, SLOW
+    }
 }
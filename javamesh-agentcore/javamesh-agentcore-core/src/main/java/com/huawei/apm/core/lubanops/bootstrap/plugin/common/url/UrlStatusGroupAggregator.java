@@ -19,8 +19,8 @@ public class UrlStatusGroupAggregator extends SinglePrimaryKeyAggregator<StatusC
     }
 
     @Override
-    protected Class<StatusCodeStats> getValueType() {
-        return StatusCodeStats.class;
+    protected StatusCodeStats newValue() {
+        return new StatusCodeStats();
     }
 
     public StatusCodeStats onCode(int code) {
@@ -0,0 +1,75 @@
+package com.huawei.apm.core.lubanops.core.trace;
+
+import java.util.List;
+import java.util.Map;
+
+import com.huawei.apm.core.lubanops.bootstrap.trace.SpanEvent;
+
+/**
+ * 估算SpanEvent序列化为json后的字节数，只累加字符串字段长度和固定开销，不做json序列化
+ * <p>按单字节字符估算，用于批次大小控制和丢弃统计，不要求精确
+ * @author zWX482523
+ */
+public final class SpanEventSizeEstimator {
+    /**
+     * 字段名、数值字段以及括号等固定开销
+     */
+    private static final int FIXED_OVERHEAD = 320;
+
+    /**
+     * 字符串值的引号和分隔符开销
+     */
+    private static final int STRING_OVERHEAD = 3;
+
+    /**
+     * 单个tag的引号、冒号和分隔符开销
+     */
+    private static final int TAG_OVERHEAD = 6;
+
+    /**
+     * 单个丢弃信息的开销
+     */
+    private static final int DISCARD_INFO_SIZE = 48;
+
+    private SpanEventSizeEstimator() {
+    }
+
+    public static int estimate(SpanEvent spanEvent) {
+        int size = FIXED_OVERHEAD;
+        size += length(spanEvent.getGlobalTraceId());
+        size += length(spanEvent.getGlobalPath());
+        size += length(spanEvent.getTraceId());
+        size += length(spanEvent.getSpanId());
+        size += length(spanEvent.getEventId());
+        size += length(spanEvent.getNextSpanId());
+        size += length(spanEvent.getSourceEventId());
+        size += length(spanEvent.getClassName());
+        size += length(spanEvent.getMethod());
+        size += length(spanEvent.getType());
+        size += length(spanEvent.getErrorReasons());
+        size += length(spanEvent.getSource());
+        size += length(spanEvent.getRealSource());
+        size += length(spanEvent.getArgument());
+        size += estimateTags(spanEvent.getTags());
+        List<SpanEvent.DiscardInfo> discard = spanEvent.getDiscard();
+        if (discard != null) {
+            size += discard.size() * DISCARD_INFO_SIZE;
+        }
+        return size;
+    }
+
+    public static int estimateTags(Map<String, String> tags) {
+        if (tags == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            size += TAG_OVERHEAD + length(entry.getKey()) + length(entry.getValue());
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length() + STRING_OVERHEAD;
+    }
+}
@@ -5,14 +5,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.huawei.apm.core.lubanops.bootstrap.api.APIService;
 import com.huawei.apm.core.lubanops.bootstrap.api.HarvestListener;
 import com.huawei.apm.core.lubanops.bootstrap.commons.LubanApmConstants;
 import com.huawei.apm.core.lubanops.bootstrap.config.AgentConfigManager;
@@ -28,25 +28,54 @@ import com.huawei.apm.core.lubanops.core.executor.standalone.ServiceThread;
 import com.huawei.apm.core.lubanops.core.transfer.InvokerService;
 import com.huawei.apm.core.lubanops.core.utils.ReportDataBuilder;
 import com.huawei.apm.core.lubanops.integration.access.MessageIdGenerator;
+import com.huawei.apm.core.lubanops.integration.access.MessageWrapper;
+import com.huawei.apm.core.lubanops.integration.access.inbound.EventDataBatchRequest;
 import com.huawei.apm.core.lubanops.integration.access.inbound.EventDataBody;
 import com.huawei.apm.core.lubanops.integration.access.inbound.EventDataRequest;
 
 /**
  * TraceQueueService 发送数据
+ * <p>发送线程从队列中按条数和估算字节数上限取出event组成批次，每个批次只发送一个请求，event.batch.count为1时每个event单独发送
  * @author
  */
 @Singleton
 public class TraceReportServiceImpl implements TraceReportService, AgentService {
 
-    private final static int MAX_SPAN_EVENT_COUNT = 512;
-
     private final static String SPAN_EVENT_DATA_TYPE = "SpanEventData";
 
-    private final static Queue<SpanEvent> SPAN_EVENT_DATA_QUEUE = new ArrayBlockingQueue<SpanEvent>(
-            MAX_SPAN_EVENT_COUNT);
+    /**
+     * 队列为空时发送线程的等待时间
+     */
+    private final static int WAIT_MILLIS = 50;
+
+    /**
+     * 单个event的估算字节数上限，超过时丢弃tags
+     */
+    private final static int MAX_SPAN_EVENT_BYTES = 1000000;
+
+    /**
+     * 队列已满时每丢弃该数量的event打印一次日志
+     */
+    private final static int DISCARD_LOG_INTERVAL = 1000;
 
     private final static Logger LOGGER = LogFactory.getLogger();
 
+    private final BlockingQueue<SpanEvent> spanEventDataQueue;
+
+    private final int batchCount;
+
+    private final int batchBytes;
+
+    /**
+     * 队列已满丢弃的event数
+     */
+    private final AtomicLong discardCount = new AtomicLong();
+
+    /**
+     * 队列已满丢弃的event估算字节数
+     */
+    private final AtomicLong discardBytes = new AtomicLong();
+
     @Inject
     private InvokerService invokerService;
 
@@ -62,6 +91,9 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
     private boolean hasException = Boolean.FALSE;
 
     public TraceReportServiceImpl() {
+        spanEventDataQueue = new ArrayBlockingQueue<SpanEvent>(AgentConfigManager.getEventQueueSize());
+        batchCount = Math.max(1, AgentConfigManager.getEventBatchCount());
+        batchBytes = AgentConfigManager.getEventBatchBytes();
         int threadCount = AgentConfigManager.getEventThreadCount();
         for (int i = 0; i < threadCount; i++) {
             SpanEventSendThread spanEventSendThread = new SpanEventSendThread();
@@ -71,8 +103,8 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
         harvestListener = new HarvestListener<APMCollector>() {
             @Override
             public void onHarvest(APMCollector collector, long time) {
-                collector.monitorQueueSize(SPAN_EVENT_DATA_QUEUE.size(),
-                        AgentUtils.getObjectSize(SPAN_EVENT_DATA_QUEUE));
+                collector.monitorQueueSize(spanEventDataQueue.size(),
+                        AgentUtils.getObjectSize(spanEventDataQueue));
             }
         };
         APMCollector.INSTANCE.listenHarvest(harvestListener);
@@ -91,7 +123,7 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
         int timeout = LubanApmConstants.DEFAULT_SERVICE_SHUTDOWN_TIMEOUT;
         if (timeout > 0) {
             long start = System.currentTimeMillis();
-            while (SPAN_EVENT_DATA_QUEUE.isEmpty() && System.currentTimeMillis() - start < timeout) {
+            while (!spanEventDataQueue.isEmpty() && System.currentTimeMillis() - start < timeout) {
                 try {
                     Thread.sleep(10);
                 } catch (InterruptedException e) {
@@ -99,10 +131,11 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
                 }
             }
         }
-        SPAN_EVENT_DATA_QUEUE.clear();
         for (SpanEventSendThread spanEventSendThread : threadList) {
             spanEventSendThread.shutdown(true);
+            spanEventSendThread.flushPending();
         }
+        spanEventDataQueue.clear();
         threadList.clear();
     }
 
@@ -116,21 +149,37 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
         if (spanEvent == null) {
             return;
         }
-        boolean success = SPAN_EVENT_DATA_QUEUE.offer(spanEvent);
+        boolean success = spanEventDataQueue.offer(spanEvent);
         if (!success) {
-            String json = APIService.getJsonApi().toJSONString(spanEvent);
-            int length = json.getBytes().length;
+            int length = SpanEventSizeEstimator.estimate(spanEvent);
+            long count = discardCount.incrementAndGet();
+            discardBytes.addAndGet(length);
             APMCollector.onDiscard(SPAN_EVENT_DATA_TYPE, length);
-            LogFactory.getLogger().warning("spanevent data queue is full,data discarded:" + spanEvent.toString());
+            if (count % DISCARD_LOG_INTERVAL == 1) {
+                LOGGER.warning("spanevent data queue is full,data discarded,discard count:" + count
+                        + ",discard bytes:" + discardBytes.get());
+            }
         } else {
-            APMCollector.onStart(SPAN_EVENT_DATA_TYPE, SPAN_EVENT_DATA_QUEUE.size());
+            APMCollector.onStart(SPAN_EVENT_DATA_TYPE, spanEventDataQueue.size());
         }
     }
 
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    public long getDiscardBytes() {
+        return discardBytes.get();
+    }
+
     public class SpanEventSendThread extends ServiceThread {
-        private EventDataRequest request;
+        /**
+         * 超过上一个批次字节数上限而留到下一个批次的event；发送线程退出时可能没有被join，
+         * dispose线程在flushPending中读取，因此与pendingLength一起由当前对象的锁保护
+         */
+        private SpanEvent pendingSpanEvent;
 
-        private long length;
+        private int pendingLength;
 
         @Override
         public void run() {
@@ -142,35 +191,18 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
         }
 
         public boolean report() {
-            SpanEvent spanEvent = null;
+            List<EventDataBody> bodies = new ArrayList<EventDataBody>();
+            long length = 0;
             long endTime = 0;
             long startTime = 0;
-            String logClassName = null;
-            String logMethodName = null;
             try {
-                spanEvent = SPAN_EVENT_DATA_QUEUE.poll();
-                if (spanEvent == null) {
-                    super.waitForRunning(50);
+                length = pollBatch(bodies, true);
+                if (bodies.isEmpty()) {
+                    super.waitForRunning(WAIT_MILLIS);
                     return true;
                 }
                 startTime = System.currentTimeMillis();
-                request = new EventDataRequest();
-                request.setMessageId(MessageIdGenerator.generateMessageId());
-                request.setHeader(ReportDataBuilder.buildEventDataHeader());
-                request.getHeader().setNeedResponse(false);
-                EventDataBody eventDataBody = ReportDataBuilder.buildEventDataBody(spanEvent);
-                request.setBody(eventDataBody);
-                length = request.getBodyBytes().length;
-                if (length > 1000000) {
-                    LOGGER.log(Level.SEVERE, "data过大:" + request.getBodyString().substring(0, 1000));
-                    Map<String, String> bodyMap = new HashMap<String, String>();
-                    bodyMap.put("msg", "数据超过1M已丢弃");
-                    eventDataBody.setTags(bodyMap);
-                    length = eventDataBody.toString().getBytes().length;
-                }
-                logClassName = request.getBody().getClassName();
-                logMethodName = request.getBody().getMethod();
-                sendSpanEvent();
+                sendSpanEvent(buildRequest(bodies), length);
             } catch (Throwable e) {
                 Level level = Level.SEVERE;
                 if (hasException) {
@@ -179,7 +211,10 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
                 LOGGER.log(level,
                         "failed to send data,error message:" + e.getMessage() + ",type:" + e.getClass().getName(),
                         e);
-                LOGGER.log(Level.SEVERE, "data:" + logClassName + "." + logMethodName);
+                if (!bodies.isEmpty()) {
+                    LOGGER.log(Level.SEVERE, "data:" + bodies.get(0).getClassName() + "." + bodies.get(0).getMethod()
+                            + ",count:" + bodies.size());
+                }
                 APMCollector.onThrowable(LubanApmConstants.SPAN_EVENT_DATA_TYPE, length, e);
                 hasException = true;
             } finally {
@@ -191,7 +226,82 @@ public class TraceReportServiceImpl implements TraceReportService, AgentService
             return true;
         }
 
-        public void sendSpanEvent() throws ConnectionException, IOException {
+        /**
+         * 发送留到下一个批次的event，在发送线程停止后调用，避免该event随线程退出丢失
+         */
+        void flushPending() {
+            List<EventDataBody> bodies = new ArrayList<EventDataBody>(1);
+            long length = pollBatch(bodies, false);
+            if (bodies.isEmpty()) {
+                return;
+            }
+            try {
+                sendSpanEvent(buildRequest(bodies), length);
+            } catch (Throwable e) {
+                LOGGER.log(Level.SEVERE, "failed to send pending data on shutdown,error message:" + e.getMessage(), e);
+                APMCollector.onThrowable(LubanApmConstants.SPAN_EVENT_DATA_TYPE, length, e);
+            }
+        }
+
+        /**
+         * 从队列中取出event组成批次，条数和估算字节数不超过上限，批次中至少有一个event
+         *
+         * @param bodies 批次
+         * @param fromQueue 为false时只取留到下一个批次的event
+         * @return 批次的估算字节数
+         */
+        private synchronized long pollBatch(List<EventDataBody> bodies, boolean fromQueue) {
+            long length = 0;
+            while (bodies.size() < batchCount) {
+                SpanEvent spanEvent = pendingSpanEvent;
+                int spanLength = pendingLength;
+                pendingSpanEvent = null;
+                if (spanEvent == null) {
+                    spanEvent = fromQueue ? spanEventDataQueue.poll() : null;
+                    if (spanEvent == null) {
+                        break;
+                    }
+                    spanLength = SpanEventSizeEstimator.estimate(spanEvent);
+                }
+                if (!bodies.isEmpty() && length + spanLength > batchBytes) {
+                    pendingSpanEvent = spanEvent;
+                    pendingLength = spanLength;
+                    break;
+                }
+                EventDataBody eventDataBody = ReportDataBuilder.buildEventDataBody(spanEvent);
+                if (spanLength > MAX_SPAN_EVENT_BYTES) {
+                    LOGGER.log(Level.SEVERE, "data过大:" + eventDataBody.getClassName() + "." + eventDataBody.getMethod()
+                            + ",estimated length:" + spanLength);
+                    Map<String, String> bodyMap = new HashMap<String, String>();
+                    bodyMap.put("msg", "数据超过1M已丢弃");
+                    spanLength = spanLength - SpanEventSizeEstimator.estimateTags(eventDataBody.getTags())
+                            + SpanEventSizeEstimator.estimateTags(bodyMap);
+                    eventDataBody.setTags(bodyMap);
+                }
+                bodies.add(eventDataBody);
+                length += spanLength;
+            }
+            return length;
+        }
+
+        private MessageWrapper buildRequest(List<EventDataBody> bodies) {
+            if (batchCount == 1) {
+                EventDataRequest request = new EventDataRequest();
+                request.setMessageId(MessageIdGenerator.generateMessageId());
+                request.setHeader(ReportDataBuilder.buildEventDataHeader());
+                request.getHeader().setNeedResponse(false);
+                request.setBody(bodies.get(0));
+                return request;
+            }
+            EventDataBatchRequest request = new EventDataBatchRequest();
+            request.setMessageId(MessageIdGenerator.generateMessageId());
+            request.setHeader(ReportDataBuilder.buildEventDataHeader());
+            request.getHeader().setNeedResponse(false);
+            request.setBodies(bodies);
+            return request;
+        }
+
+        public void sendSpanEvent(MessageWrapper request, long length) throws ConnectionException, IOException {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.log(Level.FINE, String.format("[debug mode]sending message:[%s]", request.getBodyString()));
             }
@@ -20,6 +20,12 @@ public class MessageType {
 
     public static final short TRACE_EVENT_RESPONSE = 4;
 
+    /**
+     * event 批量数据上报，body为多个event组成的数组
+     * <p>接入服务端需要能解析该类型，默认不发送，配置event.batch.count大于1时才使用
+     */
+    public static final short TRACE_EVENT_BATCH_REQUEST = 6;
+
     /**
      * javaagent链接access server的时候返回的消息，一般是链接错误或者正确的消息
      */
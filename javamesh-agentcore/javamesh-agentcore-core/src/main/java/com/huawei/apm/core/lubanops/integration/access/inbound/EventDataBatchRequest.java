@@ -0,0 +1,93 @@
+package com.huawei.apm.core.lubanops.integration.access.inbound;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.huawei.apm.core.lubanops.integration.access.Message;
+import com.huawei.apm.core.lubanops.integration.access.MessageType;
+import com.huawei.apm.core.lubanops.integration.access.MessageWrapper;
+import com.huawei.apm.core.lubanops.integration.utils.JSON;
+
+/**
+ * event批量上报请求，一个请求携带多个event，共用同一个header
+ * @author zWX482523
+ * @since 2020/5/7
+ **/
+public class EventDataBatchRequest extends MessageWrapper {
+    private EventDataHeader header;
+
+    private List<EventDataBody> bodies = new ArrayList<EventDataBody>();
+
+    private long messageId;
+
+    /**
+     * 解析成对象
+     * @param message
+     * @return
+     */
+    public static EventDataBatchRequest parse(Message message) {
+        if (message.getType() != MessageType.TRACE_EVENT_BATCH_REQUEST) {
+            throw new IllegalArgumentException("type not match");
+        }
+        try {
+            EventDataBatchRequest request = new EventDataBatchRequest();
+            request.setMessageId(message.getMessageId());
+            request.setHeader(JSON.parseObject(message.getHeader(), EventDataHeader.class));
+            request.setBodies(JSON.parseList(new String(message.getBody(), StandardCharsets.UTF_8),
+                    EventDataBody.class));
+            return request;
+        } catch (Exception e) {
+            throw new RuntimeException("failed to parse msg,msg type:" + message.getType(), e);
+        }
+    }
+
+    public EventDataHeader getHeader() {
+        return header;
+    }
+
+    public void setHeader(EventDataHeader header) {
+        this.header = header;
+    }
+
+    public List<EventDataBody> getBodies() {
+        return bodies;
+    }
+
+    public void setBodies(List<EventDataBody> bodies) {
+        this.bodies = bodies;
+    }
+
+    public void addBody(EventDataBody body) {
+        bodies.add(body);
+    }
+
+    @Override
+    public short getType() {
+        return MessageType.TRACE_EVENT_BATCH_REQUEST;
+    }
+
+    public void setMessageId(long messageId) {
+        this.messageId = messageId;
+    }
+
+    @Override
+    public byte[] getHeaderBytes() {
+        return header.toBytes();
+    }
+
+    @Override
+    public long getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String getHeadString() {
+        return JSON.toJSONString(header);
+    }
+
+    @Override
+    public String generateBodyString() {
+        return JSON.toJSONString(bodies);
+    }
+}
@@ -4,8 +4,8 @@
 
 package com.huawei.apm.core.lubanops.integration.transport.netty.client;
 
+import com.huawei.apm.core.lubanops.bootstrap.config.AgentConfigManager;
 import com.huawei.apm.core.lubanops.integration.transport.netty.pojo.Message;
-import com.huawei.apm.core.lubanops.integration.utils.GzipUtils;
 
 import com.google.protobuf.ByteString;
 
@@ -17,6 +17,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.protobuf.ProtobufDecoder;
@@ -28,14 +29,16 @@ import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
+import java.io.File;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 网关客户端
+ * <p>业务数据写入有界环形队列，由单线程调度器按时间间隔或积压条数批量压缩发送；队列已满时直接丢弃并计数，
+ * 连接不可用或写缓冲区超过高水位时批次溢写到本地文件，重连后回放
  *
  * @author lilai
  * @version 0.0.1
@@ -45,17 +48,18 @@ public class NettyClient {
     // 运行日志
     private static final Logger LOGGER = LoggerFactory.getLogger(NettyClient.class);
 
-    // 消息队列用于缓存来自用户的消息
-    private static BlockingQueue<Message.ServiceData> queue = new LinkedBlockingQueue<>();
-
     private static final int CONNECT_TIMEOUT = 9000;
 
     private static final int WAIT_TIME = 30;
 
-    private static final int SEND_INTERNAL_MILLISECOND = 10000;
-
     private static final int RECONNECT_INTERVAL_SECOND = 10;
 
+    // 关闭时等待定时发送任务结束的时间
+    private static final long SHUTDOWN_WAIT_MILLIS = 3000L;
+
+    // 写缓冲区高水位相对批次字节数的倍数
+    private static final int HIGH_WATER_MARK_FACTOR = 4;
+
     // 客户端读写闲置时间
     private int writeOrReadWaitTime;
 
@@ -73,19 +77,70 @@ public class NettyClient {
 
     private Bootstrap bootstrap;
 
-    private Channel channel;
+    private volatile Channel channel;
+
+    // 消息队列用于缓存来自用户的消息
+    private final BoundedRingBuffer<Message.ServiceData> queue;
+
+    private final SpillStore spillStore;
+
+    private final TransportStatistics statistics = new TransportStatistics();
+
+    private final Sender sender;
+
+    // 批次条数，队列积压达到该值时立即发送
+    private final int batchCount;
 
-    private ScheduledExecutorService pool;
+    private final int batchBytes;
+
+    // 是否已提交立即发送任务
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    private final ScheduledExecutorService pool;
 
     public NettyClient(String serverIp, int serverPort) {
         ip = serverIp;
         port = serverPort;
         writeOrReadWaitTime = WAIT_TIME;
-        sendInterval = SEND_INTERNAL_MILLISECOND;
+        sendInterval = AgentConfigManager.getNettyFlushInterval();
         reconectInterval = RECONNECT_INTERVAL_SECOND;
+        batchCount = AgentConfigManager.getNettyBatchCount();
+        batchBytes = AgentConfigManager.getNettyBatchBytes();
+        queue = new BoundedRingBuffer<>(AgentConfigManager.getNettyQueueCapacity());
+        spillStore = new SpillStore(new File(getSpillDir(), serverIp + "_" + serverPort),
+                AgentConfigManager.getNettySpillMaxBytes());
+        sender = new Sender(this, queue, spillStore, statistics, batchCount, batchBytes);
+        pool = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "netty-client-sender-" + serverIp + ":" + serverPort);
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.scheduleWithFixedDelay(sender, sendInterval, sendInterval, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // 先停掉定时发送任务，避免与drain并发访问队列和溢写文件
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("netty client sender is still running at shutdown");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sender.drain(null);
+            spillStore.close();
+        }));
         bind();
     }
 
+    private static File getSpillDir() {
+        String spillDir = AgentConfigManager.getNettySpillDir();
+        if (spillDir == null || spillDir.isEmpty()) {
+            // 同一主机上的多个进程由SpillStore的目录锁区分
+            return new File(System.getProperty("java.io.tmpdir"), "javamesh-spill");
+        }
+        return new File(spillDir);
+    }
+
     private void bind() {
         EventLoopGroup eventExecutors = new NioEventLoopGroup();
         bootstrap = new Bootstrap();
@@ -93,6 +148,8 @@ public class NettyClient {
                 .channel(NioSocketChannel.class)
                 .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(batchBytes, batchBytes * HIGH_WATER_MARK_FACTOR))
                 .handler(new ChannelInitializer<Channel>() {
                     @Override
                     protected void initChannel(Channel channel) {
@@ -116,21 +173,16 @@ public class NettyClient {
         if (channel != null && channel.isActive()) {
             return;
         }
-        if (pool != null && !pool.isShutdown()) {
-            pool.shutdownNow();
-        }
         ChannelFuture connect = bootstrap.connect(ip, port);
 
         // 添加连接监听
         connect.addListener((ChannelFutureListener) channelFuture -> {
-            // 如果连接成功，启动发送线程，循环发送消息队列中的内容
+            // 如果连接成功，立即回放溢写数据并发送消息队列中的内容
             if (channelFuture.isSuccess()) {
                 channel = channelFuture.channel();
                 if (channel.isActive()) {
-                    Sender sender = new Sender(channel, queue);
                     LOGGER.info("Successfully Connected to server");
-                    pool = Executors.newScheduledThreadPool(1);
-                    pool.scheduleAtFixedRate(sender, 0, sendInterval, TimeUnit.MILLISECONDS);
+                    requestFlush();
                 }
             } else {
                 // 失败则在X秒后重试连接
@@ -142,6 +194,7 @@ public class NettyClient {
 
     /**
      * 发送数据至服务端
+     * <p>数据在入队前复制，调用方可以在返回后复用传入的数组
      *
      * @param msg      传输数据
      * @param dataType 数据类型
@@ -151,17 +204,44 @@ public class NettyClient {
             LOGGER.warn("Message is null.");
             return;
         }
-        byte[] compressMsg = GzipUtils.compress(msg);
         Message.ServiceData serviceData = Message.ServiceData.newBuilder()
                 .setDataType(dataType)
-                .setData(ByteString.copyFrom(compressMsg))
+                .setData(ByteString.copyFrom(msg))
                 .build();
-        ThreadPools.getExecutor().execute(() -> {
-            try {
-                queue.put(serviceData);
-            } catch (InterruptedException e) {
-                LOGGER.error("Exception occurs when put data to message queue. Exception info: {}", e);
-            }
-        });
+        if (!queue.offer(serviceData)) {
+            statistics.recordQueueDropped();
+            LOGGER.debug("Message queue is full, discard message. Transport statistics: {}", statistics);
+            requestFlush();
+            return;
+        }
+        statistics.recordEnqueued();
+        if (queue.size() >= batchCount) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * 提交立即发送任务，已有未执行的立即发送任务时忽略
+     */
+    private void requestFlush() {
+        if (flushPending.compareAndSet(false, true)) {
+            pool.execute(() -> {
+                flushPending.set(false);
+                sender.run();
+            });
+        }
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * 获取传输统计
+     *
+     * @return 传输统计
+     */
+    public TransportStatistics getStatistics() {
+        return statistics;
     }
 }
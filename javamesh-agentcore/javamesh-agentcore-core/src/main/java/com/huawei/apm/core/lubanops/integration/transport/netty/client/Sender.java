@@ -6,17 +6,25 @@ package com.huawei.apm.core.lubanops.integration.transport.netty.client;
 
 import com.huawei.apm.core.lubanops.integration.transport.netty.pojo.Message;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * 发送数据类
+ * <p>从环形队列中按条数和字节数上限取出消息组成批次，整批LZ4压缩后发送；连接不可用或写缓冲区超过高水位时，批次溢写到本地文件，连接恢复后优先回放
+ * <p>由{@link NettyClient}的单线程调度器定时执行，或在队列积压达到批次条数时立即执行，因此不会并发运行
  *
  * @author lilai
  * @version 0.0.1
@@ -25,33 +33,129 @@ import java.util.concurrent.BlockingQueue;
 public class Sender implements Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(Sender.class);
 
-    private BlockingQueue<Message.ServiceData> queue;
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestJavaInstance().fastCompressor();
+
+    private final NettyClient client;
+
+    private final BoundedRingBuffer<Message.ServiceData> queue;
 
-    private Channel channel;
+    private final SpillStore spillStore;
 
-    public Sender(Channel channel, BlockingQueue<Message.ServiceData> queue) {
+    private final TransportStatistics statistics;
+
+    // 单个批次的消息条数上限
+    private final int batchCount;
+
+    // 单个批次压缩前的字节数上限
+    private final int batchBytes;
+
+    public Sender(NettyClient client, BoundedRingBuffer<Message.ServiceData> queue, SpillStore spillStore,
+            TransportStatistics statistics, int batchCount, int batchBytes) {
+        this.client = client;
         this.queue = queue;
-        this.channel = channel;
+        this.spillStore = spillStore;
+        this.statistics = statistics;
+        this.batchCount = batchCount;
+        this.batchBytes = batchBytes;
     }
 
     @Override
     public void run() {
-        List<Message.ServiceData> list;
-
-        //消息队列不为空时，发送消息
-        if (queue.size() > 0) {
-            list = new ArrayList<>();
-            queue.drainTo(list);
-            Message.NettyMessage message = Message.NettyMessage.newBuilder()
-                    .setMessageType(Message.NettyMessage.MessageType.SERVICE_DATA)
-                    .addAllServiceData(list)
-                    .build();
-            if(channel==null){
-                LOGGER.info("channel is null");
+        try {
+            final Channel channel = client.getChannel();
+            if (isWritable(channel)) {
+                replay(channel);
             }
+            drain(channel);
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception occurs when send data to server. Exception info: {}", e);
+        }
+    }
 
-            channel.writeAndFlush(message);
-            LOGGER.info("The message is sent to the gateway successfully. Number of messages: {}", list.size());
+    /**
+     * 取出队列中的所有消息，连接可写时直接发送，否则溢写
+     *
+     * @param channel 连接
+     */
+    void drain(Channel channel) {
+        List<Message.ServiceData> batch = pollBatch();
+        while (!batch.isEmpty()) {
+            final Message.NettyMessage message = encode(batch);
+            if (isWritable(channel)) {
+                write(channel, message);
+            } else {
+                spill(message.toByteArray());
+            }
+            batch = pollBatch();
+        }
+    }
+
+    /**
+     * 按写入顺序回放溢写的批次，直到溢写数据回放完毕、连接不可写或分段文件无法删除
+     *
+     * @param channel 连接
+     */
+    private void replay(Channel channel) {
+        while (spillStore.hasData() && isWritable(channel)) {
+            final List<byte[]> frames = spillStore.pollSegment();
+            if (frames == null) {
+                return;
+            }
+            for (byte[] frame : frames) {
+                try {
+                    write(channel, Message.NettyMessage.parseFrom(frame));
+                    statistics.recordReplayed();
+                } catch (InvalidProtocolBufferException e) {
+                    LOGGER.warn("Discard corrupted spill frame. Exception info: {}", e.getMessage());
+                }
+            }
         }
     }
+
+    private List<Message.ServiceData> pollBatch() {
+        final List<Message.ServiceData> batch = new ArrayList<>();
+        int bytes = 0;
+        while (batch.size() < batchCount && bytes < batchBytes) {
+            final Message.ServiceData serviceData = queue.poll();
+            if (serviceData == null) {
+                break;
+            }
+            batch.add(serviceData);
+            bytes += serviceData.getSerializedSize();
+        }
+        return batch;
+    }
+
+    private void write(Channel channel, Message.NettyMessage message) {
+        channel.writeAndFlush(message).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                LOGGER.warn("Send batch to server failed, spill it. Exception info: {}", future.cause());
+                spill(message.toByteArray());
+            }
+        });
+    }
+
+    private void spill(byte[] frame) {
+        if (spillStore.append(frame)) {
+            statistics.recordSpilled();
+        } else {
+            statistics.recordSpillDropped();
+            LOGGER.warn("Spill store is full, discard batch. Transport statistics: {}", statistics);
+        }
+    }
+
+    private Message.NettyMessage encode(List<Message.ServiceData> batch) {
+        final byte[] raw = Message.ServiceDataBatch.newBuilder().addAllServiceData(batch).build().toByteArray();
+        final byte[] compressed = COMPRESSOR.compress(raw);
+        statistics.recordBatch(batch.size(), raw.length, compressed.length);
+        return Message.NettyMessage.newBuilder()
+                .setMessageType(Message.NettyMessage.MessageType.SERVICE_DATA_BATCH)
+                .setBatchRawLength(raw.length)
+                .setBatchData(UnsafeByteOperations.unsafeWrap(compressed))
+                .build();
+    }
+
+    private boolean isWritable(Channel channel) {
+        return channel != null && channel.isActive() && channel.isWritable();
+    }
 }
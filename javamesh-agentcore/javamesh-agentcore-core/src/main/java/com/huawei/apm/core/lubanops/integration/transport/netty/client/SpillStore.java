@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.apm.core.lubanops.integration.transport.netty.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 溢写存储
+ * <p>服务端不可达或写缓冲区已满时，将已压缩的批量消息以长度前缀的格式追加写入本地分段文件，重连后按写入顺序回放
+ * <p>所有分段文件的总大小受上限约束，超过上限时拒绝写入，由调用方计入丢弃数
+ * <p>溢写目录通过锁文件独占，同一主机上的多个进程使用同一配置时，后启动的进程依次尝试带序号后缀的目录，
+ * 进程重启后仍会取得原来的目录并回放其中的数据
+ *
+ * @author lilai
+ * @version 0.0.1
+ * @since 2021-08-07
+ */
+public class SpillStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillStore.class);
+
+    private static final String SEGMENT_PREFIX = "spill-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // 帧长度前缀所占字节数
+    private static final int FRAME_HEADER_LENGTH = 4;
+
+    // 单个分段文件的大小上限
+    private static final long SEGMENT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    // 尝试的溢写目录个数上限，都被其他进程占用时不溢写
+    private static final int MAX_DIRECTORY_ATTEMPTS = 16;
+
+    // 取得锁的溢写目录，没有取得时为null
+    private final File directory;
+
+    // 进程退出前一直持有，进程退出时由操作系统释放
+    private final FileLock directoryLock;
+
+    private final long maxBytes;
+
+    // 所有分段文件的总大小
+    private long totalBytes;
+
+    // 下一个分段文件的序号
+    private long nextSequence;
+
+    // 当前写入的分段文件
+    private File currentSegment;
+
+    private long currentSegmentBytes;
+
+    private DataOutputStream output;
+
+    // 关闭后目录锁已释放，不能再写入
+    private boolean closed;
+
+    /**
+     * 构造方法，目录中已存在的分段文件会在重连后一并回放
+     *
+     * @param directory 分段文件目录，已被其他进程占用时使用带序号后缀的目录
+     * @param maxBytes  分段文件总大小上限
+     */
+    public SpillStore(File directory, long maxBytes) {
+        this.maxBytes = maxBytes;
+        FileLock lock = null;
+        File locked = null;
+        for (int i = 0; i < MAX_DIRECTORY_ATTEMPTS && lock == null; i++) {
+            locked = i == 0 ? directory : new File(directory.getPath() + "-" + i);
+            lock = tryLock(locked);
+        }
+        if (lock == null) {
+            LOGGER.warn("Spill directory [{}] and its alternatives are all in use, spill is disabled.", directory);
+            locked = null;
+        }
+        this.directory = locked;
+        this.directoryLock = lock;
+        for (File segment : listSegments()) {
+            totalBytes += segment.length();
+            nextSequence = Math.max(nextSequence, parseSequence(segment) + 1);
+        }
+    }
+
+    /**
+     * 追加一帧数据
+     *
+     * @param frame 帧数据
+     * @return 超过总大小上限或写入失败时返回false
+     */
+    public synchronized boolean append(byte[] frame) {
+        final long frameBytes = FRAME_HEADER_LENGTH + frame.length;
+        if (directory == null || closed || totalBytes + frameBytes > maxBytes) {
+            return false;
+        }
+        try {
+            if (output == null || currentSegmentBytes >= SEGMENT_MAX_BYTES) {
+                rollSegment();
+            }
+            output.writeInt(frame.length);
+            output.write(frame);
+            output.flush();
+        } catch (IOException e) {
+            LOGGER.warn("Spill frame to segment [{}] failed. Exception info: {}", currentSegment, e.getMessage());
+            closeOutput();
+            return false;
+        }
+        currentSegmentBytes += frameBytes;
+        totalBytes += frameBytes;
+        return true;
+    }
+
+    /**
+     * 取出最早的分段文件中的所有帧，并删除该分段文件
+     *
+     * @return 帧数据，没有溢写数据时返回空集合；分段文件删除失败时返回null，此时不返回其中的帧，避免重复回放
+     */
+    public synchronized List<byte[]> pollSegment() {
+        final File[] segments = listSegments();
+        if (segments.length == 0) {
+            return Collections.emptyList();
+        }
+        final File segment = segments[0];
+        if (segment.equals(currentSegment)) {
+            closeOutput();
+        }
+        final List<byte[]> frames = readFrames(segment);
+        final long segmentBytes = segment.length();
+        if (!segment.delete()) {
+            LOGGER.warn("Delete spill segment [{}] failed, stop replaying.", segment);
+            return null;
+        }
+        totalBytes = Math.max(0, totalBytes - segmentBytes);
+        return frames;
+    }
+
+    /**
+     * 是否存在溢写数据
+     *
+     * @return 存在溢写数据时返回true
+     */
+    public synchronized boolean hasData() {
+        return totalBytes > 0;
+    }
+
+    /**
+     * 获取实际使用的溢写目录
+     *
+     * @return 溢写目录，所有候选目录都被占用时返回null
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 获取溢写数据总大小
+     *
+     * @return 溢写数据总大小
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 关闭当前分段文件并释放目录锁，之后不再溢写
+     */
+    public synchronized void close() {
+        closeOutput();
+        if (directoryLock == null) {
+            return;
+        }
+        try {
+            directoryLock.release();
+        } catch (IOException e) {
+            LOGGER.debug("Release spill directory lock failed. Exception info: {}", e.getMessage());
+        }
+        closeQuietly(directoryLock.channel());
+        closed = true;
+    }
+
+    /**
+     * 尝试独占溢写目录，锁文件一直保持打开直到进程退出
+     *
+     * @param candidate 候选目录
+     * @return 取得的锁，目录被其他进程或本进程的其他实例占用时返回null
+     */
+    private static FileLock tryLock(File candidate) {
+        if (!candidate.exists() && !candidate.mkdirs()) {
+            LOGGER.warn("Create spill directory [{}] failed.", candidate);
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = new RandomAccessFile(new File(candidate, LOCK_FILE_NAME), "rw").getChannel();
+            final FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            LOGGER.debug("Lock spill directory [{}] failed. Exception info: {}", candidate, e.getMessage());
+        }
+        closeQuietly(channel);
+        return null;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Close spill lock file failed. Exception info: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        closeOutput();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(String.format(Locale.ROOT, "Create spill directory [%s] failed. ", directory));
+        }
+        currentSegment = new File(directory, String.format(Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX,
+                nextSequence++, SEGMENT_SUFFIX));
+        currentSegmentBytes = 0;
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(currentSegment, true)));
+    }
+
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                LOGGER.warn("Close spill segment [{}] failed. Exception info: {}", currentSegment, e.getMessage());
+            }
+        }
+        output = null;
+        currentSegment = null;
+        currentSegmentBytes = 0;
+    }
+
+    /**
+     * 读取分段文件中的所有帧，进程异常退出导致的不完整尾帧会被忽略
+     *
+     * @param segment 分段文件
+     * @return 帧数据
+     */
+    private List<byte[]> readFrames(File segment) {
+        final List<byte[]> frames = new ArrayList<>();
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+            while (true) {
+                final int length = input.readInt();
+                if (length < 0 || length > maxBytes) {
+                    LOGGER.warn("Spill segment [{}] is corrupted, frame length: {}", segment, length);
+                    break;
+                }
+                final byte[] frame = new byte[length];
+                input.readFully(frame);
+                frames.add(frame);
+            }
+        } catch (EOFException ignored) {
+            // 读到文件末尾
+        } catch (IOException e) {
+            LOGGER.warn("Read spill segment [{}] failed. Exception info: {}", segment, e.getMessage());
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Close spill segment [{}] failed. Exception info: {}", segment, e.getMessage());
+                }
+            }
+        }
+        return frames;
+    }
+
+    private File[] listSegments() {
+        if (directory == null) {
+            return new File[0];
+        }
+        final File[] segments = directory.listFiles(file -> file.isFile() && file.getName().startsWith(SEGMENT_PREFIX)
+                && file.getName().endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private long parseSequence(File segment) {
+        final String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.apm.core.lubanops.integration.transport.netty.client;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 传输统计
+ * <p>记录入队、丢弃、溢写、回放以及批量发送的数量，用于评估服务端不可达时的数据损失
+ *
+ * @author lilai
+ * @version 0.0.1
+ * @since 2021-08-07
+ */
+public class TransportStatistics {
+    // 成功入队的消息数
+    private final AtomicLong enqueued = new AtomicLong();
+
+    // 队列已满被丢弃的消息数
+    private final AtomicLong queueDropped = new AtomicLong();
+
+    // 溢写已达上限被丢弃的批次数
+    private final AtomicLong spillDropped = new AtomicLong();
+
+    // 溢写的批次数
+    private final AtomicLong spilled = new AtomicLong();
+
+    // 回放的批次数
+    private final AtomicLong replayed = new AtomicLong();
+
+    // 发送的批次数
+    private final AtomicLong batches = new AtomicLong();
+
+    // 发送的消息数
+    private final AtomicLong messages = new AtomicLong();
+
+    // 压缩前的字节数
+    private final AtomicLong rawBytes = new AtomicLong();
+
+    // 压缩后的字节数
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    void recordEnqueued() {
+        enqueued.incrementAndGet();
+    }
+
+    void recordQueueDropped() {
+        queueDropped.incrementAndGet();
+    }
+
+    void recordSpillDropped() {
+        spillDropped.incrementAndGet();
+    }
+
+    void recordSpilled() {
+        spilled.incrementAndGet();
+    }
+
+    void recordReplayed() {
+        replayed.incrementAndGet();
+    }
+
+    void recordBatch(int messageCount, int rawLength, int compressedLength) {
+        batches.incrementAndGet();
+        messages.addAndGet(messageCount);
+        rawBytes.addAndGet(rawLength);
+        compressedBytes.addAndGet(compressedLength);
+    }
+
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    public long getQueueDropped() {
+        return queueDropped.get();
+    }
+
+    public long getSpillDropped() {
+        return spillDropped.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "enqueued: [%d], queue dropped: [%d], spilled: [%d], spill dropped: [%d], "
+                + "replayed: [%d], batches: [%d], messages: [%d], raw bytes: [%d], compressed bytes: [%d]",
+                enqueued.get(), queueDropped.get(), spilled.get(), spillDropped.get(), replayed.get(), batches.get(),
+                messages.get(), rawBytes.get(), compressedBytes.get());
+    }
+}
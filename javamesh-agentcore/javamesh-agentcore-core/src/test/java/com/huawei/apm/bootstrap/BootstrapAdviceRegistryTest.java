@@ -0,0 +1,65 @@
+package com.huawei.apm.bootstrap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * BootstrapAdviceRegistry Tester.
+ */
+public class BootstrapAdviceRegistryTest {
+    /**
+     * 同名advice重新注册时复用槽位，注销后清空槽位并复用下标
+     */
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        final MethodHandle handle = MethodHandles.lookup().findStatic(BootstrapAdviceRegistryTest.class, "handle",
+                MethodType.methodType(void.class));
+        final int first = BootstrapAdviceRegistry.register("registry.First", Collections.emptyList(), handle, handle);
+        final int second = BootstrapAdviceRegistry.register("registry.Second", Arrays.asList("a"), handle, handle);
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first, BootstrapAdviceRegistry.indexOf("registry.First"));
+
+        // 重新增强同一方法
+        Assert.assertEquals(second,
+                BootstrapAdviceRegistry.register("registry.Second", Arrays.asList("b"), handle, handle));
+        Assert.assertEquals("b", BootstrapAdviceRegistry.getInterceptorItr(second).next());
+
+        Assert.assertTrue(BootstrapAdviceRegistry.unregister("registry.First"));
+        Assert.assertFalse(BootstrapAdviceRegistry.unregister("registry.First"));
+        Assert.assertEquals(-1, BootstrapAdviceRegistry.indexOf("registry.First"));
+        Assert.assertNull(BootstrapAdviceRegistry.getEnterHandle(first));
+        Assert.assertNull(BootstrapAdviceRegistry.getExitHandle(first));
+        Assert.assertEquals(first,
+                BootstrapAdviceRegistry.register("registry.Third", Collections.emptyList(), handle, handle));
+
+        BootstrapAdviceRegistry.unregister("registry.Second");
+        BootstrapAdviceRegistry.unregister("registry.Third");
+    }
+
+    /**
+     * 注册数量超过初始容量时扩容，已有槽位保持不变
+     */
+    @Test
+    public void testGrow() throws Exception {
+        final MethodHandle handle = MethodHandles.lookup().findStatic(BootstrapAdviceRegistryTest.class, "handle",
+                MethodType.methodType(void.class));
+        final int count = 200;
+        final int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = BootstrapAdviceRegistry.register("registry.Grow" + i, Arrays.asList(i), handle, handle);
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, BootstrapAdviceRegistry.getInterceptorItr(indexes[i]).next());
+            BootstrapAdviceRegistry.unregister("registry.Grow" + i);
+        }
+    }
+
+    private static void handle() {
+    }
+}
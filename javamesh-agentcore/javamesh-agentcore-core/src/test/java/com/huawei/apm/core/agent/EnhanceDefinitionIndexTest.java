@@ -0,0 +1,142 @@
+package com.huawei.apm.core.agent;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import net.bytebuddy.description.type.TypeDescription;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.apm.core.agent.definition.EnhanceDefinition;
+import com.huawei.apm.core.agent.definition.MethodInterceptPoint;
+import com.huawei.apm.core.agent.matcher.ClassMatcher;
+import com.huawei.apm.core.agent.matcher.ClassMatchers;
+import com.huawei.apm.core.agent.matcher.PrefixMatcher;
+import com.huawei.apm.core.agent.matcher.TypeHierarchyCache;
+
+/**
+ * EnhanceDefinitionIndex Tester.
+ */
+public class EnhanceDefinitionIndexTest {
+    private static final TypeDescription ARRAY_LIST = TypeDescription.ForLoadedType.of(ArrayList.class);
+
+    private EnhanceDefinitionIndex index;
+
+    @Before
+    public void before() {
+        index = new EnhanceDefinitionIndex();
+    }
+
+    @Test
+    public void testNameAndPrefix() {
+        final EnhanceDefinition named = definition(ClassMatchers.named("java.util.ArrayList"));
+        final EnhanceDefinition multi = definition(ClassMatchers.multiClass("java.util.HashMap", "java.util.ArrayList"));
+        final EnhanceDefinition prefix = definition(ClassMatchers.startWith("java.util."));
+        final EnhanceDefinition otherPrefix = definition(ClassMatchers.startWith("java.util.concurrent."));
+        index.add(prefix);
+        index.add(named);
+        index.add(otherPrefix);
+        index.add(multi);
+        Assert.assertTrue(index.hasMatch(ARRAY_LIST, null));
+        Assert.assertEquals(Arrays.asList(prefix, named, multi), index.findMatches(ARRAY_LIST, null));
+        Assert.assertFalse(index.hasMatch(TypeDescription.ForLoadedType.of(String.class), null));
+    }
+
+    @Test
+    public void testRootPrefix() {
+        final EnhanceDefinition root = definition(new PrefixMatcher("java.") {
+            @Override
+            public String getPrefix() {
+                return "";
+            }
+        });
+        final EnhanceDefinition whole = definition(ClassMatchers.startWith("java.util.ArrayList"));
+        index.add(whole);
+        index.add(root);
+        Assert.assertTrue(index.hasMatch(TypeDescription.ForLoadedType.of(String.class), null));
+        Assert.assertEquals(Arrays.asList(root), index.findMatches(TypeDescription.ForLoadedType.of(String.class),
+                null));
+        Assert.assertEquals(Arrays.asList(whole, root), index.findMatches(ARRAY_LIST, null));
+    }
+
+    @Test
+    public void testSuperTypes() {
+        final EnhanceDefinition all = definition(ClassMatchers.hasSuperTypes(List.class, RandomAccess.class));
+        final EnhanceDefinition abstractList = definition(ClassMatchers.hasSuperTypes(AbstractList.class));
+        final EnhanceDefinition missing = definition(ClassMatchers.hasSuperTypes(List.class, Runnable.class));
+        index.add(all);
+        index.add(abstractList);
+        index.add(missing);
+        Assert.assertEquals(Arrays.asList(all, abstractList), index.findMatches(ARRAY_LIST, null));
+        Assert.assertTrue(index.findMatches(TypeDescription.ForLoadedType.of(Serializable.class), null).isEmpty());
+    }
+
+    @Test
+    public void testAnnotations() {
+        final EnhanceDefinition annotated = definition(ClassMatchers.annotationWith(Deprecated.class));
+        index.add(annotated);
+        Assert.assertTrue(index.hasMatch(TypeDescription.ForLoadedType.of(DeprecatedType.class), null));
+        Assert.assertFalse(index.hasMatch(ARRAY_LIST, null));
+    }
+
+    @Test
+    public void testTypeHierarchyCache() {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final double hitRate = TypeHierarchyCache.getHitRate();
+        final Set<String> names = TypeHierarchyCache.getSuperTypeNames(ARRAY_LIST, classLoader);
+        Assert.assertTrue(names.containsAll(Arrays.asList("java.util.ArrayList", "java.util.AbstractList",
+                "java.util.List", "java.util.Collection", "java.lang.Iterable", "java.lang.Object")));
+        Assert.assertSame(names, TypeHierarchyCache.getSuperTypeNames(ARRAY_LIST, classLoader));
+        Assert.assertTrue(TypeHierarchyCache.getSuperTypeNames(TypeDescription.ForLoadedType.of(LinkedList.class),
+                classLoader).contains("java.util.AbstractList"));
+        Assert.assertTrue(TypeHierarchyCache.getHitRate() > hitRate);
+
+        // 按类加载器隔离，其他类加载器重新解析
+        final ClassLoader other = new URLClassLoader(new URL[0], classLoader);
+        final Set<String> reloaded = TypeHierarchyCache.getSuperTypeNames(ARRAY_LIST, other);
+        Assert.assertNotSame(names, reloaded);
+        Assert.assertEquals(names, reloaded);
+    }
+
+    @Test
+    public void testTypeHierarchyCacheGenerations() {
+        final ClassLoader classLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        final Set<String> names = TypeHierarchyCache.getSuperTypeNames(ARRAY_LIST, classLoader);
+        // 写满多代后，持续被访问的类型仍然命中
+        for (int i = 0; i < 20000; i++) {
+            TypeHierarchyCache.getAnnotationNames(ARRAY_LIST, classLoader);
+            TypeHierarchyCache.getSuperTypeNames(new TypeDescription.Latent("test.Type" + i, 0,
+                    TypeDescription.Generic.OBJECT), classLoader);
+            if (i % 1000 == 0) {
+                Assert.assertSame(names, TypeHierarchyCache.getSuperTypeNames(ARRAY_LIST, classLoader));
+            }
+        }
+    }
+
+    private EnhanceDefinition definition(final ClassMatcher matcher) {
+        return new EnhanceDefinition() {
+            @Override
+            public ClassMatcher enhanceClass() {
+                return matcher;
+            }
+
+            @Override
+            public MethodInterceptPoint[] getMethodInterceptPoints() {
+                return new MethodInterceptPoint[0];
+            }
+        };
+    }
+
+    @Deprecated
+    private static class DeprecatedType {
+    }
+}
@@ -0,0 +1,152 @@
+package com.huawei.apm.core.agent.enhancer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.apm.core.agent.common.BeforeResult;
+import com.huawei.apm.core.agent.common.OverrideArgumentsCall;
+import com.huawei.apm.core.agent.interceptor.InstanceMethodInterceptor;
+
+/**
+ * InstanceMethodEnhancer Tester.
+ */
+public class InstanceMethodEnhancerTest {
+    private Method method;
+
+    private OverrideArgumentsCall callable;
+
+    private List<String> events;
+
+    @Before
+    public void before() throws NoSuchMethodException {
+        method = String.class.getMethod("toString");
+        callable = new OverrideArgumentsCall() {
+            @Override
+            public Object call(Object[] arguments) {
+                events.add("call " + arguments[0]);
+                return arguments[0];
+            }
+        };
+        events = new ArrayList<String>();
+    }
+
+    /**
+     * 拦截器中再次进入被增强方法时，外层调用的上下文和前置结果不受内层影响
+     */
+    @Test
+    public void testReentrantCall() throws Throwable {
+        final RecordInterceptor inner = new RecordInterceptor("inner", null);
+        final InstanceMethodEnhancer innerEnhancer = new InstanceMethodEnhancer(null,
+                Arrays.<InstanceMethodInterceptor>asList(inner));
+        final InstanceMethodInterceptor reentrant = new RecordInterceptor("outer", null) {
+            @Override
+            public void before(Object obj, Method method, Object[] arguments, BeforeResult beforeResult)
+                    throws Exception {
+                super.before(obj, method, arguments, beforeResult);
+                try {
+                    innerEnhancer.intercept("innerObj", method, callable, new Object[]{"innerArg"});
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            }
+        };
+        final InstanceMethodEnhancer outerEnhancer = new InstanceMethodEnhancer(null,
+                Arrays.asList(reentrant, new RecordInterceptor("second", null)));
+        final Object result = outerEnhancer.intercept("outerObj", method, callable, new Object[]{"outerArg"});
+        Assert.assertEquals("outerArg", result);
+        Assert.assertEquals(Arrays.asList(
+                "outer before outerObj outerArg",
+                "inner before innerObj innerArg",
+                "call innerArg",
+                "inner after innerObj innerArg",
+                "second before outerObj outerArg",
+                "call outerArg",
+                "second after outerObj outerArg",
+                "outer after outerObj outerArg"), events);
+    }
+
+    /**
+     * 复用的前置结果在下一次调用前被重置
+     */
+    @Test
+    public void testBeforeResultReset() throws Throwable {
+        final InstanceMethodEnhancer skipEnhancer = new InstanceMethodEnhancer(null,
+                Arrays.<InstanceMethodInterceptor>asList(new RecordInterceptor("skip", "skipped")));
+        final InstanceMethodEnhancer passEnhancer = new InstanceMethodEnhancer(null,
+                Arrays.<InstanceMethodInterceptor>asList(new RecordInterceptor("pass", null)));
+        Assert.assertEquals("skipped", skipEnhancer.intercept("obj", method, callable, new Object[]{"arg"}));
+        Assert.assertEquals("arg", passEnhancer.intercept("obj", method, callable, new Object[]{"arg"}));
+        Assert.assertEquals(Arrays.asList(
+                "skip before obj arg",
+                "skip after obj arg",
+                "pass before obj arg",
+                "call arg",
+                "pass after obj arg"), events);
+    }
+
+    /**
+     * 原方法抛出异常后，后续调用仍然从栈底取用上下文
+     */
+    @Test
+    public void testThrowingCall() throws Throwable {
+        final InstanceMethodEnhancer enhancer = new InstanceMethodEnhancer(null,
+                Arrays.<InstanceMethodInterceptor>asList(new RecordInterceptor("record", null)));
+        final OverrideArgumentsCall throwing = new OverrideArgumentsCall() {
+            @Override
+            public Object call(Object[] arguments) {
+                throw new IllegalArgumentException(String.valueOf(arguments[0]));
+            }
+        };
+        try {
+            enhancer.intercept("obj", method, throwing, new Object[]{"arg"});
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("arg", e.getMessage());
+        }
+        Assert.assertEquals("next", enhancer.intercept("obj", method, callable, new Object[]{"next"}));
+        Assert.assertEquals(Arrays.asList(
+                "record before obj arg",
+                "record onThrow obj arg",
+                "record after obj arg",
+                "record before obj next",
+                "call next",
+                "record after obj next"), events);
+    }
+
+    private class RecordInterceptor implements InstanceMethodInterceptor {
+        private final String name;
+
+        private final Object skipResult;
+
+        RecordInterceptor(String name, Object skipResult) {
+            this.name = name;
+            this.skipResult = skipResult;
+        }
+
+        @Override
+        public void before(Object obj, Method method, Object[] arguments, BeforeResult beforeResult)
+                throws Exception {
+            events.add(name + " before " + obj + " " + arguments[0]);
+            if (skipResult != null) {
+                beforeResult.setResult(skipResult);
+            }
+        }
+
+        @Override
+        public Object after(Object obj, Method method, Object[] arguments, Object result) {
+            events.add(name + " after " + obj + " " + arguments[0]);
+            return result;
+        }
+
+        @Override
+        public void onThrow(Object obj, Method method, Object[] arguments, Throwable t) {
+            events.add(name + " onThrow " + obj + " " + arguments[0]);
+        }
+    }
+}
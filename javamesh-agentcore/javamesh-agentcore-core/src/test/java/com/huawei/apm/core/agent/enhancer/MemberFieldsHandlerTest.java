@@ -0,0 +1,66 @@
+package com.huawei.apm.core.agent.enhancer;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.huawei.apm.core.lubanops.bootstrap.AttributeAccess;
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * MemberFieldsHandler Tester.
+ */
+public class MemberFieldsHandlerTest {
+    @BeforeClass
+    public static void beforeClass() {
+        LogFactory.setLogger(Logger.getLogger(MemberFieldsHandlerTest.class.getName()));
+    }
+
+    /**
+     * 生成的getLopsFileds按定义顺序返回字段值，基本类型装箱，不存在的字段以null占位
+     */
+    @Test
+    public void testGetLopsFileds() throws Exception {
+        final Class<?> enhanced = new ByteBuddy()
+                .redefine(Target.class)
+                .implement(AttributeAccess.class)
+                .method(named("getLopsFileds"))
+                .intercept(new MemberFieldsHandler(Arrays.asList("count", "missing", "name", "shared")))
+                .make()
+                .load(Target.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+        final Object[] fields = ((AttributeAccess) enhanced.newInstance()).getLopsFileds();
+        Assert.assertArrayEquals(new Object[] {3, null, "target", "static"}, fields);
+    }
+
+    /**
+     * 未定义字段时返回空数组
+     */
+    @Test
+    public void testNoFields() throws Exception {
+        final Class<?> enhanced = new ByteBuddy()
+                .redefine(Target.class)
+                .implement(AttributeAccess.class)
+                .method(named("getLopsFileds"))
+                .intercept(new MemberFieldsHandler(null))
+                .make()
+                .load(Target.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+        Assert.assertEquals(0, ((AttributeAccess) enhanced.newInstance()).getLopsFileds().length);
+    }
+
+    public static class Target {
+        private static String shared = "static";
+
+        private final int count = 3;
+
+        private String name = "target";
+    }
+}
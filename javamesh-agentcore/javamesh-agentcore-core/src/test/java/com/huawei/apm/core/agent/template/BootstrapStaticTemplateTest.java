@@ -0,0 +1,115 @@
+package com.huawei.apm.core.agent.template;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.apm.bootstrap.BootstrapAdviceRegistry;
+
+/**
+ * BootstrapStaticTemplate Tester.
+ */
+public class BootstrapStaticTemplateTest {
+    private static final String ADVICE_CLASS_NAME = "template.BootstrapStaticTemplateTest";
+
+    private static final List<String> EVENTS = new ArrayList<String>();
+
+    private static volatile boolean skip;
+
+    private Method echo;
+
+    @Before
+    public void before() throws Exception {
+        EVENTS.clear();
+        skip = false;
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle enterHandle = lookup.findStatic(BootstrapStaticTemplateTest.class, "enter",
+                MethodType.methodType(boolean.class, Class.class, Object[].class, ListIterator.class));
+        final MethodHandle exitHandle = lookup.findStatic(BootstrapStaticTemplateTest.class, "exit",
+                MethodType.methodType(Object.class, Class.class, Object[].class, Object.class, Throwable.class,
+                        ListIterator.class));
+        final int adviceIndex = BootstrapAdviceRegistry.register(ADVICE_CLASS_NAME,
+                Collections.singletonList("interceptor"), enterHandle, exitHandle);
+
+        // 与BootstrapTransformer相同，下标通过AdviceIndex绑定为常量内联到被增强方法中
+        final Class<?> enhanced = new ByteBuddy()
+                .redefine(Target.class)
+                .visit(Advice.withCustomMapping().bind(AdviceIndex.class, adviceIndex)
+                        .to(BootstrapStaticTemplate.class).on(ElementMatchers.named("echo")))
+                .make()
+                .load(BootstrapStaticTemplateTest.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+        Assert.assertNotSame(Target.class, enhanced);
+        echo = enhanced.getMethod("echo", String.class);
+    }
+
+    @After
+    public void after() {
+        BootstrapAdviceRegistry.unregister(ADVICE_CLASS_NAME);
+    }
+
+    /**
+     * 内联的advice按绑定的下标调用注册的方法句柄，可以修改参数和返回值
+     */
+    @Test
+    public void testDispatch() throws Exception {
+        Assert.assertEquals("before-x-after", echo.invoke(null, "x"));
+        Assert.assertEquals(2, EVENTS.size());
+        Assert.assertEquals("enter " + Target.class.getName() + " interceptor", EVENTS.get(0));
+        Assert.assertEquals("exit before-x", EVENTS.get(1));
+    }
+
+    /**
+     * 前置方法句柄返回false时跳过原方法
+     */
+    @Test
+    public void testSkip() throws Exception {
+        skip = true;
+        Assert.assertEquals("null-after", echo.invoke(null, "x"));
+    }
+
+    /**
+     * 槽位释放后不再拦截，原方法正常执行
+     */
+    @Test
+    public void testUnregistered() throws Exception {
+        BootstrapAdviceRegistry.unregister(ADVICE_CLASS_NAME);
+        Assert.assertEquals("x", echo.invoke(null, "x"));
+        Assert.assertTrue(EVENTS.isEmpty());
+    }
+
+    private static boolean enter(Class<?> cls, Object[] arguments, ListIterator<?> interceptorItr) {
+        EVENTS.add("enter " + cls.getName() + " " + interceptorItr.next());
+        arguments[0] = "before-" + arguments[0];
+        return !skip;
+    }
+
+    private static Object exit(Class<?> cls, Object[] arguments, Object result, Throwable throwable,
+            ListIterator<?> interceptorItr) {
+        EVENTS.add("exit " + arguments[0]);
+        return result + "-after";
+    }
+
+    /**
+     * 被增强类
+     */
+    public static class Target {
+        public static String echo(String value) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.huawei.apm.core.agent.template;
+
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * OriginMethodResolver Tester.
+ */
+public class OriginMethodResolverTest {
+    /**
+     * 协变返回值生成的桥接方法与原方法同名同参，解析时应返回原方法
+     */
+    @Test
+    public void testSkipBridge() {
+        final Method method = OriginMethodResolver.resolve(Child.class, "get", new String[0]);
+        Assert.assertNotNull(method);
+        Assert.assertFalse(method.isBridge());
+        Assert.assertEquals(String.class, method.getReturnType());
+    }
+
+    /**
+     * 参数类型不匹配时返回null
+     */
+    @Test
+    public void testParamTypesMismatch() {
+        Assert.assertNotNull(OriginMethodResolver.resolve(Child.class, "set", new String[]{"java.lang.String"}));
+        Assert.assertNull(OriginMethodResolver.resolve(Child.class, "set", new String[]{"java.lang.Object"}));
+        Assert.assertNull(OriginMethodResolver.resolve(Child.class, "set", new String[0]));
+    }
+
+    /**
+     * 父类
+     */
+    public static class Parent {
+        public Object get() {
+            return null;
+        }
+    }
+
+    /**
+     * 子类，协变返回值
+     */
+    public static class Child extends Parent {
+        @Override
+        public String get() {
+            return "child";
+        }
+
+        public void set(String value) {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.huawei.apm.core.lubanops.bootstrap.collector.api;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+
+/**
+ * AbstractPrimaryKeyValueAggregator Tester.
+ */
+public class AbstractPrimaryKeyValueAggregatorTest {
+    private CountAggregator aggregator;
+
+    @BeforeClass
+    public static void beforeClass() {
+        LogFactory.setLogger(Logger.getLogger(AbstractPrimaryKeyValueAggregatorTest.class.getName()));
+    }
+
+    @Before
+    public void before() {
+        aggregator = new CountAggregator();
+        aggregator.setMaxRowCount(2);
+    }
+
+    /**
+     * 超过上限的主键计入默认主键，收割出的总量与记录次数一致；聚合器标记为已满但仍照常采集
+     */
+    @Test
+    public void testOverflowKeepsExactTotal() {
+        record("a", 5);
+        record("b", 3);
+        record("c", 2);
+        record("d", 1);
+        Assert.assertTrue(aggregator.isFull());
+        Assert.assertTrue(aggregator.isCollectAfterFull());
+        Assert.assertEquals(3, aggregator.size());
+
+        Map<String, Long> rows = harvest();
+        Assert.assertEquals(Long.valueOf(5), rows.get("a"));
+        Assert.assertEquals(Long.valueOf(3), rows.get("b"));
+        Assert.assertEquals(Long.valueOf(3), rows.get(AbstractPrimaryKeyValueAggregator.DEFAULT_KEY));
+        Assert.assertEquals(11L, sum(rows));
+    }
+
+    /**
+     * 超过上限后访问更多的主键把最冷的主键标记为换出，下次收割空出位置后换入
+     */
+    @Test
+    public void testHotKeyReplacesColdKey() {
+        record("a", 5);
+        record("b", 1);
+        record("c", 1);
+        // 开始统计候选主键的周期不换入换出
+        Map<String, Long> rows = harvest();
+        Assert.assertEquals(Long.valueOf(1), rows.get("b"));
+        Assert.assertEquals(Long.valueOf(1), rows.get(AbstractPrimaryKeyValueAggregator.DEFAULT_KEY));
+
+        // 下一周期 c 成为热点，b 变冷
+        record("a", 4);
+        record("c", 3);
+        record("b", 1);
+        rows = harvest();
+        Assert.assertEquals(Long.valueOf(1), rows.get("b"));
+        Assert.assertEquals(Long.valueOf(3), rows.get(AbstractPrimaryKeyValueAggregator.DEFAULT_KEY));
+        Assert.assertEquals(8L, sum(rows));
+
+        // b 正在换出，数据与 c 一起记入默认主键
+        record("c", 2);
+        record("b", 1);
+        rows = harvest();
+        Assert.assertNull(rows.get("b"));
+        Assert.assertNull(rows.get("c"));
+        Assert.assertEquals(Long.valueOf(3), rows.get(AbstractPrimaryKeyValueAggregator.DEFAULT_KEY));
+
+        record("c", 2);
+        record("b", 1);
+        rows = harvest();
+        Assert.assertEquals(Long.valueOf(2), rows.get("c"));
+        Assert.assertNull(rows.get("b"));
+        Assert.assertEquals(Long.valueOf(1), rows.get(AbstractPrimaryKeyValueAggregator.DEFAULT_KEY));
+    }
+
+    /**
+     * 热点不断变化时，每次收割最多输出上限加默认主键的行数，且总量与记录次数一致
+     */
+    @Test
+    public void testHarvestedRowsAreBounded() {
+        for (int period = 0; period < 10; period++) {
+            long total = 0;
+            for (int i = 0; i < 6; i++) {
+                int times = (i + period) % 6 + 1;
+                record("k" + i, times);
+                total += times;
+            }
+            List<MonitorDataRow> rows = aggregator.harvest();
+            Assert.assertTrue(rows.size() <= aggregator.getMaxRowCount() + 1);
+            long harvested = 0;
+            for (MonitorDataRow row : rows) {
+                harvested += (Long) row.get("count");
+            }
+            Assert.assertEquals(total, harvested);
+        }
+    }
+
+    /**
+     * 清空后重新按上限接纳主键
+     */
+    @Test
+    public void testClear() {
+        record("a", 1);
+        record("b", 1);
+        record("c", 1);
+        aggregator.clear();
+        record("c", 1);
+        record("d", 1);
+        Map<String, Long> rows = harvest();
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(Long.valueOf(1), rows.get("c"));
+        Assert.assertEquals(Long.valueOf(1), rows.get("d"));
+    }
+
+    private void record(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            aggregator.getValue(key).count.incrementAndGet();
+        }
+    }
+
+    private Map<String, Long> harvest() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        List<MonitorDataRow> rows = aggregator.harvest();
+        if (rows == null) {
+            return result;
+        }
+        for (MonitorDataRow row : rows) {
+            Long count = (Long) row.get("count");
+            if (count > 0) {
+                String key = (String) row.get("key");
+                Long old = result.get(key);
+                result.put(key, old == null ? count : old + count);
+            }
+        }
+        return result;
+    }
+
+    private static long sum(Map<String, Long> rows) {
+        long total = 0;
+        for (Long count : rows.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static class CountStats implements StatsBase {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public MonitorDataRow getStatus() {
+            MonitorDataRow row = new MonitorDataRow();
+            row.put("count", count.get());
+            return row;
+        }
+
+        @Override
+        public MonitorDataRow harvest() {
+            MonitorDataRow row = new MonitorDataRow();
+            row.put("count", count.getAndSet(0));
+            return row;
+        }
+    }
+
+    private static class CountAggregator extends SinglePrimaryKeyAggregator<CountStats> {
+        @Override
+        protected CountStats newValue() {
+            return new CountStats();
+        }
+
+        @Override
+        protected String primaryKey() {
+            return "key";
+        }
+
+        @Override
+        public String getName() {
+            return "count";
+        }
+    }
+}
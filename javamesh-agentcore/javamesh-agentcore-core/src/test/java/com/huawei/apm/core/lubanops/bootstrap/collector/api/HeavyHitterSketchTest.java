@@ -0,0 +1,82 @@
+package com.huawei.apm.core.lubanops.bootstrap.collector.api;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * HeavyHitterSketch Tester.
+ */
+public class HeavyHitterSketchTest {
+    /**
+     * 分片数不超过并发度，且每个分片保留最小容量
+     */
+    @Test
+    public void testShardCount() {
+        Assert.assertEquals(1, new HeavyHitterSketch<String>(1024, 1).getShardCount());
+        Assert.assertEquals(8, new HeavyHitterSketch<String>(1024, 6).getShardCount());
+        Assert.assertEquals(16, new HeavyHitterSketch<String>(1024, 64).getShardCount());
+        Assert.assertEquals(2, new HeavyHitterSketch<String>(16, 64).getShardCount());
+    }
+
+    /**
+     * 超过容量时热点主键仍被保留，保底次数不超过真实次数
+     */
+    @Test
+    public void testHeavyHitterSurvives() {
+        HeavyHitterSketch<String> sketch = new HeavyHitterSketch<String>(16, 1);
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer("hot");
+            sketch.offer("cold" + i);
+        }
+        List<HeavyHitterSketch.Hit<String>> hits = sketch.drain();
+        Assert.assertEquals("hot", hits.get(0).getKey());
+        Assert.assertTrue(hits.get(0).getCount() <= 1000);
+        Assert.assertTrue(hits.get(0).getCount() > 900);
+        Assert.assertTrue(sketch.drain().isEmpty());
+    }
+
+    /**
+     * 多线程并发记录，主键数未超过容量时各主键的次数精确
+     */
+    @Test
+    public void testConcurrentOffer() throws InterruptedException {
+        final HeavyHitterSketch<String> sketch = new HeavyHitterSketch<String>(256, 8);
+        final int threadCount = 8;
+        final int times = 6400;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < times; i++) {
+                        sketch.offer("key" + (i % 64));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (HeavyHitterSketch.Hit<String> hit : sketch.drain()) {
+            counts.put(hit.getKey(), hit.getCount());
+        }
+        Assert.assertEquals(64, counts.size());
+        for (Long count : counts.values()) {
+            Assert.assertEquals(Long.valueOf(threadCount * times / 64), count);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.huawei.apm.core.lubanops.bootstrap.plugin.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LatencyHistogram单元测试
+ */
+public class LatencyHistogramTest {
+    /**
+     * 测试桶下标与桶边界互逆，且相对误差不超过精度
+     */
+    @Test
+    public void testBucketBoundary() {
+        int precision = LatencyHistogram.DEFAULT_PRECISION;
+        for (long value = 0; value < (1L << 32); value = value * 3 + 1) {
+            int index = LatencyHistogram.bucketIndex(precision, value);
+            long lowest = LatencyHistogram.lowestEquivalentValue(precision, index);
+            long highest = LatencyHistogram.highestEquivalentValue(precision, index);
+            Assert.assertTrue(lowest <= value && value <= highest);
+            Assert.assertTrue(highest - lowest <= (value >> precision));
+        }
+        Assert.assertEquals(LatencyHistogram.bucketCount(precision) - 1,
+                LatencyHistogram.bucketIndex(precision, Long.MAX_VALUE));
+    }
+
+    /**
+     * 测试分位数、区间计数、合并和编解码
+     */
+    @Test
+    public void testSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram(7);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordValue(i * 100L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.harvest();
+        Assert.assertEquals(1000, snapshot.getTotalCount());
+        Assert.assertEquals(0, histogram.snapshot().getTotalCount());
+        Assert.assertEquals(50000D, snapshot.getValueAtPercentile(50), 50000D / 128);
+        Assert.assertEquals(99000D, snapshot.getValueAtPercentile(99), 99000D / 128);
+        Assert.assertEquals(99, snapshot.getCountBelow(10000));
+
+        LatencyHistogram.Snapshot decoded = LatencyHistogram.Snapshot.decode(snapshot.encode());
+        Assert.assertEquals(snapshot.getTotalCount(), decoded.getTotalCount());
+        Assert.assertEquals(snapshot.getValueAtPercentile(99.9), decoded.getValueAtPercentile(99.9));
+
+        LatencyHistogram.Snapshot merged = snapshot.merge(decoded);
+        Assert.assertEquals(2000, merged.getTotalCount());
+        Assert.assertEquals(snapshot.getValueAtPercentile(90), merged.getValueAtPercentile(90));
+    }
+
+    /**
+     * 测试只覆盖部分分段的快照的区间计数、合并和编解码
+     */
+    @Test
+    public void testSparseSnapshot() {
+        LatencyHistogram low = new LatencyHistogram();
+        LatencyHistogram high = new LatencyHistogram();
+        Assert.assertEquals(0, low.harvest().getTotalCount());
+        for (int i = 0; i < 10; i++) {
+            low.recordValue(2000L);
+            high.recordValue(3000000L);
+        }
+        LatencyHistogram.Snapshot lowSnapshot = low.snapshot();
+        Assert.assertEquals(0, lowSnapshot.getCountBelow(1000L));
+        Assert.assertEquals(10, lowSnapshot.getCountBelow(1L << 30));
+
+        LatencyHistogram.Snapshot merged = high.harvest().merge(lowSnapshot);
+        Assert.assertEquals(20, merged.getTotalCount());
+        Assert.assertEquals(10, merged.getCountBelow(10000L));
+        LatencyHistogram.Snapshot decoded = LatencyHistogram.Snapshot.decode(merged.encode());
+        Assert.assertEquals(merged.encode(), decoded.encode());
+        Assert.assertEquals(merged.getValueAtPercentile(50), decoded.getValueAtPercentile(50));
+        Assert.assertEquals(merged.getValueAtPercentile(99), decoded.getValueAtPercentile(99));
+        Assert.assertEquals(0, high.snapshot().getTotalCount());
+    }
+}
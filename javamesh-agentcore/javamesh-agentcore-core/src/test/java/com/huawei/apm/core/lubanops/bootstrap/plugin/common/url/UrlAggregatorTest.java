@@ -0,0 +1,136 @@
+package com.huawei.apm.core.lubanops.bootstrap.plugin.common.url;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.apm.core.lubanops.bootstrap.config.Stats;
+import com.huawei.apm.core.lubanops.bootstrap.sample.SampleConfig;
+import com.huawei.apm.core.lubanops.bootstrap.sample.SampleType;
+
+/**
+ * UrlAggregator Tester.
+ */
+public class UrlAggregatorTest {
+    private static final String METHOD = "GET";
+
+    private TestUrlAggregator aggregator;
+
+    @Before
+    public void before() {
+        aggregator = new TestUrlAggregator();
+        aggregator.setErrorRequestTraceCounStats(new Stats(2, 2, 2, 1));
+        aggregator.setSlowRequestTraceCountStats(new Stats(0, 0, 0, 0));
+        aggregator.setRequestTranceCountStats(new Stats(0, 0, 0, 1));
+    }
+
+    /**
+     * 自动采样按错误url、慢url、普通url分别使用各自的阈值
+     */
+    @Test
+    public void testAutomatic() {
+        aggregator.setErrorUrl(Collections.singletonList("/error"));
+        aggregator.setSlowUrl(Arrays.asList("/slow", "/error"));
+        aggregator.stats("/error");
+        aggregator.stats("/slow");
+        aggregator.stats("/normal");
+        SampleConfig config = config(SampleType.automatic);
+
+        // 错误url优先，全局阈值2个
+        Assert.assertTrue(aggregator.sample("/error", METHOD, config));
+        Assert.assertTrue(aggregator.sample("/error", METHOD, config));
+        Assert.assertFalse(aggregator.sample("/error", METHOD, config));
+        Assert.assertFalse(aggregator.sample("/slow", METHOD, config));
+        // 普通url全局阈值为0，每个url保底1个
+        Assert.assertTrue(aggregator.sample("/normal", METHOD, config));
+        Assert.assertFalse(aggregator.sample("/normal", METHOD, config));
+        // 没有统计数据的url不采样
+        Assert.assertFalse(aggregator.sample("/unknown", METHOD, config));
+    }
+
+    /**
+     * 按频率采样，收割后重新计数，清空后使用新的统计对象
+     */
+    @Test
+    public void testFrequency() {
+        SampleConfig config = config(SampleType.frequency);
+        config.setPeriodCount("3");
+        UrlStats stats = aggregator.stats("/a");
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+        Assert.assertFalse(aggregator.sample("/a", METHOD, config));
+        Assert.assertEquals(2, stats.getSampleCount().get());
+
+        aggregator.harvest();
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+
+        aggregator.clear();
+        UrlStats newStats = aggregator.stats("/a");
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+        Assert.assertEquals(1, newStats.getSampleCount().get());
+    }
+
+    /**
+     * 删除主键后缓存失效，重新创建的统计对象重新计数
+     */
+    @Test
+    public void testRemoveValue() {
+        SampleConfig config = config(SampleType.automatic);
+        UrlStats stats = aggregator.stats("/a");
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+        Assert.assertFalse(aggregator.sample("/a", METHOD, config));
+
+        aggregator.remove("/a");
+        Assert.assertFalse(aggregator.sample("/a", METHOD, config));
+        UrlStats newStats = aggregator.stats("/a");
+        Assert.assertNotSame(stats, newStats);
+        Assert.assertTrue(aggregator.sample("/a", METHOD, config));
+        Assert.assertEquals(1, newStats.getSampleCount().get());
+        Assert.assertEquals(1, stats.getSampleCount().get());
+    }
+
+    private static SampleConfig config(SampleType type) {
+        SampleConfig config = new SampleConfig();
+        config.setSampleType(type.value());
+        return config;
+    }
+
+    private static class TestUrlAggregator extends UrlAggregator {
+        private UrlStats stats(String url) {
+            return getValue(url, METHOD);
+        }
+
+        private void remove(String url) {
+            removeValue(url, METHOD);
+        }
+
+        @Override
+        protected int primaryKeyLength() {
+            return 2;
+        }
+
+        @Override
+        protected List<String> primaryKey() {
+            return Arrays.asList("url", "method");
+        }
+
+        @Override
+        protected UrlStats newValue() {
+            return new UrlStats();
+        }
+
+        @Override
+        public String getUrlKey() {
+            return "url";
+        }
+
+        @Override
+        public String getName() {
+            return "url";
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.huawei.apm.core.lubanops.integration.transport.netty.client;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.huawei.apm.core.lubanops.integration.transport.netty.pojo.Message;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import net.jpountz.lz4.LZ4Factory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sender单元测试
+ */
+public class SenderTest {
+    private static final int BATCH_COUNT = 4;
+
+    private File spillDir;
+
+    private NettyClient client;
+
+    private BoundedRingBuffer<Message.ServiceData> queue;
+
+    private SpillStore spillStore;
+
+    private TransportStatistics statistics;
+
+    private Sender sender;
+
+    @Before
+    public void setUp() {
+        spillDir = new File(System.getProperty("java.io.tmpdir"), "sender-test-" + System.nanoTime());
+        client = mock(NettyClient.class);
+        queue = new BoundedRingBuffer<>(16);
+        spillStore = new SpillStore(spillDir, 1024 * 1024);
+        statistics = new TransportStatistics();
+        sender = new Sender(client, queue, spillStore, statistics, BATCH_COUNT, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        while (spillStore.hasData()) {
+            spillStore.pollSegment();
+        }
+        spillStore.close();
+        deleteDirectory(spillStore.getDirectory());
+        deleteDirectory(spillDir);
+    }
+
+    /**
+     * 测试环形队列容量和先进先出顺序
+     */
+    @Test
+    public void testRingBuffer() {
+        Assert.assertEquals(16, queue.capacity());
+        for (int i = 0; i < queue.capacity(); i++) {
+            Assert.assertTrue(queue.offer(serviceData(i)));
+        }
+        Assert.assertFalse(queue.offer(serviceData(-1)));
+        for (int i = 0; i < queue.capacity(); i++) {
+            Assert.assertEquals(serviceData(i), queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    /**
+     * 测试连接可写时按批次压缩发送
+     */
+    @Test
+    public void testSendBatch() throws InvalidProtocolBufferException {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        when(client.getChannel()).thenReturn(channel);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(serviceData(i));
+        }
+        sender.run();
+        List<Message.ServiceData> received = readAll(channel);
+        Assert.assertEquals(6, received.size());
+        Assert.assertEquals(serviceData(5), received.get(5));
+        Assert.assertEquals(2, statistics.getBatches());
+        Assert.assertFalse(spillStore.hasData());
+    }
+
+    /**
+     * 测试连接不可用时溢写，重连后回放
+     */
+    @Test
+    public void testSpillAndReplay() throws InvalidProtocolBufferException {
+        for (int i = 0; i < 6; i++) {
+            queue.offer(serviceData(i));
+        }
+        sender.run();
+        Assert.assertEquals(2, statistics.getSpilled());
+        Assert.assertTrue(spillStore.hasData());
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        when(client.getChannel()).thenReturn(channel);
+        queue.offer(serviceData(6));
+        sender.run();
+        List<Message.ServiceData> received = readAll(channel);
+        Assert.assertEquals(7, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            Assert.assertEquals(serviceData(i), received.get(i));
+        }
+        Assert.assertEquals(2, statistics.getReplayed());
+        Assert.assertFalse(spillStore.hasData());
+    }
+
+    /**
+     * 测试同一目录已被占用时使用其他目录，释放后重新打开原目录可以回放其中的数据
+     */
+    @Test
+    public void testSpillDirectoryIsExclusive() {
+        Assert.assertEquals(spillDir, spillStore.getDirectory());
+        Assert.assertTrue(spillStore.append(new byte[] {1, 2, 3}));
+
+        SpillStore other = new SpillStore(spillDir, 1024 * 1024);
+        try {
+            Assert.assertNotEquals(spillDir, other.getDirectory());
+            Assert.assertFalse(other.hasData());
+        } finally {
+            other.close();
+            deleteDirectory(other.getDirectory());
+        }
+
+        spillStore.close();
+        spillStore = new SpillStore(spillDir, 1024 * 1024);
+        Assert.assertEquals(spillDir, spillStore.getDirectory());
+        Assert.assertTrue(spillStore.hasData());
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, spillStore.pollSegment().get(0));
+        Assert.assertFalse(spillStore.hasData());
+    }
+
+    private void deleteDirectory(File directory) {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private List<Message.ServiceData> readAll(EmbeddedChannel channel) throws InvalidProtocolBufferException {
+        List<Message.ServiceData> result = new ArrayList<>();
+        Message.NettyMessage message;
+        while ((message = channel.readOutbound()) != null) {
+            Assert.assertEquals(Message.NettyMessage.MessageType.SERVICE_DATA_BATCH, message.getMessageType());
+            byte[] raw = LZ4Factory.fastestJavaInstance().fastDecompressor()
+                    .decompress(message.getBatchData().toByteArray(), message.getBatchRawLength());
+            result.addAll(Message.ServiceDataBatch.parseFrom(raw).getServiceDataList());
+        }
+        return result;
+    }
+
+    private Message.ServiceData serviceData(int index) {
+        return Message.ServiceData.newBuilder()
+                .setDataType(Message.ServiceData.DataType.LOG)
+                .setData(ByteString.copyFromUtf8("message-" + index))
+                .build();
+    }
+}
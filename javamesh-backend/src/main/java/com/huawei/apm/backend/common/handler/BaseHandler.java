@@ -41,6 +41,7 @@ public abstract class BaseHandler extends SimpleChannelInboundHandler<Message.Ne
 
             // 如果为业务数据进行各自的处理
             case Message.NettyMessage.MessageType.SERVICE_DATA_VALUE:
+            case Message.NettyMessage.MessageType.SERVICE_DATA_BATCH_VALUE:
                 handlerData(ctx, msg);
                 break;
             default:
@@ -55,6 +55,10 @@ public class NettyServer {
     @Value("${netty.port}")
     private int port;
 
+    // 批量数据解压后的字节数上限
+    @Value("${netty.batch.max-raw-length:67108864}")
+    private int maxBatchRawLength;
+
     // kafka配置文件加载
     @Autowired
     private KafkaConf conf;
@@ -89,7 +93,7 @@ public class NettyServer {
                             pipeline.addLast(new ProtobufDecoder(Message.NettyMessage.getDefaultInstance()));
                             pipeline.addLast(new ProtobufVarint32LengthFieldPrepender());
                             pipeline.addLast(new ProtobufEncoder());
-                            pipeline.addLast(new ServerHandler(producer, conf));
+                            pipeline.addLast(new ServerHandler(producer, conf, maxBatchRawLength));
                         }
                     });
 
@@ -4,7 +4,7 @@
 
 package com.huawei.apm.backend.server;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.huawei.apm.backend.common.conf.KafkaConf;
 import com.huawei.apm.backend.common.handler.BaseHandler;
 import com.huawei.apm.backend.common.util.GzipUtils;
@@ -12,14 +12,15 @@ import com.huawei.apm.backend.pojo.Message;
 
 import io.netty.channel.ChannelHandlerContext;
 
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.utils.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-
 /**
  * 网关服务端handler
  *
@@ -36,53 +37,94 @@ public class ServerHandler extends BaseHandler {
     // 随机数最小值
     private static final int MIN_RANDOM = 0;
 
+    // 数据来自客户端，使用带边界检查的解压器
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestJavaInstance().safeDecompressor();
+
     private KafkaProducer<String, Bytes> producer;
 
     private KafkaConf conf;
 
-    public ServerHandler(KafkaProducer<String, Bytes> producer, KafkaConf conf) {
+    // 批量数据解压后的字节数上限
+    private final int maxBatchRawLength;
+
+    public ServerHandler(KafkaProducer<String, Bytes> producer, KafkaConf conf, int maxBatchRawLength) {
         this.producer = producer;
         this.conf = conf;
+        this.maxBatchRawLength = maxBatchRawLength;
     }
 
     @Override
     protected void handlerData(ChannelHandlerContext ctx, Message.NettyMessage msg) {
-        List<Message.ServiceData> serviceDataList = msg.getServiceDataList();
-        for (Message.ServiceData serviceData : serviceDataList) {
-            // 获取NettyMessage中的业务数据
-            ByteString data = serviceData.getData();
-
+        if (msg.getMessageType() == Message.NettyMessage.MessageType.SERVICE_DATA_BATCH) {
+            handlerBatchData(msg);
+            return;
+        }
+        for (Message.ServiceData serviceData : msg.getServiceDataList()) {
             // 解压业务数据
-            byte[] message = GzipUtils.decompress(data.toByteArray());
-            int dataType = serviceData.getDataTypeValue();
-
-            // 此处可扩展消息类型，针对不同消息类型执行相应操作
-            switch (dataType) {
-                // 心跳数据类型
-                case Message.ServiceData.DataType.SERVICE_HEARTBEAT_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicHeartBeat(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.LOG_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicLog(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.PLUGIN_FLOW_CONTROL_DATA_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicFlowControl(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.PLUGIN_FLOW_RECORD_DATA_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicFlowRecord(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.SERVER_MONITOR_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicServerMonitor(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.ORACLE_JVM_MONITOR_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicOracleJvmMonitor(), Bytes.wrap(message)));
-                    break;
-                case Message.ServiceData.DataType.IBM_JVM_MONITOR_VALUE:
-                    producer.send(new ProducerRecord<>(conf.getTopicIbmJvmMonitor(), Bytes.wrap(message)));
-                    break;
-                default:
-                    break;
+            dispatch(serviceData.getDataTypeValue(), GzipUtils.decompress(serviceData.getData().toByteArray()));
+        }
+    }
+
+    /**
+     * 处理批量业务数据，整批LZ4解压后逐条分发，单条业务数据未经gzip压缩
+     * <p>解压前校验客户端声明的原始长度，超过上限的批次直接丢弃，避免按任意长度分配内存
+     *
+     * @param msg 收到的数据
+     */
+    private void handlerBatchData(Message.NettyMessage msg) {
+        final int rawLength = msg.getBatchRawLength();
+        if (rawLength < 0 || rawLength > maxBatchRawLength) {
+            LOGGER.error("Discard batch data with illegal raw length {}, max raw length is {}.", rawLength,
+                    maxBatchRawLength);
+            return;
+        }
+        Message.ServiceDataBatch batch;
+        try {
+            byte[] compressed = msg.getBatchData().toByteArray();
+            byte[] raw = new byte[rawLength];
+            int decompressedLength = DECOMPRESSOR.decompress(compressed, 0, compressed.length, raw, 0, rawLength);
+            if (decompressedLength != rawLength) {
+                LOGGER.error("Discard batch data, raw length {} mismatches decompressed length {}.", rawLength,
+                        decompressedLength);
+                return;
             }
+            batch = Message.ServiceDataBatch.parseFrom(raw);
+        } catch (InvalidProtocolBufferException | RuntimeException e) {
+            LOGGER.error("Exception occurs when decode batch data. Exception info: {}", e);
+            return;
+        }
+        for (Message.ServiceData serviceData : batch.getServiceDataList()) {
+            dispatch(serviceData.getDataTypeValue(), serviceData.getData().toByteArray());
+        }
+    }
+
+    private void dispatch(int dataType, byte[] message) {
+        // 此处可扩展消息类型，针对不同消息类型执行相应操作
+        switch (dataType) {
+            // 心跳数据类型
+            case Message.ServiceData.DataType.SERVICE_HEARTBEAT_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicHeartBeat(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.LOG_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicLog(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.PLUGIN_FLOW_CONTROL_DATA_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicFlowControl(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.PLUGIN_FLOW_RECORD_DATA_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicFlowRecord(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.SERVER_MONITOR_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicServerMonitor(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.ORACLE_JVM_MONITOR_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicOracleJvmMonitor(), Bytes.wrap(message)));
+                break;
+            case Message.ServiceData.DataType.IBM_JVM_MONITOR_VALUE:
+                producer.send(new ProducerRecord<>(conf.getTopicIbmJvmMonitor(), Bytes.wrap(message)));
+                break;
+            default:
+                break;
         }
     }
 
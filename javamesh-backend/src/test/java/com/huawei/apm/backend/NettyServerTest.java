@@ -1,20 +1,32 @@
 package com.huawei.apm.backend;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.huawei.apm.backend.common.conf.KafkaConf;
 import com.huawei.apm.backend.pojo.Message;
 import com.huawei.apm.backend.server.ServerHandler;
 
+import com.google.protobuf.ByteString;
+
 import io.netty.channel.embedded.EmbeddedChannel;
 
+import net.jpountz.lz4.LZ4Factory;
+
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.utils.Bytes;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.jupiter.api.Test;
 
 public class NettyServerTest {
+    private static final int MAX_BATCH_RAW_LENGTH = 1024;
+
     private KafkaProducer<String, Bytes> producer;
 
     private KafkaConf conf;
@@ -30,7 +42,7 @@ public class NettyServerTest {
      */
     @Test
     public void testWriteInBound() {
-        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf));
+        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf, MAX_BATCH_RAW_LENGTH));
         boolean writeInbound = embeddedChannel.writeInbound(Message.ServiceData.newBuilder().build());
         Assert.assertTrue(writeInbound);
         Assert.assertTrue(embeddedChannel.finish());
@@ -44,7 +56,7 @@ public class NettyServerTest {
      */
     @Test
     public void testWriteOutBound() {
-        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf));
+        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf, MAX_BATCH_RAW_LENGTH));
         boolean writeOutBound = embeddedChannel.writeOutbound(Message.ServiceData.newBuilder().build());
         Assert.assertTrue(writeOutBound);
         Assert.assertTrue(embeddedChannel.finish());
@@ -53,4 +65,48 @@ public class NettyServerTest {
         Assert.assertNotNull(object);
     }
 
+    /**
+     * 测试批量数据解压后逐条分发
+     */
+    @Test
+    public void testBatchData() {
+        setUp();
+        when(conf.getTopicLog()).thenReturn("topic-log");
+        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf, MAX_BATCH_RAW_LENGTH));
+        byte[] raw = Message.ServiceDataBatch.newBuilder()
+                .addServiceData(logData("first"))
+                .addServiceData(logData("second"))
+                .build().toByteArray();
+        embeddedChannel.writeInbound(batchMessage(raw, raw.length));
+        verify(producer, times(2)).send(any(ProducerRecord.class));
+    }
+
+    /**
+     * 测试声明的原始长度非法或超过上限时丢弃批次，不按该长度分配内存
+     */
+    @Test
+    public void testRejectIllegalBatchRawLength() {
+        setUp();
+        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ServerHandler(producer, conf, MAX_BATCH_RAW_LENGTH));
+        byte[] raw = Message.ServiceDataBatch.newBuilder().addServiceData(logData("data")).build().toByteArray();
+        embeddedChannel.writeInbound(batchMessage(raw, Integer.MAX_VALUE));
+        embeddedChannel.writeInbound(batchMessage(raw, -1));
+        embeddedChannel.writeInbound(batchMessage(raw, raw.length + 1));
+        verify(producer, never()).send(any(ProducerRecord.class));
+    }
+
+    private Message.ServiceData logData(String data) {
+        return Message.ServiceData.newBuilder()
+                .setDataType(Message.ServiceData.DataType.LOG)
+                .setData(ByteString.copyFromUtf8(data))
+                .build();
+    }
+
+    private Message.NettyMessage batchMessage(byte[] raw, int rawLength) {
+        return Message.NettyMessage.newBuilder()
+                .setMessageType(Message.NettyMessage.MessageType.SERVICE_DATA_BATCH)
+                .setBatchRawLength(rawLength)
+                .setBatchData(ByteString.copyFrom(LZ4Factory.fastestJavaInstance().fastCompressor().compress(raw)))
+                .build();
+    }
 }
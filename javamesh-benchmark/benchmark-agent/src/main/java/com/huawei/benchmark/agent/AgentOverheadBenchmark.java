@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.agent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 挂载agent后每次增强调用的端到端开销，由{@link AgentOverheadHarness}分别在挂载和不挂载agent的子进程中运行
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AgentOverheadBenchmark {
+    /**
+     * 子进程是否挂载了agent，挂载时校验被测方法确实被增强
+     */
+    static final String AGENT_ATTACHED = "benchmark.agent.attached";
+
+    private EnhancedTarget target;
+
+    @Setup
+    public void setUp() {
+        target = new EnhancedTarget();
+        if (Boolean.getBoolean(AGENT_ATTACHED) && !isEnhanced()) {
+            throw new IllegalStateException("EnhancedTarget#enhanced is not enhanced by the agent");
+        }
+    }
+
+    @Benchmark
+    public String plain() {
+        return target.plain("benchmark");
+    }
+
+    @Benchmark
+    public String enhanced() {
+        return target.enhanced("benchmark");
+    }
+
+    /**
+     * 委派增强会为被测类添加委派字段，据此判断增强是否生效
+     *
+     * @return 是否被增强
+     */
+    private static boolean isEnhanced() {
+        return EnhancedTarget.class.getDeclaredFields().length > 0;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 端到端的agent开销测量
+ * <p>把打包好的agent(javamesh-agent.jar、core和apm.config)和benchmark-plugin复制到临时目录，不带其他插件，
+ * 然后分别在不挂载和挂载agent的子进程中运行{@link AgentOverheadBenchmark}，全程不访问网络
+ * <p>用法：java -cp benchmarks.jar com.huawei.benchmark.agent.AgentOverheadHarness [jmh参数]，
+ * agent目录和插件目录默认取构建时的路径，可通过-Dbenchmark.agent.dir和-Dbenchmark.plugin.dir覆盖
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+public class AgentOverheadHarness {
+    private static final String AGENT_DIR_KEY = "benchmark.agent.dir";
+
+    private static final String PLUGIN_DIR_KEY = "benchmark.plugin.dir";
+
+    private static final String AGENT_JAR = "javamesh-agent.jar";
+
+    private static final String AGENT_CONFIG = "apm.config";
+
+    private static final String CORE_DIR = "core";
+
+    private static final String PLUGIN_NAME = "benchmark";
+
+    private static final String APP_NAME = "javamesh-benchmark";
+
+    /**
+     * jdk9及以上agent依赖的guice需要反射ClassLoader#defineClass
+     */
+    private static final String OPEN_JAVA_LANG = "--add-opens=java.base/java.lang=ALL-UNNAMED";
+
+    /**
+     * agent中重定位后的byte buddy对高于其支持版本的jdk需要开启实验特性，否则不做增强
+     */
+    private static final String BYTE_BUDDY_EXPERIMENTAL = "-Dcom.huawei.net.bytebuddy.experimental=true";
+
+    private AgentOverheadHarness() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        Properties properties = loadProperties();
+        File agentDir = new File(getPath(properties, AGENT_DIR_KEY));
+        File pluginDir = new File(getPath(properties, PLUGIN_DIR_KEY));
+        Path workDir = Files.createTempDirectory("javamesh-benchmark");
+        try {
+            File agentJar = prepareAgent(agentDir, pluginDir, workDir.toFile());
+            Collection<RunResult> baseline = new Runner(buildOptions(commandLineOptions)
+                    .jvmArgsAppend("-D" + AgentOverheadBenchmark.AGENT_ATTACHED + "=false")
+                    .build()).run();
+            List<String> attachedArgs = new ArrayList<String>();
+            attachedArgs.add("-javaagent:" + agentJar.getCanonicalPath() + "=appName=" + APP_NAME);
+            attachedArgs.add("-D" + AgentOverheadBenchmark.AGENT_ATTACHED + "=true");
+            if (!System.getProperty("java.specification.version").startsWith("1.")) {
+                attachedArgs.add(OPEN_JAVA_LANG);
+                attachedArgs.add(BYTE_BUDDY_EXPERIMENTAL);
+            }
+            Collection<RunResult> attached = new Runner(buildOptions(commandLineOptions)
+                    .jvmArgsAppend(attachedArgs.toArray(new String[0]))
+                    .build()).run();
+            printSummary(toScores(baseline), toScores(attached));
+        } finally {
+            delete(workDir);
+        }
+    }
+
+    private static ChainedOptionsBuilder buildOptions(CommandLineOptions commandLineOptions) {
+        return new OptionsBuilder()
+                .parent(commandLineOptions)
+                .include(AgentOverheadBenchmark.class.getName())
+                .addProfiler(GCProfiler.class);
+    }
+
+    private static Properties loadProperties() throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = AgentOverheadHarness.class.getClassLoader()
+                .getResourceAsStream("benchmark.properties");
+        if (inputStream != null) {
+            try {
+                properties.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        }
+        return properties;
+    }
+
+    private static String getPath(Properties properties, String key) {
+        String path = System.getProperty(key, properties.getProperty(key));
+        if (path == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return path;
+    }
+
+    /**
+     * 组装只包含benchmark-plugin的agent目录
+     *
+     * @param agentDir  打包好的agent目录
+     * @param pluginDir benchmark-plugin的输出目录
+     * @param workDir   临时目录
+     * @return 临时目录中的agent jar
+     * @throws IOException 复制失败
+     */
+    private static File prepareAgent(File agentDir, File pluginDir, File workDir) throws IOException {
+        File agentJar = new File(agentDir, AGENT_JAR);
+        File coreDir = new File(agentDir, CORE_DIR);
+        if (!agentJar.isFile() || !coreDir.isDirectory()) {
+            throw new IllegalArgumentException("Packaged agent not found in " + agentDir.getCanonicalPath());
+        }
+        File[] pluginJars = pluginDir.listFiles();
+        if (pluginJars == null || pluginJars.length == 0) {
+            throw new IllegalArgumentException("Benchmark plugin not found in " + pluginDir.getCanonicalPath());
+        }
+        File targetAgentJar = new File(workDir, AGENT_JAR);
+        copy(agentJar, targetAgentJar);
+        File agentConfig = new File(agentDir, AGENT_CONFIG);
+        if (agentConfig.isFile()) {
+            copy(agentConfig, new File(workDir, AGENT_CONFIG));
+        }
+        File[] coreJars = coreDir.listFiles();
+        if (coreJars != null) {
+            for (File coreJar : coreJars) {
+                copy(coreJar, new File(new File(workDir, CORE_DIR), coreJar.getName()));
+            }
+        }
+        File targetPluginDir = new File(new File(workDir, "plugins"), PLUGIN_NAME);
+        for (File pluginJar : pluginJars) {
+            copy(pluginJar, new File(targetPluginDir, pluginJar.getName()));
+        }
+        return targetAgentJar;
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        Files.createDirectories(target.getParentFile().toPath());
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exc) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static Map<String, Double> toScores(Collection<RunResult> results) {
+        Map<String, Double> scores = new HashMap<String, Double>();
+        for (RunResult result : results) {
+            String method = result.getParams().getBenchmark();
+            scores.put(method.substring(method.lastIndexOf('.') + 1), result.getPrimaryResult().getScore());
+        }
+        return scores;
+    }
+
+    private static void printSummary(Map<String, Double> baseline, Map<String, Double> attached) {
+        System.out.println();
+        System.out.println("Agent overhead (ns/op)");
+        System.out.println(String.format(Locale.ROOT, "%-10s %12s %12s %12s", "method", "no agent", "agent",
+                "overhead"));
+        for (Map.Entry<String, Double> entry : attached.entrySet()) {
+            Double base = baseline.get(entry.getKey());
+            if (base == null) {
+                continue;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-10s %12.3f %12.3f %12.3f", entry.getKey(), base,
+                    entry.getValue(), entry.getValue() - base));
+        }
+    }
+}
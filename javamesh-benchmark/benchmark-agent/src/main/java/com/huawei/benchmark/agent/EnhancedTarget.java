@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.agent;
+
+/**
+ * 端到端基准的被测类，由benchmark-plugin增强enhanced方法，plain方法保持原样
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+public class EnhancedTarget {
+    /**
+     * 未增强的方法
+     *
+     * @param arg 参数
+     * @return 参数原样返回
+     */
+    public String plain(String arg) {
+        return arg;
+    }
+
+    /**
+     * 被增强的方法，方法体与plain相同
+     *
+     * @param arg 参数
+     * @return 参数原样返回
+     */
+    public String enhanced(String arg) {
+        return arg;
+    }
+}
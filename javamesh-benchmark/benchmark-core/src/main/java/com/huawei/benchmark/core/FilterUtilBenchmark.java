@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.huawei.flowcontrol.util.FilterUtil;
+
+/**
+ * 流控插件http资源名解析的开销
+ * <p>baseline直接拼接servletPath和pathInfo，filterTarget为规范化后的资源名
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterUtilBenchmark {
+    /**
+     * 请求路径，servletPath和pathInfo以|分隔
+     */
+    @Param({"/api|/users/1024/orders", "/api/v1|/./users//1024/../orders/ ", "|/"})
+    private String path;
+
+    private HttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        int split = path.indexOf('|');
+        request = new PathRequest(path.substring(0, split), path.substring(split + 1));
+    }
+
+    @Benchmark
+    public String baseline() {
+        return request.getServletPath() + request.getPathInfo();
+    }
+
+    @Benchmark
+    public String filterTarget() {
+        return FilterUtil.filterTarget(request);
+    }
+
+    /**
+     * 只提供路径信息的请求，路径读取不经过动态代理
+     */
+    private static class PathRequest extends HttpServletRequestWrapper {
+        private final String servletPath;
+
+        private final String pathInfo;
+
+        PathRequest(String servletPath, String pathInfo) {
+            super((HttpServletRequest) Proxy.newProxyInstance(FilterUtilBenchmark.class.getClassLoader(),
+                    new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    }));
+            this.servletPath = servletPath;
+            this.pathInfo = pathInfo;
+        }
+
+        @Override
+        public String getServletPath() {
+            return servletPath;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return pathInfo;
+        }
+    }
+}
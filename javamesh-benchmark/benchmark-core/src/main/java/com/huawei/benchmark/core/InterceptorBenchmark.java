@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.core;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.huawei.apm.core.agent.common.BeforeResult;
+import com.huawei.apm.core.agent.common.OverrideArgumentsCall;
+import com.huawei.apm.core.agent.enhancer.InstanceMethodEnhancer;
+import com.huawei.apm.core.agent.interceptor.InstanceMethodInterceptor;
+import com.huawei.apm.core.agent.template.BootstrapInstTemplate;
+
+/**
+ * 实例方法增强的调用开销
+ * <p>baseline为未增强的直接调用，enhancer为byte buddy委派模式下{@link InstanceMethodEnhancer}的调用链，
+ * bootstrapTemplate为启动类advice模式下{@link BootstrapInstTemplate}的前后置调用
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+    /**
+     * 拦截器个数
+     */
+    @Param({"0", "1", "3"})
+    private int interceptorCount;
+
+    private Target target;
+
+    private Method method;
+
+    private InstanceMethodEnhancer enhancer;
+
+    private List<InstanceMethodInterceptor> interceptors;
+
+    private OverrideArgumentsCall callable;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        target = new Target();
+        method = Target.class.getMethod("invoke", String.class);
+        interceptors = new ArrayList<InstanceMethodInterceptor>();
+        for (int i = 0; i < interceptorCount; i++) {
+            interceptors.add(new NoopInterceptor());
+        }
+        enhancer = new InstanceMethodEnhancer(null, interceptors);
+        callable = new OverrideArgumentsCall() {
+            @Override
+            public Object call(Object[] arguments) {
+                return target.invoke((String) arguments[0]);
+            }
+        };
+        BootstrapInstTemplate.ORIGIN_INTERCEPTOR = null;
+        BootstrapInstTemplate.INTERCEPTORS = interceptors;
+        BootstrapInstTemplate.METHOD_NAME = "invoke";
+        BootstrapInstTemplate.PARAM_TYPES = new String[]{String.class.getName()};
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return target.invoke("benchmark");
+    }
+
+    @Benchmark
+    public Object enhancer() throws Throwable {
+        return enhancer.intercept(target, method, callable, new Object[]{"benchmark"});
+    }
+
+    @Benchmark
+    public Object bootstrapTemplate() {
+        final Object[] arguments = new Object[]{"benchmark"};
+        final ListIterator<InstanceMethodInterceptor> interceptorItr = interceptors.listIterator();
+        Object result = null;
+        if (BootstrapInstTemplate.beforeInstMethod(target, Target.class, arguments, interceptorItr)) {
+            result = target.invoke((String) arguments[0]);
+        }
+        return BootstrapInstTemplate.afterInstMethod(target, Target.class, arguments, result, null,
+                interceptorItr);
+    }
+
+    /**
+     * 被增强的目标类
+     */
+    public static class Target {
+        public String invoke(String arg) {
+            return arg;
+        }
+    }
+
+    /**
+     * 不做任何处理的拦截器，测量的是框架本身的开销
+     */
+    public static class NoopInterceptor implements InstanceMethodInterceptor {
+        @Override
+        public void before(Object obj, Method method, Object[] arguments, BeforeResult beforeResult) {
+        }
+
+        @Override
+        public Object after(Object obj, Method method, Object[] arguments, Object result) {
+            return result;
+        }
+
+        @Override
+        public void onThrow(Object obj, Method method, Object[] arguments, Throwable t) {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.huawei.route.common.gray.label.entity.MatchRule;
+import com.huawei.route.common.gray.label.entity.MatchStrategy;
+import com.huawei.route.common.gray.label.entity.ValueMatch;
+import com.huawei.route.common.gray.rule.CompiledMatchRule;
+
+/**
+ * 灰度路由规则匹配的开销
+ * <p>matchStrategy为每次请求按原始规则匹配，compiledRule为规则下发时预编译后的匹配
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchStrategyBenchmark {
+    @Param({"EXACT", "PREFIX", "REGEX", "IN", "GREATER"})
+    private MatchStrategy strategy;
+
+    /**
+     * 规则中的caseInsensitive字段，为false时每次匹配都要转换大小写
+     */
+    @Param({"true", "false"})
+    private boolean caseInsensitive;
+
+    private List<String> values;
+
+    private String arg;
+
+    private CompiledMatchRule compiledRule;
+
+    @Setup
+    public void setUp() {
+        switch (strategy) {
+            case PREFIX:
+                values = Arrays.asList("gray-");
+                arg = "gray-user-1024";
+                break;
+            case REGEX:
+                values = Arrays.asList("^gray-user-[0-9]+$");
+                arg = "gray-user-1024";
+                break;
+            case IN:
+                values = Arrays.asList("user-1", "user-2", "user-3", "user-4", "user-1024", "user-2048");
+                arg = "user-1024";
+                break;
+            case GREATER:
+                values = Arrays.asList("1000");
+                arg = "1024";
+                break;
+            default:
+                values = Arrays.asList("user-1024");
+                arg = "user-1024";
+                break;
+        }
+        ValueMatch valueMatch = new ValueMatch();
+        valueMatch.setMatchStrategy(strategy);
+        valueMatch.setValues(values);
+        MatchRule matchRule = new MatchRule();
+        matchRule.setValueMatch(valueMatch);
+        matchRule.setCaseInsensitive(caseInsensitive);
+        compiledRule = new CompiledMatchRule(matchRule);
+    }
+
+    @Benchmark
+    public boolean matchStrategy() {
+        return strategy.isMatch(values, arg, caseInsensitive);
+    }
+
+    @Benchmark
+    public boolean compiledRule() {
+        return compiledRule.isMatch(arg);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.huawei.apm.core.lubanops.bootstrap.config.IdentityConfigManager;
+import com.huawei.apm.core.lubanops.bootstrap.trace.SpanEvent;
+import com.huawei.apm.core.lubanops.bootstrap.trace.TraceCollector;
+import com.huawei.apm.core.lubanops.bootstrap.trace.TraceReportService;
+
+/**
+ * 调用链span的创建和结束开销
+ * <p>baseline只创建根span，childSpan在根span下创建并结束一个子span，上报服务为空实现
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceCollectorBenchmark {
+    private static final String TRACE_ID = "benchmark-trace";
+
+    private static final String SPAN_ID = "1";
+
+    private String domainId;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        TraceCollector.setReportService(new TraceReportService() {
+            @Override
+            public void offerEvent(SpanEvent spanEvent) {
+                blackhole.consume(spanEvent);
+            }
+        });
+        domainId = String.valueOf(IdentityConfigManager.getDomainId());
+    }
+
+    @Benchmark
+    public SpanEvent baseline() {
+        SpanEvent root = new SpanEvent(TRACE_ID, SPAN_ID, domainId);
+        TraceCollector.setSpanEvent(root);
+        TraceCollector.clear();
+        return root;
+    }
+
+    @Benchmark
+    public SpanEvent childSpan() {
+        SpanEvent root = new SpanEvent(TRACE_ID, SPAN_ID, domainId);
+        TraceCollector.setSpanEvent(root);
+        TraceCollector.onStart(TraceCollectorBenchmark.class.getName(), "childSpan", "benchmark");
+        SpanEvent child = TraceCollector.onFinally();
+        TraceCollector.clear();
+        return child;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.huawei.apm.core.lubanops.bootstrap.plugin.common.url.UrlAggregator;
+import com.huawei.apm.core.lubanops.bootstrap.plugin.common.url.UrlStats;
+import com.huawei.apm.core.lubanops.bootstrap.sample.SampleConfig;
+import com.huawei.apm.core.lubanops.bootstrap.sample.SampleType;
+
+/**
+ * url采样判断的开销
+ * <p>url集合中有四分之一为错误url，所有url都已有统计数据，请求依次轮询全部url；baseline只做相同的url轮询
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlAggregatorBenchmark {
+    private static final String HTTP_METHOD = "GET";
+
+    /**
+     * 采样方式
+     */
+    @Param({"automatic", "all", "frequency", "percentage"})
+    private SampleType sampleType;
+
+    /**
+     * 不同url的个数
+     */
+    @Param({"256"})
+    private int urlCount;
+
+    private String[] urls;
+
+    private int index;
+
+    private SampleConfig sampleConfig;
+
+    private UrlAggregator aggregator;
+
+    @Setup
+    public void setUp() {
+        urls = new String[urlCount];
+        List<String> errorUrls = new ArrayList<String>();
+        for (int i = 0; i < urlCount; i++) {
+            urls[i] = "/benchmark/service" + i + "/method" + i;
+            if (i % 4 == 0) {
+                errorUrls.add(urls[i]);
+            }
+        }
+        sampleConfig = new SampleConfig();
+        sampleConfig.setSampleType(sampleType.value());
+        BenchmarkUrlAggregator urlAggregator = new BenchmarkUrlAggregator();
+        for (String url : urls) {
+            urlAggregator.register(url);
+        }
+        urlAggregator.setErrorUrl(errorUrls);
+        aggregator = urlAggregator;
+    }
+
+    @Benchmark
+    public String baseline() {
+        return nextUrl();
+    }
+
+    @Benchmark
+    public boolean sample() {
+        return aggregator.sample(nextUrl(), HTTP_METHOD, sampleConfig);
+    }
+
+    private String nextUrl() {
+        String url = urls[index];
+        index = index + 1 == urls.length ? 0 : index + 1;
+        return url;
+    }
+
+    /**
+     * 以url和method为主键的聚合器
+     */
+    private static class BenchmarkUrlAggregator extends UrlAggregator {
+        private void register(String url) {
+            getValue(url, HTTP_METHOD);
+        }
+
+        @Override
+        protected int primaryKeyLength() {
+            return 2;
+        }
+
+        @Override
+        protected List<String> primaryKey() {
+            return Arrays.asList("url", "method");
+        }
+
+        @Override
+        protected UrlStats newValue() {
+            return new UrlStats();
+        }
+
+        @Override
+        public String getUrlKey() {
+            return "url";
+        }
+    }
+}
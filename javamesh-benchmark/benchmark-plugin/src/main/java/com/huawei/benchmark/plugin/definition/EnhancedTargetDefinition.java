@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.plugin.definition;
+
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.matcher.ElementMatchers;
+
+import com.huawei.apm.core.agent.definition.EnhanceDefinition;
+import com.huawei.apm.core.agent.definition.MethodInterceptPoint;
+import com.huawei.apm.core.agent.matcher.ClassMatcher;
+import com.huawei.apm.core.agent.matcher.ClassMatchers;
+
+/**
+ * 基准测试被测类的增强定义，只增强enhanced方法，plain方法作为同一进程内的未增强对照
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+public class EnhancedTargetDefinition implements EnhanceDefinition {
+    @Override
+    public ClassMatcher enhanceClass() {
+        return ClassMatchers.named("com.huawei.benchmark.agent.EnhancedTarget");
+    }
+
+    @Override
+    public MethodInterceptPoint[] getMethodInterceptPoints() {
+        return new MethodInterceptPoint[]{
+                MethodInterceptPoint.newInstMethodInterceptPoint(
+                        "com.huawei.benchmark.plugin.interceptor.NoopInstInterceptor",
+                        ElementMatchers.<MethodDescription>named("enhanced")
+                )
+        };
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.benchmark.plugin.interceptor;
+
+import java.lang.reflect.Method;
+
+import com.huawei.apm.core.agent.common.BeforeResult;
+import com.huawei.apm.core.agent.interceptor.InstanceMethodInterceptor;
+
+/**
+ * 不做任何处理的实例方法拦截器，测量的是增强框架本身的开销
+ *
+ * @version 1.0.0
+ * @since 2021/11/18
+ */
+public class NoopInstInterceptor implements InstanceMethodInterceptor {
+    @Override
+    public void before(Object obj, Method method, Object[] arguments, BeforeResult beforeResult) {
+    }
+
+    @Override
+    public Object after(Object obj, Method method, Object[] arguments, Object result) {
+        return result;
+    }
+
+    @Override
+    public void onThrow(Object obj, Method method, Object[] arguments, Throwable t) {
+    }
+}
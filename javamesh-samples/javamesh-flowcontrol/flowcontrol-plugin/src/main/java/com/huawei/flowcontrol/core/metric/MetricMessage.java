@@ -4,68 +4,158 @@
 
 package com.huawei.flowcontrol.core.metric;
 
-import com.alibaba.csp.sentinel.config.SentinelConfig;
+import com.alibaba.csp.sentinel.Constants;
 import com.alibaba.csp.sentinel.log.RecordLog;
+import com.alibaba.csp.sentinel.node.ClusterNode;
 import com.alibaba.csp.sentinel.node.metric.MetricNode;
-import com.alibaba.csp.sentinel.node.metric.MetricSearcher;
-import com.alibaba.csp.sentinel.node.metric.MetricWriter;
+import com.alibaba.csp.sentinel.slots.clusterbuilder.ClusterBuilderSlot;
 import com.alibaba.csp.sentinel.util.AppNameUtil;
-import com.alibaba.csp.sentinel.util.PidUtil;
-import com.alibaba.fastjson.JSONArray;
+import com.alibaba.csp.sentinel.util.function.Predicate;
+import com.alibaba.fastjson.JSON;
 import com.huawei.flowcontrol.core.config.ConfigConst;
 import com.huawei.flowcontrol.core.util.PluginConfigUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 流控信息数据
+ * <p>
+ * 直接读取sentinel内存中各资源ClusterNode的分钟级滑动窗口，不再查询metric日志文件；
+ * 条数超过metric.maxline时只发送前面完整的秒，由{@link #getNextStartTime()}告知下次查询从哪一秒开始
  *
  * @author liyi
  * @since 2020-08-26
  */
 public final class MetricMessage {
-    private static final MetricSearcher METRIC_SEARCHER;
+    /**
+     * 单条metric消息预估的长度，用于预分配缓冲区
+     */
+    private static final int ESTIMATED_NODE_LENGTH = 320;
+
+    private static final long ONE_SECOND_MS = 1000L;
 
-    static {
-        String appName = SentinelConfig.getAppName();
-        if (appName == null) {
-            appName = "";
+    private static final Comparator<MetricNode> BY_TIMESTAMP = new Comparator<MetricNode>() {
+        @Override
+        public int compare(MetricNode o1, MetricNode o2) {
+            return o1.getTimestamp() < o2.getTimestamp() ? -1 : (o1.getTimestamp() == o2.getTimestamp() ? 0 : 1);
         }
-        METRIC_SEARCHER = new MetricSearcher(MetricWriter.METRIC_BASE_DIR,
-            MetricWriter.formMetricFileName(appName, PidUtil.getPid()));
+    };
+
+    private final String message;
+
+    private final long nextStartTime;
+
+    private MetricMessage(String message, long nextStartTime) {
+        this.message = message;
+        this.nextStartTime = nextStartTime;
     }
 
     /**
      * 获取流控数据
      *
-     * @param startTime 查询流控数据的开始时间
-     * @param endTime   查询流控数据的结束书简
-     * @return 流控数据
+     * @param startTime 查询流控数据的开始时间(包含)
+     * @param endTime   查询流控数据的结束时间(不包含)
+     * @return 流控数据及下次查询的开始时间
      */
-    public static String generateCurrentMessage(long startTime, Long endTime) {
+    public static MetricMessage generateCurrentMessage(long startTime, long endTime) {
         String message = null;
-        List<MetricNode> list;
-
+        long nextStartTime = endTime;
         try {
-            if (endTime != null) {
-                list = METRIC_SEARCHER.findByTimeAndResource(startTime, endTime, null);
-            } else {
-                list = METRIC_SEARCHER.find(startTime,
-                    Integer.parseInt(PluginConfigUtil.getValueByKey(ConfigConst.METRIC_MAXLINE)));
+            long maxLine = Long.parseLong(PluginConfigUtil.getValueByKey(ConfigConst.METRIC_MAXLINE));
+            List<MetricNode> list = findMetrics(startTime, endTime);
+            if (maxLine > 0 && list.size() > maxLine) {
+                RecordLog.warn("[MetricMessage] metric size " + list.size() + " exceeds the max line " + maxLine);
+                int lines = findLastLine(list, (int) maxLine);
+                long firstDropped = list.get(lines).getTimestamp();
+
+                // 单独一秒就超过最大条数时，这一秒超出的部分只能丢弃
+                nextStartTime = list.get(lines - 1).getTimestamp() == firstDropped
+                    ? firstDropped + ONE_SECOND_MS : firstDropped;
+                list = list.subList(0, lines);
             }
-            if (list != null && list.size() > 0) {
+            if (list.size() > 0) {
                 RecordLog.info("[MetricMessage] list size=" + list.size());
                 message = formatMessage(list);
             }
         } catch (Exception e) {
             RecordLog.error("[MetricMessage] Find metric is failed." + e);
         }
+        return new MetricMessage(message, nextStartTime);
+    }
+
+    /**
+     * 超过最大条数时截断到最后一个完整的秒，没有发送的秒下次再查询
+     *
+     * @param list    按时间排序的统计数据
+     * @param maxLine 最多发送的条数
+     * @return 发送的条数，不拆开同一秒的数据，除非单独一秒就超过最大条数
+     */
+    private static int findLastLine(List<MetricNode> list, int maxLine) {
+        long firstDropped = list.get(maxLine).getTimestamp();
+        int end = maxLine;
+        while (end > 0 && list.get(end - 1).getTimestamp() == firstDropped) {
+            end--;
+        }
+        if (end == 0) {
+            RecordLog.warn("[MetricMessage] metric size of one second exceeds the max line " + maxLine
+                + ", the rest of " + firstDropped + " is dropped");
+            return maxLine;
+        }
+        return end;
+    }
+
+    /**
+     * 从内存中的ClusterNode获取时间范围内每秒的统计，数据与sentinel写入metric日志的内容一致
+     *
+     * @param startTime 开始时间(包含)
+     * @param endTime   结束时间(不包含)
+     * @return 各资源每秒的统计数据，按时间升序
+     */
+    public static List<MetricNode> findMetrics(final long startTime, final long endTime) {
+        Predicate<Long> inTime = new Predicate<Long>() {
+            @Override
+            public boolean test(Long timestamp) {
+                return timestamp >= startTime && timestamp < endTime;
+            }
+        };
+        List<MetricNode> result = new ArrayList<MetricNode>();
+        for (ClusterNode node : ClusterBuilderSlot.getClusterNodeMap().values()) {
+            collect(node, inTime, result);
+        }
+        collect(Constants.ENTRY_NODE, inTime, result);
+        Collections.sort(result, BY_TIMESTAMP);
+        return result;
+    }
+
+    private static void collect(ClusterNode clusterNode, Predicate<Long> inTime, List<MetricNode> result) {
+        if (clusterNode == null) {
+            return;
+        }
+        for (MetricNode node : clusterNode.rawMetricsInMin(inTime)) {
+            if (isValidMetricNode(node)) {
+                node.setResource(clusterNode.getName());
+                node.setClassification(clusterNode.getResourceType());
+                result.add(node);
+            }
+        }
+    }
+
+    private static boolean isValidMetricNode(MetricNode node) {
+        return node.getPassQps() > 0 || node.getBlockQps() > 0 || node.getSuccessQps() > 0
+            || node.getExceptionQps() > 0 || node.getRt() > 0 || node.getOccupiedPassQps() > 0;
+    }
+
+    public String getMessage() {
         return message;
     }
 
+    public long getNextStartTime() {
+        return nextStartTime;
+    }
+
     /**
      * 格式化metric对象list集合
      *
@@ -73,49 +163,53 @@ public final class MetricMessage {
      * @return 返回对象集合字符串
      */
     public static String formatMessage(List<MetricNode> list) {
-        List<Map<String, Object>> resultList = new ArrayList<Map<String, Object>>();
-        Map<String, Object> map;
-        for (MetricNode node : list) {
-            map = new HashMap<String, Object>();
+        String app = JSON.toJSONString(AppNameUtil.getAppName());
+        StringBuilder builder = new StringBuilder(list.size() * ESTIMATED_NODE_LENGTH);
+        builder.append('[');
+        for (int i = 0; i < list.size(); i++) {
+            MetricNode node = list.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
 
             // 资源名称
-            map.put("resource", node.getResource());
+            builder.append("{\"resource\":").append(JSON.toJSONString(node.getResource()));
 
             // 统计时间
-            map.put("timestamp", node.getTimestamp());
+            builder.append(",\"timestamp\":").append(node.getTimestamp());
 
             // 通过的qps
-            map.put("passQps", node.getPassQps());
+            builder.append(",\"passQps\":").append(node.getPassQps());
 
             // 限流的qps
-            map.put("blockQps", node.getBlockQps());
+            builder.append(",\"blockQps\":").append(node.getBlockQps());
 
             // 成功的qps
-            map.put("successQps", node.getSuccessQps());
+            builder.append(",\"successQps\":").append(node.getSuccessQps());
 
             // 发送异常的次数
-            map.put("exceptionQps", node.getExceptionQps());
+            builder.append(",\"exceptionQps\":").append(node.getExceptionQps());
 
             // RT 平均响应时长
-            map.put("rt", node.getRt());
+            builder.append(",\"rt\":").append(node.getRt());
 
             // 计数
-            map.put("count", 1);
+            builder.append(",\"count\":1");
 
             // 资源的hashcode
-            map.put("resourceCode", node.getResource().hashCode());
+            builder.append(",\"resourceCode\":").append(node.getResource().hashCode());
 
             // 应用名
-            map.put("app", AppNameUtil.getAppName());
+            builder.append(",\"app\":").append(app);
 
             // 分类
-            map.put("classification", node.getClassification());
+            builder.append(",\"classification\":").append(node.getClassification());
 
             // 并发性
-            map.put("concurrency", node.getConcurrency());
-            map.put("occupiedPassQps", node.getOccupiedPassQps());
-            resultList.add(map);
+            builder.append(",\"concurrency\":").append(node.getConcurrency());
+            builder.append(",\"occupiedPassQps\":").append(node.getOccupiedPassQps());
+            builder.append('}');
         }
-        return JSONArray.toJSONString(resultList);
+        return builder.append(']').toString();
     }
 }
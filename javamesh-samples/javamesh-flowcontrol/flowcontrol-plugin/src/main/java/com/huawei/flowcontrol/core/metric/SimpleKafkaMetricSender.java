@@ -4,7 +4,6 @@
 
 package com.huawei.flowcontrol.core.metric;
 
-import com.alibaba.csp.sentinel.log.RecordLog;
 import com.alibaba.csp.sentinel.util.TimeUtil;
 import com.huawei.flowcontrol.core.config.ConfigConst;
 import com.huawei.flowcontrol.core.util.KafkaProducerUtil;
@@ -12,37 +11,49 @@ import com.huawei.flowcontrol.core.util.PluginConfigUtil;
 
 /**
  * 发送sentinel客户端流控数据消息
+ * <p>
+ * 只由定时任务单线程调用，每次发送上次结束时间到当前秒之间已经统计完整的秒级数据
  *
  * @author liyi
  * @since 2020-08-26
  */
 public class SimpleKafkaMetricSender {
+    private static final long ONE_SECOND_MS = 1000L;
+
     private long startTime;
 
     public long metricInitialDurationMs;
 
     public SimpleKafkaMetricSender() {
         metricInitialDurationMs = Long.parseLong(PluginConfigUtil.getValueByKey(ConfigConst.METRIC_INITIAL_DURATION));
-        startTime = TimeUtil.currentTimeMillis();
+        startTime = alignToSecond(TimeUtil.currentTimeMillis());
     }
 
     /**
      * 发送metric消息到kafka broker
      *
      */
-    public synchronized void sendMetric() {
-        long endTime = TimeUtil.currentTimeMillis();
+    public void sendMetric() {
+        // 当前秒的窗口还在统计中，不发送
+        long endTime = alignToSecond(TimeUtil.currentTimeMillis());
+        if (endTime <= startTime) {
+            return;
+        }
+
         // 查询监控数据
-        String msg = MetricMessage.generateCurrentMessage(startTime, endTime);
-        if (msg != null && !"".equals(msg)) {
-            RecordLog.info("[SimpleKafkaMetricSender] metric message=" + msg);
+        MetricMessage metricMessage = MetricMessage.generateCurrentMessage(startTime, endTime);
 
+        // 下一次的开始时间一般为本次查询的结束时间，超过最大条数时为第一个没有发送的秒
+        // 内存数据只保留一分钟，没有数据时也需要前移
+        startTime = metricMessage.getNextStartTime();
+        String msg = metricMessage.getMessage();
+        if (msg != null && !"".equals(msg)) {
             // 调用kafka发送消息
             KafkaProducerUtil.sendMessage(PluginConfigUtil.getValueByKey(ConfigConst.KAFKA_METRIC_TOPIC), msg);
-        } else {
-            return;
         }
-        // 下一次的开始时间为本次查询的结束时间，
-        startTime = endTime;
+    }
+
+    private static long alignToSecond(long timeMillis) {
+        return timeMillis - timeMillis % ONE_SECOND_MS;
     }
 }
@@ -16,6 +16,9 @@ import javax.servlet.http.HttpServletRequest;
  */
 public final class FilterUtil {
     private static final String PATH_SPLIT = "/";
+    private static final char SLASH = '/';
+    private static final char BACKSLASH = '\\';
+    private static final char DOT = '.';
     private static final int NEGATIVE_ONE = -1;
 
     private FilterUtil() {
@@ -40,6 +43,9 @@ public final class FilterUtil {
         // Note: pathInfo should be converted to camelCase style.
         int lastSlashIndex = pathInfo.lastIndexOf(PATH_SPLIT);
 
+        if (lastSlashIndex >= 0 && !needTrim(pathInfo, lastSlashIndex + 1)) {
+            return pathInfo;
+        }
         if (lastSlashIndex >= 0) {
             pathInfo = pathInfo.substring(0, lastSlashIndex) + PATH_SPLIT
                     + StringUtil.trim(pathInfo.substring(lastSlashIndex + 1));
@@ -54,13 +60,80 @@ public final class FilterUtil {
         String pathInfo = normalizeAbsolutePath(request.getPathInfo(), false);
         String servletPath = normalizeAbsolutePath(request.getServletPath(), pathInfo.length() != 0);
 
+        if (pathInfo.length() == 0) {
+            return servletPath;
+        }
         return servletPath + pathInfo;
     }
 
     private static String normalizeAbsolutePath(String path, boolean removeTrailingSlash) throws IllegalStateException {
+        if (path == null) {
+            return "";
+        }
+        if (isNormalizedAbsolutePath(path)) {
+            // 已是规范的绝对路径，无需逐段重建
+            int length = path.length();
+            if (removeTrailingSlash && path.charAt(length - 1) == SLASH) {
+                return path.substring(0, length - 1);
+            }
+            return path;
+        }
         return normalizePath(path, true, false, removeTrailingSlash);
     }
 
+    /**
+     * 判断路径是否已经是规范的绝对路径：以/开头，首尾没有空白，不含\、连续的/以及.和..路径段
+     *
+     * @param path 路径
+     * @return 是否规范
+     */
+    private static boolean isNormalizedAbsolutePath(String path) {
+        int length = path.length();
+        if (length == 0 || path.charAt(0) != SLASH || path.charAt(length - 1) <= ' ') {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            char ch = path.charAt(i);
+            if (ch == BACKSLASH) {
+                return false;
+            }
+            if (path.charAt(i - 1) != SLASH) {
+                continue;
+            }
+            if (ch == SLASH || ch == DOT && isDotSegment(path, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断从begin开始的路径段是否为.或..
+     *
+     * @param path 路径
+     * @param begin 路径段开始的下标，该位置为.
+     * @return 是否为.或..
+     */
+    private static boolean isDotSegment(String path, int begin) {
+        int end = begin + 1;
+        if (end < path.length() && path.charAt(end) == DOT) {
+            end++;
+        }
+        return end == path.length() || path.charAt(end) == SLASH;
+    }
+
+    /**
+     * 判断最后一个路径段首尾是否有空白
+     *
+     * @param path 路径
+     * @param begin 最后一个路径段开始的下标
+     * @return 是否需要trim
+     */
+    private static boolean needTrim(String path, int begin) {
+        int length = path.length();
+        return begin < length && (path.charAt(begin) <= ' ' || path.charAt(length - 1) <= ' ');
+    }
+
     private static String normalizePath(String path, boolean forceAbsolute, boolean forceRelative,
                                     boolean removeTrailingSlash) throws IllegalStateException {
         char[] pathChars = StringUtil.trimToEmpty(path).toCharArray();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.flowcontrol.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * FilterUtil单元测试
+ *
+ * @author zhanghu
+ * @since 2021-03-29
+ */
+public class FilterUtilTest {
+    private static final String[] PATHS = {
+        null, "", "/", "//", "/api", "/api/users", "/api/users/1024/orders", "/api/", "/api/users/", "/api/*",
+        "/api/**", "/api/*/orders", "/*.do", "/api/v1.0/users", "/api/.hidden", "/api/..more", "/api/a.", "api",
+        "api/users", "//api", "/api//users", "/api/./users", "/api/users/.", "/api/../users", "/.", "/./", "/..",
+        "/api/..", "\\api", "/api\\users", " /api", "/api ", "/api/ users", "/api/users ", "\t/api", "/api/\t"
+    };
+
+    /**
+     * 测试精确路径、前缀路径、根路径、末尾带/和通配符等路径在快速判断路径下与逐段重建的结果一致
+     */
+    @Test
+    public void testFastPathSameAsNormalizePath() throws Exception {
+        Method fast = FilterUtil.class.getDeclaredMethod("normalizeAbsolutePath", String.class, boolean.class);
+        Method slow = FilterUtil.class.getDeclaredMethod("normalizePath", String.class, boolean.class,
+                boolean.class, boolean.class);
+        fast.setAccessible(true);
+        slow.setAccessible(true);
+        for (String path : PATHS) {
+            for (boolean removeTrailingSlash : new boolean[]{true, false}) {
+                String expected = path == null ? "" : invoke(slow, path, true, false, removeTrailingSlash);
+                Assert.assertEquals("path=[" + path + "] removeTrailingSlash=" + removeTrailingSlash, expected,
+                        invoke(fast, path, removeTrailingSlash));
+            }
+        }
+    }
+
+    /**
+     * 测试拼接servletPath和pathInfo后的资源名
+     */
+    @Test
+    public void testFilterTarget() {
+        Assert.assertEquals("/", FilterUtil.filterTarget(request(null, null)));
+        Assert.assertEquals("/", FilterUtil.filterTarget(request("", "/")));
+        Assert.assertEquals("/api/users", FilterUtil.filterTarget(request("/api", "/users")));
+        Assert.assertEquals("/api/users/", FilterUtil.filterTarget(request("/api/", "/users/")));
+        Assert.assertEquals("/api/*", FilterUtil.filterTarget(request("/api/*", null)));
+        Assert.assertEquals("/api/v1/orders",
+                FilterUtil.filterTarget(request("/api/v1", "/./users//1024/../../orders")));
+        Assert.assertEquals("/api/users", FilterUtil.filterTarget(request(" /api ", "/users ")));
+    }
+
+    private static String invoke(Method method, Object... args) throws IllegalAccessException {
+        try {
+            return (String) method.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            // 两种方式对越过根目录的路径都应抛出相同的异常
+            return e.getCause().getClass().getName() + ":" + e.getCause().getMessage();
+        }
+    }
+
+    private static HttpServletRequest request(final String servletPath, final String pathInfo) {
+        return (HttpServletRequest) Proxy.newProxyInstance(FilterUtilTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getServletPath".equals(method.getName())) {
+                            return servletPath;
+                        }
+                        if ("getPathInfo".equals(method.getName())) {
+                            return pathInfo;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
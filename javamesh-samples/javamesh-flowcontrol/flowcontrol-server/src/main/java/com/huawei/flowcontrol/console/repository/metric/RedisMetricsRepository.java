@@ -16,21 +16,29 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Monitoring data persistence redis
  * redis工具类，完成增删改
+ * <p>
+ * 监控数据按资源和数据到达的小时保存为zset，key为"应用:metric:资源_年-月-日_时"，分值为统计时间，成员为监控实体的json，
+ * 与仓库外写入监控数据的kafka消费端保持同一格式。批量写入和查询都通过管道一次完成，查询只读取该资源在时间范围内的小时key
  *
  * @author XiaoLong Wang
  * @since 2020-12-21
@@ -38,17 +46,22 @@ import java.util.Set;
 @Component
 @Primary
 public class RedisMetricsRepository implements MetricsRepository<MetricEntity> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisMetricsRepository.class);
+
     /**
-     * 小时数
+     * key按数据到达时间分小时，到达时间可能晚于统计时间，因此多读取结束时间之后的一个小时
      */
-    private static final int DIFFERENCE_HOURS = 1000 * 3600;
-    private static final Logger LOGGER = LoggerFactory.getLogger(RedisMetricsRepository.class);
+    private static final long ARRIVAL_LAG_MILLIS = TimeUnit.HOURS.toMillis(1);
 
     @Autowired
     private RedisUtil redisUtil;
+
     @Value("${redis.view.time}")
     private long viewTime;
 
+    @Value("${redis.data.timeout}")
+    private long dataTimeout;
+
     /**
      * 保存数据
      *
@@ -56,52 +69,101 @@ public class RedisMetricsRepository implements MetricsRepository<MetricEntity> {
      */
     @Override
     public void save(MetricEntity entity) {
-        if (entity == null || StringUtil.isBlank(entity.getApp())) {
-            return;
-        }
-
-        // 将数据存放到redis中
-        String app = entity.getApp();
-        String value = JSON.toJSONString(entity);
-        String source = entity.getResource();
-
-        // 单独保存应用数据
-        redisUtil.zSetAdd(app + DataType.SEPARATOR_COLON.getDataType()
-            + DataType.REDISMETRICE.getDataType(), source, entity.getTimestamp().getTime());
-
-        // 保存监控数据
-        redisUtil.zSetAdd(getMetricResourceKey(app, source, new Date()), value, entity.getTimestamp().getTime());
+        saveAll(Collections.singletonList(entity));
     }
 
+    /**
+     * 批量保存数据，通过一次管道写入redis
+     *
+     * @param metrics 监控实体
+     */
     @Override
     public void saveAll(Iterable<MetricEntity> metrics) {
         if (metrics == null) {
             return;
         }
-        metrics.forEach(this::save);
+        final Date arrival = new Date();
+        final Map<String, Map<String, Double>> members = new HashMap<>();
+        for (MetricEntity entity : metrics) {
+            if (entity == null || StringUtil.isBlank(entity.getApp()) || entity.getTimestamp() == null) {
+                continue;
+            }
+            double timestamp = entity.getTimestamp().getTime();
+
+            // 单独保存应用的资源，分值为最近一次的统计时间
+            members.computeIfAbsent(getAppKey(entity.getApp()), k -> new HashMap<>())
+                .merge(entity.getResource(), timestamp, Math::max);
+            members.computeIfAbsent(getMetricResourceKey(entity.getApp(), entity.getResource(), arrival),
+                k -> new HashMap<>()).put(JSON.toJSONString(entity), timestamp);
+        }
+        if (members.isEmpty()) {
+            return;
+        }
+        final long expireSeconds = TimeUnit.DAYS.toSeconds(dataTimeout);
+        redisUtil.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Map.Entry<String, Map<String, Double>> entry : members.entrySet()) {
+                for (Map.Entry<String, Double> member : entry.getValue().entrySet()) {
+                    stringConnection.zAdd(entry.getKey(), member.getValue(), member.getKey());
+                }
+                if (expireSeconds > 0) {
+                    stringConnection.expire(entry.getKey(), expireSeconds);
+                }
+            }
+            return null;
+        });
     }
 
+    /**
+     * 查询资源在时间范围内的监控数据，同一秒有多条数据时保留创建时间较晚的一条
+     *
+     * @param app       应用名
+     * @param resource  资源名
+     * @param startTime 开始时间
+     * @param endTime   结束时间
+     * @return 按时间排序的监控数据
+     */
     @Override
     public List<MetricEntity> queryByAppAndResourceBetween(String app, String resource, long startTime, long endTime) {
-        List<MetricEntity> results = new ArrayList<>();
-        if (StringUtil.isBlank(app)) {
-            return results;
+        if (StringUtil.isBlank(app) || StringUtil.isBlank(resource) || endTime < startTime) {
+            return new ArrayList<>();
         }
-
-        // 查询数据
-        Set<String> set = getMetricDate(app, resource, startTime, endTime);
-
-        for (String entity : set) {
-            try {
-                MetricEntity newEntity = JSONObject.parseObject(entity, MetricEntity.class);
-                if (resource.equals(newEntity.getResource())) {
-                    results.add(newEntity);
+        final List<String> keys = new ArrayList<>();
+        final long lastArrival = endTime + ARRIVAL_LAG_MILLIS;
+        for (long hour = startTime; hour < lastArrival; hour += TimeUnit.HOURS.toMillis(1)) {
+            keys.add(getMetricResourceKey(app, resource, new Date(hour)));
+        }
+        String lastKey = getMetricResourceKey(app, resource, new Date(lastArrival));
+        if (!keys.contains(lastKey)) {
+            keys.add(lastKey);
+        }
+        List<Object> hours = redisUtil.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String key : keys) {
+                stringConnection.zRangeByScore(key, startTime, endTime);
+            }
+            return null;
+        });
+        Map<Long, MetricEntity> seconds = new TreeMap<>();
+        for (Object hour : hours) {
+            if (!(hour instanceof Collection)) {
+                continue;
+            }
+            for (Object member : (Collection<?>) hour) {
+                try {
+                    MetricEntity entity = JSONObject.parseObject(String.valueOf(member), MetricEntity.class);
+                    if (entity == null || entity.getTimestamp() == null) {
+                        continue;
+                    }
+                    long timestamp = entity.getTimestamp().getTime();
+                    seconds.merge(timestamp - Math.floorMod(timestamp, TimeUnit.SECONDS.toMillis(1)), entity,
+                        RedisMetricsRepository::newer);
+                } catch (JSONException e) {
+                    LOGGER.error("Data error！", e);
                 }
-            } catch (JSONException e) {
-                LOGGER.error("Data error！", e);
             }
         }
-        return results;
+        return new ArrayList<>(seconds.values());
     }
 
     @Override
@@ -116,8 +178,7 @@ public class RedisMetricsRepository implements MetricsRepository<MetricEntity> {
         final long start = end - viewTime;
 
         // 根据key获取该数据段的数据
-        Set<String> resourcesOfApp = redisUtil.getzSet(app + DataType.SEPARATOR_COLON.getDataType()
-            + DataType.REDISMETRICE.getDataType(), start, end);
+        Set<String> resourcesOfApp = redisUtil.getzSet(getAppKey(app), start, end);
         if (resourcesOfApp == null) {
             return results;
         }
@@ -131,52 +192,20 @@ public class RedisMetricsRepository implements MetricsRepository<MetricEntity> {
     }
 
     /**
-     * 获取监控数据 按小时查询
-     *
-     * @param app       应用名
-     * @param resource  资源名
-     * @param startTime 开始时间
-     * @param endTime   结束时间
-     * @return 返回所有的监控数据
+     * 同一秒有多条数据时保留创建时间较晚的一条，与控制台查询时的去重规则一致
      */
-    private Set<String> getMetricDate(String app, String resource, long startTime, long endTime) {
-        // 开始时间
-        Date startDate = new Date(startTime);
-        Calendar start = Calendar.getInstance();
-        start.setTime(startDate);
-
-        // 结束时间
-        Date endDate = new Date(endTime);
-        Calendar end = Calendar.getInstance();
-        end.setTime(endDate);
-        Set<String> metricDate = new HashSet<>();
-
-        // 获取开始时间数据
-        metricDate.addAll(redisUtil.getzSet(getMetricResourceKey(app, resource, startDate), startTime, endTime));
-
-        // 判断开始小时与结束小时是否在同一小时，如果不在，则查询结束小时数据。
-        if (start.get(Calendar.HOUR_OF_DAY) != end.get(Calendar.HOUR_OF_DAY)) {
-            metricDate.addAll(redisUtil.getzSet(getMetricResourceKey(app, resource, endDate), startTime, endTime));
-        }
-
-        // 相差小时数
-        long betweenHour = (endTime - startTime) / DIFFERENCE_HOURS;
-
-        // 查询中间小时数据
-        for (int i = 0; i < betweenHour; i++) {
-            start.set(Calendar.HOUR_OF_DAY, start.get(Calendar.HOUR_OF_DAY) + 1);
+    private static MetricEntity newer(MetricEntity current, MetricEntity candidate) {
+        long currentCreate = current.getGmtCreate() == null ? 0L : current.getGmtCreate().getTime();
+        long candidateCreate = candidate.getGmtCreate() == null ? 0L : candidate.getGmtCreate().getTime();
+        return candidateCreate > currentCreate ? candidate : current;
+    }
 
-            // 判断开始小时与结束小时是否相等
-            if (start.get(Calendar.HOUR_OF_DAY) != end.get(Calendar.HOUR_OF_DAY)) {
-                metricDate.addAll(redisUtil.getzSet(
-                    getMetricResourceKey(app, resource, startDate), startTime, endTime));
-            }
-        }
-        return metricDate;
+    private static String getAppKey(String app) {
+        return app + DataType.SEPARATOR_COLON.getDataType() + DataType.REDISMETRICE.getDataType();
     }
 
     /**
-     * 拼接查询rediskey
+     * 拼接查询rediskey，小时为数据到达时间
      *
      * @param app      应用名
      * @param resource 资源名
@@ -185,13 +214,10 @@ public class RedisMetricsRepository implements MetricsRepository<MetricEntity> {
      */
     public String getMetricResourceKey(String app, String resource, Date date) {
         LocalDateTime localDateTime = LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
-        int year = localDateTime.getYear();
-        int monthValue = localDateTime.getMonthValue();
-        int dayOfMonth = localDateTime.getDayOfMonth();
-        int hour = localDateTime.getHour();
-        return app + DataType.SEPARATOR_COLON.getDataType() + DataType.REDISMETRICE.getDataType()
-            + DataType.SEPARATOR_COLON.getDataType() + resource + DataType.SEPARATOR_UNDERLINE.getDataType()
-            + year + DataType.SEPARATOR_HYPHEN.getDataType() + monthValue + DataType.SEPARATOR_HYPHEN.getDataType()
-            + dayOfMonth + DataType.SEPARATOR_UNDERLINE.getDataType() + hour;
+        return getAppKey(app) + DataType.SEPARATOR_COLON.getDataType() + resource
+            + DataType.SEPARATOR_UNDERLINE.getDataType() + localDateTime.getYear()
+            + DataType.SEPARATOR_HYPHEN.getDataType() + localDateTime.getMonthValue()
+            + DataType.SEPARATOR_HYPHEN.getDataType() + localDateTime.getDayOfMonth()
+            + DataType.SEPARATOR_UNDERLINE.getDataType() + localDateTime.getHour();
     }
 }
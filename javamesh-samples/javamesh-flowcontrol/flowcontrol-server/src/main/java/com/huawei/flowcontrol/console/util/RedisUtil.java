@@ -14,6 +14,7 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -464,6 +465,16 @@ public class RedisUtil implements ApplicationContextAware {
         return stringRedisTemplate.opsForValue().multiGet(keys);
     }
 
+    /**
+     * 以管道方式批量执行命令，回调中的连接为StringRedisConnection
+     *
+     * @param action 批量执行的命令
+     * @return 每条命令的结果，按执行顺序排列
+     */
+    public List<Object> executePipelined(RedisCallback<?> action) {
+        return stringRedisTemplate.executePipelined(action);
+    }
+
     /**
      * 销毁redis工具类对象
      */
@@ -114,6 +114,17 @@ public class FlowRecordConfig implements BaseConfig {
      * 自定义录制插件拦截的静态方法（多个方法以逗号分隔）
      */
     private String customEnhanceStaticMethod = "testCustom2";
+
+    /**
+     * 录制数据异步发送缓冲区大小，缓冲区满时丢弃
+     */
+    private String recordBufferSize = "4096";
+
+    /**
+     * 按链路采样录制的比例，取值0到1
+     */
+    private String recordSampleRate = "1.0";
+
     /**
      * 心跳名
      */
@@ -10,7 +10,10 @@ package com.huawei.flowrecord.domain;
  */
 
 public class RecordContext {
-    public String requestBody;
+    /**
+     * 请求的副本，需要录制时才采集，由后台线程序列化
+     */
+    public Object request;
 
     public String requestClass;
 
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.flowrecord.domain;
+
+/**
+ * 业务线程采集的一条录制数据，只持有请求和响应的引用，摘要和序列化由后台线程完成
+ *
+ */
+public class RecordEvent {
+    public String jobId;
+
+    public String traceId;
+
+    public String appType;
+
+    public String methodName;
+
+    /**
+     * 子调用标识原文，后台线程计算sha256作为subCallKey
+     */
+    public String subCall;
+
+    public int subCallCount;
+
+    public boolean entry;
+
+    public long timestamp;
+
+    public Object request;
+
+    public String requestClass;
+
+    public Object response;
+}
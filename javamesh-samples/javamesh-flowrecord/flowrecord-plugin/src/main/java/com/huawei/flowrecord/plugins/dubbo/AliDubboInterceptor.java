@@ -14,35 +14,28 @@ import com.huawei.apm.core.lubanops.bootstrap.trace.Headers;
 import com.huawei.apm.core.lubanops.bootstrap.trace.SpanEvent;
 import com.huawei.apm.core.lubanops.bootstrap.trace.StartTraceRequest;
 import com.huawei.apm.core.lubanops.bootstrap.trace.TraceCollector;
-import com.huawei.apm.core.service.CoreServiceManager;
-import com.huawei.apm.core.service.send.GatewayClient;
 import com.huawei.flowrecord.config.CommonConst;
 import com.huawei.flowrecord.config.ConfigConst;
 import com.huawei.flowrecord.config.CorrelationConst;
 import com.huawei.flowrecord.domain.RecordContext;
+import com.huawei.flowrecord.domain.RecordEvent;
 import com.huawei.flowrecord.domain.RecordJob;
 import com.huawei.flowrecord.domain.RecordStatus;
-import com.huawei.flowrecord.domain.Recorder;
 import com.huawei.flowrecord.utils.*;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import org.apache.dubbo.common.constants.CommonConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.curator.shaded.com.google.common.hash.Hashing;
 import com.alibaba.dubbo.rpc.Invocation;
 import com.alibaba.dubbo.rpc.Invoker;
 import com.alibaba.dubbo.rpc.Result;
 import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcInvocation;
 
 
 import java.lang.reflect.Method;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -55,7 +48,6 @@ public class AliDubboInterceptor implements InstanceMethodInterceptor {
     public static final String CONSUMER_TAG = "DUBBO_CONSUMER";
     public static final String PROVIDER_TAG = "DUBBO_PROVIDER";
 
-    private final GatewayClient gatewayClient = CoreServiceManager.INSTANCE.getService(GatewayClient.class);
     @Override
     public void before(Object obj, Method method, Object[] arguments, BeforeResult beforeResult) throws Exception {
         Invoker invoker = (Invoker) arguments[0];
@@ -76,16 +68,12 @@ public class AliDubboInterceptor implements InstanceMethodInterceptor {
         String source = DubboUtil.buildSourceKey(serviceUniqueName, methodName);
 
         SpanEvent apmSpanEvent;
-        boolean start;
-        try {
-            start = isRecord(RecordJob.recordJob, invocation);
-        } catch (Exception e) {
-            start = false;
-        }
+        boolean start = RecordJobMatcher.isRecord(RecordJob.recordJob, invocation.getMethodName());
         CorrelationConst.VALUE_MAX_LENGTH = 1280;
         CorrelationConst.ELEMENT_MAX_NUMBER = 10;
 
-        injectRecordContext(isConsumer, invocation);
+        // 只有可能被录制的请求才保留请求副本，副本在追加链路信息前生成
+        injectRecordContext(isConsumer, invocation, start || !RecordStatus.map.isEmpty());
 
         if (isConsumer) {
             apmSpanEvent = processConsumer(className, methodName, invocation, source);
@@ -102,13 +90,7 @@ public class AliDubboInterceptor implements InstanceMethodInterceptor {
     public Object after(Object obj, Method method, Object[] arguments, Object result) throws Exception {
         Invoker invoker = (Invoker) arguments[0];
         Invocation invocation = (Invocation) arguments[1];
-        boolean start;
-
-        if (RecordJob.recordJob != null) {
-            start = isRecord(RecordJob.recordJob, invocation);
-        } else {
-            start = false;
-        }
+        boolean start = RecordJobMatcher.isRecord(RecordJob.recordJob, invocation.getMethodName());
 
         RecordContext recordContext;
         Stack<RecordContext> recordContextStack = (Stack<RecordContext>) RecordStatus.context.get();
@@ -179,57 +161,29 @@ public class AliDubboInterceptor implements InstanceMethodInterceptor {
 
     private void sendRecorder(Invocation invocation, Result ret, boolean entry, Invoker invoker, String jobId,
                               RecordContext recordContext) throws Throwable {
-        Recorder recordRequest = Recorder.builder().build();
-        recordRequest.setTraceId(TraceCollector.getVirtualTraceId());
-        recordRequest.setJobId(jobId);
-        recordRequest.setMethodName(invoker.getInterface().getCanonicalName() + CommonConst.POINT_SIGN +
-                invocation.getMethodName());
-        recordRequest.setAppType(ConfigConst.DUBBO_APP_TYPE);
-        recordRequest.setEntry(entry);
-        recordRequest.setTimestamp(new Date());
-        String subcall = TraceCollector.getVirtualTraceId() + invoker.getInterface().getCanonicalName() +
-                CommonConst.POINT_SIGN + invocation.getMethodName() + JSON.toJSONString(invocation.getParameterTypes());
-        String subcallWithSha256 = Hashing.sha256().hashString(subcall, StandardCharsets.UTF_8).toString();
-        recordRequest.setSubCallKey(subcallWithSha256);
-        int subcallcount = setSubCallCount(subcall);
-        recordRequest.setSubCallCount(subcallcount);
-        String req = recordContext.requestBody;
-        Result result = (Result) ret;
-        result.recreate();
-        String res = JSON.toJSONString(result.recreate(), SerializerFeature.WriteMapNullValue);
-        recordRequest.setRequestBody(req);
-        recordRequest.setResponseBody(res);
-        recordRequest.setRequestClass(recordContext.requestClass);
-        recordRequest.setResponseClass(result.recreate().getClass().getName());
-        String serializedrequest = JSON.toJSONString(recordRequest, SerializerFeature.WriteMapNullValue);
-        gatewayClient.send(serializedrequest.getBytes(StandardCharsets.UTF_8), CommonConst.FLOW_RECORD_DATA_TYPE);
-    }
-
-    private boolean isRecord(RecordJob recordJob, Invocation invocation) throws UnknownHostException {
-        if (!recordJob.isTrigger()) {
-            return false;
+        String traceId = TraceCollector.getVirtualTraceId();
+        if (recordContext.request == null || !RecordSender.getInstance().isSampled(traceId)) {
+            return;
         }
-        if (!recordJob.getApplication().equals(AppNameUtil.getAppName())) {
-            return false;
-        }
-
-        InetAddress addr = InetAddress.getLocalHost();
-        String localaddr = addr.getHostAddress();
-
-        if (!recordJob.getMachineList().contains(localaddr)) {
-            return false;
-        }
-
-        if (!recordJob.getMethodList().isEmpty() && !recordJob.getMethodList().contains(invocation.getMethodName())) {
-            return false;
-        }
-
-        Date date = new Date();
-        if (recordJob.getStartTime().before(date) && recordJob.getEndTime().after(date)) {
-            return true;
-        } else {
-            return false;
+        Object response = ret.recreate();
+        if (response == null) {
+            return;
         }
+        RecordEvent recordEvent = new RecordEvent();
+        recordEvent.traceId = traceId;
+        recordEvent.jobId = jobId;
+        recordEvent.methodName = invoker.getInterface().getCanonicalName() + CommonConst.POINT_SIGN +
+                invocation.getMethodName();
+        recordEvent.appType = ConfigConst.DUBBO_APP_TYPE;
+        recordEvent.entry = entry;
+        recordEvent.timestamp = System.currentTimeMillis();
+        recordEvent.subCall = traceId + recordEvent.methodName +
+                DubboUtil.buildParameterTypesJson(invocation.getParameterTypes());
+        recordEvent.subCallCount = setSubCallCount(recordEvent.subCall);
+        recordEvent.request = recordContext.request;
+        recordEvent.requestClass = recordContext.requestClass;
+        recordEvent.response = response;
+        RecordSender.getInstance().offer(recordEvent);
     }
 
     private void correlationInsert(Invoker invoker, Invocation invocation) {
@@ -273,23 +227,19 @@ public class AliDubboInterceptor implements InstanceMethodInterceptor {
         return subCallCount;
     }
 
-    private void injectRecordContext(boolean isConsumer, Invocation invocation) {
+    private void injectRecordContext(boolean isConsumer, Invocation invocation, boolean needRequest) {
         RecordContext recordContext = new RecordContext();
-        if (RecordStatus.context.get() == null) {
-            Stack<RecordContext> recordContextStack = new Stack<RecordContext>();
-            recordContext.isConsumer = isConsumer;
-            recordContext.requestBody = JSON.toJSONString(invocation, SerializerFeature.WriteMapNullValue);
+        recordContext.isConsumer = isConsumer;
+        if (needRequest) {
+            recordContext.request = new RpcInvocation(invocation);
             recordContext.requestClass = Invocation.class.getCanonicalName();
-            recordContextStack.push(recordContext);
-            RecordStatus.context.set(recordContextStack);
-        } else {
-            Stack<RecordContext> recordContextStack = (Stack<RecordContext>) RecordStatus.context.get();
-            recordContext.isConsumer = isConsumer;
-            recordContext.requestBody = JSON.toJSONString(invocation, SerializerFeature.WriteMapNullValue);
-            recordContext.requestClass = Invocation.class.getCanonicalName();
-            recordContextStack.push(recordContext);
+        }
+        Stack<RecordContext> recordContextStack = (Stack<RecordContext>) RecordStatus.context.get();
+        if (recordContextStack == null) {
+            recordContextStack = new Stack<RecordContext>();
             RecordStatus.context.set(recordContextStack);
         }
+        recordContextStack.push(recordContext);
     }
 
     private SpanEvent processConsumer(String className, String methodName, Invocation invocation, String source) {
@@ -25,4 +25,23 @@ public class DubboUtil {
         }
     }
 
+    /**
+     * 参数类型列表转为json字符串，结果与fastjson序列化Class数组一致
+     *
+     * @param parameterTypes 参数类型
+     * @return json字符串
+     */
+    public static String buildParameterTypesJson(Class<?>[] parameterTypes) {
+        if (parameterTypes == null) {
+            return "null";
+        }
+        StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append('"').append(parameterTypes[i].getName()).append('"');
+        }
+        return buf.append(']').toString();
+    }
 }
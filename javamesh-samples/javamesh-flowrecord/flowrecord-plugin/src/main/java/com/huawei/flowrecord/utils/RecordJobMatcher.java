@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.flowrecord.utils;
+
+import com.huawei.flowrecord.domain.RecordJob;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 录制任务匹配
+ * 任务变化时预先算好应用、机器是否匹配以及方法集合，请求时只做一次集合查找和时间比较
+ *
+ */
+public final class RecordJobMatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordJobMatcher.class);
+
+    private static final String LOCAL_ADDRESS = resolveLocalAddress();
+
+    private static volatile CompiledJob compiledJob;
+
+    private RecordJobMatcher() {
+    }
+
+    /**
+     * 当前请求是否需要录制
+     *
+     * @param recordJob  录制任务
+     * @param methodName 方法名
+     * @return 是否录制
+     */
+    public static boolean isRecord(RecordJob recordJob, String methodName) {
+        if (recordJob == null) {
+            return false;
+        }
+        CompiledJob current = compiledJob;
+        if (current == null || current.recordJob != recordJob) {
+            current = new CompiledJob(recordJob);
+            compiledJob = current;
+        }
+        return current.isRecord(methodName, System.currentTimeMillis());
+    }
+
+    private static String resolveLocalAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            LOGGER.error("[flowrecord]: cannot get local address: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 预处理后的录制任务
+     */
+    private static class CompiledJob {
+        private final RecordJob recordJob;
+
+        /**
+         * 任务已触发，且应用和本机都在录制范围内
+         */
+        private final boolean enabled;
+
+        /**
+         * 录制的方法，为null时录制全部方法
+         */
+        private final Set<String> methods;
+
+        private final long startTime;
+
+        private final long endTime;
+
+        CompiledJob(RecordJob recordJob) {
+            this.recordJob = recordJob;
+            this.enabled = recordJob.isTrigger() && recordJob.getMethodList() != null
+                && recordJob.getStartTime() != null && recordJob.getEndTime() != null
+                && AppNameUtil.getAppName().equals(recordJob.getApplication())
+                && recordJob.getMachineList() != null && recordJob.getMachineList().contains(LOCAL_ADDRESS);
+            this.methods = enabled && !recordJob.getMethodList().isEmpty()
+                ? new HashSet<String>(recordJob.getMethodList()) : null;
+            this.startTime = enabled ? recordJob.getStartTime().getTime() : 0L;
+            this.endTime = enabled ? recordJob.getEndTime().getTime() : 0L;
+        }
+
+        boolean isRecord(String methodName, long now) {
+            if (!enabled) {
+                return false;
+            }
+            if (methods != null && !methods.contains(methodName)) {
+                return false;
+            }
+            return startTime < now && endTime > now;
+        }
+    }
+}
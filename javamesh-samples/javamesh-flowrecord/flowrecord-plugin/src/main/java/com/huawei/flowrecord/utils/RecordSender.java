@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.flowrecord.utils;
+
+import com.huawei.apm.core.service.CoreServiceManager;
+import com.huawei.apm.core.service.send.GatewayClient;
+import com.huawei.flowrecord.FlowrecordThreadFactory;
+import com.huawei.flowrecord.config.CommonConst;
+import com.huawei.flowrecord.config.FlowRecordConfig;
+import com.huawei.flowrecord.domain.RecordEvent;
+import com.huawei.flowrecord.domain.Recorder;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import org.apache.curator.shaded.com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 录制数据异步发送
+ * 业务线程只把采集到的引用放入有界缓冲区，缓冲区满时丢弃并计数；
+ * 后台线程负责计算subCallKey、序列化和发送。采样按traceId决定，同一条链路的入口和子调用同时采样或同时丢弃
+ *
+ */
+public final class RecordSender {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordSender.class);
+
+    private static final RecordSender INSTANCE = new RecordSender();
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private static final int SAMPLE_SCALE = 10000;
+
+    private static final long POLL_TIMEOUT_MS = 1000L;
+
+    private static final long REPORT_INTERVAL_MS = 60000L;
+
+    private final GatewayClient gatewayClient = CoreServiceManager.INSTANCE.getService(GatewayClient.class);
+
+    private final BlockingQueue<RecordEvent> buffer;
+
+    /**
+     * traceId散列到[0, SAMPLE_SCALE)后小于该值的链路被录制
+     */
+    private final int sampleThreshold;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private RecordSender() {
+        FlowRecordConfig config = PluginConfigUtil.getFlowRecordConfig();
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        double sampleRate = 1.0D;
+        if (config != null) {
+            try {
+                bufferSize = Integer.parseInt(config.getRecordBufferSize());
+                sampleRate = Double.parseDouble(config.getRecordSampleRate());
+            } catch (NumberFormatException e) {
+                LOGGER.error("[flowrecord]: invalid record buffer size or sample rate: {}", e.getMessage());
+            }
+        }
+        this.buffer = new ArrayBlockingQueue<RecordEvent>(bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE);
+        this.sampleThreshold = (int) (Math.max(0.0D, Math.min(1.0D, sampleRate)) * SAMPLE_SCALE);
+    }
+
+    public static RecordSender getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 链路是否被采样录制
+     *
+     * @param traceId 链路id，为空时总是录制
+     * @return 是否录制
+     */
+    public boolean isSampled(String traceId) {
+        if (sampleThreshold >= SAMPLE_SCALE || traceId == null) {
+            return true;
+        }
+        return (traceId.hashCode() & Integer.MAX_VALUE) % SAMPLE_SCALE < sampleThreshold;
+    }
+
+    /**
+     * 放入缓冲区，不阻塞业务线程，缓冲区满时丢弃
+     *
+     * @param event 录制数据
+     */
+    public void offer(RecordEvent event) {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            Thread encoder = new FlowrecordThreadFactory("flowrecord-sender").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    encodeLoop();
+                }
+            });
+            encoder.setDaemon(true);
+            encoder.start();
+        }
+        if (!buffer.offer(event)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private void encodeLoop() {
+        long lastReportTime = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                RecordEvent event = buffer.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    send(event);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable throwable) {
+                failedCount.incrementAndGet();
+                LOGGER.error("sendRecorder error: {}", throwable.getMessage());
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastReportTime >= REPORT_INTERVAL_MS) {
+                lastReportTime = now;
+                report();
+            }
+        }
+    }
+
+    private void send(RecordEvent event) {
+        Recorder recordRequest = Recorder.builder().build();
+        recordRequest.setTraceId(event.traceId);
+        recordRequest.setJobId(event.jobId);
+        recordRequest.setMethodName(event.methodName);
+        recordRequest.setAppType(event.appType);
+        recordRequest.setEntry(event.entry);
+        recordRequest.setTimestamp(new Date(event.timestamp));
+        recordRequest.setSubCallKey(Hashing.sha256().hashString(event.subCall, StandardCharsets.UTF_8).toString());
+        recordRequest.setSubCallCount(event.subCallCount);
+        recordRequest.setRequestBody(JSON.toJSONString(event.request, SerializerFeature.WriteMapNullValue));
+        recordRequest.setRequestClass(event.requestClass);
+        recordRequest.setResponseBody(JSON.toJSONString(event.response, SerializerFeature.WriteMapNullValue));
+        recordRequest.setResponseClass(event.response.getClass().getName());
+        String serializedRequest = JSON.toJSONString(recordRequest, SerializerFeature.WriteMapNullValue);
+        gatewayClient.send(serializedRequest.getBytes(StandardCharsets.UTF_8), CommonConst.FLOW_RECORD_DATA_TYPE);
+        sentCount.incrementAndGet();
+    }
+
+    private void report() {
+        long dropped = droppedCount.getAndSet(0L);
+        long failed = failedCount.getAndSet(0L);
+        long sent = sentCount.getAndSet(0L);
+        if (dropped > 0 || failed > 0) {
+            LOGGER.warn("[flowrecord]: sent {} records, dropped {} because buffer was full, {} failed in last {} ms",
+                sent, dropped, failed, REPORT_INTERVAL_MS);
+        }
+    }
+}
@@ -321,6 +321,8 @@ public class JobController {
             replayJob.setMaxThreadCount(request.getMaxThreadCount());
             replayJob.setMaxResponseTime(request.getMaxResponseTime());
             replayJob.setMinSuccessRate(request.getMinSuccessRate());
+            replayJob.setReplayQps(request.getReplayQps());
+            replayJob.setSpeedMultiplier(request.getSpeedMultiplier());
             elasticsearchJobStorage.insert(Constant.REPLAY_JOB_INDEX, replayJob);
             replayJobPublisher.publish(replayJob);
 
@@ -64,6 +64,8 @@ public class ReplayJobZookeeperPublisher implements ReplayJobPublisherExt<Replay
             subReplayJobEntity.setMaxThreadCount(replayJob.getMaxThreadCount());
             subReplayJobEntity.setMaxResponseTime(replayJob.getMaxResponseTime());
             subReplayJobEntity.setMinSuccessRate(replayJob.getMinSuccessRate());
+            subReplayJobEntity.setReplayQps(replayJob.getReplayQps());
+            subReplayJobEntity.setSpeedMultiplier(replayJob.getSpeedMultiplier());
 
             String subJobQueuePathPrefix = Constant.SUB_REPLAY_JOB_PATH_PREFIX + Constant.REPLAY_SUB_JOB_NODE_PREFIX;
             zkClient.create().creatingParentContainersIfNeeded().withMode(CreateMode.PERSISTENT_SEQUENTIAL)
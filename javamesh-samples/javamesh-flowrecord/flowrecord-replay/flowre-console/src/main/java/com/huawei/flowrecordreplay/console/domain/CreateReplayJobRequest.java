@@ -86,4 +86,14 @@ public class CreateReplayJobRequest {
      * 最小成功率
      */
     private int minSuccessRate;
+
+    /**
+     * 回放数据下发的目标QPS，0表示不限制
+     */
+    private int replayQps;
+
+    /**
+     * 按录制时间线回放的倍速，0表示不按时间线回放
+     */
+    private double speedMultiplier;
 }
\ No newline at end of file
@@ -83,6 +83,8 @@ public class ElasticsearchIndicesInit implements ApplicationRunner {
                 .startObject("maxThreadCount").field("type", "keyword").endObject()
                 .startObject("maxResponseTime").field("type", "keyword").endObject()
                 .startObject("minSuccessRate").field("type", "keyword").endObject()
+                .startObject("replayQps").field("type", "integer").endObject()
+                .startObject("speedMultiplier").field("type", "double").endObject()
                 .endObject()
                 .endObject();
             request.mapping(builder);
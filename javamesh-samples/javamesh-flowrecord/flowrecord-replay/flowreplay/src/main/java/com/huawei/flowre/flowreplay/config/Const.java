@@ -137,6 +137,16 @@ public class Const {
      */
     public static final long SCROLL_TIME = 5L;
 
+    /**
+     * 滚动查询上下文的最长保留时间，与elasticsearch的search.max_keep_alive默认值一致
+     */
+    public static final long MAX_SCROLL_TIME = 24 * 60L;
+
+    /**
+     * 录制数据的录制时间字段
+     */
+    public static final String TIMESTAMP_FIELD = "timestamp";
+
     /**
      * arguments字段
      */
@@ -201,9 +211,4 @@ public class Const {
      * Date替换limit size
      */
     public static final int LIMIT_SIZE = 2;
-
-    /**
-     * Thread sleep time
-     */
-    public static final int THREAD_SLEEP = 1000;
 }
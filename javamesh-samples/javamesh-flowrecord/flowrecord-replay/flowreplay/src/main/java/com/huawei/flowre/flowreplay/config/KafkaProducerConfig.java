@@ -66,6 +66,18 @@ public class KafkaProducerConfig {
     @Value("${kafka.max.block.ms}")
     private String kafkaMaxBlockMs;
 
+    /**
+     * 发往同一分区的消息攒批的大小
+     */
+    @Value("${kafka.batch.size}")
+    private String kafkaBatchSize;
+
+    /**
+     * 攒批的最长等待时间
+     */
+    @Value("${kafka.linger.ms}")
+    private String kafkaLingerMs;
+
     public Properties getProperties() {
         Properties properties = new Properties();
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
@@ -77,6 +89,8 @@ public class KafkaProducerConfig {
         properties.put(ProducerConfig.RETRIES_CONFIG, kafkaRetries);
         properties.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, kafkaRequestTimeoutMs);
         properties.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, kafkaMaxBlockMs);
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, kafkaBatchSize);
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, kafkaLingerMs);
         return properties;
     }
 
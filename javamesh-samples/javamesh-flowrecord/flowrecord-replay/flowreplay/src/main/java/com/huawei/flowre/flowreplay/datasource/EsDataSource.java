@@ -8,7 +8,9 @@ import com.huawei.flowre.flowreplay.config.Const;
 
 import com.alibaba.fastjson.JSON;
 
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
@@ -24,6 +26,8 @@ import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +37,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Elasticsearch 数据库增删改查实现
@@ -115,30 +120,109 @@ public class EsDataSource {
      */
     public List<String> getData(String index) {
         List<String> queryResult = new ArrayList<>();
+        try {
+            boolean isCompleted = scrollData(index, null, page -> {
+                queryResult.addAll(page);
+                return true;
+            });
+            if (isCompleted) {
+                return queryResult;
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 按页滚动查询索引的全部doc，每取到一页就交给处理器，内存中只保留当前页和预取的下一页
+     * <p>
+     * 处理器会按回放速率阻塞，阻塞期间滚动查询上下文不能过期：处理当前页之前先预取下一页，
+     * 预取请求的保留时间按处理器对当前页的估算设置
+     * </p>
+     *
+     * @param index     表名的索引
+     * @param sortField 升序排列的字段，为空时按doc顺序滚动
+     * @param handler   分页处理器
+     * @return 是否完整遍历了索引
+     * @throws InterruptedException 处理器等待时被中断
+     */
+    public boolean scrollData(String index, String sortField, ScrollHandler handler) throws InterruptedException {
         SearchRequest searchRequest = new SearchRequest(index);
         searchRequest.scroll(TimeValue.timeValueMinutes(Const.SCROLL_TIME));
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.size(Const.SCROLL_SIZE);
         searchSourceBuilder.query(QueryBuilders.matchAllQuery());
+        if (sortField == null) {
+            searchSourceBuilder.sort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC);
+        } else {
+            searchSourceBuilder.sort(sortField, SortOrder.ASC);
+        }
+        String scrollId = null;
         try {
             SearchResponse searchResponse = restHighLevelClient
-                .search(searchRequest.source(searchSourceBuilder),
-                    RequestOptions.DEFAULT);
-            while (searchResponse.getHits().getHits() != null && searchResponse.getHits().getHits().length > 0) {
-                String scrollId = searchResponse.getScrollId();
-                SearchHit[] searchHits = searchResponse.getHits().getHits();
-                for (SearchHit searchHit : searchHits) {
-                    queryResult.add(searchHit.getSourceAsString());
-                }
+                .search(searchRequest.source(searchSourceBuilder), RequestOptions.DEFAULT);
+            scrollId = searchResponse.getScrollId();
+            List<String> page = getPage(searchResponse);
+            while (!page.isEmpty()) {
                 SearchScrollRequest searchScrollRequest = new SearchScrollRequest(scrollId);
-                searchScrollRequest.scroll(TimeValue.timeValueMinutes(Const.SCROLL_TIME));
+                searchScrollRequest.scroll(getKeepAlive(handler.estimateHandleMillis(page)));
                 searchResponse = restHighLevelClient.scroll(searchScrollRequest, RequestOptions.DEFAULT);
+                scrollId = searchResponse.getScrollId();
+                if (!handler.handle(page)) {
+                    return false;
+                }
+                page = getPage(searchResponse);
             }
-            return queryResult;
+            return true;
         } catch (IOException ioException) {
             LOGGER.error("Query data has error:{}", ioException.getMessage());
+        } catch (ElasticsearchException elasticsearchException) {
+            // 滚动查询上下文过期等服务端错误
+            LOGGER.error("Query data has error, status:{}, message:{}", elasticsearchException.status(),
+                elasticsearchException.getDetailedMessage());
+        } finally {
+            clearScroll(scrollId);
+        }
+        return false;
+    }
+
+    private static List<String> getPage(SearchResponse searchResponse) {
+        SearchHit[] searchHits = searchResponse.getHits().getHits();
+        if (searchHits == null || searchHits.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> page = new ArrayList<>(searchHits.length);
+        for (SearchHit searchHit : searchHits) {
+            page.add(searchHit.getSourceAsString());
+        }
+        return page;
+    }
+
+    /**
+     * 保留时间取估算阻塞时间的两倍，不小于默认值且不超过服务端允许的最大值
+     *
+     * @param handleMillis 估算的处理阻塞时间
+     * @return 保留时间
+     */
+    private static TimeValue getKeepAlive(long handleMillis) {
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(2 * handleMillis) + 1L;
+        return TimeValue.timeValueMinutes(Math.min(Math.max(minutes, Const.SCROLL_TIME), Const.MAX_SCROLL_TIME));
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        try {
+            restHighLevelClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        } catch (IOException ioException) {
+            LOGGER.error("Clear scroll has error:{}", ioException.getMessage());
+        } catch (ElasticsearchException elasticsearchException) {
+            LOGGER.warn("Clear scroll has error:{}", elasticsearchException.getDetailedMessage());
         }
-        return Collections.emptyList();
     }
 
     /**
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.flowre.flowreplay.datasource;
+
+import java.util.List;
+
+/**
+ * 滚动查询的分页处理器
+ *
+ * @author luanwenfei
+ * @version 0.0.1
+ * @since 2021-03-22
+ */
+public interface ScrollHandler {
+    /**
+     * 处理一页查询结果，处理器阻塞时滚动查询随之暂停
+     *
+     * @param page 当前页doc的source
+     * @return 是否继续滚动查询
+     * @throws InterruptedException 等待处理时被中断
+     */
+    boolean handle(List<String> page) throws InterruptedException;
+
+    /**
+     * 估算处理一页可能阻塞的时间，滚动查询上下文的保留时间需要覆盖这段时间
+     *
+     * @param page 当前页doc的source
+     * @return 估算的阻塞时间，单位毫秒，不阻塞时返回0
+     */
+    default long estimateHandleMillis(List<String> page) {
+        return 0L;
+    }
+}
@@ -6,6 +6,7 @@ package com.huawei.flowre.flowreplay.service;
 
 import com.huawei.flowre.flowreplay.config.Const;
 import com.huawei.flowre.flowreplay.datasource.EsDataSource;
+import com.huawei.flowre.flowreplay.datasource.ScrollHandler;
 import com.huawei.flowre.flowreplay.domain.ModifyRuleEntity;
 import com.huawei.flowre.flowreplay.domain.RecordEntity;
 import com.huawei.flowre.flowreplay.domain.SubReplayJobEntity;
@@ -13,6 +14,7 @@ import com.huawei.flowre.flowreplay.domain.content.DubboInvokeContent;
 import com.huawei.flowre.flowreplay.domain.content.HttpInvokeContent;
 import com.huawei.flowre.flowreplay.domain.message.HttpInvokeMessage;
 import com.huawei.flowre.flowreplay.domain.result.HttpRequestEntity;
+import com.huawei.flowre.flowreplay.utils.ReplayRateController;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
@@ -38,10 +40,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 /**
  * 前置处理逻辑用于构造回放数据
  *
@@ -73,78 +79,167 @@ public class InvokeDataBuilder {
     @Autowired
     private KafkaProducer<String, String> producer;
 
+    /**
+     * 所有回放任务共享的数据构造线程池
+     */
+    private ThreadPoolExecutor invokeThreadPool;
+
+    /**
+     * 创建共享的数据构造线程池；多个任务的在途批次之和可能超过线程池容量，
+     * 线程池满时由提交批次的滚动查询线程自己执行该批次，既不丢弃批次，也使该任务的读取放慢
+     */
+    @PostConstruct
+    public void init() {
+        invokeThreadPool = new ThreadPoolExecutor(coreThreadSize, maxThreadSize,
+            aliveTime, TimeUnit.SECONDS, new ArrayBlockingQueue<>(blockQueueSize), (runnable, executor) -> {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("invoke thread pool is shut down");
+                }
+                runnable.run();
+            });
+    }
+
+    /**
+     * 关闭数据构造线程池
+     */
+    @PreDestroy
+    public void destroy() {
+        invokeThreadPool.shutdownNow();
+    }
+
+    /**
+     * 流式回放一个子任务：按页滚动读取录制数据，分批交给共享线程池构造回放数据并写入kafka，
+     * 在途批次达到上限时滚动查询阻塞等待，全部批次处理完成后返回
+     *
+     * @param task 回放子任务
+     * @throws UnknownHostException 获取本机地址失败
+     * @throws InterruptedException 等待时被中断
+     */
     public void replay(SubReplayJobEntity task) throws UnknownHostException, InterruptedException {
         LOGGER.info("Starting task : {}", task.getJobId());
-        List<String> replayData = esDataSource.getData(task.getRecordIndex());
         InetAddress address = InetAddress.getLocalHost();
         String workerName = Const.REPLAY_DATA_TOPIC + address.getHostAddress() + '_'
                 + environment.getProperty("local.server.port");
-        BlockingQueue blockingQueue = new ArrayBlockingQueue(blockQueueSize);
-        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(coreThreadSize, maxThreadSize,
-                aliveTime, TimeUnit.SECONDS, blockingQueue);
-        execute(replayData, threadPoolExecutor, task, workerName);
-    }
+        ReplayRateController rateController = new ReplayRateController(task.getReplayQps(),
+            task.getSpeedMultiplier());
+        Semaphore inFlightBatches = new Semaphore(preInovkeThreadSize);
+        String sortField = rateController.isTimelineEnabled() ? Const.TIMESTAMP_FIELD : null;
+        boolean isCompleted = esDataSource.scrollData(task.getRecordIndex(), sortField, new ScrollHandler() {
+            @Override
+            public boolean handle(List<String> page) throws InterruptedException {
+                return execute(page, inFlightBatches, task, workerName, rateController);
+            }
 
-    private void execute(List<String> replayData, ThreadPoolExecutor threadPoolExecutor,
-                         SubReplayJobEntity task, String workerName) throws InterruptedException {
-        for (int i = 0; i < replayData.size(); i += preInovkeSize) {
-            int from = i;
-            int end;
-            if (from + preInovkeSize > replayData.size()) {
-                end = replayData.size();
-            } else {
-                end = from + preInovkeSize;
+            @Override
+            public long estimateHandleMillis(List<String> page) {
+                return estimateExecuteMillis(page, rateController);
             }
-            List<String> searchHits = replayData.subList(from, end);
-            if (threadPoolExecutor.getQueue().size() > preInovkeThreadSize) {
-                while (true) {
-                    if (threadPoolExecutor.getQueue().size() > preInovkeThreadSize) {
-                        break;
-                    } else {
-                        Thread.sleep(Const.THREAD_SLEEP);
+        });
+
+        // 取回全部许可即本任务的批次都已处理完
+        inFlightBatches.acquire(preInovkeThreadSize);
+        producer.flush();
+        LOGGER.info("Task {} replay data {}", task.getJobId(), isCompleted ? "sent" : "interrupted");
+    }
+
+    private boolean execute(List<String> page, Semaphore inFlightBatches, SubReplayJobEntity task,
+                            String workerName, ReplayRateController rateController) throws InterruptedException {
+        for (int from = 0; from < page.size(); from += preInovkeSize) {
+            List<String> searchHits = page.subList(from, Math.min(from + preInovkeSize, page.size()));
+            inFlightBatches.acquire();
+            try {
+                invokeThreadPool.execute(() -> {
+                    try {
+                        sendInvokeData(searchHits, task, workerName, rateController);
+                    } finally {
+                        inFlightBatches.release();
                     }
+                });
+            } catch (RejectedExecutionException e) {
+                // 只在线程池关闭时发生
+                inFlightBatches.release();
+                LOGGER.error("[flowreplay]: invoke thread pool rejected task : {}", task.getJobId());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 估算处理一页时滚动查询线程阻塞的时间：本页与在途批次的数据都按回放速率下发，
+     * 按时间线回放时还需等到本页最后一条数据的录制时间
+     *
+     * @param page           当前页
+     * @param rateController 回放速率控制
+     * @return 估算的阻塞时间，单位毫秒
+     */
+    private long estimateExecuteMillis(List<String> page, ReplayRateController rateController) {
+        long fromRecordMillis = -1L;
+        long toRecordMillis = -1L;
+        if (rateController.isTimelineEnabled() && !page.isEmpty()) {
+            fromRecordMillis = getRecordMillis(page.get(0));
+            toRecordMillis = getRecordMillis(page.get(page.size() - 1));
+        }
+        long nanos = rateController.estimateNanos(page.size() + preInovkeThreadSize * preInovkeSize,
+            fromRecordMillis, toRecordMillis);
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long getRecordMillis(String searchHit) {
+        Date timestamp = JSON.parseObject(searchHit).getDate(Const.TIMESTAMP_FIELD);
+        return timestamp == null ? -1L : timestamp.getTime();
+    }
+
+    private void sendInvokeData(List<String> searchHits, SubReplayJobEntity task, String workerName,
+                                ReplayRateController rateController) {
+        for (String searchHit : searchHits) {
+            RecordEntity recordEntity = JSON.parseObject(searchHit, RecordEntity.class);
+            Map<String, List<ModifyRuleEntity>> modifyRule = task.getModifyRule();
+            if (modifyRule != null && modifyRule.get(recordEntity.getMethodName()) != null) {
+                modifyArguments(recordEntity, modifyRule.get(recordEntity.getMethodName()));
+            }
+            try {
+                rateController.acquire(recordEntity.getTimestamp() == null ? -1L
+                    : recordEntity.getTimestamp().getTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            switch (recordEntity.getAppType()) {
+                case "Dubbo": {
+                    sendKafka(workerName, JSON.toJSONString(buildDubboInvokeContent(recordEntity,
+                            task.getJobId(), task.getAddress())));
+                    break;
+                }
+                case "HTTP": {
+                    sendKafka(workerName, JSON.toJSONString(buildHttpInvokeContent(recordEntity,
+                            task.getJobId(), task.getAddress())));
+                    break;
+                }
+                default: {
+                    break;
                 }
             }
-            threadPoolExecutor.execute(
-                    () -> {
-                        for (String searchHit : searchHits) {
-                            RecordEntity recordEntity = JSON.parseObject(searchHit, RecordEntity.class);
-                            Map<String, List<ModifyRuleEntity>> modifyRule = task.getModifyRule();
-                            if (modifyRule != null && modifyRule.get(recordEntity.getMethodName()) != null) {
-                                modifyArguments(recordEntity, modifyRule.get(recordEntity.getMethodName()));
-                            }
-                            String msg;
-                            switch (recordEntity.getAppType()) {
-                                case "Dubbo": {
-                                    sendKafka(workerName, JSON.toJSONString(buildDubboInvokeContent(recordEntity,
-                                            task.getJobId(), task.getAddress())));
-                                    break;
-                                }
-                                case "HTTP": {
-                                    sendKafka(workerName, JSON.toJSONString(buildHttpInvokeContent(recordEntity,
-                                            task.getJobId(), task.getAddress())));
-                                    break;
-                                }
-                                default: {
-                                    break;
-                                }
-                            }
-                        }
-                    }
-            );
         }
     }
 
+    /**
+     * 异步发送，由producer按batch.size和linger.ms攒批，任务结束时统一flush
+     *
+     * @param topic topic
+     * @param msg   消息
+     */
     private void sendKafka(String topic, String msg) {
         try {
             ProducerRecord<String, String> record;
             record = new ProducerRecord<>(topic, msg);
             producer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    LOGGER.error("[flowreplay]: send message with kafka failed : {}", exception.getMessage());
+                }
             });
         } catch (Exception e) {
             LOGGER.error("[flowreplay]: send message with kafka failed");
-        } finally {
-            producer.flush();
         }
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.flowre.flowreplay.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 回放速率控制，多个线程共享
+ * <p>
+ * 目标QPS：按固定间隔依次发放许可，空闲后不会积攒许可突发下发；
+ * 倍速：按录制时间线回放，每条数据在 回放开始时间 + (录制时间 - 首条录制时间) / 倍速 之后下发。
+ * 两者同时配置时取较晚的时间
+ * </p>
+ *
+ * @author luanwenfei
+ * @version 0.0.1
+ * @since 2021-07-02
+ */
+public class ReplayRateController {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    /**
+     * 相邻两次下发的间隔，为0时不限制QPS
+     */
+    private final long intervalNanos;
+
+    /**
+     * 录制时间线的倍速，不大于0时不按时间线回放
+     */
+    private final double speedMultiplier;
+
+    private final long startNanos;
+
+    /**
+     * 下一个可用许可的时间
+     */
+    private final AtomicLong nextFreeNanos;
+
+    /**
+     * 时间线的起点，即第一条下发数据的录制时间
+     */
+    private final AtomicLong firstRecordMillis = new AtomicLong(UNSET);
+
+    /**
+     * 构造方法
+     *
+     * @param targetQps       目标QPS，不大于0时不限制
+     * @param speedMultiplier 录制时间线的倍速，不大于0时不按时间线回放
+     */
+    public ReplayRateController(int targetQps, double speedMultiplier) {
+        this.intervalNanos = targetQps > 0 ? NANOS_PER_SECOND / targetQps : 0L;
+        this.speedMultiplier = speedMultiplier;
+        this.startNanos = System.nanoTime();
+        this.nextFreeNanos = new AtomicLong(startNanos);
+    }
+
+    /**
+     * 是否按录制时间线回放，此时数据需按录制时间升序读取
+     *
+     * @return 是否按时间线回放
+     */
+    public boolean isTimelineEnabled() {
+        return speedMultiplier > 0;
+    }
+
+    /**
+     * 等待到一条数据可以下发的时间
+     *
+     * @param recordTimeMillis 数据的录制时间，小于0时不参与时间线控制
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(long recordTimeMillis) throws InterruptedException {
+        long dueNanos = getTimelineDue(recordTimeMillis);
+        if (intervalNanos > 0) {
+            dueNanos = reserve(dueNanos);
+        }
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 估算从现在起下发指定条数的数据，并且时间线推进到指定录制时间所需的时间
+     *
+     * @param count            待下发的数据条数
+     * @param fromRecordMillis 待下发数据中最早的录制时间，时间线尚未开始时作为起点，小于0时不参与估算
+     * @param toRecordMillis   待下发数据中最晚的录制时间，小于0时不参与估算
+     * @return 估算的时间，单位纳秒
+     */
+    public long estimateNanos(int count, long fromRecordMillis, long toRecordMillis) {
+        long now = System.nanoTime();
+        long estimate = 0L;
+        if (intervalNanos > 0) {
+            estimate = Math.max(nextFreeNanos.get() - now, 0L) + count * intervalNanos;
+        }
+        if (!isTimelineEnabled() || fromRecordMillis < 0 || toRecordMillis < 0) {
+            return estimate;
+        }
+        long origin = firstRecordMillis.get();
+        long timelineNanos;
+        if (origin == UNSET) {
+            timelineNanos = (long) ((toRecordMillis - fromRecordMillis) * NANOS_PER_MILLI / speedMultiplier);
+        } else {
+            timelineNanos = startNanos + (long) ((toRecordMillis - origin) * NANOS_PER_MILLI / speedMultiplier)
+                - now;
+        }
+        return Math.max(estimate, timelineNanos);
+    }
+
+    private long getTimelineDue(long recordTimeMillis) {
+        long now = System.nanoTime();
+        if (!isTimelineEnabled() || recordTimeMillis < 0) {
+            return now;
+        }
+        firstRecordMillis.compareAndSet(UNSET, recordTimeMillis);
+        long offsetMillis = recordTimeMillis - firstRecordMillis.get();
+        if (offsetMillis <= 0) {
+            return now;
+        }
+        long dueNanos = startNanos + (long) (offsetMillis * NANOS_PER_MILLI / speedMultiplier);
+        return dueNanos - now > 0 ? dueNanos : now;
+    }
+
+    private long reserve(long earliestNanos) {
+        while (true) {
+            long next = nextFreeNanos.get();
+            long slot = next - earliestNanos > 0 ? next : earliestNanos;
+            if (nextFreeNanos.compareAndSet(next, slot + intervalNanos)) {
+                return slot;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.huawei.flowre.flowreplay.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author luanwenfei
+ * @version 0.0.1
+ * @since 2021-07-26
+ */
+public class ReplayRateControllerTest {
+    private static final long TOLERANCE_MILLIS = 20L;
+
+    @Test
+    public void acquireWithTargetQps() throws InterruptedException {
+        ReplayRateController rateController = new ReplayRateController(100, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 51; i++) {
+            rateController.acquire(-1L);
+        }
+
+        /**
+         * 验证51个许可至少间隔50个10ms
+         */
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500L - TOLERANCE_MILLIS);
+    }
+
+    @Test
+    public void acquireWithTimeline() throws InterruptedException {
+        ReplayRateController rateController = new ReplayRateController(0, 10);
+        Assert.assertTrue(rateController.isTimelineEnabled());
+        long start = System.nanoTime();
+        rateController.acquire(10000L);
+        rateController.acquire(12000L);
+
+        /**
+         * 验证按10倍速 录制时间相差2s的数据间隔200ms下发
+         */
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed >= 200L - TOLERANCE_MILLIS);
+
+        /**
+         * 验证早于时间线起点和没有录制时间的数据不等待
+         */
+        start = System.nanoTime();
+        rateController.acquire(9000L);
+        rateController.acquire(-1L);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200L);
+    }
+
+    @Test
+    public void acquireWithoutLimit() throws InterruptedException {
+        ReplayRateController rateController = new ReplayRateController(0, 0);
+        Assert.assertFalse(rateController.isTimelineEnabled());
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            rateController.acquire(i);
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200L);
+    }
+
+    @Test
+    public void estimateNanos() throws InterruptedException {
+        /**
+         * 验证按目标QPS估算下发时间
+         */
+        ReplayRateController qpsController = new ReplayRateController(100, 0);
+        Assert.assertEquals(500L, TimeUnit.NANOSECONDS.toMillis(qpsController.estimateNanos(50, -1L, -1L)));
+
+        /**
+         * 验证时间线未开始时按数据的录制时间跨度估算，开始后按时间线起点估算
+         */
+        ReplayRateController timelineController = new ReplayRateController(0, 10);
+        Assert.assertEquals(2000L,
+            TimeUnit.NANOSECONDS.toMillis(timelineController.estimateNanos(10, 10000L, 30000L)));
+        timelineController.acquire(0L);
+        long estimate = TimeUnit.NANOSECONDS.toMillis(timelineController.estimateNanos(10, 10000L, 30000L));
+        Assert.assertTrue(estimate > 3000L - TOLERANCE_MILLIS && estimate <= 3000L);
+        Assert.assertEquals(0L, timelineController.estimateNanos(10, -1L, -1L));
+    }
+}
@@ -77,6 +77,24 @@ public abstract class Config implements Constant {
         return getValue(TEST_TOPIC, SHADOW);
     }
 
+    /**
+     * kafka正常consumer的轮询权重
+     *
+     * @return 轮询权重，最小为1
+     */
+    public int getKafkaOriginalWeight() {
+        return getWeight(KAFKA_ORIGINAL_WEIGHT);
+    }
+
+    /**
+     * kafka影子consumer的轮询权重
+     *
+     * @return 轮询权重，最小为1
+     */
+    public int getKafkaShadowWeight() {
+        return getWeight(KAFKA_SHADOW_WEIGHT);
+    }
+
     /**
      * 测试redis key前缀
      *
@@ -124,6 +142,14 @@ public abstract class Config implements Constant {
         return getShadowMongo().size() > 0;
     }
 
+    private int getWeight(String key) {
+        try {
+            return Math.max(1, Integer.parseInt(getValue(key, "1").trim()));
+        } catch (NumberFormatException exception) {
+            return 1;
+        }
+    }
+
     private Map<?, ?> getShadowMongo() {
         JSONAPI jsonapi = APIService.getJsonApi();
         if (mongoMap == null) {
@@ -23,6 +23,10 @@ public interface Constant {
 
     String MONGO_REPOSITORY = "mongo.repository";
 
+    String KAFKA_ORIGINAL_WEIGHT = "kafka.weight.original";
+
+    String KAFKA_SHADOW_WEIGHT = "kafka.weight.shadow";
+
     String SHADOW = "shadow_";
 
     String HTTP_INTERCEPTOR = "com.lubanops.stresstest.http.HttpClientInterceptor";
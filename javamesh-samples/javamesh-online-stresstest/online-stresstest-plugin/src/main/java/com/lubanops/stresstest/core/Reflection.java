@@ -6,25 +6,62 @@ package com.lubanops.stresstest.core;
 
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 反射工具类
  *
+ * <p>按类缓存方法和字段的访问句柄，同一个类的同一个成员只查找、设置可访问和创建句柄一次，
+ * 找不到的成员同样缓存，之后的调用不再查找。缓存通过{@link ClassValue}挂在类上，不会阻止类卸载。</p>
+ *
  * @author yiwei
  * @since 2021/10/21
  */
 public class Reflection {
     private static final Logger LOGGER = LogFactory.getLogger();
 
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodAccessor[] NO_METHODS = new MethodAccessor[0];
+
+    /**
+     * 方法缓存，key为方法名，value按参数个数下标存放同名方法，同一参数个数的重载方法串成链表
+     */
+    private static final ClassValue<ConcurrentMap<String, MethodAccessor[]>> METHODS =
+            new ClassValue<ConcurrentMap<String, MethodAccessor[]>>() {
+                @Override
+                protected ConcurrentMap<String, MethodAccessor[]> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    /**
+     * 字段缓存，key为字段名
+     */
+    private static final ClassValue<ConcurrentMap<String, FieldAccessor>> FIELDS =
+            new ClassValue<ConcurrentMap<String, FieldAccessor>>() {
+                @Override
+                protected ConcurrentMap<String, FieldAccessor> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
     /**
      * 方法执行。
      *
@@ -33,7 +70,7 @@ public class Reflection {
      * @return 返回值。
      */
     public static Optional<Object> invokeDeclared(String methodName, Object instance, Object... values) {
-        return getDeclaredMethod(methodName, instance.getClass(), values).map(method -> invokeDeclared(method, instance, values));
+        return getDeclaredMethod(methodName, instance.getClass(), values).invoke(instance, values);
     }
 
     /**
@@ -44,18 +81,14 @@ public class Reflection {
      * @return 返回值。
      */
     public static Optional<Object> invokeStaticDeclared(String methodName, String className, Object... values) {
-        return getDeclaredMethod(methodName, className, values).map(method -> invokeDeclared(method, null, values));
-    }
-
-    private static Object invokeDeclared(Method method, Object instance, Object... values) {
-        accessible(method);
+        Class<?> clazz;
         try {
-            return method.invoke(instance, values);
-        } catch (Throwable e) {
-            LOGGER.severe(String.format("Cannot execute method %s for reason %s.", method.getName(),
-                    e.getMessage()));
-            return null;
+            clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException e) {
+            LOGGER.severe(String.format("Cannot load %s.", className));
+            return Optional.empty();
         }
+        return getDeclaredMethod(methodName, clazz, values).invoke(null, values);
     }
 
     /**
@@ -66,12 +99,15 @@ public class Reflection {
      * @param prefix the prefix value to be add
      */
     public static void addPrefixOnDeclaredField(String fieldName, Object instance, String prefix) {
-        getDeclaredField(fieldName, instance).ifPresent(field -> {
-            String value = getDeclaredValueOfString(field, instance);
-            if (!Tester.isTestPrefix(value, prefix)) {
-                setDeclaredValue(field, instance, prefix + value, false);
-            }
-        });
+        FieldAccessor accessor = getDeclaredField(fieldName, instance);
+        if (accessor == FieldAccessor.MISSING) {
+            return;
+        }
+        Object value = accessor.get(instance);
+        String text = value instanceof String ? (String) value : "";
+        if (!Tester.isTestPrefix(text, prefix)) {
+            accessor.set(instance, prefix + text, false);
+        }
     }
 
     /**
@@ -83,16 +119,11 @@ public class Reflection {
      */
     @SuppressWarnings("unchecked")
     public static <T> Optional<T> getDeclaredValue(String fieldName, Object instance) {
-        return getDeclaredField(fieldName, instance).map(field -> {
-            accessible(field);
-            try {
-                return (T) field.get(instance);
-            } catch (IllegalAccessException e) {
-                LOGGER.severe(String.format("Cannot get field %s of class %s.", fieldName,
-                        instance.getClass().getName()));
-                return null;
-            }
-        });
+        FieldAccessor accessor = getDeclaredField(fieldName, instance);
+        if (accessor == FieldAccessor.MISSING) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable((T) accessor.get(instance));
     }
 
     /**
@@ -104,7 +135,10 @@ public class Reflection {
      * @param enableFinal 支持修改final字段
      */
     public static void setDeclaredValue(String fieldName, Object instance, Object value, boolean enableFinal) {
-        getDeclaredField(fieldName, instance).ifPresent(field -> setDeclaredValue(field, instance, value, enableFinal));
+        FieldAccessor accessor = getDeclaredField(fieldName, instance);
+        if (accessor != FieldAccessor.MISSING) {
+            accessor.set(instance, value, enableFinal);
+        }
     }
 
     /**
@@ -118,115 +152,101 @@ public class Reflection {
         setDeclaredValue(fieldName, instance, value, false);
     }
 
-    private static void setDeclaredValue(Field field, Object instance, Object value, boolean enableFinal) {
-        String fieldName = field.getName();
-        accessible(field);
-        try {
-            if (enableFinal) {
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+    /**
+     * 按方法名和参数个数取缓存的方法，有多个同参数个数的重载方法时取第一个参数类型匹配的，调用过程不分配对象
+     */
+    private static MethodAccessor getDeclaredMethod(String methodName, Class<?> clazz, Object... values) {
+        ConcurrentMap<String, MethodAccessor[]> methods = METHODS.get(clazz);
+        MethodAccessor[] byArity = methods.get(methodName);
+        if (byArity == null) {
+            byArity = findMethods(clazz, methodName);
+            MethodAccessor[] previous = methods.putIfAbsent(methodName, byArity);
+            if (previous != null) {
+                byArity = previous;
             }
-            field.set(instance, value);
-            LOGGER.fine(String.format("Set value = %s to field %s.", value, fieldName));
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            LOGGER.severe(String.format("Cannot set field %s of class %s.", fieldName,
-                    instance.getClass().getName()));
         }
-    }
-
-    private static String getDeclaredValueOfString(Field field, Object instance) {
-        String fieldName = field.getName();
-        accessible(field);
-        try {
-            Object value = field.get(instance);
-            if (value instanceof String) {
-                return (String) value;
+        if (values.length < byArity.length) {
+            for (MethodAccessor accessor = byArity[values.length]; accessor != null; accessor = accessor.next) {
+                if (accessor.accepts(values)) {
+                    return accessor;
+                }
             }
-        } catch (IllegalAccessException e) {
-            LOGGER.severe(String.format("Cannot set field %s of class %s.", fieldName,
-                    instance.getClass().getName()));
-        }
-        return "";
-    }
-
-    private static Optional<Method> getDeclaredMethod(String methodName, String className, Object... values) {
-        Class<?> clazz;
-        try {
-            clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
-            return getDeclaredMethod(methodName, clazz, values);
-        } catch (ClassNotFoundException e) {
-            LOGGER.severe(String.format("Cannot load %s.", className));
         }
-        return Optional.empty();
+        return MethodAccessor.MISSING;
     }
 
-    private static Optional<Method> getDeclaredMethod(String methodName, Class<?> clazz, Object... value) {
-        List<Class<?>> params = getParameterTypes(value);
-        Method method = null;
-        try {
-            method = getDeclaredMethodOneTime(methodName, clazz, params);
-        } catch (NoSuchMethodException e) {
-            while (true) {
-                clazz = clazz.getSuperclass();
-                if (clazz == Object.class) {
-                    break;
+    /**
+     * 从当前类开始向上查找声明的同名方法，不包含Object，子类的方法排在父类前面
+     */
+    private static MethodAccessor[] findMethods(Class<?> clazz, String methodName) {
+        MethodAccessor[] byArity = NO_METHODS;
+        for (Class<?> current = clazz; current != null && current != Object.class;
+                current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                if (!method.getName().equals(methodName) || method.isBridge()) {
+                    continue;
                 }
+                MethodAccessor accessor;
                 try {
-                    method = getDeclaredMethodOneTime(methodName, clazz, params);
-                } catch (NoSuchMethodException ignored) {
-                    // 故意留白
+                    accessor = new MethodAccessor(method);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    LOGGER.severe(String.format("Cannot access method %s of class %s for reason %s.", methodName,
+                            clazz.getName(), e.getMessage()));
+                    continue;
+                }
+                int arity = accessor.parameterTypes.length;
+                if (arity >= byArity.length) {
+                    byArity = Arrays.copyOf(byArity, arity + 1);
+                }
+                if (byArity[arity] == null) {
+                    byArity[arity] = accessor;
+                } else {
+                    MethodAccessor last = byArity[arity];
+                    while (last.next != null) {
+                        last = last.next;
+                    }
+                    last.next = accessor;
                 }
             }
         }
-        return Optional.ofNullable(method);
+        return byArity;
     }
 
-    private static Method getDeclaredMethodOneTime(String methodName, Class<?> clazz, List<Class<?>> params) throws NoSuchMethodException {
-        if (params.isEmpty()) {
-            return clazz.getDeclaredMethod(methodName);
-        } else {
-            return clazz.getDeclaredMethod(methodName, params.toArray(new Class[0]));
+    private static FieldAccessor getDeclaredField(String fieldName, Object instance) {
+        Class<?> clazz = instance.getClass();
+        ConcurrentMap<String, FieldAccessor> fields = FIELDS.get(clazz);
+        FieldAccessor accessor = fields.get(fieldName);
+        if (accessor == null) {
+            accessor = findField(clazz, fieldName);
+            FieldAccessor previous = fields.putIfAbsent(fieldName, accessor);
+            if (previous != null) {
+                accessor = previous;
+            }
         }
+        return accessor;
     }
 
-
     /**
-     * 获取参数列表的类型。
-     *
-     * @param values 参数列表
-     * @return 类型队列。
+     * 从当前类开始向上查找声明的字段，不包含Object
      */
-    private static List<Class<?>> getParameterTypes(Object... values) {
-        List<Class<?>> list = new ArrayList<>();
-        for (Object object : values) {
-            if (object == null) {
-                return Collections.emptyList();
-            } else {
-                list.add(object.getClass());
+    private static FieldAccessor findField(Class<?> clazz, String fieldName) {
+        for (Class<?> current = clazz; current != null && current != Object.class;
+                current = current.getSuperclass()) {
+            Field field;
+            try {
+                field = current.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException ignored) {
+                continue;
             }
-        }
-        return list;
-    }
-
-    private static Optional<Field> getDeclaredField(String fieldName, Object instance) {
-        Class<?> clazz = instance.getClass();
-        try {
-            return Optional.of(clazz.getDeclaredField(fieldName));
-        } catch (NoSuchFieldException e) {
-            while (true) {
-                clazz = clazz.getSuperclass();
-                if (clazz == Object.class) {
-                    break;
-                }
-                try {
-                    return Optional.of(clazz.getDeclaredField(fieldName));
-                } catch (NoSuchFieldException ignored) {
-                    // 故意留白
-                }
+            try {
+                return new FieldAccessor(field);
+            } catch (IllegalAccessException | RuntimeException e) {
+                LOGGER.severe(String.format("Cannot access field %s of class %s for reason %s.", fieldName,
+                        clazz.getName(), e.getMessage()));
+                return FieldAccessor.MISSING;
             }
         }
-        return Optional.empty();
+        return FieldAccessor.MISSING;
     }
 
     /**
@@ -239,4 +259,168 @@ public class Reflection {
             object.setAccessible(true);
         }
     }
+
+    /**
+     * 方法句柄，实例方法和静态方法统一适配为(Object instance, Object[] args)Object
+     */
+    private static final class MethodAccessor {
+        private static final MethodAccessor MISSING = new MethodAccessor();
+
+        private final String name;
+
+        private final Class<?>[] parameterTypes;
+
+        /**
+         * 参数类型，基本类型替换为包装类型
+         */
+        private final Class<?>[] argumentTypes;
+
+        private final MethodHandle invoker;
+
+        /**
+         * 同名且参数个数相同的下一个重载方法，只在查找时写入
+         */
+        private MethodAccessor next;
+
+        private MethodAccessor() {
+            this.name = null;
+            this.parameterTypes = null;
+            this.argumentTypes = null;
+            this.invoker = null;
+        }
+
+        MethodAccessor(Method method) throws IllegalAccessException {
+            accessible(method);
+            this.parameterTypes = method.getParameterTypes();
+            int count = parameterTypes.length;
+            this.argumentTypes = MethodType.methodType(void.class, parameterTypes).wrap().parameterArray();
+            MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            this.name = method.getName();
+            this.invoker = handle.asType(MethodType.genericMethodType(count + 1))
+                    .asSpreader(Object[].class, count);
+        }
+
+        /**
+         * 参数是否可以传给该方法，null可以传给非基本类型的参数
+         */
+        boolean accepts(Object[] values) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null ? parameterTypes[i].isPrimitive() : !argumentTypes[i].isInstance(values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Optional<Object> invoke(Object instance, Object[] values) {
+            if (invoker == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.ofNullable((Object) invoker.invokeExact(instance, values));
+            } catch (Throwable e) {
+                LOGGER.severe(String.format("Cannot execute method %s for reason %s.", name, e.getMessage()));
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * 字段句柄，统一适配为(Object instance)Object和(Object instance, Object value)void
+     */
+    private static final class FieldAccessor {
+        private static final FieldAccessor MISSING = new FieldAccessor();
+
+        private final String name;
+
+        private final boolean staticFinal;
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        private FieldAccessor() {
+            this.name = null;
+            this.staticFinal = false;
+            this.getter = null;
+            this.setter = null;
+        }
+
+        FieldAccessor(Field field) throws IllegalAccessException {
+            accessible(field);
+            boolean isStatic = Modifier.isStatic(field.getModifiers());
+            this.name = field.getName();
+            this.staticFinal = isStatic && Modifier.isFinal(field.getModifiers());
+            MethodHandle getterHandle = LOOKUP.unreflectGetter(field);
+            this.getter = (isStatic ? MethodHandles.dropArguments(getterHandle, 0, Object.class) : getterHandle)
+                    .asType(GETTER_TYPE);
+            this.setter = createSetter(field, isStatic);
+        }
+
+        /**
+         * static final字段即使可访问也无法创建setter，先去掉该Field对象上的final修饰符再创建；
+         * JDK12及以上不再允许反射修改modifiers，此时该字段没有setter，只打印告警
+         */
+        private static MethodHandle createSetter(Field field, boolean isStatic) {
+            MethodHandle setterHandle;
+            try {
+                setterHandle = LOOKUP.unreflectSetter(field);
+            } catch (IllegalAccessException e) {
+                if (!isStatic || !Modifier.isFinal(field.getModifiers()) || !removeFinal(field)) {
+                    return null;
+                }
+                try {
+                    setterHandle = LOOKUP.unreflectSetter(field);
+                } catch (IllegalAccessException ex) {
+                    LOGGER.warning(String.format("Static final field %s of class %s cannot be modified.",
+                            field.getName(), field.getDeclaringClass().getName()));
+                    return null;
+                }
+            }
+            return (isStatic ? MethodHandles.dropArguments(setterHandle, 0, Object.class) : setterHandle)
+                    .asType(SETTER_TYPE);
+        }
+
+        private static boolean removeFinal(Field field) {
+            try {
+                Field modifiersField = Field.class.getDeclaredField("modifiers");
+                modifiersField.setAccessible(true);
+                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+                return true;
+            } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+                LOGGER.warning(String.format("Static final field %s of class %s cannot be modified on this JDK: %s.",
+                        field.getName(), field.getDeclaringClass().getName(), e.getMessage()));
+                return false;
+            }
+        }
+
+        Object get(Object instance) {
+            try {
+                return (Object) getter.invokeExact(instance);
+            } catch (Throwable e) {
+                LOGGER.severe(String.format("Cannot get field %s of class %s.", name,
+                        instance.getClass().getName()));
+                return null;
+            }
+        }
+
+        void set(Object instance, Object value, boolean enableFinal) {
+            if (setter == null || (staticFinal && !enableFinal)) {
+                LOGGER.severe(String.format("Cannot set field %s of class %s.", name, instance.getClass().getName()));
+                return;
+            }
+            try {
+                setter.invokeExact(instance, value);
+            } catch (Throwable e) {
+                LOGGER.severe(String.format("Cannot set field %s of class %s.", name, instance.getClass().getName()));
+                return;
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("Set value = %s to field %s.", value, name));
+            }
+        }
+    }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+package com.lubanops.stresstest.kafka;
+
+import com.lubanops.stresstest.core.Tester;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 正常consumer与影子consumer的加权公平轮询调度
+ *
+ * <p>每次poll只返回一个consumer的数据，并据此设置压测标记。两个consumer各自累计虚拟时间（返回条数/权重），
+ * 有积压的一方优先，积压情况相同时先轮询虚拟时间较小的一方。超过{@link #PROBE_INTERVAL_NANOS}没有轮询的一方
+ * 会被优先询问一次，避免被判定为空闲的一方再也得不到拉取，从而无法发现新数据或超过max.poll.interval.ms。</p>
+ *
+ * <p>每次poll先不阻塞地依次询问两个consumer，任意一方有数据立即返回。都没有数据时，调用方的超时时间按权重
+ * 分给有积压的一方阻塞等待，空闲的一方不占用等待时间；两方都空闲时按权重分配。</p>
+ *
+ * <p>非线程安全，与KafkaConsumer一样只能在一个线程中使用。</p>
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public class PollScheduler<K, V> {
+    private static final String FETCH_METRIC_GROUP = "consumer-fetch-manager-metrics";
+
+    private static final String LAG_METRIC_NAME = "records-lag-max";
+
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Side<K, V> original;
+
+    private final Side<K, V> shadow;
+
+    /**
+     * 构造调度器，初始时两个consumer都未订阅
+     *
+     * @param originalConsumer 正常consumer
+     * @param originalWeight 正常consumer的权重
+     * @param shadowConsumer 影子consumer
+     * @param shadowWeight 影子consumer的权重
+     */
+    public PollScheduler(Consumer<K, V> originalConsumer, int originalWeight, Consumer<K, V> shadowConsumer,
+            int shadowWeight) {
+        this.original = new Side<>(originalConsumer, originalWeight, false);
+        this.shadow = new Side<>(shadowConsumer, shadowWeight, true);
+    }
+
+    /**
+     * 设置正常consumer是否订阅或分配了分区，未订阅的consumer不参与轮询
+     *
+     * @param active 是否参与轮询
+     */
+    public void setOriginalActive(boolean active) {
+        original.active = active;
+    }
+
+    /**
+     * 设置影子consumer是否订阅或分配了分区，未订阅的consumer不参与轮询
+     *
+     * @param active 是否参与轮询
+     */
+    public void setShadowActive(boolean active) {
+        shadow.active = active;
+    }
+
+    public PollStatistics getOriginalStatistics() {
+        return original.statistics;
+    }
+
+    public PollStatistics getShadowStatistics() {
+        return shadow.statistics;
+    }
+
+    /**
+     * 轮询一次，返回其中一个consumer的数据
+     *
+     * @param timeout 调用方的超时时间
+     * @return 数据，超时时返回空集合
+     */
+    public ConsumerRecords<K, V> poll(Duration timeout) {
+        if (!original.active && !shadow.active) {
+            // 与KafkaConsumer一致，未订阅时由原始consumer抛出异常
+            return deliver(original, original.poll(timeout));
+        }
+        original.refreshLag();
+        shadow.refreshLag();
+        Side<K, V> first = pick();
+        Side<K, V> second = other(first);
+
+        // 先取已经拉取到本地的数据，不阻塞
+        ConsumerRecords<K, V> records = first.poll(Duration.ZERO);
+        if (!records.isEmpty()) {
+            return deliver(first, records);
+        }
+        if (second.active) {
+            records = second.poll(Duration.ZERO);
+            if (!records.isEmpty()) {
+                return deliver(second, records);
+            }
+        }
+
+        long budget = toNanos(timeout);
+        boolean firstWaits = isWaiting(first, second);
+        boolean secondWaits = isWaiting(second, first);
+        if (budget > 0 && firstWaits) {
+            long start = System.nanoTime();
+            long share = secondWaits ? (long) ((double) budget * first.weight / (first.weight + second.weight))
+                    : budget;
+            records = first.poll(Duration.ofNanos(share));
+            if (!records.isEmpty()) {
+                return deliver(first, records);
+            }
+            budget -= System.nanoTime() - start;
+        }
+        if (budget > 0 && secondWaits) {
+            records = second.poll(Duration.ofNanos(budget));
+            if (!records.isEmpty()) {
+                return deliver(second, records);
+            }
+        }
+        setTest(false);
+        return ConsumerRecords.empty();
+    }
+
+    private Side<K, V> pick() {
+        if (!shadow.active) {
+            return original;
+        }
+        if (!original.active) {
+            return shadow;
+        }
+        Side<K, V> stale = original.lastPollTime <= shadow.lastPollTime ? original : shadow;
+        if (System.nanoTime() - stale.lastPollTime > PROBE_INTERVAL_NANOS) {
+            return stale;
+        }
+        if (original.hasBacklog() != shadow.hasBacklog()) {
+            return original.hasBacklog() ? original : shadow;
+        }
+        return shadow.virtualTime < original.virtualTime ? shadow : original;
+    }
+
+    private Side<K, V> other(Side<K, V> side) {
+        return side == original ? shadow : original;
+    }
+
+    /**
+     * 有积压的一方等待；两方都没有积压时都等待
+     */
+    private static boolean isWaiting(Side<?, ?> side, Side<?, ?> other) {
+        return side.active && (side.hasBacklog() || !other.active || !other.hasBacklog());
+    }
+
+    private ConsumerRecords<K, V> deliver(Side<K, V> side, ConsumerRecords<K, V> records) {
+        side.virtualTime += (double) records.count() / side.weight;
+
+        // 空闲的一方不积累份额，恢复后不会长时间独占轮询
+        Side<K, V> other = other(side);
+        if (!other.hasBacklog() && other.virtualTime < side.virtualTime) {
+            other.virtualTime = side.virtualTime;
+        }
+        setTest(side.test && !records.isEmpty());
+        return records;
+    }
+
+    private static void setTest(boolean test) {
+        if (Tester.isTest() != test) {
+            Tester.setTest(test);
+        }
+    }
+
+    private static long toNanos(Duration timeout) {
+        try {
+            return Math.max(0L, timeout.toNanos());
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 参与调度的一个consumer
+     */
+    private static class Side<K, V> {
+        private final Consumer<K, V> consumer;
+
+        private final int weight;
+
+        private final boolean test;
+
+        private final PollStatistics statistics = new PollStatistics();
+
+        private boolean active;
+
+        private double virtualTime;
+
+        /**
+         * 上次poll返回的条数，-1表示还没有poll过
+         */
+        private int lastCount = -1;
+
+        private long lastPollTime = System.nanoTime();
+
+        private double lag = Double.NaN;
+
+        private Metric lagMetric;
+
+        Side(Consumer<K, V> consumer, int weight, boolean test) {
+            this.consumer = consumer;
+            this.weight = Math.max(1, weight);
+            this.test = test;
+        }
+
+        ConsumerRecords<K, V> poll(Duration timeout) {
+            long start = System.nanoTime();
+            ConsumerRecords<K, V> records = consumer.poll(timeout);
+            lastCount = records.count();
+            lastPollTime = System.nanoTime();
+            if (timeout.isZero()) {
+                statistics.recordProbe(lastCount);
+            } else {
+                statistics.record(lastPollTime - start, lastCount);
+            }
+            return records;
+        }
+
+        /**
+         * 还没有poll过、上次poll返回了数据，或者consumer统计的分区积压大于0
+         */
+        boolean hasBacklog() {
+            return lastCount != 0 || lag > 0;
+        }
+
+        void refreshLag() {
+            if (!active) {
+                return;
+            }
+            if (lagMetric == null) {
+                lagMetric = findLagMetric();
+            }
+            Object value = lagMetric == null ? null : lagMetric.metricValue();
+            lag = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            statistics.setLag(lag);
+        }
+
+        private Metric findLagMetric() {
+            for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+                MetricName name = entry.getKey();
+                if (LAG_METRIC_NAME.equals(name.name()) && FETCH_METRIC_GROUP.equals(name.group())
+                        && !name.tags().containsKey("topic")) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+}
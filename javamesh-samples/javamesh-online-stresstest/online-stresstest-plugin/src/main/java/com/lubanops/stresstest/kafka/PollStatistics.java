@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+package com.lubanops.stresstest.kafka;
+
+/**
+ * 单个consumer的轮询统计，只由轮询线程更新，可以在其他线程读取
+ *
+ * <p>调度器不阻塞地询问本地是否有数据的探测单独计数，不计入poll次数和耗时，否则空poll次数和平均耗时会被探测淹没。</p>
+ */
+public class PollStatistics {
+    private volatile long polls;
+
+    private volatile long probes;
+
+    private volatile long emptyPolls;
+
+    private volatile long records;
+
+    private volatile long pollNanos;
+
+    private volatile long maxPollNanos;
+
+    private volatile double lag = Double.NaN;
+
+    void recordProbe(int count) {
+        probes++;
+        records += count;
+    }
+
+    void record(long nanos, int count) {
+        polls++;
+        if (count == 0) {
+            emptyPolls++;
+        }
+        records += count;
+        pollNanos += nanos;
+        if (nanos > maxPollNanos) {
+            maxPollNanos = nanos;
+        }
+    }
+
+    void setLag(double lag) {
+        this.lag = lag;
+    }
+
+    /**
+     * 带超时时间调用poll的次数
+     *
+     * @return 次数
+     */
+    public long getPolls() {
+        return polls;
+    }
+
+    /**
+     * 超时时间为0的探测次数
+     *
+     * @return 次数
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * 带超时时间且没有返回数据的poll次数
+     *
+     * @return 次数
+     */
+    public long getEmptyPolls() {
+        return emptyPolls;
+    }
+
+    /**
+     * poll和探测返回的数据总条数
+     *
+     * @return 条数
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * 带超时时间的poll平均耗时
+     *
+     * @return 纳秒，没有poll过时返回0
+     */
+    public long getAveragePollNanos() {
+        long count = polls;
+        return count == 0 ? 0L : pollNanos / count;
+    }
+
+    /**
+     * 带超时时间的poll最大耗时
+     *
+     * @return 纳秒
+     */
+    public long getMaxPollNanos() {
+        return maxPollNanos;
+    }
+
+    /**
+     * 最近一次读取到的最大分区积压，来自consumer的records-lag-max指标
+     *
+     * @return 积压条数，未知时返回NaN
+     */
+    public double getLag() {
+        return lag;
+    }
+
+    @Override
+    public String toString() {
+        return "PollStatistics{polls=" + polls + ", probes=" + probes + ", emptyPolls=" + emptyPolls + ", records=" + records
+                + ", averagePollNanos=" + getAveragePollNanos() + ", maxPollNanos=" + maxPollNanos
+                + ", lag=" + lag + '}';
+    }
+}
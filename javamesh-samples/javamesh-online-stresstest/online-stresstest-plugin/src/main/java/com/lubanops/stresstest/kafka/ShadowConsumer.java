@@ -21,18 +21,35 @@ import java.util.regex.Pattern;
  * @param <V> Value
  */
 public class ShadowConsumer<K, V> implements Consumer<K, V> {
-    private static final int SIZE = 100;
-
     private KafkaConsumer<K, V>  originalConsumer;
 
     private KafkaConsumer<K, V> testConsumer;
 
-    private boolean useOriginal;
+    private final PollScheduler<K, V> scheduler;
 
     public ShadowConsumer(KafkaConsumer<K, V>  originalConsumer) {
         this.originalConsumer = originalConsumer;
         this.testConsumer = ConsumerBuilder.initTestConsumer(originalConsumer);
-        this.useOriginal = true;
+        this.scheduler = new PollScheduler<>(originalConsumer, ConfigFactory.getConfig().getKafkaOriginalWeight(),
+                testConsumer, ConfigFactory.getConfig().getKafkaShadowWeight());
+    }
+
+    /**
+     * 正常consumer的轮询统计
+     *
+     * @return 轮询统计
+     */
+    public PollStatistics getOriginalStatistics() {
+        return scheduler.getOriginalStatistics();
+    }
+
+    /**
+     * 影子consumer的轮询统计
+     *
+     * @return 轮询统计
+     */
+    public PollStatistics getShadowStatistics() {
+        return scheduler.getShadowStatistics();
     }
 
     @Override
@@ -55,7 +72,10 @@ public class ShadowConsumer<K, V> implements Consumer<K, V> {
     public void subscribe(Pattern pattern, ConsumerRebalanceListener callback) {
         originalConsumer.subscribe(pattern, callback);
         Set<String> topics = originalConsumer.subscription();
-        testConsumer.subscribe(getShadowTopics(topics), callback);
+        Set<String> shadowTopics = getShadowTopics(topics);
+        testConsumer.subscribe(shadowTopics, callback);
+        scheduler.setOriginalActive(true);
+        scheduler.setShadowActive(!shadowTopics.isEmpty());
     }
 
     @Override
@@ -66,7 +86,10 @@ public class ShadowConsumer<K, V> implements Consumer<K, V> {
     @Override
     public void subscribe(Collection topics, ConsumerRebalanceListener callback) {
         originalConsumer.subscribe(topics, callback);
-        testConsumer.subscribe(getShadowTopics(topics), callback);
+        Set<String> shadowTopics = getShadowTopics(topics);
+        testConsumer.subscribe(shadowTopics, callback);
+        scheduler.setOriginalActive(!topics.isEmpty());
+        scheduler.setShadowActive(!shadowTopics.isEmpty());
     }
 
     @Override
@@ -78,6 +101,8 @@ public class ShadowConsumer<K, V> implements Consumer<K, V> {
     public void unsubscribe() {
         originalConsumer.unsubscribe();
         testConsumer.unsubscribe();
+        scheduler.setOriginalActive(false);
+        scheduler.setShadowActive(false);
     }
 
     @Override
@@ -85,28 +110,16 @@ public class ShadowConsumer<K, V> implements Consumer<K, V> {
         return poll(Duration.ofMillis(timeout));
     }
 
+    /**
+     * 按权重和积压情况在正常consumer和影子consumer之间分配超时时间，每次只返回一方的数据，
+     * 并设置对应的压测标记，见{@link PollScheduler}
+     *
+     * @param timeout 超时时间
+     * @return 正常topic或影子topic的数据
+     */
     @Override
     public ConsumerRecords poll(Duration timeout) {
-        if (useOriginal) {
-            return originalPoll(timeout);
-        }
-        return testPoll(timeout);
-    }
-
-    private ConsumerRecords originalPoll(Duration timeout) {
-        Tester.setTest(false);
-        ConsumerRecords records = originalConsumer.poll(timeout);
-        if (records.count() < SIZE) {
-            useOriginal = false;
-        }
-        return records;
-    }
-
-    private ConsumerRecords testPoll(Duration timeout) {
-        Tester.setTest(true);
-        ConsumerRecords records = testConsumer.poll(timeout);
-        useOriginal = true;
-        return records;
+        return scheduler.poll(timeout);
     }
 
     @Override
@@ -365,6 +378,8 @@ public class ShadowConsumer<K, V> implements Consumer<K, V> {
         TopicCollection topicCollection = new TopicCollection(collection);
         originalConsumer.assign(topicCollection.original);
         testConsumer.assign(topicCollection.test);
+        scheduler.setOriginalActive(!topicCollection.original.isEmpty());
+        scheduler.setShadowActive(!topicCollection.test.isEmpty());
     }
 
     private KafkaConsumer chooseConsumer() {
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.lubanops.stresstest.core;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Reflection单元测试
+ */
+public class ReflectionTest {
+    @BeforeClass
+    public static void beforeClass() {
+        LogFactory.setLogger(Logger.getLogger(ReflectionTest.class.getName()));
+    }
+
+    /**
+     * 测试读写父类声明的私有字段，以及不存在的字段
+     */
+    @Test
+    public void testGetAndSet() {
+        Target target = new Target("final");
+        Assert.assertEquals(Optional.of("parent"), Reflection.getDeclaredValue("parentName", target));
+
+        Reflection.setDeclaredValue("parentName", target, "changed");
+        Assert.assertEquals(Optional.of("changed"), Reflection.getDeclaredValue("parentName", target));
+
+        Reflection.setDeclaredValue("count", target, 3);
+        Assert.assertEquals(Optional.of(3), Reflection.getDeclaredValue("count", target));
+
+        Assert.assertFalse(Reflection.getDeclaredValue("missing", target).isPresent());
+        Reflection.setDeclaredValue("missing", target, "ignored");
+    }
+
+    /**
+     * 测试实例final字段可以修改，static final字段未开启enableFinal时不修改
+     */
+    @Test
+    public void testFinalFields() {
+        Target target = new Target("final");
+        Reflection.setDeclaredValue("finalName", target, "changed");
+        Assert.assertEquals("changed", target.getFinalName());
+
+        Reflection.setDeclaredValue("STATIC_FINAL", target, "changed");
+        Assert.assertEquals(Optional.of("static"), Reflection.getDeclaredValue("STATIC_FINAL", target));
+    }
+
+    /**
+     * 测试添加前缀时已有前缀的值不重复添加
+     */
+    @Test
+    public void testAddPrefix() {
+        Target target = new Target("final");
+        Reflection.addPrefixOnDeclaredField("parentName", target, "test-");
+        Reflection.addPrefixOnDeclaredField("parentName", target, "test-");
+        Assert.assertEquals(Optional.of("test-parent"), Reflection.getDeclaredValue("parentName", target));
+    }
+
+    /**
+     * 测试按参数个数和类型选择重载方法，基本类型参数接受包装类型，null只传给非基本类型参数
+     */
+    @Test
+    public void testInvoke() {
+        Target target = new Target("final");
+        Assert.assertEquals(Optional.of("none"), Reflection.invokeDeclared("echo", target));
+        Assert.assertEquals(Optional.of("string:a"), Reflection.invokeDeclared("echo", target, "a"));
+        Assert.assertEquals(Optional.of("int:2"), Reflection.invokeDeclared("echo", target, 2));
+        Assert.assertEquals(Optional.of("string:null"), Reflection.invokeDeclared("echo", target, (Object) null));
+        Assert.assertEquals(Optional.of("parent:1:b"), Reflection.invokeDeclared("echo", target, 1L, "b"));
+        Assert.assertFalse(Reflection.invokeDeclared("echo", target, 1, 2, 3).isPresent());
+        Assert.assertFalse(Reflection.invokeDeclared("missing", target).isPresent());
+
+        Assert.assertEquals(Optional.of("static:x"),
+                Reflection.invokeStaticDeclared("staticEcho", Target.class.getName(), "x"));
+        Assert.assertFalse(Reflection.invokeStaticDeclared("staticEcho", "com.lubanops.Missing", "x").isPresent());
+    }
+
+    private static class Parent {
+        private String parentName = "parent";
+
+        private String echo(long number, String text) {
+            return "parent:" + number + ":" + text;
+        }
+    }
+
+    private static class Target extends Parent {
+        private static final String STATIC_FINAL = String.valueOf("static");
+
+        private final String finalName;
+
+        private int count;
+
+        Target(String finalName) {
+            this.finalName = finalName;
+        }
+
+        String getFinalName() {
+            return finalName;
+        }
+
+        private String echo() {
+            return "none";
+        }
+
+        private String echo(String text) {
+            return "string:" + text;
+        }
+
+        private String echo(int number) {
+            return "int:" + number;
+        }
+
+        private static String staticEcho(String text) {
+            return "static:" + text;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+package com.lubanops.stresstest.kafka;
+
+import com.lubanops.stresstest.core.Tester;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PollScheduler单元测试
+ */
+public class PollSchedulerTest {
+    private static final TopicPartition ORIGINAL_PARTITION = new TopicPartition("orders", 0);
+
+    private static final TopicPartition SHADOW_PARTITION = new TopicPartition("test-orders", 0);
+
+    /**
+     * 测试两方都有积压时按3:1的权重分配返回的数据
+     */
+    @Test
+    public void testWeightedShare() {
+        TimeoutRecordingConsumer original = new TimeoutRecordingConsumer(ORIGINAL_PARTITION, false);
+        TimeoutRecordingConsumer shadow = new TimeoutRecordingConsumer(SHADOW_PARTITION, false);
+        PollScheduler<String, String> scheduler = newScheduler(original, 3, shadow, 1);
+        int originalCount = 0;
+        int shadowCount = 0;
+        for (int i = 0; i < 400; i++) {
+            original.ensurePending();
+            shadow.ensurePending();
+            ConsumerRecords<String, String> records = scheduler.poll(Duration.ofSeconds(1));
+            Assert.assertEquals(1, records.count());
+            if (records.records(SHADOW_PARTITION).isEmpty()) {
+                Assert.assertFalse(Tester.isTest());
+                originalCount++;
+            } else {
+                Assert.assertTrue(Tester.isTest());
+                shadowCount++;
+            }
+        }
+        Assert.assertEquals(300D, originalCount, 3D);
+        Assert.assertEquals(100D, shadowCount, 3D);
+        Assert.assertEquals(0, scheduler.getShadowStatistics().getPolls());
+    }
+
+    /**
+     * 测试影子consumer空闲时不影响正常consumer，且不占用等待时间
+     */
+    @Test
+    public void testIdleShadow() {
+        TimeoutRecordingConsumer original = new TimeoutRecordingConsumer(ORIGINAL_PARTITION, false);
+        TimeoutRecordingConsumer shadow = new TimeoutRecordingConsumer(SHADOW_PARTITION, false);
+        original.lag = 5D;
+        shadow.lag = 0D;
+        PollScheduler<String, String> scheduler = newScheduler(original, 1, shadow, 3);
+
+        // 超时时间为0时只探测，影子consumer没有数据且积压为0后视为空闲
+        Assert.assertTrue(scheduler.poll(Duration.ZERO).isEmpty());
+        Assert.assertEquals(1, scheduler.getShadowStatistics().getProbes());
+        Assert.assertEquals(0D, scheduler.getShadowStatistics().getLag(), 0D);
+        for (int i = 0; i < 10; i++) {
+            original.ensurePending();
+            ConsumerRecords<String, String> records = scheduler.poll(Duration.ofSeconds(1));
+            Assert.assertEquals(1, records.records(ORIGINAL_PARTITION).size());
+            Assert.assertFalse(Tester.isTest());
+        }
+
+        // 正常consumer仍有分区积压，整个超时时间都给它等待
+        original.timeouts.clear();
+        shadow.timeouts.clear();
+        Assert.assertTrue(scheduler.poll(Duration.ofMillis(200)).isEmpty());
+        Assert.assertEquals(Duration.ofMillis(200), original.timeouts.get(original.timeouts.size() - 1));
+        for (Duration timeout : shadow.timeouts) {
+            Assert.assertEquals(Duration.ZERO, timeout);
+        }
+        Assert.assertEquals(0, scheduler.getShadowStatistics().getPolls());
+        Assert.assertEquals(0, scheduler.getShadowStatistics().getRecords());
+        Assert.assertEquals(10, scheduler.getOriginalStatistics().getRecords());
+        Assert.assertEquals(1, scheduler.getOriginalStatistics().getPolls());
+        Assert.assertEquals(1, scheduler.getOriginalStatistics().getEmptyPolls());
+    }
+
+    /**
+     * 测试两方都空闲时超时时间按权重分配
+     */
+    @Test
+    public void testIdleTimeoutSplit() {
+        TimeoutRecordingConsumer original = new TimeoutRecordingConsumer(ORIGINAL_PARTITION, true);
+        TimeoutRecordingConsumer shadow = new TimeoutRecordingConsumer(SHADOW_PARTITION, true);
+        PollScheduler<String, String> scheduler = newScheduler(original, 3, shadow, 1);
+        Assert.assertTrue(scheduler.poll(Duration.ofMillis(400)).isEmpty());
+        Assert.assertFalse(Tester.isTest());
+
+        Assert.assertEquals(2, original.timeouts.size());
+        Assert.assertEquals(Duration.ZERO, original.timeouts.get(0));
+        Assert.assertEquals(Duration.ofMillis(300), original.timeouts.get(1));
+        Assert.assertEquals(2, shadow.timeouts.size());
+        Assert.assertEquals(Duration.ZERO, shadow.timeouts.get(0));
+        Duration shadowTimeout = shadow.timeouts.get(1);
+        Assert.assertTrue(shadowTimeout.compareTo(Duration.ZERO) > 0);
+        Assert.assertTrue(shadowTimeout.compareTo(Duration.ofMillis(100)) <= 0);
+
+        PollStatistics statistics = scheduler.getOriginalStatistics();
+        Assert.assertEquals(1, statistics.getProbes());
+        Assert.assertEquals(1, statistics.getPolls());
+        Assert.assertEquals(1, statistics.getEmptyPolls());
+        Assert.assertTrue(statistics.getAveragePollNanos() >= Duration.ofMillis(300).toNanos());
+    }
+
+    private static PollScheduler<String, String> newScheduler(TimeoutRecordingConsumer original, int originalWeight,
+            TimeoutRecordingConsumer shadow, int shadowWeight) {
+        PollScheduler<String, String> scheduler = new PollScheduler<>(original, originalWeight, shadow, shadowWeight);
+        scheduler.setOriginalActive(true);
+        scheduler.setShadowActive(true);
+        return scheduler;
+    }
+
+    /**
+     * 记录每次poll超时时间的MockConsumer，可以模拟没有数据时阻塞到超时，以及设置records-lag-max指标
+     */
+    private static class TimeoutRecordingConsumer extends MockConsumer<String, String> {
+        private final List<Duration> timeouts = new ArrayList<>();
+
+        private final TopicPartition partition;
+
+        private final boolean blocking;
+
+        private long offset;
+
+        private boolean pending;
+
+        private double lag = Double.NaN;
+
+        TimeoutRecordingConsumer(TopicPartition partition, boolean blocking) {
+            super(OffsetResetStrategy.EARLIEST);
+            this.partition = partition;
+            this.blocking = blocking;
+            assign(Collections.singletonList(partition));
+            updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        }
+
+        /**
+         * 保证本地有且只有一条未返回的数据
+         */
+        void ensurePending() {
+            if (!pending) {
+                addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), offset++, "key", "value"));
+                pending = true;
+            }
+        }
+
+        @Override
+        public synchronized Map<MetricName, ? extends Metric> metrics() {
+            final MetricName name = new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "",
+                    Collections.emptyMap());
+            return Collections.singletonMap(name, new Metric() {
+                @Override
+                public MetricName metricName() {
+                    return name;
+                }
+
+                public double value() {
+                    return lag;
+                }
+
+                @Override
+                public Object metricValue() {
+                    return lag;
+                }
+            });
+        }
+
+        @Override
+        public synchronized ConsumerRecords<String, String> poll(Duration timeout) {
+            timeouts.add(timeout);
+            ConsumerRecords<String, String> records = super.poll(timeout);
+            if (!records.isEmpty()) {
+                pending = false;
+            } else if (blocking && !timeout.isZero()) {
+                try {
+                    Thread.sleep(timeout.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return records;
+        }
+    }
+}
@@ -14,22 +14,36 @@ import com.huawei.route.common.gray.constants.GrayConstant;
 import com.huawei.route.common.gray.label.entity.CurrentTag;
 import com.huawei.route.common.report.acquire.TargetAddrAcquire;
 import com.huawei.route.common.report.common.entity.HttpClientResult;
-import com.huawei.route.common.utils.CollectionUtils;
+import org.apache.http.HttpStatus;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 地址缓存
+ * <p>
+ * 缓存为不可变的快照，刷新时整体替换，查询过程中不会看到被清空的缓存。
+ * 定时刷新携带上次结果的ETag，地址未变化时服务端返回304，不再解析和重建快照。
+ * 首次查询的服务在缓存中不存在时，同一服务的并发查询只会触发一次请求。
+ * 路由服务正常返回的空列表视为服务已没有实例，清除该服务的地址；请求失败时保留原有地址
  *
  * @author pengyuyi
  * @date 2021/10/15
@@ -37,8 +51,19 @@ import java.util.logging.Logger;
 public class AddrCache {
     private static final Logger LOGGER = LogFactory.getLogger();
 
-    // 需要刷新地址的缓存
-    private static final Map<String, List<Instances>> CACHE = new ConcurrentHashMap<String, List<Instances>>();
+    // 等待首次查询的最长时间，超时后按无地址处理，等待定时刷新
+    private static final long LOAD_TIMEOUT_MILLIS = 3000L;
+
+    // 当前的地址快照
+    private static final AtomicReference<Snapshot> SNAPSHOT = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+
+    // 需要刷新地址的服务
+    private static final Set<String> SERVICES =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // 正在首次查询地址的服务
+    private static final ConcurrentMap<String, FutureTask<Void>> LOADING =
+            new ConcurrentHashMap<String, FutureTask<Void>>();
 
     // 定时执行的线程池
     private static ScheduledExecutorService executorService;
@@ -47,28 +72,14 @@ public class AddrCache {
      * 获取路由服务返回的地址列表
      *
      * @param application 服务名
-     * @return 实例列表
+     * @return 版本号与实例列表的映射，不可修改
      */
     public static Map<String, List<Instances>> getAddr(String application) {
-        List<Instances> instanceList = getAddrFromCache(application);
-        if (CollectionUtils.isEmpty(instanceList)) {
+        ServiceAddr serviceAddr = getAddrFromCache(application);
+        if (serviceAddr == null) {
             return Collections.emptyMap();
         }
-        Map<String, List<Instances>> resultMap = new HashMap<String, List<Instances>>();
-        for (Instances instance : instanceList) {
-            if (instance.getCurrentTag() == null) {
-                continue;
-            }
-            String version = instance.getCurrentTag().getVersion();
-            if (resultMap.containsKey(version)) {
-                resultMap.get(version).add(instance);
-            } else {
-                List<Instances> resultList = new ArrayList<Instances>();
-                resultList.add(instance);
-                resultMap.put(version, resultList);
-            }
-        }
-        return resultMap;
+        return serviceAddr.versions;
     }
 
     /**
@@ -83,40 +94,26 @@ public class AddrCache {
         if (ldc == null || version == null) {
             return null;
         }
-        List<Instances> instanceList = getAddrFromCache(application);
-        if (CollectionUtils.isEmpty(instanceList)) {
+        ServiceAddr serviceAddr = getAddrFromCache(application);
+        if (serviceAddr == null) {
             return null;
         }
-        Instances[] arr = new Instances[2];
-        for (Instances instance : instanceList) {
-            CurrentTag currentTag = instance.getCurrentTag();
-            if (currentTag == null) {
-                continue;
-            }
-            String instanceLdc = instance.getLdc();
-            String instanceVersion = currentTag.getVersion();
-            if (ldc.equals(instanceLdc) && version.equals(instanceVersion)) {
+        List<Instances> sameVersion = serviceAddr.versions.get(version);
+        if (sameVersion == null) {
+            // 第三优先级，ldc相同
+            return serviceAddr.ldcs.get(ldc);
+        }
+        Instances otherLdc = null;
+        for (Instances instance : sameVersion) {
+            if (ldc.equals(instance.getLdc())) {
                 // 优先返回这个实例
                 return instance;
             }
-            if (!ldc.equals(instanceLdc) && version.equals(instanceVersion)) {
-                // 第二优先级
-                arr[0] = instance;
-                continue;
-            }
-            if (ldc.equals(instanceLdc)) {
-                // 第三优先级
-                arr[1] = instance;
-            }
-            // 这里的优先级可考虑优化成分数的形式，然后取分数最高的
-        }
-        if (arr[0] != null) {
-            return arr[0];
+            otherLdc = instance;
         }
-        if (arr[1] != null) {
-            return arr[1];
-        }
-        return null;
+
+        // 第二优先级，版本相同
+        return otherLdc;
     }
 
     /**
@@ -127,26 +124,67 @@ public class AddrCache {
      * @return 实例
      */
     public static Instances getInstance(String application, String host) {
-        List<Instances> instanceList = getAddrFromCache(application);
-        if (CollectionUtils.isEmpty(instanceList)) {
+        ServiceAddr serviceAddr = getAddrFromCache(application);
+        if (serviceAddr == null) {
             return null;
         }
-        for (Instances instance : instanceList) {
-            if ((instance.getIp() + ":" + instance.getPort()).equals(host)) {
-                return instance;
+        return serviceAddr.hosts.get(host);
+    }
+
+    private static ServiceAddr getAddrFromCache(String application) {
+        ServiceAddr serviceAddr = SNAPSHOT.get().services.get(application);
+        if (serviceAddr != null) {
+            return serviceAddr;
+        }
+
+        // 只有首次出现的服务主动查询，其余情况等待定时刷新，避免地址为空的服务每次调用都请求路由服务
+        if (!SERVICES.contains(application)) {
+            load(application);
+        }
+        await(LOADING.get(application));
+        return SNAPSHOT.get().services.get(application);
+    }
+
+    private static void load(final String application) {
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                refresh(Collections.singletonList(application), false);
+                return null;
             }
+        });
+
+        // 先登记正在查询再加入刷新集合，看到服务已在集合中的并发查询一定能等到这次查询
+        if (LOADING.putIfAbsent(application, task) != null) {
+            return;
+        }
+        try {
+            if (SERVICES.add(application)) {
+                task.run();
+            } else {
+                // 服务已由其他线程加入刷新集合，取消任务，避免等待者一直阻塞
+                task.cancel(false);
+            }
+        } finally {
+            LOADING.remove(application, task);
         }
-        return null;
     }
 
-    private static List<Instances> getAddrFromCache(String application) {
-        List<Instances> instanceList = CACHE.get(application);
-        if (CollectionUtils.isEmpty(instanceList)) {
-            CACHE.put(application, new ArrayList<Instances>());
-            refreshCacheTask();
-            instanceList = CACHE.get(application);
+    private static void await(FutureTask<Void> task) {
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get(LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Load address failed.", e);
+        } catch (TimeoutException e) {
+            LOGGER.warning("Load address timeout, wait for the next refresh.");
+        } catch (CancellationException e) {
+            LOGGER.fine("Load address cancelled, address is loading by other thread.");
         }
-        return instanceList;
     }
 
     /**
@@ -159,7 +197,7 @@ public class AddrCache {
         executorService.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                refreshCacheTask();
+                refresh(new ArrayList<String>(SERVICES), true);
             }
         }, 0, 10, TimeUnit.SECONDS);
     }
@@ -175,32 +213,123 @@ public class AddrCache {
             executorService = null;
         }
         if (clear) {
-            CACHE.clear();
+            SERVICES.clear();
+            SNAPSHOT.set(Snapshot.EMPTY);
         }
     }
 
-    // 这里主动查和定时查有可能会同时触发，所以用synchronized
-    private static synchronized void refreshCacheTask() {
+    /**
+     * 查询服务的地址并替换快照中这些服务的地址
+     *
+     * @param serviceNames 查询的服务
+     * @param isAll 是否为全部服务的定时刷新，只有定时刷新使用和更新ETag
+     */
+    private static void refresh(Collection<String> serviceNames, boolean isAll) {
+        if (serviceNames.isEmpty()) {
+            return;
+        }
         JSONObject json = new JSONObject();
-        json.put(GrayConstant.QUERY_SERVICE_ADDR_KEY, CACHE.keySet());
+        json.put(GrayConstant.QUERY_SERVICE_ADDR_KEY, serviceNames);
         try {
-            HttpClientResult httpClientResult = TargetAddrAcquire.getInstance().queryInstanceList(json.toJSONString());
-            setCache(JSONArray.parseArray(httpClientResult.getContent(), Addr.class));
+            HttpClientResult httpClientResult = TargetAddrAcquire.getInstance()
+                    .queryInstanceList(json.toJSONString(), isAll ? SNAPSHOT.get().eTag : null);
+            if (httpClientResult.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                return;
+            }
+            if (httpClientResult.getCode() != HttpStatus.SC_OK) {
+                LOGGER.warning("Query address failed, code: " + httpClientResult.getCode());
+                return;
+            }
+            List<Addr> addrList = JSONArray.parseArray(httpClientResult.getContent(), Addr.class);
+            if (addrList == null) {
+                addrList = Collections.emptyList();
+            }
+
+            // 空列表同样替换快照，查询的服务已没有实例时不再返回过期的地址
+            setCache(serviceNames, addrList, isAll ? httpClientResult.getETag() : null);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Route server is error.", e);
         }
     }
 
-    private static void setCache(List<Addr> addrList) {
-        if (CollectionUtils.isEmpty(addrList)) {
-            return;
-        }
-        CACHE.clear();
+    private static void setCache(Collection<String> serviceNames, List<Addr> addrList, String eTag) {
+        Map<String, ServiceAddr> refreshed = new HashMap<String, ServiceAddr>();
         for (Addr addr : addrList) {
             if (Addr.isEmpty(addr)) {
                 continue;
             }
-            CACHE.put(addr.getServiceName(), new ArrayList<Instances>(addr.getInstances()));
+            refreshed.put(addr.getServiceName(), new ServiceAddr(addr.getInstances()));
+        }
+
+        // 单个服务的首次查询与定时刷新可能同时替换快照，未查询的服务保留原有地址
+        while (true) {
+            Snapshot current = SNAPSHOT.get();
+            Map<String, ServiceAddr> services = new HashMap<String, ServiceAddr>(current.services);
+            services.keySet().removeAll(serviceNames);
+            services.putAll(refreshed);
+            Snapshot snapshot = new Snapshot(services, eTag == null ? current.eTag : eTag);
+            if (SNAPSHOT.compareAndSet(current, snapshot)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 地址快照，创建后不再修改
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new HashMap<String, ServiceAddr>(), null);
+
+        private final Map<String, ServiceAddr> services;
+
+        private final String eTag;
+
+        private Snapshot(Map<String, ServiceAddr> services, String eTag) {
+            this.services = services;
+            this.eTag = eTag;
+        }
+    }
+
+    /**
+     * 单个服务的实例及其索引
+     */
+    private static final class ServiceAddr {
+        // 版本号 -> 实例列表，只包含有标签的实例
+        private final Map<String, List<Instances>> versions;
+
+        // ldc -> 该ldc最后一个有标签的实例
+        private final Map<String, Instances> ldcs;
+
+        // ip:port -> 第一个该地址的实例
+        private final Map<String, Instances> hosts;
+
+        private ServiceAddr(List<Instances> instances) {
+            Map<String, List<Instances>> versionMap = new HashMap<String, List<Instances>>();
+            Map<String, Instances> ldcMap = new HashMap<String, Instances>();
+            Map<String, Instances> hostMap = new HashMap<String, Instances>();
+            for (Instances instance : instances) {
+                String host = instance.getIp() + ":" + instance.getPort();
+                if (!hostMap.containsKey(host)) {
+                    hostMap.put(host, instance);
+                }
+                CurrentTag currentTag = instance.getCurrentTag();
+                if (currentTag == null) {
+                    continue;
+                }
+                List<Instances> versionList = versionMap.get(currentTag.getVersion());
+                if (versionList == null) {
+                    versionList = new ArrayList<Instances>();
+                    versionMap.put(currentTag.getVersion(), versionList);
+                }
+                versionList.add(instance);
+                ldcMap.put(instance.getLdc(), instance);
+            }
+            for (Map.Entry<String, List<Instances>> entry : versionMap.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            this.versions = Collections.unmodifiableMap(versionMap);
+            this.ldcs = ldcMap;
+            this.hosts = hostMap;
         }
     }
 }
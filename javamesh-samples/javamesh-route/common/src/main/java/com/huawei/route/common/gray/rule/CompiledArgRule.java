@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import com.huawei.route.common.gray.constants.GrayConstant;
+
+import java.util.logging.Logger;
+
+/**
+ * 预编译的单个参数（dubbo参数、header、parameter或cookie）的匹配规则
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class CompiledArgRule {
+    private static final Logger LOGGER = LogFactory.getLogger();
+
+    private final String key;
+
+    /**
+     * 是否为dubbo参数，即key以args开头
+     */
+    private final boolean dubboArg;
+
+    /**
+     * dubbo参数下标，key不是合法的argsN格式时为-1
+     */
+    private final int argIndex;
+
+    private final CompiledMatchRule[] matchRules;
+
+    /**
+     * 构造方法
+     *
+     * @param key 参数名
+     * @param matchRules 匹配规则
+     */
+    public CompiledArgRule(String key, CompiledMatchRule[] matchRules) {
+        this.key = key;
+        this.dubboArg = key.startsWith(GrayConstant.DUBBO_SOURCE_TYPE_PREFIX);
+        this.argIndex = parseArgIndex(key);
+        this.matchRules = matchRules;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isDubboArg() {
+        return dubboArg;
+    }
+
+    public int getArgIndex() {
+        return argIndex;
+    }
+
+    public CompiledMatchRule[] getMatchRules() {
+        return matchRules;
+    }
+
+    private static int parseArgIndex(String key) {
+        if (!key.startsWith(GrayConstant.DUBBO_SOURCE_TYPE_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(key.substring(GrayConstant.DUBBO_SOURCE_TYPE_PREFIX.length()));
+            return index < 0 ? -1 : index;
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Source type " + key + " is invalid.");
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import com.huawei.route.common.gray.label.entity.MatchRule;
+import com.huawei.route.common.gray.label.entity.MatchStrategy;
+import com.huawei.route.common.gray.label.entity.ValueMatch;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 预编译的值匹配规则
+ * <p>
+ * 期望值在编译时完成大小写归一、正则编译、数值解析和集合构建，匹配时不再复制期望值列表，
+ * 语义与{@link MatchStrategy#isMatch(List, String, boolean)}一致
+ * </p>
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class CompiledMatchRule {
+    private static final Logger LOGGER = LogFactory.getLogger();
+
+    private final MatchStrategy matchStrategy;
+
+    private final String type;
+
+    /**
+     * 与MatchRule.caseInsensitive取值相反，为true时忽略大小写
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * 第一个期望值，等值、不等于、前缀匹配使用
+     */
+    private final String value;
+
+    /**
+     * 包含匹配的期望值集合，忽略大小写时为大写形式
+     */
+    private final Set<String> valueSet;
+
+    /**
+     * 正则匹配的表达式，表达式非法时为null
+     */
+    private final Pattern pattern;
+
+    /**
+     * 数值比较的期望值，期望值不是整数时numeric为false
+     */
+    private final int number;
+
+    private final boolean numeric;
+
+    /**
+     * 构造方法
+     *
+     * @param matchRule 已校验的匹配规则，valueMatch、matchStrategy和values均不为空
+     */
+    public CompiledMatchRule(MatchRule matchRule) {
+        ValueMatch valueMatch = matchRule.getValueMatch();
+        List<String> values = valueMatch.getValues();
+        this.matchStrategy = valueMatch.getMatchStrategy();
+        this.type = matchRule.getType();
+        this.ignoreCase = !matchRule.isCaseInsensitive();
+        this.value = values.get(0);
+        this.valueSet = buildValueSet(values, ignoreCase);
+        this.pattern = matchStrategy == MatchStrategy.REGEX ? compilePattern(value, ignoreCase) : null;
+        int parsed = 0;
+        boolean isNumeric = false;
+        if (value != null) {
+            try {
+                parsed = Integer.parseInt(value);
+                isNumeric = true;
+            } catch (NumberFormatException e) {
+                isNumeric = false;
+            }
+        }
+        this.number = parsed;
+        this.numeric = isNumeric;
+    }
+
+    public MatchStrategy getMatchStrategy() {
+        return matchStrategy;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 是否匹配
+     *
+     * @param arg 参数值
+     * @return 是否匹配
+     */
+    public boolean isMatch(String arg) {
+        switch (matchStrategy) {
+            case EXACT:
+                return value != null && (ignoreCase ? value.equalsIgnoreCase(arg) : value.equals(arg));
+            case NOEQU:
+                return value != null && !(ignoreCase ? value.equalsIgnoreCase(arg) : value.equals(arg));
+            case PREFIX:
+                return value != null && arg != null && arg.regionMatches(ignoreCase, 0, value, 0, value.length());
+            case REGEX:
+                return pattern != null && arg != null && pattern.matcher(arg).matches();
+            case IN:
+                return arg == null ? valueSet.contains(null)
+                        : valueSet.contains(ignoreCase ? arg.toUpperCase(Locale.ROOT) : arg);
+            default:
+                return isNumberMatch(arg);
+        }
+    }
+
+    private boolean isNumberMatch(String arg) {
+        if (!numeric || arg == null) {
+            return false;
+        }
+        int actual;
+        try {
+            actual = Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        switch (matchStrategy) {
+            case GREATER:
+                return actual > number;
+            case NOLESS:
+                return actual >= number;
+            case LESS:
+                return actual < number;
+            case NOGREATER:
+                return actual <= number;
+            default:
+                return false;
+        }
+    }
+
+    private static Set<String> buildValueSet(List<String> values, boolean ignoreCase) {
+        Set<String> set = new HashSet<String>();
+        for (String expected : values) {
+            set.add(ignoreCase && expected != null ? expected.toUpperCase(Locale.ROOT) : expected);
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static Pattern compilePattern(String regex, boolean ignoreCase) {
+        if (regex == null) {
+            return null;
+        }
+        try {
+            return ignoreCase ? Pattern.compile(regex, Pattern.CASE_INSENSITIVE) : Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            LOGGER.warning("Invalid regex of gray rule: " + regex);
+            return null;
+        }
+    }
+}
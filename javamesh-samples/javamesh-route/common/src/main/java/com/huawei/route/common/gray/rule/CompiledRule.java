@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.route.common.gray.label.entity.Route;
+
+import java.util.List;
+
+/**
+ * 预编译的路由规则，无效的匹配规则和路由已在编译时去掉
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class CompiledRule {
+    private final int precedence;
+
+    private final String path;
+
+    private final boolean fullMatch;
+
+    private final CompiledArgRule[] args;
+
+    private final CompiledArgRule[] headers;
+
+    private final CompiledArgRule[] parameters;
+
+    private final CompiledArgRule[] cookie;
+
+    private final List<Route> routes;
+
+    /**
+     * 构造方法
+     *
+     * @param builder 构建参数
+     */
+    CompiledRule(Builder builder) {
+        this.precedence = builder.precedence;
+        this.path = builder.path;
+        this.fullMatch = builder.fullMatch;
+        this.args = builder.args;
+        this.headers = builder.headers;
+        this.parameters = builder.parameters;
+        this.cookie = builder.cookie;
+        this.routes = builder.routes;
+    }
+
+    public int getPrecedence() {
+        return precedence;
+    }
+
+    /**
+     * 请求路径是否与规则路径一致
+     *
+     * @param requestPath 请求路径
+     * @return 是否一致
+     */
+    public boolean isMatchPath(String requestPath) {
+        return path.equals(requestPath);
+    }
+
+    public boolean isFullMatch() {
+        return fullMatch;
+    }
+
+    /**
+     * 获取dubbo参数匹配规则
+     *
+     * @return 匹配规则，规则未配置时为null
+     */
+    public CompiledArgRule[] getArgs() {
+        return args;
+    }
+
+    /**
+     * 获取header匹配规则
+     *
+     * @return 匹配规则，规则未配置时为null
+     */
+    public CompiledArgRule[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * 获取parameter匹配规则
+     *
+     * @return 匹配规则，规则未配置时为null
+     */
+    public CompiledArgRule[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * 获取cookie匹配规则
+     *
+     * @return 匹配规则，规则未配置时为null
+     */
+    public CompiledArgRule[] getCookie() {
+        return cookie;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * 构建参数
+     */
+    static class Builder {
+        private int precedence;
+
+        private String path;
+
+        private boolean fullMatch;
+
+        private CompiledArgRule[] args;
+
+        private CompiledArgRule[] headers;
+
+        private CompiledArgRule[] parameters;
+
+        private CompiledArgRule[] cookie;
+
+        private List<Route> routes;
+
+        Builder setPrecedence(int precedence) {
+            this.precedence = precedence;
+            return this;
+        }
+
+        Builder setPath(String path) {
+            this.path = path;
+            return this;
+        }
+
+        Builder setFullMatch(boolean fullMatch) {
+            this.fullMatch = fullMatch;
+            return this;
+        }
+
+        Builder setArgs(CompiledArgRule[] args) {
+            this.args = args;
+            return this;
+        }
+
+        Builder setHeaders(CompiledArgRule[] headers) {
+            this.headers = headers;
+            return this;
+        }
+
+        Builder setParameters(CompiledArgRule[] parameters) {
+            this.parameters = parameters;
+            return this;
+        }
+
+        Builder setCookie(CompiledArgRule[] cookie) {
+            this.cookie = cookie;
+            return this;
+        }
+
+        Builder setRoutes(List<Route> routes) {
+            this.routes = routes;
+            return this;
+        }
+
+        CompiledRule build() {
+            return new CompiledRule(this);
+        }
+    }
+}
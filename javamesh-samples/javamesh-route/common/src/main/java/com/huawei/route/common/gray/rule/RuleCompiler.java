@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.apm.core.lubanops.bootstrap.utils.StringUtils;
+import com.huawei.route.common.gray.label.entity.GrayConfiguration;
+import com.huawei.route.common.gray.label.entity.Match;
+import com.huawei.route.common.gray.label.entity.MatchRule;
+import com.huawei.route.common.gray.label.entity.Route;
+import com.huawei.route.common.gray.label.entity.Rule;
+import com.huawei.route.common.utils.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 灰度规则编译器
+ * <p>
+ * 按目标服务把标签中的规则编译为按优先级排好序的{@link CompiledRule}列表并缓存，标签更新后（标签对象变化）重新编译。
+ * 编译时不修改标签中的原始规则，请求时只需按路径过滤并逐条匹配
+ * </p>
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class RuleCompiler {
+    private final RuleValidator ruleValidator;
+
+    private volatile CompiledRules compiledRules;
+
+    /**
+     * 构造方法
+     *
+     * @param ruleValidator 规则校验器
+     */
+    public RuleCompiler(RuleValidator ruleValidator) {
+        this.ruleValidator = ruleValidator;
+    }
+
+    /**
+     * 获取目标服务的有效规则，已按优先级排序
+     *
+     * @param grayConfiguration 标签
+     * @param targetService 目标服务
+     * @return 有效规则
+     */
+    public List<CompiledRule> getRules(GrayConfiguration grayConfiguration, String targetService) {
+        if (GrayConfiguration.isInValid(grayConfiguration) || targetService == null) {
+            return Collections.emptyList();
+        }
+        CompiledRules current = compiledRules;
+        if (current == null || current.grayConfiguration != grayConfiguration) {
+            current = new CompiledRules(grayConfiguration);
+            compiledRules = current;
+        }
+        List<CompiledRule> rules = current.rules.get(targetService);
+        if (rules == null) {
+            rules = compile(grayConfiguration.getRouteRule(), targetService);
+            current.rules.putIfAbsent(targetService, rules);
+        }
+        return rules;
+    }
+
+    private List<CompiledRule> compile(Map<String, List<Rule>> routeRule, String targetService) {
+        if (CollectionUtils.isEmpty(routeRule) || CollectionUtils.isEmpty(routeRule.get(targetService))) {
+            return Collections.emptyList();
+        }
+        List<CompiledRule> list = new ArrayList<CompiledRule>();
+        for (Rule rule : routeRule.get(targetService)) {
+            if (rule == null || rule.getMatch() == null || CollectionUtils.isEmpty(rule.getRoute())) {
+                continue;
+            }
+            String path = ruleValidator.getValidPath(rule);
+            if (path == null) {
+                continue;
+            }
+            Match match = rule.getMatch();
+            list.add(new CompiledRule.Builder()
+                    .setPrecedence(rule.getPrecedence())
+                    .setPath(path)
+                    .setFullMatch(match.isFullMatch())
+                    .setArgs(compileArgRules(match.getArgs()))
+                    .setHeaders(compileArgRules(match.getHeaders()))
+                    .setParameters(compileArgRules(match.getParameters()))
+                    .setCookie(compileArgRules(match.getCookie()))
+                    .setRoutes(getValidRoutes(rule.getRoute()))
+                    .build());
+        }
+        Collections.sort(list, new Comparator<CompiledRule>() {
+            @Override
+            public int compare(CompiledRule o1, CompiledRule o2) {
+                return o1.getPrecedence() - o2.getPrecedence();
+            }
+        });
+        return Collections.unmodifiableList(list);
+    }
+
+    private CompiledArgRule[] compileArgRules(Map<String, List<MatchRule>> rules) {
+        if (rules == null) {
+            return null;
+        }
+        List<CompiledArgRule> list = new ArrayList<CompiledArgRule>();
+        for (Map.Entry<String, List<MatchRule>> entry : rules.entrySet()) {
+            if (StringUtils.isBlank(entry.getKey()) || CollectionUtils.isEmpty(entry.getValue())) {
+                continue;
+            }
+            List<CompiledMatchRule> matchRules = new ArrayList<CompiledMatchRule>();
+            for (MatchRule matchRule : entry.getValue()) {
+                if (isValidMatchRule(matchRule)) {
+                    matchRules.add(new CompiledMatchRule(matchRule));
+                }
+            }
+            list.add(new CompiledArgRule(entry.getKey(), matchRules.toArray(new CompiledMatchRule[0])));
+        }
+        return list.toArray(new CompiledArgRule[0]);
+    }
+
+    private boolean isValidMatchRule(MatchRule matchRule) {
+        return matchRule != null && matchRule.getValueMatch() != null
+                && !CollectionUtils.isEmpty(matchRule.getValueMatch().getValues())
+                && matchRule.getValueMatch().getMatchStrategy() != null;
+    }
+
+    private List<Route> getValidRoutes(List<Route> routes) {
+        List<Route> list = new ArrayList<Route>();
+        for (Route route : routes) {
+            if (route != null && route.getTags() != null && StringUtils.isNotBlank(route.getTags().getVersion())) {
+                list.add(route);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 同一个标签编译出的规则
+     */
+    private static class CompiledRules {
+        private final GrayConfiguration grayConfiguration;
+
+        private final ConcurrentMap<String, List<CompiledRule>> rules =
+                new ConcurrentHashMap<String, List<CompiledRule>>();
+
+        CompiledRules(GrayConfiguration grayConfiguration) {
+            this.grayConfiguration = grayConfiguration;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.route.common.gray.label.entity.Rule;
+
+/**
+ * 规则校验器，由各灰度插件按自身的规则格式实现
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public interface RuleValidator {
+    /**
+     * 校验规则，并返回规则用于与请求路径比较的路径
+     *
+     * @param rule 规则
+     * @return 规则路径，规则无效时返回null
+     */
+    String getValidPath(Rule rule);
+}
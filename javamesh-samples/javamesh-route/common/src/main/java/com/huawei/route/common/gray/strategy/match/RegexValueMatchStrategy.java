@@ -8,6 +8,8 @@ import com.huawei.route.common.gray.strategy.ValueMatchStrategy;
 import com.huawei.route.common.utils.CollectionUtils;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -17,9 +19,28 @@ import java.util.regex.Pattern;
  * @date 2021/10/23
  */
 public class RegexValueMatchStrategy implements ValueMatchStrategy {
+    /**
+     * 缓存的最大正则表达式数，超过后清空重建
+     */
+    private static final int MAX_CACHED_PATTERN = 256;
+
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+
     @Override
     public boolean isMatch(List<String> values, String arg) {
         return !CollectionUtils.isEmpty(values) && values.get(0) != null && arg != null
-                && Pattern.matches(values.get(0), arg);
+                && getPattern(values.get(0)).matcher(arg).matches();
+    }
+
+    private Pattern getPattern(String regex) {
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            if (patterns.size() >= MAX_CACHED_PATTERN) {
+                patterns.clear();
+            }
+            patterns.put(regex, pattern);
+        }
+        return pattern;
     }
 }
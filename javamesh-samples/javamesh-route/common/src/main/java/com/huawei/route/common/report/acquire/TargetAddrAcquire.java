@@ -18,10 +18,12 @@ import com.huawei.route.common.report.common.entity.Type;
 import com.huawei.route.common.report.common.utils.HttpClientUtils;
 import com.huawei.route.common.report.routeservice.RouteService;
 import com.huawei.route.common.report.routeservice.strategy.RouteStrategys;
+import org.apache.http.HttpHeaders;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -150,7 +152,7 @@ public class TargetAddrAcquire {
         if (addrList == null || addrList.size() == 0) {
             return null;
         }
-        return RouteService.getAddrByRoute(strategy.getStrategy(), addrList,
+        return RouteService.getAddrByRoute(strategy.getStrategy(), targetServiceName, addrList,
                 targetServiceName);
     }
 
@@ -249,6 +251,21 @@ public class TargetAddrAcquire {
         return HttpClientUtils.doPost(getRequestUrl(INSTANCE_LIST_URL), json);
     }
 
+    /**
+     * 条件查询实例列表，实例列表未变化时服务端返回304且不带响应体
+     *
+     * @param json 请求参数json串
+     * @param eTag 上次查询结果的ETag，为空时不带条件
+     * @return HttpClientResult
+     */
+    public HttpClientResult queryInstanceList(String json, String eTag) throws IOException {
+        if (eTag == null) {
+            return queryInstanceList(json);
+        }
+        return HttpClientUtils.doPostJson(getRequestUrl(INSTANCE_LIST_URL),
+                Collections.singletonMap(HttpHeaders.IF_NONE_MATCH, eTag), json);
+    }
+
     /**
      * 注册信息上报
      *
@@ -25,6 +25,11 @@ public class HttpClientResult implements Serializable {
      */
     private String content;
 
+    /**
+     * 响应头中的ETag
+     */
+    private String eTag;
+
     public HttpClientResult(int code) {
         this.code = code;
     }
@@ -50,6 +55,14 @@ public class HttpClientResult implements Serializable {
         this.content = content;
     }
 
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
     @Override
     public String toString() {
         return "HttpClientResult{" +
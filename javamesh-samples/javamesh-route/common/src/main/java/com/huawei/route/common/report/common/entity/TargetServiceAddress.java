@@ -73,4 +73,14 @@ public class TargetServiceAddress {
     public void setLdc(String ldc) {
         this.ldc = ldc;
     }
+
+    /**
+     * 一致性hash按该值计算虚拟节点，同一地址在每次查询结果中需保持一致
+     *
+     * @return 地址
+     */
+    @Override
+    public String toString() {
+        return url;
+    }
 }
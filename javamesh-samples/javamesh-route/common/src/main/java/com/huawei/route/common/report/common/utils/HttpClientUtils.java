@@ -7,6 +7,9 @@ package com.huawei.route.common.report.common.utils;
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 import com.huawei.route.common.report.common.entity.HttpClientResult;
 import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
@@ -276,12 +279,29 @@ public class HttpClientUtils {
      * @throws IOException 请求异常抛出
      */
     public static HttpClientResult doPost(String url, String json) throws IOException {
+        return doPostJson(url, null, json);
+    }
+
+    /**
+     * 发送post请求；带请求头，请求参数为json
+     *
+     * @param url     请求地址
+     * @param headers 请求头集合
+     * @param json    json字符串
+     * @return HttpClientResult结果包装类
+     * @throws IOException 请求异常抛出
+     */
+    public static HttpClientResult doPostJson(String url, Map<String, String> headers, String json)
+            throws IOException {
         // 创建httpClient对象
         CloseableHttpClient httpClient = getClient();
 
         // 创建http对象
         HttpPost httpPost = new HttpPost(url);
         httpPost.setConfig(DEFAULT_REQUEST_CONFIG);
+
+        // 设置请求头
+        packageHeader(headers, httpPost);
         StringEntity stringEntity = new StringEntity(json, Consts.UTF_8);
         stringEntity.setContentType(new BasicHeader("Content-Type", "application/json;charset=utf-8"));
         stringEntity.setContentEncoding(Consts.UTF_8.name());
@@ -398,8 +418,14 @@ public class HttpClientUtils {
      */
     private static HttpClientResult getHttpClientResult(CloseableHttpResponse httpResponse) {
         try {
-            return new HttpClientResult(httpResponse.getStatusLine().getStatusCode(),
-                    EntityUtils.toString(httpResponse.getEntity(), ENCODING));
+            HttpEntity entity = httpResponse.getEntity();
+            HttpClientResult result = new HttpClientResult(httpResponse.getStatusLine().getStatusCode(),
+                    entity == null ? null : EntityUtils.toString(entity, ENCODING));
+            Header eTag = httpResponse.getFirstHeader(HttpHeaders.ETAG);
+            if (eTag != null) {
+                result.setETag(eTag.getValue());
+            }
+            return result;
         } catch (IOException e) {
             LOGGER.warning(String.format(Locale.ENGLISH, "Request submit error.Error info: %s", e));
             return new HttpClientResult(HttpStatus.SC_INTERNAL_SERVER_ERROR);
@@ -30,4 +30,19 @@ public class RouteService {
     public static <T> T getAddrByRoute(InterfaceRouteStrategy strategy, List<T> addrList, String param) {
         return strategy.route(addrList, param);
     }
+
+    /**
+     * 根据策略获取目标服务的地址
+     *
+     * @param strategy 策略
+     * @param service 目标服务名
+     * @param addrList 地址列表
+     * @param param 参数
+     * @param <T> T
+     * @return 地址
+     */
+    public static <T> T getAddrByRoute(InterfaceRouteStrategy strategy, String service, List<T> addrList,
+            String param) {
+        return strategy.route(service, addrList, param);
+    }
 }
@@ -6,12 +6,20 @@ package com.huawei.route.common.report.routeservice.strategy;
 
 import com.huawei.route.common.report.common.utils.HashcodeUtil;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 一致性hash算法
+ * <p>
+ * hash环按目标服务缓存，地址列表的大小和内容hash不变时直接复用；实例上下线时只计算新增地址的虚拟节点，
+ * 移除下线地址的虚拟节点后与剩余节点归并，查找在有序long数组上二分。
+ * 虚拟节点按地址的toString计算，只在重建hash环时生成地址字符串数组
+ * </p>
  *
  * @author wl
  * @since 2021-06-08
@@ -19,6 +27,25 @@ import java.util.TreeMap;
 public class ConsistentHashStrategyImpl implements InterfaceRouteStrategy {
     private static final int VIRTUAL_NODE_NUM = 100;
 
+    /**
+     * 虚拟节点hash缓存的最大地址数，超过后清空重建
+     */
+    private static final int MAX_CACHED_ADDRESS = 4096;
+
+    /**
+     * hash环缓存的最大服务数，超过后清空重建
+     */
+    private static final int MAX_CACHED_SERVICE = 1024;
+
+    /**
+     * 未指定服务时使用的缓存key
+     */
+    private static final String DEFAULT_SERVICE = "";
+
+    private final Map<String, long[]> virtualNodeHashes = new ConcurrentHashMap<String, long[]>();
+
+    private final ConcurrentMap<String, Ring> rings = new ConcurrentHashMap<String, Ring>();
+
     private ConsistentHashStrategyImpl() {
     }
 
@@ -37,19 +64,209 @@ public class ConsistentHashStrategyImpl implements InterfaceRouteStrategy {
 
     @Override
     public <T> T route(List<T> addrList, String param) {
-        TreeMap<Long, T> addressRing = new TreeMap<Long, T>();
-        for (T address : addrList) {
-            for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
-                long addressHash = HashcodeUtil.fnv132Hash("SHARD-" + address + "-NODE-" + i);
-                addressRing.put(addressHash, address);
+        return route(DEFAULT_SERVICE, addrList, param);
+    }
+
+    @Override
+    public <T> T route(String service, List<T> addrList, String param) {
+        String cacheKey = service == null ? DEFAULT_SERVICE : service;
+        Ring current = rings.get(cacheKey);
+        if (current == null || !current.matches(addrList)) {
+            current = rebuild(current, addrList);
+            if (rings.size() >= MAX_CACHED_SERVICE) {
+                rings.clear();
+            }
+            rings.put(cacheKey, current);
+        }
+        return addrList.get(current.lookup(HashcodeUtil.fnv132Hash(param)));
+    }
+
+    private Ring rebuild(Ring old, List<?> addrList) {
+        String[] keys = new String[addrList.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.valueOf(addrList.get(i));
+        }
+        return rebuild(old, keys, addrList.hashCode());
+    }
+
+    private Ring rebuild(Ring old, String[] keys, int contentHash) {
+        // 地址重复时与TreeMap.put一致，以最后一次出现的位置为准
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            positions.put(keys[i], i);
+        }
+
+        // 保留仍在列表中的旧节点，更新其位置
+        int retained = 0;
+        long[] retainedHashes = new long[0];
+        int[] retainedPositions = new int[0];
+        Map<String, Boolean> oldKeys = new HashMap<String, Boolean>();
+        if (old != null) {
+            retainedHashes = new long[old.hashes.length];
+            retainedPositions = new int[old.hashes.length];
+            for (String key : old.keys) {
+                oldKeys.put(key, Boolean.TRUE);
+            }
+            for (int i = 0; i < old.hashes.length; i++) {
+                Integer position = positions.get(old.keys[old.positions[i]]);
+                if (position != null) {
+                    retainedHashes[retained] = old.hashes[i];
+                    retainedPositions[retained] = position;
+                    retained++;
+                }
             }
         }
 
-        Long requestAddrHashcode = HashcodeUtil.fnv132Hash(param);
-        SortedMap<Long, T> tailMap = addressRing.tailMap(requestAddrHashcode);
-        if (!tailMap.isEmpty()) {
-            return tailMap.get(tailMap.firstKey());
+        // 只为新增地址计算虚拟节点
+        int added = 0;
+        long[] addedHashes = new long[0];
+        int[] addedPositions = new int[0];
+        for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+            if (oldKeys.containsKey(entry.getKey())) {
+                continue;
+            }
+            long[] hashes = hashesOf(entry.getKey());
+            if (added + hashes.length > addedHashes.length) {
+                int capacity = Math.max(addedHashes.length * 2, added + hashes.length);
+                addedHashes = Arrays.copyOf(addedHashes, capacity);
+                addedPositions = Arrays.copyOf(addedPositions, capacity);
+            }
+            for (long hash : hashes) {
+                addedHashes[added] = hash;
+                addedPositions[added] = entry.getValue();
+                added++;
+            }
+        }
+        sort(addedHashes, addedPositions, added);
+
+        return merge(keys, contentHash, retainedHashes, retainedPositions, retained, addedHashes, addedPositions,
+                added);
+    }
+
+    private Ring merge(String[] keys, int contentHash, long[] retainedHashes, int[] retainedPositions, int retained,
+            long[] addedHashes, int[] addedPositions, int added) {
+        long[] hashes = new long[retained + added];
+        int[] positions = new int[retained + added];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < retained || j < added) {
+            long hash;
+            int position;
+            if (j >= added || (i < retained && retainedHashes[i] <= addedHashes[j])) {
+                hash = retainedHashes[i];
+                position = retainedPositions[i++];
+            } else {
+                hash = addedHashes[j];
+                position = addedPositions[j++];
+            }
+            if (size > 0 && hashes[size - 1] == hash) {
+                // hash冲突时保留列表中靠后的地址
+                positions[size - 1] = Math.max(positions[size - 1], position);
+                continue;
+            }
+            hashes[size] = hash;
+            positions[size] = position;
+            size++;
+        }
+        return new Ring(keys, contentHash, Arrays.copyOf(hashes, size), Arrays.copyOf(positions, size));
+    }
+
+    /**
+     * 按hash升序排列新增节点，hash相同时按位置升序，使合并时靠后的地址生效 <br>
+     * 在两个平行数组上原地堆排序，不为每个节点分配对象
+     */
+    private static void sort(long[] hashes, int[] positions, int size) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(hashes, positions, i, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(hashes, positions, 0, end);
+            siftDown(hashes, positions, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] hashes, int[] positions, int index, int size) {
+        int parent = index;
+        for (int child = 2 * parent + 1; child < size; child = 2 * parent + 1) {
+            if (child + 1 < size && less(hashes, positions, child, child + 1)) {
+                child++;
+            }
+            if (!less(hashes, positions, parent, child)) {
+                return;
+            }
+            swap(hashes, positions, parent, child);
+            parent = child;
+        }
+    }
+
+    private static boolean less(long[] hashes, int[] positions, int i, int j) {
+        return hashes[i] < hashes[j] || (hashes[i] == hashes[j] && positions[i] < positions[j]);
+    }
+
+    private static void swap(long[] hashes, int[] positions, int i, int j) {
+        long hash = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = hash;
+        int position = positions[i];
+        positions[i] = positions[j];
+        positions[j] = position;
+    }
+
+    private long[] hashesOf(String key) {
+        long[] hashes = virtualNodeHashes.get(key);
+        if (hashes != null) {
+            return hashes;
+        }
+        hashes = new long[VIRTUAL_NODE_NUM];
+        for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
+            hashes[i] = HashcodeUtil.fnv132Hash("SHARD-" + key + "-NODE-" + i);
+        }
+        if (virtualNodeHashes.size() >= MAX_CACHED_ADDRESS) {
+            virtualNodeHashes.clear();
+        }
+        virtualNodeHashes.put(key, hashes);
+        return hashes;
+    }
+
+    /**
+     * 不可变的hash环，hashes有序，positions为对应虚拟节点在地址列表中的下标
+     */
+    private static class Ring {
+        private final String[] keys;
+
+        /**
+         * 构建时地址列表的内容hash，即{@link List#hashCode()}
+         */
+        private final int contentHash;
+
+        private final long[] hashes;
+
+        private final int[] positions;
+
+        Ring(String[] keys, int contentHash, long[] hashes, int[] positions) {
+            this.keys = keys;
+            this.contentHash = contentHash;
+            this.hashes = hashes;
+            this.positions = positions;
+        }
+
+        /**
+         * 按大小和内容hash判断地址列表是否与构建时一致，同一个列表对象内容被修改后也能发现，且不生成地址字符串
+         *
+         * @param addrList 地址列表
+         * @return 一致时返回true
+         */
+        boolean matches(List<?> addrList) {
+            return addrList.size() == keys.length && addrList.hashCode() == contentHash;
+        }
+
+        int lookup(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return positions[index == hashes.length ? 0 : index];
         }
-        return addressRing.firstEntry().getValue();
     }
 }
@@ -22,4 +22,17 @@ public interface InterfaceRouteStrategy {
      * @return 返回根据路由策略计算后得到的元素
      */
     <T> T route(List<T> addrList, String param);
+
+    /**
+     * 按目标服务路由，需要按服务缓存状态的策略（如一致性hash）可覆盖该方法
+     *
+     * @param service  目标服务名
+     * @param addrList 来自server的有效待选集合
+     * @param param    需要传参时使用，如一致性hash算法
+     * @param <T> 表示addrList元素类型
+     * @return 返回根据路由策略计算后得到的元素
+     */
+    default <T> T route(String service, List<T> addrList, String param) {
+        return route(addrList, param);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import com.huawei.route.common.gray.label.entity.MatchRule;
+import com.huawei.route.common.gray.label.entity.MatchStrategy;
+import com.huawei.route.common.gray.label.entity.ValueMatch;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * CompiledMatchRule单元测试
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class CompiledMatchRuleTest {
+    private static final List<String> ARGS = Arrays.asList(null, "", "gray", "GRAY", "Gray-1", "gray-1", "blue",
+            "BLUE", "g", "10", "9", "11", "-3", "+10", "010", "abc", "ABC", "a1", "A1", "x");
+
+    @BeforeClass
+    public static void beforeClass() {
+        LogFactory.setLogger(Logger.getLogger(CompiledMatchRuleTest.class.getName()));
+    }
+
+    /**
+     * 测试等值、不等于和前缀匹配在区分和忽略大小写时与原有匹配结果一致
+     */
+    @Test
+    public void testStringStrategies() {
+        for (MatchStrategy strategy : Arrays.asList(MatchStrategy.EXACT, MatchStrategy.NOEQU, MatchStrategy.PREFIX)) {
+            assertSameAsInterpreted(strategy, Arrays.asList("gray"));
+            assertSameAsInterpreted(strategy, Arrays.asList("Gray", "blue"));
+            assertSameAsInterpreted(strategy, Arrays.asList(""));
+        }
+    }
+
+    /**
+     * 测试包含匹配在区分和忽略大小写时与原有匹配结果一致
+     */
+    @Test
+    public void testIn() {
+        assertSameAsInterpreted(MatchStrategy.IN, Arrays.asList("gray", "BLUE", "Gray-1"));
+        assertSameAsInterpreted(MatchStrategy.IN, Arrays.asList("10"));
+
+        CompiledMatchRule ignoreCase = compile(MatchStrategy.IN, Arrays.asList("gray", "BLUE"), false);
+        Assert.assertTrue(ignoreCase.isMatch("GRAY"));
+        Assert.assertTrue(ignoreCase.isMatch("blue"));
+        Assert.assertFalse(ignoreCase.isMatch("red"));
+        Assert.assertFalse(ignoreCase.isMatch(null));
+
+        CompiledMatchRule caseSensitive = compile(MatchStrategy.IN, Arrays.asList("gray", "BLUE"), true);
+        Assert.assertTrue(caseSensitive.isMatch("gray"));
+        Assert.assertFalse(caseSensitive.isMatch("GRAY"));
+        Assert.assertFalse(caseSensitive.isMatch("blue"));
+    }
+
+    /**
+     * 测试正则匹配与原有匹配结果一致，表达式非法时不匹配
+     */
+    @Test
+    public void testRegex() {
+        assertSameAsInterpreted(MatchStrategy.REGEX, Arrays.asList("gray-?[0-9]*"));
+        assertSameAsInterpreted(MatchStrategy.REGEX, Arrays.asList("[a-c]+"));
+        assertSameAsInterpreted(MatchStrategy.REGEX, Arrays.asList(".*"));
+
+        CompiledMatchRule invalid = compile(MatchStrategy.REGEX, Arrays.asList("[gray"), true);
+        for (String arg : ARGS) {
+            Assert.assertFalse(invalid.isMatch(arg));
+        }
+    }
+
+    /**
+     * 测试数值比较与原有匹配结果一致，期望值或参数不是整数时不匹配
+     */
+    @Test
+    public void testNumberStrategies() {
+        for (MatchStrategy strategy : Arrays.asList(MatchStrategy.GREATER, MatchStrategy.NOLESS, MatchStrategy.LESS,
+                MatchStrategy.NOGREATER)) {
+            assertSameAsInterpreted(strategy, Arrays.asList("10"));
+            assertSameAsInterpreted(strategy, Arrays.asList("-3", "100"));
+            assertSameAsInterpreted(strategy, Arrays.asList("gray"));
+        }
+    }
+
+    private static void assertSameAsInterpreted(MatchStrategy strategy, List<String> values) {
+        for (boolean caseInsensitive : new boolean[]{true, false}) {
+            CompiledMatchRule compiled = compile(strategy, values, caseInsensitive);
+            for (String arg : ARGS) {
+                Assert.assertEquals(strategy + " " + values + " caseInsensitive=" + caseInsensitive + " arg=" + arg,
+                        strategy.isMatch(values, arg, caseInsensitive), compiled.isMatch(arg));
+            }
+        }
+    }
+
+    private static CompiledMatchRule compile(MatchStrategy strategy, List<String> values, boolean caseInsensitive) {
+        ValueMatch valueMatch = new ValueMatch();
+        valueMatch.setMatchStrategy(strategy);
+        valueMatch.setValues(values);
+        MatchRule matchRule = new MatchRule();
+        matchRule.setValueMatch(valueMatch);
+        matchRule.setCaseInsensitive(caseInsensitive);
+        return new CompiledMatchRule(matchRule);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2021. All rights reserved.
+ */
+
+package com.huawei.route.common.gray.rule;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import com.huawei.route.common.gray.label.entity.GrayConfiguration;
+import com.huawei.route.common.gray.label.entity.Match;
+import com.huawei.route.common.gray.label.entity.MatchRule;
+import com.huawei.route.common.gray.label.entity.MatchStrategy;
+import com.huawei.route.common.gray.label.entity.Route;
+import com.huawei.route.common.gray.label.entity.Rule;
+import com.huawei.route.common.gray.label.entity.Tags;
+import com.huawei.route.common.gray.label.entity.ValueMatch;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * RuleCompiler单元测试
+ *
+ * @author pengyuyi
+ * @date 2021/12/20
+ */
+public class RuleCompilerTest {
+    private static final String SERVICE = "provider";
+
+    private final RuleCompiler ruleCompiler = new RuleCompiler(new RuleValidator() {
+        @Override
+        public String getValidPath(Rule rule) {
+            return rule.getMatch().getPath();
+        }
+    });
+
+    @BeforeClass
+    public static void beforeClass() {
+        LogFactory.setLogger(Logger.getLogger(RuleCompilerTest.class.getName()));
+    }
+
+    /**
+     * 测试规则按优先级排序，路径无效、没有路由或没有有效版本的规则被丢弃，无效的匹配条件被过滤
+     */
+    @Test
+    public void testCompile() {
+        GrayConfiguration configuration = configuration(Arrays.asList(
+                rule(2, "/b", "1.0.2", matchRule(MatchStrategy.IN, "gray", "blue")),
+                rule(1, "/a", "1.0.1", matchRule(MatchStrategy.EXACT, "gray"), matchRule(null, "gray"),
+                        matchRule(MatchStrategy.EXACT)),
+                rule(0, null, "1.0.0", matchRule(MatchStrategy.EXACT, "gray")),
+                rule(0, "/c", "", matchRule(MatchStrategy.EXACT, "gray"))));
+
+        List<CompiledRule> rules = ruleCompiler.getRules(configuration, SERVICE);
+        Assert.assertEquals(3, rules.size());
+        Assert.assertEquals(0, rules.get(0).getPrecedence());
+        Assert.assertTrue(rules.get(0).getRoutes().isEmpty());
+        Assert.assertEquals(1, rules.get(1).getPrecedence());
+        Assert.assertTrue(rules.get(1).isMatchPath("/a"));
+        Assert.assertEquals("1.0.1", rules.get(1).getRoutes().get(0).getTags().getVersion());
+        Assert.assertEquals(2, rules.get(2).getPrecedence());
+
+        CompiledMatchRule[] matchRules = rules.get(1).getHeaders()[0].getMatchRules();
+        Assert.assertEquals(1, matchRules.length);
+        Assert.assertTrue(matchRules[0].isMatch("GRAY"));
+        Assert.assertTrue(rules.get(2).getHeaders()[0].getMatchRules()[0].isMatch("BLUE"));
+
+        Assert.assertTrue(ruleCompiler.getRules(configuration, "other").isEmpty());
+        Assert.assertTrue(ruleCompiler.getRules(configuration, null).isEmpty());
+    }
+
+    /**
+     * 测试同一个标签只编译一次，标签对象变化或失效后重新获取
+     */
+    @Test
+    public void testCache() {
+        GrayConfiguration configuration = configuration(Collections.singletonList(
+                rule(1, "/a", "1.0.1", matchRule(MatchStrategy.EXACT, "gray"))));
+        List<CompiledRule> rules = ruleCompiler.getRules(configuration, SERVICE);
+        Assert.assertSame(rules, ruleCompiler.getRules(configuration, SERVICE));
+
+        GrayConfiguration updated = configuration(Collections.singletonList(
+                rule(1, "/b", "1.0.2", matchRule(MatchStrategy.EXACT, "gray"))));
+        List<CompiledRule> updatedRules = ruleCompiler.getRules(updated, SERVICE);
+        Assert.assertNotSame(rules, updatedRules);
+        Assert.assertTrue(updatedRules.get(0).isMatchPath("/b"));
+
+        updated.setOn(false);
+        Assert.assertTrue(ruleCompiler.getRules(updated, SERVICE).isEmpty());
+    }
+
+    private static GrayConfiguration configuration(List<Rule> rules) {
+        Map<String, List<Rule>> routeRule = new HashMap<String, List<Rule>>();
+        routeRule.put(SERVICE, new ArrayList<Rule>(rules));
+        GrayConfiguration configuration = new GrayConfiguration();
+        configuration.setOn(true);
+        configuration.setValid(true);
+        configuration.setRouteRule(routeRule);
+        return configuration;
+    }
+
+    private static Rule rule(int precedence, String path, String version, MatchRule... matchRules) {
+        Map<String, List<MatchRule>> headers = new HashMap<String, List<MatchRule>>();
+        headers.put("x-tag", Arrays.asList(matchRules));
+        Match match = new Match();
+        match.setPath(path);
+        match.setHeaders(headers);
+        Tags tags = new Tags();
+        tags.setVersion(version);
+        Route route = new Route();
+        route.setTags(tags);
+        Rule rule = new Rule();
+        rule.setPrecedence(precedence);
+        rule.setMatch(match);
+        rule.setRoute(Collections.singletonList(route));
+        return rule;
+    }
+
+    private static MatchRule matchRule(MatchStrategy strategy, String... values) {
+        ValueMatch valueMatch = new ValueMatch();
+        valueMatch.setMatchStrategy(strategy);
+        valueMatch.setValues(Arrays.asList(values));
+        MatchRule matchRule = new MatchRule();
+        matchRule.setValueMatch(valueMatch);
+        return matchRule;
+    }
+}
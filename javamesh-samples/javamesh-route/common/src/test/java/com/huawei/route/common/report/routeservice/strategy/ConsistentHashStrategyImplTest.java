@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.route.common.report.routeservice.strategy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ConsistentHashStrategyImpl单元测试
+ *
+ * @author wl
+ * @since 2021-06-08
+ */
+public class ConsistentHashStrategyImplTest {
+    private static final int PARAM_COUNT = 20000;
+
+    private final ConsistentHashStrategyImpl strategy = ConsistentHashStrategyImpl.getInstance();
+
+    /**
+     * 测试参数在各地址间大致均匀分布
+     */
+    @Test
+    public void testDistribution() {
+        List<String> addrList = addresses(10);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            String addr = strategy.route("distribution", addrList, "param-" + i);
+            Integer count = counts.get(addr);
+            counts.put(addr, count == null ? 1 : count + 1);
+        }
+        Assert.assertEquals(addrList.size(), counts.size());
+        int expected = PARAM_COUNT / addrList.size();
+        for (Integer count : counts.values()) {
+            Assert.assertTrue("unbalanced count:" + count, count > expected / 2 && count < expected * 2);
+        }
+    }
+
+    /**
+     * 测试地址下线时只有原来落在该地址上的参数重新路由，新增地址时参数只会迁移到新地址
+     */
+    @Test
+    public void testStability() {
+        List<String> addrList = addresses(8);
+        String[] before = routeAll("stability", addrList);
+
+        List<String> removed = new ArrayList<String>(addrList);
+        String offline = removed.remove(3);
+        String[] afterRemove = routeAll("stability", removed);
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            if (!before[i].equals(offline)) {
+                Assert.assertEquals(before[i], afterRemove[i]);
+            }
+        }
+
+        List<String> added = new ArrayList<String>(addrList);
+        added.add("10.0.0.100:8080");
+        String[] afterAdd = routeAll("stability", added);
+        int moved = 0;
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            if (!before[i].equals(afterAdd[i])) {
+                Assert.assertEquals("10.0.0.100:8080", afterAdd[i]);
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved > 0);
+    }
+
+    /**
+     * 测试增量重建的hash环与全新构建的结果一致
+     */
+    @Test
+    public void testIncrementalRebuild() {
+        List<String> addrList = addresses(6);
+        routeAll("incremental", addrList);
+        List<String> changed = new ArrayList<String>(addrList.subList(2, 6));
+        changed.add("10.0.0.200:8080");
+        changed.add(0, "10.0.0.201:8080");
+        Assert.assertArrayEquals(routeAll("fresh", changed), routeAll("incremental", changed));
+    }
+
+    /**
+     * 测试同一个列表对象内容被修改后重建hash环
+     */
+    @Test
+    public void testMutatedList() {
+        List<String> addrList = addresses(2);
+        String[] before = routeAll("mutated", addrList);
+        String offline = addrList.set(0, "10.0.0.150:8080");
+        String[] after = routeAll("mutated", addrList);
+        int moved = 0;
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            Assert.assertNotEquals(offline, after[i]);
+            if (after[i].equals("10.0.0.150:8080")) {
+                moved++;
+            } else if (!before[i].equals(offline)) {
+                Assert.assertEquals(before[i], after[i]);
+            }
+        }
+        Assert.assertTrue(moved > 0);
+    }
+
+    private String[] routeAll(String service, List<String> addrList) {
+        String[] result = new String[PARAM_COUNT];
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            result[i] = strategy.route(service, addrList, "param-" + i);
+        }
+        return result;
+    }
+
+    private static List<String> addresses(int count) {
+        List<String> addrList = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            addrList.add("10.0.0." + i + ":8080");
+        }
+        return addrList;
+    }
+}
@@ -17,7 +17,7 @@ import com.huawei.route.common.gray.constants.GrayConstant;
 import com.huawei.route.common.gray.label.LabelCache;
 import com.huawei.route.common.gray.label.entity.GrayConfiguration;
 import com.huawei.route.common.gray.label.entity.Route;
-import com.huawei.route.common.gray.label.entity.Rule;
+import com.huawei.route.common.gray.rule.CompiledRule;
 
 import org.apache.dubbo.common.URL;
 import org.apache.dubbo.remoting.exchange.ExchangeClient;
@@ -76,8 +76,8 @@ public class ApacheDubboInvokerInstanceMethodInterceptor implements InstanceMeth
         if (RpcContext.getContext().isConsumerSide()) {
             String version = grayConfiguration.getCurrentTag().getVersion();
             String interfaceName = requestUrl.getServiceInterface() + "." + invocation.getMethodName();
-            List<Rule> rules = RouterUtil.getValidRules(grayConfiguration, targetService, interfaceName);
-            List<Route> routes = RouterUtil.getRoutes(rules, invocation.getArguments());
+            List<CompiledRule> rules = RouterUtil.getValidRules(grayConfiguration, targetService);
+            List<Route> routes = RouterUtil.getRoutes(rules, interfaceName, invocation.getArguments());
             RuleStrategyEnum ruleStrategyEnum =
                     CollectionUtils.isEmpty(routes) ? RuleStrategyEnum.UPSTREAM : RuleStrategyEnum.WEIGHT;
             String targetServiceIp = ruleStrategyEnum.getTargetServiceIp(routes, targetService, interfaceName, version,
@@ -16,11 +16,13 @@ import com.huawei.route.common.gray.label.LabelCache;
 import com.huawei.route.common.gray.label.entity.CurrentTag;
 import com.huawei.route.common.gray.label.entity.GrayConfiguration;
 import com.huawei.route.common.gray.label.entity.Match;
-import com.huawei.route.common.gray.label.entity.MatchRule;
-import com.huawei.route.common.gray.label.entity.MatchStrategy;
 import com.huawei.route.common.gray.label.entity.Route;
 import com.huawei.route.common.gray.label.entity.Rule;
-import com.huawei.route.common.gray.label.entity.ValueMatch;
+import com.huawei.route.common.gray.rule.CompiledArgRule;
+import com.huawei.route.common.gray.rule.CompiledMatchRule;
+import com.huawei.route.common.gray.rule.CompiledRule;
+import com.huawei.route.common.gray.rule.RuleCompiler;
+import com.huawei.route.common.gray.rule.RuleValidator;
 import com.huawei.route.common.label.observers.LabelObservers;
 
 import com.alibaba.fastjson.JSONObject;
@@ -40,14 +42,9 @@ import org.springframework.util.CollectionUtils;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -83,6 +80,13 @@ public class RouterUtil {
 
     private static final Logger LOGGER = LogFactory.getLogger();
 
+    private static final RuleCompiler RULE_COMPILER = new RuleCompiler(new RuleValidator() {
+        @Override
+        public String getValidPath(Rule rule) {
+            return RouterUtil.getValidPath(rule);
+        }
+    });
+
     private RouterUtil() {
     }
 
@@ -452,114 +456,41 @@ public class RouterUtil {
     }
 
     /**
-     * 获取合法的目标规则
+     * 获取合法的目标规则，已按优先级排序，标签未更新时直接使用缓存的编译结果
      *
      * @param grayConfiguration 标签
      * @param targetService 目标服务
-     * @param interfaceName 接口
      * @return 目标规则
      */
-    public static List<Rule> getValidRules(GrayConfiguration grayConfiguration, String targetService,
-            String interfaceName) {
-        if (GrayConfiguration.isInValid(grayConfiguration)) {
-            return Collections.emptyList();
-        }
-        Map<String, List<Rule>> routeRule = grayConfiguration.getRouteRule();
-        if (CollectionUtils.isEmpty(routeRule) || CollectionUtils.isEmpty(routeRule.get(targetService))) {
-            return Collections.emptyList();
-        }
-        List<Rule> list = new ArrayList<Rule>();
-        for (Rule rule : routeRule.get(targetService)) {
-            if (!isValidRule(rule, interfaceName)) {
-                continue;
-            }
-
-            // 去掉无效的规则
-            removeInValidRules(rule.getMatch().getArgs());
-
-            // 去掉无效的路由
-            removeInValidRoute(rule.getRoute());
-            list.add(rule);
-        }
-        Collections.sort(list, new Comparator<Rule>() {
-            @Override
-            public int compare(Rule o1, Rule o2) {
-                return o1.getPrecedence() - o2.getPrecedence();
-            }
-        });
-        return list;
-    }
-
-    private static void removeInValidRules(Map<String, List<MatchRule>> args) {
-        Iterator<Entry<String, List<MatchRule>>> matchRuleListIterator = args.entrySet().iterator();
-        while (matchRuleListIterator.hasNext()) {
-            if (isInValidArgs(matchRuleListIterator.next())) {
-                matchRuleListIterator.remove();
-            }
-        }
-        for (List<MatchRule> matchRules : args.values()) {
-            Iterator<MatchRule> matchRuleIterator = matchRules.iterator();
-            while (matchRuleIterator.hasNext()) {
-                if (isInValidMatchRule(matchRuleIterator.next())) {
-                    matchRuleIterator.remove();
-                }
-            }
-        }
-    }
-
-    private static void removeInValidRoute(List<Route> routeList) {
-        Iterator<Route> routeIterator = routeList.iterator();
-        while (routeIterator.hasNext()) {
-            if (isInValidRoute(routeIterator.next())) {
-                routeIterator.remove();
-            }
-        }
+    public static List<CompiledRule> getValidRules(GrayConfiguration grayConfiguration, String targetService) {
+        return RULE_COMPILER.getRules(grayConfiguration, targetService);
     }
 
-    private static boolean isValidRule(Rule rule, String interfaceName) {
-        if (rule == null) {
-            return false;
-        }
+    private static String getValidPath(Rule rule) {
         Match match = rule.getMatch();
-        if (match == null) {
-            return false;
-        }
         String source = match.getSource();
         if (StringUtils.isNotBlank(source) && !source.equals(DubboCache.getAppName())) {
-            return false;
-        }
-        if (!interfaceName.equals(match.getPath())) {
-            return false;
+            return null;
         }
-        if (CollectionUtils.isEmpty(match.getArgs())) {
-            return false;
+        if (match.getPath() == null || CollectionUtils.isEmpty(match.getArgs())) {
+            return null;
         }
-        return !CollectionUtils.isEmpty(rule.getRoute());
-    }
-
-    private static boolean isInValidArgs(Entry<String, List<MatchRule>> entry) {
-        return StringUtils.isBlank(entry.getKey()) || CollectionUtils.isEmpty(entry.getValue());
-    }
-
-    private static boolean isInValidMatchRule(MatchRule matchRule) {
-        return matchRule == null || matchRule.getValueMatch() == null
-                || CollectionUtils.isEmpty(matchRule.getValueMatch().getValues())
-                || matchRule.getValueMatch().getMatchStrategy() == null;
-    }
-
-    private static boolean isInValidRoute(Route route) {
-        return route == null || route.getTags() == null || StringUtils.isBlank(route.getTags().getVersion());
+        return match.getPath();
     }
 
     /**
      * 获取匹配的路由
      *
      * @param list 有效的规则
+     * @param interfaceName 接口
      * @param arguments dubbo的参数
      * @return 匹配的路由
      */
-    public static List<Route> getRoutes(List<Rule> list, Object[] arguments) {
-        for (Rule rule : list) {
+    public static List<Route> getRoutes(List<CompiledRule> list, String interfaceName, Object[] arguments) {
+        for (CompiledRule rule : list) {
+            if (!rule.isMatchPath(interfaceName)) {
+                continue;
+            }
             List<Route> routeList = getRoutes(arguments, rule);
             if (routeList != null) {
                 return routeList;
@@ -568,26 +499,19 @@ public class RouterUtil {
         return null;
     }
 
-    private static List<Route> getRoutes(Object[] arguments, Rule rule) {
-        Match match = rule.getMatch();
-        boolean fullMatch = match.isFullMatch();
-        Map<String, List<MatchRule>> args = match.getArgs();
-        for (Entry<String, List<MatchRule>> entry : args.entrySet()) {
-            String key = entry.getKey();
-            if (!key.startsWith(GrayConstant.DUBBO_SOURCE_TYPE_PREFIX)) {
+    private static List<Route> getRoutes(Object[] arguments, CompiledRule rule) {
+        boolean fullMatch = rule.isFullMatch();
+        for (CompiledArgRule argRule : rule.getArgs()) {
+            if (!argRule.isDubboArg()) {
                 continue;
             }
-            List<MatchRule> matchRuleList = entry.getValue();
-            for (MatchRule matchRule : matchRuleList) {
-                ValueMatch valueMatch = matchRule.getValueMatch();
-                List<String> values = valueMatch.getValues();
-                MatchStrategy matchStrategy = valueMatch.getMatchStrategy();
-                String arg = getArg(matchRule.getType(), key, arguments);
-                if (!fullMatch && matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+            for (CompiledMatchRule matchRule : argRule.getMatchRules()) {
+                String arg = getArg(matchRule.getType(), argRule.getArgIndex(), arguments);
+                if (!fullMatch && matchRule.isMatch(arg)) {
                     // 如果不是全匹配，且匹配了一个，那么直接return
-                    return rule.getRoute();
+                    return rule.getRoutes();
                 }
-                if (fullMatch && !matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+                if (fullMatch && !matchRule.isMatch(arg)) {
                     // 如果是全匹配，且有一个不匹配，则继续下一个规则
                     return null;
                 }
@@ -595,13 +519,13 @@ public class RouterUtil {
         }
         if (fullMatch) {
             // 如果是全匹配，走到这里，说明没有不匹配的，直接return
-            return rule.getRoute();
+            return rule.getRoutes();
         }
         // 如果不是全匹配，走到这里，说明没有一个规则能够匹配上，则继续下一个规则
         return null;
     }
 
-    private static String getArg(String type, String key, Object[] arguments) {
+    private static String getArg(String type, int index, Object[] arguments) {
         if (arguments == null) {
             return null;
         }
@@ -609,13 +533,6 @@ public class RouterUtil {
         if (typeStrategy == null) {
             return null;
         }
-        int index;
-        try {
-            index = Integer.parseInt(key.substring(GrayConstant.DUBBO_SOURCE_TYPE_PREFIX.length()));
-        } catch (NumberFormatException e) {
-            LOGGER.warning("Source type " + key + " is invalid.");
-            return null;
-        }
         if (index < 0 || index >= arguments.length || arguments[index] == null) {
             return null;
         }
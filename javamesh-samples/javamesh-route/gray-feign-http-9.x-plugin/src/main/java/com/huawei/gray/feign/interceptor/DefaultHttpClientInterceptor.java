@@ -15,7 +15,7 @@ import com.huawei.route.common.gray.addr.entity.Instances;
 import com.huawei.route.common.gray.label.LabelCache;
 import com.huawei.route.common.gray.label.entity.GrayConfiguration;
 import com.huawei.route.common.gray.label.entity.Route;
-import com.huawei.route.common.gray.label.entity.Rule;
+import com.huawei.route.common.gray.rule.CompiledRule;
 
 import feign.Request;
 
@@ -66,8 +66,8 @@ public class DefaultHttpClientInterceptor implements InstanceMethodInterceptor {
         }
 
         // 获取匹配规则并替换url
-        List<Rule> rules = RouterUtil.getValidRules(grayConfiguration, targetAppName, path);
-        List<Route> routes = RouterUtil.getRoutes(rules, request);
+        List<CompiledRule> rules = RouterUtil.getValidRules(grayConfiguration, targetAppName);
+        List<Route> routes = RouterUtil.getRoutes(rules, path, request);
         RuleType ruleType = CollectionUtils.isEmpty(routes) ? RuleType.UPSTREAM : RuleType.WEIGHT;
         Instances instance = ruleType.getTargetServiceInstance(routes, targetAppName,
                 request.headers());
@@ -11,10 +11,9 @@ import com.huawei.route.common.gray.label.entity.Route;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 权重标签匹配
@@ -29,25 +28,20 @@ public class WeightRuleStrategy implements RuleStrategy {
         if (CollectionUtils.isEmpty(map)) {
             return null;
         }
-        // 剔除不合法的路由规则，和不在地址列表中的版本应用地址
-        Iterator<Route> iterator = list.iterator();
-        while (iterator.hasNext()) {
-            Route route = iterator.next();
-            if (route.getTags() == null || !map.containsKey(route.getTags().getVersion())) {
-                iterator.remove();
-            }
-        }
-        if (CollectionUtils.isEmpty(map)) {
-            return null;
-        }
-        if (list.get(0).getWeight() == null) {
-            // 规定第一个规则不为空，则设置为100
-            list.get(0).setWeight(100);
-        }
+        // 规则由所有请求共享，不合法的路由和不在地址列表中的版本应用地址只跳过，不从列表中删除
         int begin = 1;
-        int num = new Random().nextInt(100) + 1;
+        int num = ThreadLocalRandom.current().nextInt(100) + 1;
+        boolean first = true;
         for (Route route : list) {
+            if (route.getTags() == null || !map.containsKey(route.getTags().getVersion())) {
+                continue;
+            }
             Integer weight = route.getWeight();
+            if (weight == null && first) {
+                // 规定第一个规则的流量为空，则设置为100
+                weight = 100;
+            }
+            first = false;
             if (weight == null) {
                 continue;
             }
@@ -14,11 +14,13 @@ import com.huawei.route.common.gray.label.LabelCache;
 import com.huawei.route.common.gray.label.entity.CurrentTag;
 import com.huawei.route.common.gray.label.entity.GrayConfiguration;
 import com.huawei.route.common.gray.label.entity.Match;
-import com.huawei.route.common.gray.label.entity.MatchRule;
-import com.huawei.route.common.gray.label.entity.MatchStrategy;
 import com.huawei.route.common.gray.label.entity.Route;
 import com.huawei.route.common.gray.label.entity.Rule;
-import com.huawei.route.common.gray.label.entity.ValueMatch;
+import com.huawei.route.common.gray.rule.CompiledArgRule;
+import com.huawei.route.common.gray.rule.CompiledMatchRule;
+import com.huawei.route.common.gray.rule.CompiledRule;
+import com.huawei.route.common.gray.rule.RuleCompiler;
+import com.huawei.route.common.gray.rule.RuleValidator;
 import com.huawei.route.common.label.observers.LabelObservers;
 
 import com.alibaba.fastjson.JSONObject;
@@ -33,12 +35,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
@@ -59,6 +58,13 @@ public class RouterUtil {
 
     private static final String COOKIE = "Cookie";
 
+    private static final RuleCompiler RULE_COMPILER = new RuleCompiler(new RuleValidator() {
+        @Override
+        public String getValidPath(Rule rule) {
+            return RouterUtil.getValidPath(rule);
+        }
+    });
+
     private RouterUtil() {
     }
 
@@ -170,119 +176,45 @@ public class RouterUtil {
         return null;
     }
 
-    public static List<Rule> getValidRules(GrayConfiguration grayConfiguration, String targetService, String path) {
-        if (GrayConfiguration.isInValid(grayConfiguration)) {
-            return Collections.emptyList();
-        }
-        Map<String, List<Rule>> routeRule = grayConfiguration.getRouteRule();
-        if (CollectionUtils.isEmpty(routeRule) || CollectionUtils.isEmpty(routeRule.get(targetService))) {
-            return Collections.emptyList();
-        }
-        List<Rule> list = new ArrayList<Rule>();
-        for (Rule rule : routeRule.get(targetService)) {
-            if (!isValidRule(rule, CurrentInstance.getInstance().getAppName(), path)) {
-                continue;
-            }
-            // 去掉无效的规则
-            Map<String, List<MatchRule>> headerRules = rule.getMatch().getHeaders();
-            if (headerRules != null) {
-                removeInValidRules(headerRules);
-                rule.getMatch().setHeaders(headerRules);
-            }
-            Map<String, List<MatchRule>> paramRules = rule.getMatch().getParameters();
-            if (paramRules != null) {
-                removeInValidRules(paramRules);
-                rule.getMatch().setParameters(paramRules);
-            }
-            Map<String, List<MatchRule>> cookieRules = rule.getMatch().getCookie();
-            if (cookieRules != null) {
-                removeInValidRules(cookieRules);
-                rule.getMatch().setCookie(cookieRules);
-            }
-
-            // 去掉无效的路由
-            Iterator<Route> routeIterator = rule.getRoute().iterator();
-            while (routeIterator.hasNext()) {
-                if (isInValidRoute(routeIterator.next())) {
-                    routeIterator.remove();
-                }
-            }
-            list.add(rule);
-        }
-        Collections.sort(list, new Comparator<Rule>() {
-            @Override
-            public int compare(Rule o1, Rule o2) {
-                return o1.getPrecedence() - o2.getPrecedence();
-            }
-        });
-        return list;
-    }
-
-    private static void removeInValidRules(Map<String, List<MatchRule>> rules) {
-        Iterator<Entry<String, List<MatchRule>>> headerRulesIterator = rules.entrySet().iterator();
-        while (headerRulesIterator.hasNext()) {
-            if (isInValidArgs(headerRulesIterator.next())) {
-                headerRulesIterator.remove();
-            }
-        }
-        for (List<MatchRule> matchRules : rules.values()) {
-            Iterator<MatchRule> headerRuleIterator = matchRules.iterator();
-            while (headerRuleIterator.hasNext()) {
-                if (isInValidMatchRule(headerRuleIterator.next())) {
-                    headerRuleIterator.remove();
-                }
-            }
-        }
+    /**
+     * 获取合法的目标规则，已按优先级排序，标签未更新时直接使用缓存的编译结果
+     *
+     * @param grayConfiguration 标签
+     * @param targetService 目标服务
+     * @return 目标规则
+     */
+    public static List<CompiledRule> getValidRules(GrayConfiguration grayConfiguration, String targetService) {
+        return RULE_COMPILER.getRules(grayConfiguration, targetService);
     }
 
-    private static boolean isValidRule(Rule rule, String applicationName, String path) {
-        if (rule == null) {
-            return false;
-        }
+    private static String getValidPath(Rule rule) {
         Match match = rule.getMatch();
-        if (match == null) {
-            return false;
-        }
         String source = match.getSource();
-        if (!StringUtils.isBlank(source) && !source.equals(applicationName)) {
-            return false;
+        if (!StringUtils.isBlank(source) && !source.equals(CurrentInstance.getInstance().getAppName())) {
+            return null;
+        }
+        if (match.getPath() == null) {
+            return null;
         }
         String[] arr = match.getPath().split(":/");
         if (arr.length != 2) {
-            return false;
+            return null;
         }
         String protocol = arr[0];
         if (!HTTP.equalsIgnoreCase(protocol) && !HTTPS.equalsIgnoreCase(protocol)) {
-            return false;
+            return null;
         }
-        if (!path.equals(arr[1])) {
-            return false;
-        }
-
         if (CollectionUtils.isEmpty(match.getHeaders()) && CollectionUtils.isEmpty(match.getParameters())
                 && CollectionUtils.isEmpty(match.getCookie())) {
-            return false;
+            return null;
         }
-        return !CollectionUtils.isEmpty(rule.getRoute());
-    }
-
-    private static boolean isInValidArgs(Entry<String, List<MatchRule>> entry) {
-        return StringUtils.isBlank(entry.getKey()) || CollectionUtils.isEmpty(entry.getValue());
+        return arr[1];
     }
 
-    private static boolean isInValidMatchRule(MatchRule matchRule) {
-        return matchRule == null || matchRule.getValueMatch() == null || CollectionUtils
-                .isEmpty(matchRule.getValueMatch().getValues()) || matchRule.getValueMatch().getMatchStrategy() == null;
-    }
-
-    private static boolean isInValidRoute(Route route) {
-        return route == null || route.getTags() == null || StringUtils.isBlank(route.getTags().getVersion());
-    }
-
-    private static boolean isMatchHeaderRule(Map<String, List<MatchRule>> headerRules, boolean fullMatch, Request request) {
+    private static boolean isMatchHeaderRule(CompiledArgRule[] headerRules, boolean fullMatch, Request request) {
         Map<String, Collection<String>> headers = request.headers();
-        for (Entry<String, List<MatchRule>> entry : headerRules.entrySet()) {
-            String key = entry.getKey();
+        for (CompiledArgRule headerRule : headerRules) {
+            String key = headerRule.getKey();
             if (!headers.containsKey(key) || headers.get(key).size() == 0) {
                 if (fullMatch) {
                     return false;
@@ -290,17 +222,13 @@ public class RouterUtil {
                     continue;
                 }
             }
-            List<MatchRule> matchRuleList = entry.getValue();
-            for (MatchRule matchRule : matchRuleList) {
-                ValueMatch valueMatch = matchRule.getValueMatch();
-                List<String> values = valueMatch.getValues();
-                MatchStrategy matchStrategy = valueMatch.getMatchStrategy();
-                String arg = new ArrayList<String>(headers.get(key)).get(0);
-                if (!fullMatch && matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+            String arg = headers.get(key).iterator().next();
+            for (CompiledMatchRule matchRule : headerRule.getMatchRules()) {
+                if (!fullMatch && matchRule.isMatch(arg)) {
                     // 如果不是全匹配，且匹配了一个，那么直接return
                     return true;
                 }
-                if (fullMatch && !matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+                if (fullMatch && !matchRule.isMatch(arg)) {
                     // 如果是全匹配，且有一个不匹配，则继续下一个规则
                     return false;
                 }
@@ -310,7 +238,7 @@ public class RouterUtil {
         return fullMatch;
     }
 
-    private static boolean isMatchParamRule(Map<String, List<MatchRule>> paramRules, boolean fullMatch, Request request) {
+    private static boolean isMatchParamRule(CompiledArgRule[] paramRules, boolean fullMatch, Request request) {
         Map<String, String> paramMap = new HashMap<String, String>();
         try {
             URL url = new URL(request.url());
@@ -326,7 +254,7 @@ public class RouterUtil {
         return matchResultForParamAndCookie(paramRules, fullMatch, paramMap);
     }
 
-    private static boolean isMatchCookieRule(Map<String, List<MatchRule>> cookieRules, boolean fullMatch, Request request) {
+    private static boolean isMatchCookieRule(CompiledArgRule[] cookieRules, boolean fullMatch, Request request) {
         List<String> cookieList = new ArrayList<String>(request.headers().get(COOKIE));
         Map<String, String> cookieMap = new HashMap<String, String>();
         if (transformParam(cookieList, cookieMap)) {
@@ -349,9 +277,9 @@ public class RouterUtil {
         return false;
     }
 
-    private static boolean matchResultForParamAndCookie(Map<String, List<MatchRule>> rules, boolean fullMatch, Map<String, String> paramMap) {
-        for (Entry<String, List<MatchRule>> entry : rules.entrySet()) {
-            String key = entry.getKey();
+    private static boolean matchResultForParamAndCookie(CompiledArgRule[] rules, boolean fullMatch, Map<String, String> paramMap) {
+        for (CompiledArgRule rule : rules) {
+            String key = rule.getKey();
             if (!paramMap.containsKey(key)) {
                 if (fullMatch) {
                     return false;
@@ -359,17 +287,13 @@ public class RouterUtil {
                     continue;
                 }
             }
-            List<MatchRule> matchRuleList = entry.getValue();
-            for (MatchRule matchRule : matchRuleList) {
-                ValueMatch valueMatch = matchRule.getValueMatch();
-                List<String> values = valueMatch.getValues();
-                MatchStrategy matchStrategy = valueMatch.getMatchStrategy();
-                String arg = paramMap.get(key);
-                if (!fullMatch && matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+            String arg = paramMap.get(key);
+            for (CompiledMatchRule matchRule : rule.getMatchRules()) {
+                if (!fullMatch && matchRule.isMatch(arg)) {
                     // 如果不是全匹配，且匹配了一个，那么直接return
                     return true;
                 }
-                if (fullMatch && !matchStrategy.isMatch(values, arg, matchRule.isCaseInsensitive())) {
+                if (fullMatch && !matchRule.isMatch(arg)) {
                     // 如果是全匹配，且有一个不匹配，则继续下一个规则
                     return false;
                 }
@@ -379,28 +303,30 @@ public class RouterUtil {
         return fullMatch;
     }
 
-    public static List<Route> getRoutes(List<Rule> list, Request request) {
+    public static List<Route> getRoutes(List<CompiledRule> list, String path, Request request) {
         // 支持headers，parameters和cookie三种参数匹配方式且允许同时配置，全匹配应满足所有三种匹配方式规则
-        for (Rule rule : list) {
-            Match match = rule.getMatch();
-            boolean fullMatch = match.isFullMatch();
+        for (CompiledRule rule : list) {
+            if (!rule.isMatchPath(path)) {
+                continue;
+            }
+            boolean fullMatch = rule.isFullMatch();
 
             // headers 参数匹配
-            Map<String, List<MatchRule>> headerRules = match.getHeaders();
+            CompiledArgRule[] headerRules = rule.getHeaders();
             boolean isMatchByHeader = true;
             if (headerRules != null) {
                 isMatchByHeader = isMatchHeaderRule(headerRules, fullMatch, request);
             }
 
             // parameters 参数匹配
-            Map<String, List<MatchRule>> paramRules = match.getParameters();
+            CompiledArgRule[] paramRules = rule.getParameters();
             boolean isMatchByParam = true;
             if (paramRules != null) {
                 isMatchByParam = isMatchParamRule(paramRules, fullMatch, request);
             }
 
             // cookie 参数匹配
-            Map<String, List<MatchRule>> cookieRules = match.getCookie();
+            CompiledArgRule[] cookieRules = rule.getCookie();
             boolean isMatchByCookie = true;
             if (cookieRules != null) {
                 isMatchByCookie = isMatchCookieRule(cookieRules, fullMatch, request);
@@ -412,12 +338,12 @@ public class RouterUtil {
 
             // 全匹配需要三种配置都匹配上
             if (fullMatch && isMatchByHeader && isMatchByParam && isMatchByCookie) {
-                return rule.getRoute();
+                return rule.getRoutes();
             }
 
             // 非全匹配只要其中一种规则匹配上即可
             if (!fullMatch && (isMatchByHeader || isMatchByParam || isMatchByCookie)) {
-                return rule.getRoute();
+                return rule.getRoutes();
             }
         }
         return null;
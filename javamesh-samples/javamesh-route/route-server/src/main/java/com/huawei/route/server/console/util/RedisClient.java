@@ -13,12 +13,14 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -27,6 +29,8 @@ import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -259,6 +263,32 @@ public class RedisClient implements ApplicationContextAware {
         stringRedisHash.delete(hashKey, key);
     }
 
+    /**
+     * delete hash fields
+     *
+     * @param hashKey hash主键
+     * @param keys hash字段名集合
+     */
+    public void delHash(String hashKey, Collection<String> keys) {
+        if (!keys.isEmpty()) {
+            stringRedisHash.delete(hashKey, keys.toArray());
+        }
+    }
+
+    /**
+     * 批量获取hash字段的值
+     *
+     * @param hashKey hash主键
+     * @param keys hash字段名集合
+     * @return 与字段名顺序一致的值，字段不存在时对应值为null
+     */
+    public List<String> multiGetHash(String hashKey, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return stringRedisHash.multiGet(hashKey, keys);
+    }
+
     /**
      * set has key
      *
@@ -291,6 +321,35 @@ public class RedisClient implements ApplicationContextAware {
         stringRedisZset.add(key, value, score);
     }
 
+    /**
+     * 批量设置zset
+     *
+     * @param key 键
+     * @param scores 值与分值
+     */
+    public void addzSet(String key, Map<String, Long> scores) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Map.Entry<String, Long> entry : scores.entrySet()) {
+            tuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue().doubleValue()));
+        }
+        stringRedisZset.add(key, tuples);
+    }
+
+    /**
+     * 批量删除zset元素
+     *
+     * @param key 键
+     * @param values 值集合
+     */
+    public void delzSet(String key, Collection<String> values) {
+        if (!values.isEmpty()) {
+            stringRedisZset.remove(key, values.toArray());
+        }
+    }
+
     /**
      * 保存数据为zset，按时间排序
      *
@@ -464,6 +523,19 @@ public class RedisClient implements ApplicationContextAware {
         return stringRedisTemplate.opsForValue().multiGet(keys);
     }
 
+    /**
+     * 执行lua脚本，脚本内的命令原子执行；集群模式下keys需位于同一个slot
+     *
+     * @param script 脚本
+     * @param keys 键
+     * @param args 参数
+     * @param <T> 返回值类型
+     * @return 脚本返回值
+     */
+    public <T> T execute(RedisScript<T> script, List<String> keys, String... args) {
+        return stringRedisTemplate.execute(script, keys, (Object[]) args);
+    }
+
     /**
      * 销毁redis工具类对象
      */
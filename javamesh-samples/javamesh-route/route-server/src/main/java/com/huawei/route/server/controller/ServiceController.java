@@ -1,13 +1,21 @@
 package com.huawei.route.server.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.huawei.route.server.controller.entity.ResponseService;
 import com.huawei.route.server.controller.entity.ServiceRequest;
 import com.huawei.route.server.entity.AbstractInstance;
 import com.huawei.route.server.entity.AbstractService;
 import com.huawei.route.server.repository.ServiceInstanceRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -27,15 +35,31 @@ public class ServiceController<S extends AbstractService<T>, T extends AbstractI
     @Autowired
     private ServiceInstanceRepository<S, T> serviceInstanceRepository;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * 查询服务实例列表
+     * <p>
+     * 响应头携带实例列表内容的ETag，请求头If-None-Match与之相同时返回304，agent继续使用本地缓存
      *
-     * @param request 请求参数
+     * @param request     请求参数
+     * @param ifNoneMatch agent上次获取到的ETag
      * @return 实例列表
+     * @throws JsonProcessingException 实例列表序列化失败
      */
     @PostMapping("/instance/condition/list")
-    public List<ResponseService<T>> queryServiceInstances(@RequestBody ServiceRequest request) {
-        return serviceInstanceRepository.queryServiceInstance(request.getServiceNames(), request.getLdc(), request.getTagName());
+    public ResponseEntity<byte[]> queryServiceInstances(@RequestBody ServiceRequest request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws JsonProcessingException {
+        List<ResponseService<T>> services = serviceInstanceRepository.queryServiceInstance(
+                request.getServiceNames(), request.getLdc(), request.getTagName());
+        byte[] body = objectMapper.writeValueAsBytes(services);
+        String eTag = '"' + DigestUtils.md5DigestAsHex(body) + '"';
+        if (eTag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
 }
@@ -10,7 +10,11 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -129,4 +133,19 @@ public class KafkaConsumerConfig {
     public KafkaConsumer<String, String> consumer() {
         return new KafkaConsumer<>(producerConfigs());
     }
+
+    /**
+     * 批量消费的监听容器工厂，一次poll到的消息作为一个列表交给监听方法
+     *
+     * @return 监听容器工厂
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchListenerContainerFactory() {
+        Map<String, Object> configs = new HashMap<>();
+        producerConfigs().forEach((key, value) -> configs.put((String) key, value));
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configs));
+        factory.setBatchListener(true);
+        return factory;
+    }
 }
@@ -17,22 +17,29 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * 处理从kafka中获取的agent心跳，存储到本地内存，如果超时，则从内存删除
+ * 处理从kafka中获取的agent心跳，存储到redis，如果超时，则从redis删除
+ * <p>
+ * 每个服务使用三个键：实例心跳hash（字段为实例名），最近心跳时间zset（分值为收到心跳的时间戳），
+ * 标签已生效的实例set；另有一个set记录所有服务名。心跳只写入对应实例的字段，健康检查为zset上的范围查询。
+ * 同一服务的三个键以服务名作为hash tag，超时实例的查询与删除在同一个lua脚本中完成
+ * </p>
  *
  * @author zhanghu
  * @since 2021-06-08
@@ -43,14 +50,45 @@ public class AgentHeartbeat {
     private static final String REDIS_KEY_PREFIX = LabelConstant.GENERAL_PAAS + LabelConstant.SEPARATOR;
 
     /**
-     * redis心跳键
+     * redis心跳键前缀
      */
     public static final String HEARTBEAT_HASH_KEY = REDIS_KEY_PREFIX + "heartbeat";
 
-    private static final String EFFECT_FLAG = "effectFlag";
+    private static final String HEARTBEAT_SERVICES_KEY = HEARTBEAT_HASH_KEY + ":services";
+
+    private static final String HEARTBEAT_INSTANCE_KEY_PREFIX = HEARTBEAT_HASH_KEY + ":instance:";
+
+    private static final String HEARTBEAT_LAST_SEEN_KEY_PREFIX = HEARTBEAT_HASH_KEY + ":lastSeen:";
+
+    private static final String HEARTBEAT_EFFECT_KEY_PREFIX = HEARTBEAT_HASH_KEY + ":effect:";
 
     private static final String LAST_HEARTBEAT = "lastHeartbeat";
 
+    /**
+     * 脚本返回值首个元素，表示服务已没有实例
+     */
+    private static final String SERVICE_EMPTY = "1";
+
+    /**
+     * 原子删除超时实例：KEYS为心跳时间zset、实例心跳hash、已生效实例set，ARGV[1]为超时实例的最大分值。
+     * 返回值首个元素为服务是否已没有实例，其后为被删除的实例名
+     */
+    private static final RedisScript<List> REMOVE_UNHEALTHY_SCRIPT = new DefaultRedisScript<>(
+            "local stale = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1])\n"
+            + "for i = 1, #stale, 1000 do\n"
+            + "  local last = math.min(i + 999, #stale)\n"
+            + "  redis.call('ZREM', KEYS[1], unpack(stale, i, last))\n"
+            + "  redis.call('HDEL', KEYS[2], unpack(stale, i, last))\n"
+            + "  redis.call('SREM', KEYS[3], unpack(stale, i, last))\n"
+            + "end\n"
+            + "local empty = '0'\n"
+            + "if redis.call('ZCARD', KEYS[1]) == 0 then\n"
+            + "  redis.call('DEL', KEYS[2], KEYS[3])\n"
+            + "  empty = '1'\n"
+            + "end\n"
+            + "table.insert(stale, 1, empty)\n"
+            + "return stale", List.class);
+
     private static final String HEARTBEAT_REDIS_LOCK_KEY = REDIS_KEY_PREFIX + "heartbeat:lock";
 
     private static final String LABEL_TAKE_EFFECT_REDIS_LOCK_KEY = REDIS_KEY_PREFIX + "label:lock";
@@ -89,35 +127,64 @@ public class AgentHeartbeat {
     private TagInstanceIpMapper tagInstanceIpMapper;
 
     /**
-     * 监听心跳
+     * 监听心跳，一次poll到的心跳按服务合并后，每个服务只写一次实例hash和心跳时间zset
      *
-     * @param msg 心跳信息
+     * @param msgs 心跳信息
      */
-    @KafkaListener(topics = "${heartbeat.topic:topic-heartbeat}")
-    public void getHeartbeat(String msg) {
-        JSONObject heartbeatMsg = JSON.parseObject(msg);
-        if (!isLabelHeartbeat(heartbeatMsg)) {
-            return;
-        }
-        String instanceName = heartbeatMsg.getString(LabelConstant.INSTANCE_NAME_MARKING);
-        String serviceName = heartbeatMsg.getString(LabelConstant.SERVICE_NAME_MARKING);
-        if (StringUtils.isNotEmpty(instanceName) && StringUtils.isNotEmpty(serviceName)) {
-            JSONObject heartbeat = getServiceHeartbeat(serviceName, false);
-            if (heartbeat.containsKey(instanceName)) {
-                // 之前的心跳信息
-                JSONObject instanceMsg = JSONObject.parseObject(heartbeat.getString(instanceName));
-
-                // 标签是否生效的标记，跟之前的心跳信息保持一致就行，不需要更新
-                heartbeatMsg.put(EFFECT_FLAG, instanceMsg.getBooleanValue(EFFECT_FLAG));
-            } else {
-                // 标签是否生效的标记，默认不生效
-                heartbeatMsg.put(EFFECT_FLAG, false);
+    @KafkaListener(topics = "${heartbeat.topic:topic-heartbeat}", containerFactory = "batchListenerContainerFactory")
+    public void getHeartbeat(List<String> msgs) {
+        // 这里考虑到不同服务器的时间不一定一致，所以改收到消息的时间戳
+        long now = System.currentTimeMillis();
+        Map<String, Map<String, String>> instanceMsgs = new HashMap<>();
+        for (String msg : msgs) {
+            JSONObject heartbeatMsg;
+            try {
+                heartbeatMsg = JSON.parseObject(msg);
+            } catch (JSONException e) {
+                LOGGER.error("HeartbeatMsg is invalid.", e);
+                continue;
             }
-            // 这里考虑到不同服务器的时间不一定一致，所以改收到消息的时间戳
-            heartbeatMsg.put(LAST_HEARTBEAT, System.currentTimeMillis());
-            heartbeat.put(instanceName, heartbeatMsg.toJSONString());
-            setHeartbeat(serviceName, heartbeat);
+            if (!isLabelHeartbeat(heartbeatMsg)) {
+                continue;
+            }
+            String instanceName = heartbeatMsg.getString(LabelConstant.INSTANCE_NAME_MARKING);
+            String serviceName = heartbeatMsg.getString(LabelConstant.SERVICE_NAME_MARKING);
+            if (StringUtils.isNotEmpty(instanceName) && StringUtils.isNotEmpty(serviceName)) {
+                heartbeatMsg.put(LAST_HEARTBEAT, now);
+                instanceMsgs.computeIfAbsent(serviceName, key -> new HashMap<>())
+                        .put(instanceName, heartbeatMsg.toJSONString());
+            }
+        }
+        instanceMsgs.forEach((serviceName, msgMap) -> saveHeartbeat(serviceName, msgMap, now));
+    }
+
+    private void saveHeartbeat(String serviceName, Map<String, String> msgMap, long now) {
+        Map<String, Long> lastSeen = new HashMap<>();
+        for (String instanceName : msgMap.keySet()) {
+            lastSeen.put(instanceName, now);
         }
+        // 先写心跳时间，保证超时校验不会删除写入中的实例，服务名最后写入，供删除服务时重新检查
+        redisUtil.addzSet(getLastSeenKey(serviceName), lastSeen);
+        redisUtil.setHashMap(getInstanceKey(serviceName), msgMap);
+        redisUtil.setSet(HEARTBEAT_SERVICES_KEY, serviceName);
+    }
+
+    /**
+     * 服务的心跳时间zset键，服务名作为hash tag，集群模式下同一服务的键位于同一个slot
+     *
+     * @param serviceName 服务名
+     * @return 键
+     */
+    static String getLastSeenKey(String serviceName) {
+        return HEARTBEAT_LAST_SEEN_KEY_PREFIX + '{' + serviceName + '}';
+    }
+
+    private static String getInstanceKey(String serviceName) {
+        return HEARTBEAT_INSTANCE_KEY_PREFIX + '{' + serviceName + '}';
+    }
+
+    private static String getEffectKey(String serviceName) {
+        return HEARTBEAT_EFFECT_KEY_PREFIX + '{' + serviceName + '}';
     }
 
     /**
@@ -153,20 +220,27 @@ public class AgentHeartbeat {
         return labelValidVo;
     }
 
-    private boolean isHealthy(String heartbeatMsg) {
-        try {
-            return isHealthy(JSONObject.parseObject(heartbeatMsg));
-        } catch (JSONException e) {
-            LOGGER.error("HeartbeatMsg is invalid.", e);
-            // 无效的心跳信息，当成不健康的实例
-            return false;
-        }
+    /**
+     * 健康实例的最早心跳时间，早于该时间的实例为不健康实例
+     *
+     * @return 时间戳
+     */
+    private long getHealthyDeadline() {
+        return System.currentTimeMillis() - AgentHeartbeatConfig.getUnhealthyMachineMillis();
     }
 
-    private boolean isHealthy(JSONObject heartbeatMsg) {
-        long time = System.currentTimeMillis() - heartbeatMsg.getLongValue(LAST_HEARTBEAT);
-        LOGGER.debug("time = {}", time);
-        return time <= AgentHeartbeatConfig.getUnhealthyMachineMillis();
+    /**
+     * 获取服务的实例名
+     *
+     * @param serviceName 服务名
+     * @param onlyHealthy 是否只需要健康的实例
+     * @return 实例名
+     */
+    private Set<String> getInstanceNames(String serviceName, boolean onlyHealthy) {
+        String key = getLastSeenKey(serviceName);
+        Set<String> instanceNames = onlyHealthy ? redisUtil.getZSet(key, getHealthyDeadline(), Long.MAX_VALUE)
+                : redisUtil.getZSet(key, 0L, Long.MAX_VALUE);
+        return instanceNames == null ? Collections.emptySet() : instanceNames;
     }
 
     /**
@@ -175,10 +249,14 @@ public class AgentHeartbeat {
      * @return 服务和其实例的集合
      */
     public Map<String, List<String>> getAllServicesMappedInstances() {
-        return getAllServicesHeartbeat().entrySet().stream().collect(Collectors.toMap(Entry::getKey, entry -> {
-            JSONObject heartbeat = JSONObject.parseObject(entry.getValue());
-            return new ArrayList<>(heartbeat.keySet());
-        }));
+        Map<String, List<String>> result = new HashMap<>();
+        for (String serviceName : redisUtil.getSet(HEARTBEAT_SERVICES_KEY)) {
+            Set<String> instanceNames = getInstanceNames(serviceName, true);
+            if (!instanceNames.isEmpty()) {
+                result.put(serviceName, new ArrayList<>(instanceNames));
+            }
+        }
+        return result;
     }
 
     /**
@@ -188,11 +266,7 @@ public class AgentHeartbeat {
      * @return 实例名
      */
     public List<String> getServiceMappedInstances(String serviceName) {
-        JSONObject heartbeat = getServiceHeartbeat(serviceName);
-        if (CollectionUtils.isEmpty(heartbeat)) {
-            return Collections.emptyList();
-        }
-        return new ArrayList<>(heartbeat.keySet());
+        return new ArrayList<>(getInstanceNames(serviceName, true));
     }
 
     /**
@@ -213,18 +287,21 @@ public class AgentHeartbeat {
      * @return 获取指定服务以及实例心跳
      */
     public JSONObject getServiceHeartbeat(String serviceName, boolean onlyHealthy) {
-        String msg = redisUtil.getHash(HEARTBEAT_HASH_KEY, serviceName);
-        if (StringUtils.isBlank(msg)) {
-            return new JSONObject();
-        }
-        JSONObject heartbeat = JSONObject.parseObject(msg);
+        String key = getInstanceKey(serviceName);
         if (!onlyHealthy) {
+            JSONObject heartbeat = new JSONObject();
+            heartbeat.putAll(redisUtil.getHashMap(key));
             return heartbeat;
         }
-        // 过滤掉不健康的服务
-        return new JSONObject(heartbeat.entrySet().stream()
-                .filter(entry -> isHealthy((String) entry.getValue()))
-                .collect(Collectors.toMap(Entry::getKey, Entry::getValue)));
+        List<String> instanceNames = new ArrayList<>(getInstanceNames(serviceName, true));
+        List<String> msgs = redisUtil.multiGetHash(key, instanceNames);
+        JSONObject heartbeat = new JSONObject();
+        for (int i = 0; i < msgs.size(); i++) {
+            if (StringUtils.isNotBlank(msgs.get(i))) {
+                heartbeat.put(instanceNames.get(i), msgs.get(i));
+            }
+        }
+        return heartbeat;
     }
 
     /**
@@ -243,36 +320,11 @@ public class AgentHeartbeat {
      * @return 获取所有服务以及实例心跳
      */
     public Map<String, String> getAllServicesHeartbeat(boolean onlyHealthy) {
-        Map<String, String> heartbeatMap = redisUtil.getHashMap(HEARTBEAT_HASH_KEY);
-        if (CollectionUtils.isEmpty(heartbeatMap)) {
-            return Collections.emptyMap();
-        }
-        if (!onlyHealthy) {
-            return heartbeatMap;
-        }
-        Iterator<Entry<String, String>> heartbeatMapIterator = heartbeatMap.entrySet().iterator();
-        while (heartbeatMapIterator.hasNext()) {
-            Entry<String, String> heartbeatMapNext = heartbeatMapIterator.next();
-            JSONObject heartbeat = JSONObject.parseObject(heartbeatMapNext.getValue());
-            if (CollectionUtils.isEmpty(heartbeat)) {
-                // 没有存在心跳的实例，过滤掉
-                heartbeatMapIterator.remove();
-                continue;
-            }
-            Iterator<Entry<String, Object>> iterator = heartbeat.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<String, Object> next = iterator.next();
-                if (isHealthy((String) next.getValue())) {
-                    continue;
-                }
-                // 过滤掉不健康的服务
-                iterator.remove();
-            }
-            if (CollectionUtils.isEmpty(heartbeat)) {
-                // 没有存在心跳的实例，过滤掉
-                heartbeatMapIterator.remove();
-            } else {
-                heartbeatMap.put(heartbeatMapNext.getKey(), heartbeat.toJSONString());
+        Map<String, String> heartbeatMap = new HashMap<>();
+        for (String serviceName : redisUtil.getSet(HEARTBEAT_SERVICES_KEY)) {
+            JSONObject heartbeat = getServiceHeartbeat(serviceName, onlyHealthy);
+            if (!CollectionUtils.isEmpty(heartbeat)) {
+                heartbeatMap.put(serviceName, heartbeat.toJSONString());
             }
         }
         return heartbeatMap;
@@ -286,50 +338,42 @@ public class AgentHeartbeat {
         if (!redisUtil.setIfAbsent(LABEL_TAKE_EFFECT_REDIS_LOCK_KEY, "", LABEL_TAKE_EFFECT_REDIS_LOCK_TIMEOUT)) {
             return;
         }
-        getAllServicesHeartbeat().entrySet().parallelStream().forEach(this::checkLabel);
+        redisUtil.getSet(HEARTBEAT_SERVICES_KEY).parallelStream().forEach(this::checkLabel);
         redisUtil.delKey(LABEL_TAKE_EFFECT_REDIS_LOCK_KEY);
     }
 
-    private void checkLabel(Entry<String, String> entry) {
-        String serviceName = entry.getKey();
+    private void checkLabel(String serviceName) {
         try {
-            JSONObject heartbeat = JSONObject.parseObject(entry.getValue());
+            JSONObject heartbeat = getServiceHeartbeat(serviceName, true);
             if (CollectionUtils.isEmpty(heartbeat)) {
                 return;
             }
-            // 是否需要修改的标记
-            AtomicBoolean modify = new AtomicBoolean();
+            Set<String> effectInstances = redisUtil.getSet(getEffectKey(serviceName));
             heartbeat.forEach((instanceName, msg) -> {
                 JSONObject heartbeatMsg;
                 try {
                     heartbeatMsg = JSONObject.parseObject((String) msg);
-                } catch (Exception e) {
+                } catch (JSONException e) {
                     LOGGER.error("HeartbeatMsg is invalid.", e);
                     return;
                 }
                 // 更新映射表
                 tagInstanceIpMapper.updateMapper(instanceName, heartbeatMsg);
-                if (!heartbeatMsg.getBooleanValue(EFFECT_FLAG) && isHealthy(heartbeatMsg)) {
-                    List<JSONObject> serviceLabels = labelService.instanceStartLabelValid(serviceName);
-                    if (!CollectionUtils.isEmpty(serviceLabels)) {
-                        boolean result = labelService.instanceStartValid(serviceLabels.stream().map(label ->
-                                addData(label, heartbeatMsg)).collect(Collectors.toList()));
-                        if (!result) {
-                            return;
-                        }
-                    }
-                    // 没有标签也直接设置为生效成功，服务启动之后的标签会通过标签的新增或生效进行推送，不需要经过这里推送
-                    heartbeatMsg.put(EFFECT_FLAG, true);
-                    heartbeat.put(instanceName, heartbeatMsg.toJSONString());
-                    LOGGER.info("init instance is started. instanceName = {}", instanceName);
-                    if (!modify.get()) {
-                        modify.set(true);
+                if (effectInstances.contains(instanceName)) {
+                    return;
+                }
+                List<JSONObject> serviceLabels = labelService.instanceStartLabelValid(serviceName);
+                if (!CollectionUtils.isEmpty(serviceLabels)) {
+                    boolean result = labelService.instanceStartValid(serviceLabels.stream().map(label ->
+                            addData(label, heartbeatMsg)).collect(Collectors.toList()));
+                    if (!result) {
+                        return;
                     }
                 }
+                // 没有标签也直接设置为生效成功，服务启动之后的标签会通过标签的新增或生效进行推送，不需要经过这里推送
+                redisUtil.setSet(getEffectKey(serviceName), instanceName);
+                LOGGER.info("init instance is started. instanceName = {}", instanceName);
             });
-            if (modify.get()) {
-                setHeartbeat(serviceName, heartbeat);
-            }
         } catch (Exception e) {
             LOGGER.error("Application startup, but label can't take effect.", e);
         }
@@ -343,49 +387,32 @@ public class AgentHeartbeat {
         if (!redisUtil.setIfAbsent(HEARTBEAT_REDIS_LOCK_KEY, "", HEARTBEAT_REDIS_LOCK_TIMEOUT)) {
             return;
         }
-        getAllServicesHeartbeat(false).entrySet().parallelStream().forEach(this::checkHeartbeat);
+        redisUtil.getSet(HEARTBEAT_SERVICES_KEY).parallelStream().forEach(this::checkHeartbeat);
         redisUtil.delKey(HEARTBEAT_REDIS_LOCK_KEY);
     }
 
-    private void checkHeartbeat(Entry<String, String> entry) {
-        String serviceName = entry.getKey();
+    private void checkHeartbeat(String serviceName) {
         try {
-            JSONObject heartbeat = JSONObject.parseObject(entry.getValue());
-            if (CollectionUtils.isEmpty(heartbeat)) {
+            String lastSeenKey = getLastSeenKey(serviceName);
+            List<String> result = redisUtil.execute(REMOVE_UNHEALTHY_SCRIPT,
+                    Arrays.asList(lastSeenKey, getInstanceKey(serviceName), getEffectKey(serviceName)),
+                    String.valueOf(getHealthyDeadline() - 1));
+            if (CollectionUtils.isEmpty(result)) {
                 return;
             }
-            // 是否需要修改的标记
-            boolean modify = false;
-            Iterator<Entry<String, Object>> iterator = heartbeat.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<String, Object> next = iterator.next();
-                if (isHealthy((String) next.getValue())) {
-                    continue;
-                }
-                String instanceName = next.getKey();
-                iterator.remove();
+            for (String instanceName : result.subList(1, result.size())) {
                 labelService.deleteTempLabel(serviceName, instanceName);
-                if (!modify) {
-                    modify = true;
-                }
                 LOGGER.info("Instance [{}] stopped.", instanceName);
             }
-            if (modify) {
-                setHeartbeat(serviceName, heartbeat);
+            if (SERVICE_EMPTY.equals(result.get(0))) {
+                // 没有实例存在心跳，则删除掉服务；删除期间收到的心跳已先写入zset，重新检查后补回服务名
+                redisUtil.delSet(HEARTBEAT_SERVICES_KEY, serviceName);
+                if (redisUtil.getZcard(lastSeenKey) > 0) {
+                    redisUtil.setSet(HEARTBEAT_SERVICES_KEY, serviceName);
+                }
             }
-        } catch (JSONException e) {
+        } catch (Exception e) {
             LOGGER.error("validate heartbeat failed.", e);
-            // 整个服务的心跳信息都是无效的，则删除缓存
-            setHeartbeat(serviceName, null);
-        }
-    }
-
-    private void setHeartbeat(String serviceName, JSONObject heartbeat) {
-        if (CollectionUtils.isEmpty(heartbeat)) {
-            // 没有实例存在心跳，则删除掉redis的值
-            redisUtil.delHash(HEARTBEAT_HASH_KEY, serviceName);
-        } else {
-            redisUtil.setHash(HEARTBEAT_HASH_KEY, serviceName, heartbeat.toJSONString());
         }
     }
 }
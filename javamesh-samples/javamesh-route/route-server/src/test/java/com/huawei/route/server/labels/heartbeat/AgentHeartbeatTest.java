@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2022. All rights reserved.
+ */
+
+package com.huawei.route.server.labels.heartbeat;
+
+import com.alibaba.fastjson.JSONObject;
+import com.huawei.route.server.console.util.RedisClient;
+import com.huawei.route.server.labels.config.AgentHeartbeatConfig;
+import com.huawei.route.server.labels.constant.LabelConstant;
+import com.huawei.route.server.labels.label.service.LabelService;
+import com.huawei.route.server.rules.TagInstanceIpMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 心跳存储测试，使用内嵌redis
+ *
+ * @author zhanghu
+ * @since 2021-06-08
+ */
+public class AgentHeartbeatTest {
+    private static final String SERVICE_A = "serviceA";
+
+    private static final String SERVICE_B = "serviceB";
+
+    private RedisServer redisServer;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisClient redisClient;
+
+    private LabelService labelService;
+
+    private AgentHeartbeat agentHeartbeat;
+
+    @Before
+    public void setUp() throws Exception {
+        int port = getFreePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        stringRedisTemplate.afterPropertiesSet();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        redisClient = new RedisClient();
+        redisClient.setStringRedisTemplate(stringRedisTemplate);
+        setField(redisClient, "stringRedisValue", stringRedisTemplate.opsForValue());
+        setField(redisClient, "stringRedisHash", stringRedisTemplate.opsForHash());
+        setField(redisClient, "stringRedisSet", stringRedisTemplate.opsForSet());
+        setField(redisClient, "stringRedisZset", stringRedisTemplate.opsForZSet());
+        setField(redisClient, "redisTemplate", redisTemplate);
+
+        labelService = Mockito.mock(LabelService.class);
+        Mockito.when(labelService.instanceStartLabelValid(Mockito.anyString())).thenReturn(Collections.emptyList());
+        agentHeartbeat = new AgentHeartbeat();
+        setField(agentHeartbeat, "labelService", labelService);
+        setField(agentHeartbeat, "redisUtil", redisClient);
+        setField(agentHeartbeat, "tagInstanceIpMapper", Mockito.mock(TagInstanceIpMapper.class));
+        new AgentHeartbeatConfig().setHelthyTimeout(AgentHeartbeatConfig.DEFAULT_MACHINE_HEALTHY_TIMEOUT_MS);
+    }
+
+    @After
+    public void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    /**
+     * 一批心跳按服务和实例写入，非标签心跳和非法心跳被忽略
+     */
+    @Test
+    public void testGetHeartbeat() {
+        agentHeartbeat.getHeartbeat(Arrays.asList(heartbeat(SERVICE_A, "a1", 8001), heartbeat(SERVICE_A, "a2", 8002),
+                heartbeat(SERVICE_B, "b1", 8003), "{\"name\":\"OTHER\"}", "invalid"));
+
+        Map<String, List<String>> instances = agentHeartbeat.getAllServicesMappedInstances();
+        Assert.assertEquals(2, instances.size());
+        Assert.assertEquals(2, instances.get(SERVICE_A).size());
+        Assert.assertEquals(Collections.singletonList("b1"), instances.get(SERVICE_B));
+
+        JSONObject heartbeat = agentHeartbeat.getServiceHeartbeat(SERVICE_A);
+        Assert.assertEquals(8002,
+                JSONObject.parseObject(heartbeat.getString("a2")).getIntValue(LabelConstant.NETTY_PORT));
+
+        // 同一实例再次心跳只覆盖自身
+        agentHeartbeat.getHeartbeat(Collections.singletonList(heartbeat(SERVICE_A, "a2", 9002)));
+        heartbeat = agentHeartbeat.getServiceHeartbeat(SERVICE_A);
+        Assert.assertEquals(2, heartbeat.size());
+        Assert.assertEquals(9002,
+                JSONObject.parseObject(heartbeat.getString("a2")).getIntValue(LabelConstant.NETTY_PORT));
+    }
+
+    /**
+     * 超时的实例不再返回，并在心跳校验时删除，服务没有实例时一并删除
+     */
+    @Test
+    public void testValidateHeartbeat() {
+        agentHeartbeat.getHeartbeat(Arrays.asList(heartbeat(SERVICE_A, "a1", 8001), heartbeat(SERVICE_A, "a2", 8002),
+                heartbeat(SERVICE_B, "b1", 8003)));
+        long expired = System.currentTimeMillis() - AgentHeartbeatConfig.getUnhealthyMachineMillis() - 1000L;
+        redisClient.addzSet(AgentHeartbeat.getLastSeenKey(SERVICE_A), "a1", expired);
+        redisClient.addzSet(AgentHeartbeat.getLastSeenKey(SERVICE_B), "b1", expired);
+
+        Assert.assertEquals(Collections.singletonList("a2"), agentHeartbeat.getServiceMappedInstances(SERVICE_A));
+        Assert.assertEquals(2, agentHeartbeat.getServiceHeartbeat(SERVICE_A, false).size());
+
+        agentHeartbeat.validateHeartbeatTask();
+        Mockito.verify(labelService).deleteTempLabel(SERVICE_A, "a1");
+        Mockito.verify(labelService).deleteTempLabel(SERVICE_B, "b1");
+        Assert.assertEquals(1, agentHeartbeat.getServiceHeartbeat(SERVICE_A, false).size());
+        Assert.assertEquals(Collections.singleton(SERVICE_A), agentHeartbeat.getAllServicesHeartbeat(false).keySet());
+        Assert.assertFalse(redisClient.hasKey(AgentHeartbeat.getLastSeenKey(SERVICE_B)));
+    }
+
+    /**
+     * 超时后、校验前重新上报心跳的实例不会被删除
+     */
+    @Test
+    public void testValidateHeartbeatKeepsRenewedInstance() {
+        agentHeartbeat.getHeartbeat(Collections.singletonList(heartbeat(SERVICE_A, "a1", 8001)));
+        long expired = System.currentTimeMillis() - AgentHeartbeatConfig.getUnhealthyMachineMillis() - 1000L;
+        redisClient.addzSet(AgentHeartbeat.getLastSeenKey(SERVICE_A), "a1", expired);
+        agentHeartbeat.getHeartbeat(Collections.singletonList(heartbeat(SERVICE_A, "a1", 8001)));
+
+        agentHeartbeat.validateHeartbeatTask();
+        Mockito.verify(labelService, Mockito.never()).deleteTempLabel(SERVICE_A, "a1");
+        Assert.assertEquals(Collections.singletonList("a1"), agentHeartbeat.getServiceMappedInstances(SERVICE_A));
+        Assert.assertEquals(Collections.singleton(SERVICE_A), agentHeartbeat.getAllServicesHeartbeat().keySet());
+    }
+
+    /**
+     * 实例启动后标签只生效一次
+     */
+    @Test
+    public void testLabelTakeEffect() {
+        agentHeartbeat.getHeartbeat(Arrays.asList(heartbeat(SERVICE_A, "a1", 8001), heartbeat(SERVICE_A, "a2", 8002)));
+        agentHeartbeat.validateInstanceUpForLabelTakeEffect();
+        agentHeartbeat.getHeartbeat(Collections.singletonList(heartbeat(SERVICE_A, "a1", 8001)));
+        agentHeartbeat.validateInstanceUpForLabelTakeEffect();
+        Mockito.verify(labelService, Mockito.times(2)).instanceStartLabelValid(SERVICE_A);
+    }
+
+    private static String heartbeat(String serviceName, String instanceName, int port) {
+        JSONObject heartbeat = new JSONObject();
+        heartbeat.put("name", LabelConstant.HEARTBEAT_NAME);
+        heartbeat.put(LabelConstant.SERVICE_NAME_MARKING, serviceName);
+        heartbeat.put(LabelConstant.INSTANCE_NAME_MARKING, instanceName);
+        heartbeat.put(LabelConstant.NETTY_IP, "127.0.0.1");
+        heartbeat.put(LabelConstant.NETTY_PORT, port);
+        return heartbeat.toJSONString();
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void setField(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
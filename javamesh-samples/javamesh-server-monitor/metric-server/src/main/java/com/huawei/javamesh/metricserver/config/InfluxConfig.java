@@ -19,4 +19,9 @@ public class InfluxConfig {
     private String bucket;
     private String org;
     private String url;
+
+    /**
+     * 批量写入时单次请求的最大数据点个数
+     */
+    private int batchSize = 5000;
 }
@@ -5,9 +5,12 @@
 package com.huawei.javamesh.metricserver.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 
 /**
  * Kafka配置
@@ -15,6 +18,24 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaConfig {
 
+    /**
+     * 批量监听的容器工厂，一次拉取的所有消息（最多max-poll-records条）作为一个列表交给监听方法
+     *
+     * @param configurer spring boot默认的容器工厂配置
+     * @param consumerFactory 消费者工厂
+     * @return 容器工厂
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchListenerContainerFactory(
+        ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+        ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
     @Bean
     public NewTopic topicOfIbmJvmMonitor() {
         return TopicBuilder.name("topic-ibm-jvm-monitor")
@@ -7,12 +7,14 @@ package com.huawei.javamesh.metricserver.dao.influxdb;
 import com.huawei.javamesh.metricserver.config.InfluxConfig;
 import com.huawei.javamesh.metricserver.dao.influxdb.common.FluxBuilder;
 import com.huawei.javamesh.metricserver.dao.influxdb.common.FluxTableResolver;
+import com.huawei.javamesh.metricserver.dao.influxdb.common.LineProtocolWriter;
 import com.huawei.javamesh.metricserver.dao.influxdb.request.InfluxInsertRequest;
 import com.huawei.javamesh.metricserver.dao.influxdb.request.InfluxQueryRequest;
 import com.influxdb.client.DeleteApi;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.QueryApi;
 import com.influxdb.client.WriteApi;
+import com.influxdb.client.WriteApiBlocking;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
 import com.influxdb.query.FluxRecord;
@@ -28,13 +30,15 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Influxdb持久层
  */
 @Repository
-public class InfluxDao {
+public class InfluxDao implements LineProtocolWriter {
 
     private final String bucket;
 
@@ -42,6 +46,8 @@ public class InfluxDao {
 
     private final WriteApi writeApi;
 
+    private final WriteApiBlocking writeApiBlocking;
+
     private final QueryApi queryApi;
 
     private final DeleteApi deleteApi;
@@ -53,6 +59,7 @@ public class InfluxDao {
         this.bucket = config.getBucket();
         this.org = config.getOrg();
         this.writeApi = influxDBClient.makeWriteApi();
+        this.writeApiBlocking = influxDBClient.getWriteApiBlocking();
         this.queryApi = influxDBClient.getQueryApi();
         this.deleteApi = influxDBClient.getDeleteApi();
     }
@@ -85,6 +92,34 @@ public class InfluxDao {
         writeApi.writePoint(point);
     }
 
+    /**
+     * 同步写入line protocol数据
+     *
+     * @param records 以换行符分隔的多行line protocol数据，时间精度为毫秒
+     */
+    @Override
+    public void write(String records) {
+        writeApiBlocking.writeRecord(bucket, org, WritePrecision.MS, records);
+    }
+
+    /**
+     * 流式查询数据，同一序列同一时间的各个field合并为一条记录，field名即列名
+     *
+     * @param request {@link InfluxQueryRequest}实体
+     * @param consumer 记录消费者，按结果顺序逐条调用
+     */
+    public void queryPivoted(InfluxQueryRequest request, Consumer<FluxRecord> consumer) {
+        final String flux = FluxBuilder.from(bucket)
+            .measurement(request.getMeasurement())
+            .range(request.getStart(), request.getEnd())
+            .pivot()
+            .build();
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        queryApi.query(flux, (cancellable, record) -> consumer.accept(record),
+            completion::completeExceptionally, () -> completion.complete(null));
+        completion.join();
+    }
+
     /**
      * 查询数据，使用默认的结果解析器
      *
@@ -18,6 +18,7 @@ public class FluxBuilder {
     private String start;
     private String end;
     private String measurement;
+    private boolean pivot;
 
     private FluxBuilder(String bucket) {
         this.bucket = bucket;
@@ -44,6 +45,16 @@ public class FluxBuilder {
         return this;
     }
 
+    /**
+     * 按时间把同一序列的各个field合并到一行，每个field成为一列
+     *
+     * @return this
+     */
+    public FluxBuilder pivot() {
+        this.pivot = true;
+        return this;
+    }
+
     public String build() {
         final StringBuilder fluxBuilder = new StringBuilder("from(bucket:\"" + bucket + "\")");
         if (StringUtils.hasText(start)) {
@@ -60,6 +71,10 @@ public class FluxBuilder {
                 .append(measurement)
                 .append("\")");
         }
+        if (pivot) {
+            fluxBuilder.append(PIPE_FORWARD_OPERATOR)
+                .append("pivot(rowKey: [\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")");
+        }
         return fluxBuilder.toString();
     }
 }
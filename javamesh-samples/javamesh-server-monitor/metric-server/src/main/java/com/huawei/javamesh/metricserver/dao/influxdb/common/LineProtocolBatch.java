@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.metricserver.dao.influxdb.common;
+
+import org.springframework.util.Assert;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * <a href=https://docs.influxdata.com/influxdb/v2.0/reference/syntax/line-protocol/>Line protocol<a/>批量构造器
+ *
+ * <p>数据点直接编码到同一个缓冲区中，不创建中间对象。每个数据点按
+ * {@link #measurement(String)}、{@link #tag(String, String)}、{@link #field(String, long)}、
+ * {@link #time(long)}的顺序写入，累计行数达到上限时交给{@link LineProtocolWriter}写出，
+ * 最后需要调用{@link #flush()}写出剩余的数据。</p>
+ *
+ * <p>转义规则和数值格式与{@link com.influxdb.client.write.Point#toLineProtocol()}一致，浮点数不使用科学计数法。</p>
+ *
+ * <p>非线程安全。</p>
+ */
+public class LineProtocolBatch {
+
+    private static final int ESTIMATED_LINE_LENGTH = 160;
+
+    private static final int MAX_FRACTION_DIGITS = 340;
+
+    private static final ThreadLocal<NumberFormat> NUMBER_FORMATTER = ThreadLocal.withInitial(() -> {
+        final NumberFormat format = NumberFormat.getInstance(Locale.ENGLISH);
+        format.setMaximumFractionDigits(MAX_FRACTION_DIGITS);
+        format.setMinimumFractionDigits(1);
+        format.setGroupingUsed(false);
+        return format;
+    });
+
+    private final LineProtocolWriter writer;
+
+    private final int maxLines;
+
+    private final StringBuilder buffer;
+
+    private int lines;
+
+    private int lineStart;
+
+    private int fields;
+
+    public LineProtocolBatch(LineProtocolWriter writer, int maxLines) {
+        Assert.notNull(writer, "Writer must not be null.");
+        Assert.isTrue(maxLines > 0, "Max lines must be positive.");
+        this.writer = writer;
+        this.maxLines = maxLines;
+        this.buffer = new StringBuilder(Math.min(maxLines, 1024) * ESTIMATED_LINE_LENGTH);
+    }
+
+    /**
+     * 开始一个新的数据点
+     *
+     * @param measurement 指标名
+     * @return this
+     */
+    public LineProtocolBatch measurement(String measurement) {
+        Assert.hasText(measurement, "Measurement must not be blank.");
+        lineStart = buffer.length();
+        fields = 0;
+        escape(measurement, false);
+        return this;
+    }
+
+    /**
+     * 添加标签，必须在添加field之前调用，值为空的标签会被忽略
+     *
+     * @param key 标签名
+     * @param value 标签值
+     * @return this
+     */
+    public LineProtocolBatch tag(String key, String value) {
+        Assert.state(fields == 0, "Tags must be added before fields.");
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        buffer.append(',');
+        escape(key, true);
+        buffer.append('=');
+        escape(value, true);
+        return this;
+    }
+
+    /**
+     * 添加整数field
+     *
+     * @param key field名
+     * @param value 数值
+     * @return this
+     */
+    public LineProtocolBatch field(String key, long value) {
+        appendFieldKey(key);
+        buffer.append(value).append('i');
+        return this;
+    }
+
+    /**
+     * 添加浮点数field，NaN和无穷大会被忽略
+     *
+     * @param key field名
+     * @param value 数值
+     * @return this
+     */
+    public LineProtocolBatch field(String key, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return this;
+        }
+        appendFieldKey(key);
+        buffer.append(NUMBER_FORMATTER.get().format(value));
+        return this;
+    }
+
+    /**
+     * 以毫秒时间戳结束当前数据点，没有任何field的数据点会被丢弃
+     *
+     * @param epochMillis 毫秒时间戳
+     */
+    public void time(long epochMillis) {
+        if (fields == 0) {
+            buffer.setLength(lineStart);
+            return;
+        }
+        buffer.append(' ').append(epochMillis).append('\n');
+        fields = 0;
+        if (++lines >= maxLines) {
+            flush();
+        }
+    }
+
+    /**
+     * 写出已完成的数据点
+     */
+    public void flush() {
+        if (lines == 0) {
+            return;
+        }
+        final String records = buffer.toString();
+        buffer.setLength(0);
+        lines = 0;
+        writer.write(records);
+    }
+
+    private void appendFieldKey(String key) {
+        buffer.append(fields++ == 0 ? ' ' : ',');
+        escape(key, true);
+        buffer.append('=');
+    }
+
+    private void escape(String text, boolean escapeEquals) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case ',':
+                case ' ':
+                    buffer.append('\\').append(c);
+                    break;
+                case '=':
+                    if (escapeEquals) {
+                        buffer.append('\\');
+                    }
+                    buffer.append(c);
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.metricserver.dao.influxdb.common;
+
+/**
+ * <a href=https://docs.influxdata.com/influxdb/v2.0/reference/syntax/line-protocol/>Line protocol<a/>数据写入器
+ */
+@FunctionalInterface
+public interface LineProtocolWriter {
+
+    /**
+     * 写入一批数据
+     *
+     * @param records 以换行符分隔的多行line protocol数据，时间精度为毫秒
+     */
+    void write(String records);
+}
@@ -7,12 +7,14 @@ package com.huawei.javamesh.metricserver.service;
 import com.huawei.javamesh.metricserver.dao.influxdb.InfluxDao;
 import com.huawei.javamesh.metricserver.dao.influxdb.request.InfluxQueryRequest;
 import com.influxdb.annotations.Measurement;
+import com.influxdb.query.FluxRecord;
 import org.springframework.beans.BeanUtils;
 import org.springframework.util.Assert;
 
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -46,6 +48,33 @@ public abstract class InfluxService {
         return influxDao.query(request, metricClass);
     }
 
+    /**
+     * 流式查询指标，同一序列同一时间的各个field合并为一条记录
+     *
+     * @param measurement 指标名
+     * @param start 开始时间
+     * @param end 结束时间
+     * @param consumer 记录消费者
+     */
+    protected void queryPivoted(String measurement, String start, String end, Consumer<FluxRecord> consumer) {
+        final InfluxQueryRequest request = InfluxQueryRequest.builder()
+            .measurement(measurement)
+            .start(start)
+            .end(end)
+            .build();
+        influxDao.queryPivoted(request, consumer);
+    }
+
+    protected static String stringValue(FluxRecord record, String column) {
+        final Object value = record.getValueByKey(column);
+        return value == null ? null : value.toString();
+    }
+
+    protected static Long longValue(FluxRecord record, String column) {
+        final Object value = record.getValueByKey(column);
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
     protected InfluxDao getInfluxDao() {
         return influxDao;
     }
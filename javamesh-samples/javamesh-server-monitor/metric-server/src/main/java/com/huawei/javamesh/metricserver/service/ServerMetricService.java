@@ -4,88 +4,155 @@
 
 package com.huawei.javamesh.metricserver.service;
 
+import com.huawei.javamesh.metricserver.config.InfluxConfig;
 import com.huawei.javamesh.metricserver.dao.influxdb.InfluxDao;
-import com.huawei.javamesh.metricserver.dao.influxdb.common.FluxTableResolver;
-import com.huawei.javamesh.metricserver.dao.influxdb.entity.servermonitor.CpuInfluxEntity;
-import com.huawei.javamesh.metricserver.dao.influxdb.entity.servermonitor.MemoryInfluxEntity;
-import com.huawei.javamesh.metricserver.dao.influxdb.entity.servermonitor.NetworkInfluxEntity;
-import com.huawei.javamesh.metricserver.dao.influxdb.request.InfluxInsertRequest;
-import com.huawei.javamesh.metricserver.dao.influxdb.request.InfluxQueryRequest;
+import com.huawei.javamesh.metricserver.dao.influxdb.common.LineProtocolBatch;
+import com.huawei.javamesh.metricserver.dao.influxdb.common.LineProtocolWriter;
 import com.huawei.javamesh.metricserver.dto.servermonitor.CpuDTO;
 import com.huawei.javamesh.metricserver.dto.servermonitor.DiskDTO;
 import com.huawei.javamesh.metricserver.dto.servermonitor.MemoryDTO;
 import com.huawei.javamesh.metricserver.dto.servermonitor.NetworkDTO;
+import com.huawei.javamesh.sample.servermonitor.entity.CpuMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.DiskMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.MemoryMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.NetworkMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.ServerMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.ServerMetricCollection;
 import com.influxdb.query.FluxRecord;
-import com.influxdb.query.FluxTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * ServerMetric服务
+ *
+ * <p>写入时直接把采集数据编码为line protocol批量写入，查询时按时间合并field后逐条映射为DTO，
+ * 不经过持久化实体和反射。</p>
  */
 @Service
 public class ServerMetricService extends InfluxService {
 
+    private static final String MEASUREMENT_CPU = "server_monitor_cpu";
+    private static final String MEASUREMENT_MEMORY = "server_monitor_memory";
+    private static final String MEASUREMENT_NETWORK = "server_monitor_network";
     private static final String MEASUREMENT_DISK_READ_RATE = "server_monitor_disk_read_rate";
     private static final String MEASUREMENT_DISK_WRITE_RATE = "server_monitor_disk_write_rate";
     private static final String MEASUREMENT_DISK_IO_SPENT = "server_monitor_disk_io_spent";
 
+    private static final String FIELD_IDLE_PERCENTAGE = "idle_percentage";
+    private static final String FIELD_IO_WAIT_PERCENTAGE = "io_wait_percentage";
+    private static final String FIELD_SYS_PERCENTAGE = "sys_percentage";
+    private static final String FIELD_USER_PERCENTAGE = "user_percentage";
+
+    private static final String FIELD_MEMORY_TOTAL = "memory_total";
+    private static final String FIELD_SWAP_CACHED = "swap_cached";
+    private static final String FIELD_CACHED = "cached";
+    private static final String FIELD_BUFFERS = "buffers";
+    private static final String FIELD_MEMORY_USED = "memory_used";
+
+    private static final String FIELD_READ_BYTES_PER_SECOND = "read_bytes_per_second";
+    private static final String FIELD_WRITE_BYTES_PER_SECOND = "write_bytes_per_second";
+    private static final String FIELD_READ_PACKAGES_PER_SECOND = "read_packages_per_second";
+    private static final String FIELD_WRITE_PACKAGES_PER_SECOND = "write_packages_per_second";
+
+    private final LineProtocolWriter lineProtocolWriter;
+
+    private final int batchSize;
+
     @Autowired
-    public ServerMetricService(InfluxDao influxDao) {
+    public ServerMetricService(InfluxDao influxDao, LineProtocolWriter lineProtocolWriter, InfluxConfig config) {
         super((influxDao));
+        this.lineProtocolWriter = lineProtocolWriter;
+        this.batchSize = config.getBatchSize();
     }
 
     /**
-     * 添加{@link CpuDTO}实体
+     * 批量添加采集数据，所有数据点编码后交给{@link LineProtocolWriter}写入，
+     * 数据点个数达到{@link InfluxConfig#getBatchSize()}时写入一次
      *
-     * @param cpuDTO 待添加的{@link CpuDTO}实体
+     * @param collections 一次拉取到的全部{@link ServerMetricCollection}
      */
-    public void addCpuMetric(CpuDTO cpuDTO) {
-        insert(CpuInfluxEntity::new, cpuDTO);
+    public void addMetrics(List<ServerMetricCollection> collections) {
+        final LineProtocolBatch batch = new LineProtocolBatch(lineProtocolWriter, batchSize);
+        for (ServerMetricCollection collection : collections) {
+            final String service = collection.getService();
+            final String serviceInstance = collection.getServiceInstance();
+            for (ServerMetric metric : collection.getMetricsList()) {
+                final long time = metric.getTime();
+                addCpuMetric(batch, service, serviceInstance, time, metric.getCpu());
+                addMemoryMetric(batch, service, serviceInstance, time, metric.getMemory());
+                addNetworkMetric(batch, service, serviceInstance, time, metric.getNetwork());
+                addDisksMetric(batch, service, serviceInstance, time, metric.getDisksList());
+            }
+        }
+        batch.flush();
     }
 
-    /**
-     * 添加{@link MemoryDTO}实体
-     *
-     * @param memoryDTO 待添加的{@link MemoryDTO}实体
-     */
-    public void addMemoryMetric(MemoryDTO memoryDTO) {
-        insert(MemoryInfluxEntity::new, memoryDTO);
+    private void addCpuMetric(LineProtocolBatch batch, String service, String serviceInstance, long time,
+        CpuMetric cpu) {
+        point(batch, MEASUREMENT_CPU, service, serviceInstance)
+            .field(FIELD_IDLE_PERCENTAGE, (long) cpu.getIdlePercentage())
+            .field(FIELD_IO_WAIT_PERCENTAGE, (long) cpu.getIoWaitPercentage())
+            .field(FIELD_SYS_PERCENTAGE, (long) cpu.getSysPercentage())
+            .field(FIELD_USER_PERCENTAGE, (long) cpu.getUserPercentage())
+            .time(time);
     }
 
-    /**
-     * 添加{@link NetworkDTO}实体
-     *
-     * @param networkDTO 待添加的{@link NetworkDTO}实体
-     */
-    public void addNetworkMetric(NetworkDTO networkDTO) {
-        insert(NetworkInfluxEntity::new, networkDTO);
+    private void addMemoryMetric(LineProtocolBatch batch, String service, String serviceInstance, long time,
+        MemoryMetric memory) {
+        point(batch, MEASUREMENT_MEMORY, service, serviceInstance)
+            .field(FIELD_MEMORY_TOTAL, memory.getMemoryTotal())
+            .field(FIELD_SWAP_CACHED, memory.getSwapCached())
+            .field(FIELD_CACHED, memory.getCached())
+            .field(FIELD_BUFFERS, memory.getBuffers())
+            .field(FIELD_MEMORY_USED, memory.getMemoryUsed())
+            .time(time);
+    }
+
+    private void addNetworkMetric(LineProtocolBatch batch, String service, String serviceInstance, long time,
+        NetworkMetric network) {
+        point(batch, MEASUREMENT_NETWORK, service, serviceInstance)
+            .field(FIELD_READ_BYTES_PER_SECOND, network.getReadBytesPerSec())
+            .field(FIELD_WRITE_BYTES_PER_SECOND, network.getWriteBytesPerSec())
+            .field(FIELD_READ_PACKAGES_PER_SECOND, network.getReadPackagesPerSec())
+            .field(FIELD_WRITE_PACKAGES_PER_SECOND, network.getWritePackagesPerSec())
+            .time(time);
     }
 
     /**
-     * 添加{@link DiskDTO}实体
-     *
-     * @param diskDTO 待添加的{@link DiskDTO}实体
+     * 每种磁盘指标一个数据点，设备名作为field名
      */
-    public void addDiskMetric(DiskDTO diskDTO) {
-        String measurement = resolveDiskMeasurement(diskDTO.getType());
-        InfluxInsertRequest.InfluxInsertRequestBuilder requestBuilder = InfluxInsertRequest.builder()
-            .measurement(measurement)
-            .time(diskDTO.getTime());
-        Map<String, String> tags = new HashMap<>();
-        tags.put(TAG_SERVICE, diskDTO.getService());
-        tags.put(TAG_SERVICE_INSTANCE, diskDTO.getServiceInstance());
-        InfluxInsertRequest request = requestBuilder.tags(tags)
-            .fields(diskDTO.getDeviceAndValueMap()).build();
-        getInfluxDao().asyncInsert(request);
+    private void addDisksMetric(LineProtocolBatch batch, String service, String serviceInstance, long time,
+        List<DiskMetric> disks) {
+        if (disks.isEmpty()) {
+            return;
+        }
+        point(batch, MEASUREMENT_DISK_READ_RATE, service, serviceInstance);
+        for (DiskMetric disk : disks) {
+            batch.field(disk.getDeviceName(), disk.getReadBytesPerSec());
+        }
+        batch.time(time);
+        point(batch, MEASUREMENT_DISK_WRITE_RATE, service, serviceInstance);
+        for (DiskMetric disk : disks) {
+            batch.field(disk.getDeviceName(), disk.getWriteBytesPerSec());
+        }
+        batch.time(time);
+        point(batch, MEASUREMENT_DISK_IO_SPENT, service, serviceInstance);
+        for (DiskMetric disk : disks) {
+            batch.field(disk.getDeviceName(), disk.getIoSpentPercentage());
+        }
+        batch.time(time);
+    }
+
+    private static LineProtocolBatch point(LineProtocolBatch batch, String measurement, String service,
+        String serviceInstance) {
+        return batch.measurement(measurement)
+            .tag(TAG_SERVICE, service)
+            .tag(TAG_SERVICE_INSTANCE, serviceInstance);
     }
 
     /**
@@ -96,16 +163,17 @@ public class ServerMetricService extends InfluxService {
      * @return {@link CpuDTO}实体列表
      */
     public List<CpuDTO> getCpuMetrics(String start, String end) {
-        return query(start, end, CpuInfluxEntity.class)
-            .stream().map(e -> CpuDTO.builder()
-                .service(e.getService())
-                .serviceInstance(e.getServiceInstance())
-                .time(e.getTime())
-                .idlePercentage(e.getIdlePercentage())
-                .ioWaitPercentage(e.getIoWaitPercentage())
-                .sysPercentage(e.getSysPercentage())
-                .userPercentage(e.getUserPercentage()).build()
-            ).collect(Collectors.toList());
+        final List<CpuDTO> metrics = new ArrayList<>();
+        queryPivoted(MEASUREMENT_CPU, start, end, record -> metrics.add(CpuDTO.builder()
+            .service(stringValue(record, TAG_SERVICE))
+            .serviceInstance(stringValue(record, TAG_SERVICE_INSTANCE))
+            .time(record.getTime())
+            .idlePercentage(longValue(record, FIELD_IDLE_PERCENTAGE))
+            .ioWaitPercentage(longValue(record, FIELD_IO_WAIT_PERCENTAGE))
+            .sysPercentage(longValue(record, FIELD_SYS_PERCENTAGE))
+            .userPercentage(longValue(record, FIELD_USER_PERCENTAGE))
+            .build()));
+        return metrics;
     }
 
     /**
@@ -116,17 +184,18 @@ public class ServerMetricService extends InfluxService {
      * @return {@link MemoryDTO}实体列表
      */
     public List<MemoryDTO> getMemoryMetrics(String start, String end) {
-        return query(start, end, MemoryInfluxEntity.class)
-            .stream().map(e -> MemoryDTO.builder()
-                .service(e.getService())
-                .serviceInstance(e.getServiceInstance())
-                .time(e.getTime())
-                .memoryTotal(e.getMemoryTotal())
-                .memoryUsed(e.getMemoryUsed())
-                .buffers(e.getBuffers())
-                .cached(e.getCached())
-                .swapCached(e.getSwapCached()).build())
-            .collect(Collectors.toList());
+        final List<MemoryDTO> metrics = new ArrayList<>();
+        queryPivoted(MEASUREMENT_MEMORY, start, end, record -> metrics.add(MemoryDTO.builder()
+            .service(stringValue(record, TAG_SERVICE))
+            .serviceInstance(stringValue(record, TAG_SERVICE_INSTANCE))
+            .time(record.getTime())
+            .memoryTotal(longValue(record, FIELD_MEMORY_TOTAL))
+            .memoryUsed(longValue(record, FIELD_MEMORY_USED))
+            .buffers(longValue(record, FIELD_BUFFERS))
+            .cached(longValue(record, FIELD_CACHED))
+            .swapCached(longValue(record, FIELD_SWAP_CACHED))
+            .build()));
+        return metrics;
     }
 
     /**
@@ -137,17 +206,17 @@ public class ServerMetricService extends InfluxService {
      * @return {@link NetworkDTO}实体列表
      */
     public List<NetworkDTO> getNetworkMetrics(String start, String end) {
-        return query(start, end, NetworkInfluxEntity.class)
-            .stream().map(e -> NetworkDTO.builder()
-                .service(e.getService())
-                .serviceInstance(e.getServiceInstance())
-                .time(e.getTime())
-                .readBytesPerSec(e.getReadBytesPerSec())
-                .readPackagesPerSec(e.getReadPackagesPerSec())
-                .writeBytesPerSec(e.getWriteBytesPerSec())
-                .writePackagesPerSec(e.getWritePackagesPerSec())
-                .build())
-            .collect(Collectors.toList());
+        final List<NetworkDTO> metrics = new ArrayList<>();
+        queryPivoted(MEASUREMENT_NETWORK, start, end, record -> metrics.add(NetworkDTO.builder()
+            .service(stringValue(record, TAG_SERVICE))
+            .serviceInstance(stringValue(record, TAG_SERVICE_INSTANCE))
+            .time(record.getTime())
+            .readBytesPerSec(longValue(record, FIELD_READ_BYTES_PER_SECOND))
+            .readPackagesPerSec(longValue(record, FIELD_READ_PACKAGES_PER_SECOND))
+            .writeBytesPerSec(longValue(record, FIELD_WRITE_BYTES_PER_SECOND))
+            .writePackagesPerSec(longValue(record, FIELD_WRITE_PACKAGES_PER_SECOND))
+            .build()));
+        return metrics;
     }
 
     /**
@@ -159,12 +228,31 @@ public class ServerMetricService extends InfluxService {
      * @return {@link DiskDTO}实体列表
      */
     public List<DiskDTO> getDiskMetrics(DiskDTO.ValueType type, String start, String end) {
-        InfluxQueryRequest request = InfluxQueryRequest.builder()
-            .measurement(resolveDiskMeasurement(type))
-            .start(start).end(end).build();
-        return getInfluxDao().query(request, DiskMetricResolver.getInstance(), DiskDTO.class)
-            .stream().peek(d -> d.setType(type)).collect(Collectors.toList());
+        final List<DiskDTO> metrics = new ArrayList<>();
+        queryPivoted(resolveDiskMeasurement(type), start, end, record -> metrics.add(DiskDTO.builder()
+            .service(stringValue(record, TAG_SERVICE))
+            .serviceInstance(stringValue(record, TAG_SERVICE_INSTANCE))
+            .time(record.getTime())
+            .type(type)
+            .deviceAndValueMap(deviceValues(record))
+            .build()));
+        return metrics;
+    }
 
+    /**
+     * 除系统列和标签列以外的列都是设备名，pivot后该时间没有数据的设备值为null
+     */
+    private static Map<String, Object> deviceValues(FluxRecord record) {
+        final Map<String, Object> devices = new HashMap<>();
+        for (Map.Entry<String, Object> column : record.getValues().entrySet()) {
+            final String name = column.getKey();
+            if (column.getValue() == null || name.startsWith("_") || "result".equals(name) || "table".equals(name)
+                || TAG_SERVICE.equals(name) || TAG_SERVICE_INSTANCE.equals(name)) {
+                continue;
+            }
+            devices.put(name, column.getValue());
+        }
+        return devices;
     }
 
     private String resolveDiskMeasurement(DiskDTO.ValueType type) {
@@ -179,50 +267,4 @@ public class ServerMetricService extends InfluxService {
                 throw new IllegalArgumentException("Illegal disk type");
         }
     }
-
-    private static class DiskMetricResolver implements FluxTableResolver {
-
-        private static final DiskMetricResolver INSTANCE = new DiskMetricResolver();
-
-        private DiskMetricResolver() {
-        }
-
-        public static DiskMetricResolver getInstance() {
-            return INSTANCE;
-        }
-
-        @Override
-        public <M> List<M> resolve(List<FluxTable> fluxTables, Class<M> targetClass) {
-            if (targetClass != DiskDTO.class) {
-                throw new IllegalArgumentException("Illegal type.");
-            }
-            final List<M> metrics = new LinkedList<>();
-            Map<Instant, List<FluxRecord>> recordGroupByTime = fluxTables.stream()
-                .map(FluxTable::getRecords)
-                .flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(FluxRecord::getTime));
-            for (Map.Entry<Instant, List<FluxRecord>> entry : recordGroupByTime.entrySet()) {
-                String service = null;
-                String serviceInstance = null;
-                Map<String, Object> data = new HashMap<>();
-                for (FluxRecord record : entry.getValue()) {
-                    if (service == null) {
-                        service = (String) record.getValueByKey(TAG_SERVICE);
-                    }
-                    if (serviceInstance == null) {
-                        serviceInstance = (String) record.getValueByKey(TAG_SERVICE_INSTANCE);
-                    }
-                    data.put(record.getField(), record.getValue());
-                }
-                DiskDTO diskDTO = DiskDTO.builder()
-                    .time(entry.getKey())
-                    .service(service)
-                    .serviceInstance(serviceInstance)
-                    .deviceAndValueMap(data)
-                    .build();
-                metrics.add((M) diskDTO);
-            }
-            return metrics;
-        }
-    }
 }
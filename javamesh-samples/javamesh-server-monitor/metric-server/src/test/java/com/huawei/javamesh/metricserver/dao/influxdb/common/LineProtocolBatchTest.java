@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.metricserver.dao.influxdb.common;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LineProtocolBatch单元测试
+ */
+public class LineProtocolBatchTest {
+
+    private static final long TIME = 1633046400123L;
+
+    /**
+     * 测试特殊字符转义和数值格式与{@link Point#toLineProtocol()}一致
+     */
+    @Test
+    public void testSameAsPoint() {
+        final double[] values = {0.0001D, 1.0D, 12.5D, 1.0E21D, -3.25E-7D, 99.99D};
+        for (double value : values) {
+            final List<String> records = new ArrayList<>();
+            new LineProtocolBatch(records::add, 1)
+                .measurement("cpu usage,total=1")
+                .tag("host name", "a=b,c\td\re\nf")
+                .tag("empty", "")
+                .field("idle,percentage", 42L)
+                .field("io=spent", value)
+                .time(TIME);
+            final String expected = Point.measurement("cpu usage,total=1")
+                .addTag("host name", "a=b,c\td\re\nf")
+                .addTag("empty", "")
+                .addField("idle,percentage", 42L)
+                .addField("io=spent", value)
+                .time(TIME, WritePrecision.MS)
+                .toLineProtocol();
+            Assert.assertEquals(1, records.size());
+            Assert.assertEquals(expected + '\n', records.get(0));
+        }
+    }
+
+    /**
+     * 测试按行数分批写出，丢弃没有field的数据点和非法浮点数
+     */
+    @Test
+    public void testBatch() {
+        final List<String> records = new ArrayList<>();
+        final LineProtocolBatch batch = new LineProtocolBatch(records::add, 2);
+        batch.measurement("m").field("a", 1L).time(1L);
+        batch.measurement("m").field("b", Double.NaN).time(2L);
+        Assert.assertTrue(records.isEmpty());
+        batch.measurement("m").field("c", Double.POSITIVE_INFINITY).field("d", 2L).time(3L);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("m a=1i 1\nm d=2i 3\n", records.get(0));
+        batch.measurement("m").field("e", 0.5D).time(4L);
+        batch.flush();
+        batch.flush();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("m e=0.5 4\n", records.get(1));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.metricserver.service;
+
+import com.huawei.javamesh.metricserver.config.InfluxConfig;
+import com.huawei.javamesh.sample.servermonitor.entity.CpuMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.DiskMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.MemoryMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.NetworkMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.ServerMetric;
+import com.huawei.javamesh.sample.servermonitor.entity.ServerMetricCollection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ServerMetricService单元测试
+ */
+public class ServerMetricServiceTest {
+
+    private static final String SERVICE_TAGS = ",service=order,service_instance=order\\ 1";
+
+    /**
+     * 测试采集数据编码为line protocol，并按批次大小写出
+     */
+    @Test
+    public void testAddMetrics() {
+        final List<String> records = new ArrayList<>();
+        final InfluxConfig config = new InfluxConfig();
+        config.setBatchSize(4);
+        final ServerMetricService service = new ServerMetricService(null, records::add, config);
+
+        service.addMetrics(Collections.singletonList(ServerMetricCollection.newBuilder()
+            .setService("order")
+            .setServiceInstance("order 1")
+            .addMetrics(metric(1000L))
+            .addMetrics(ServerMetric.newBuilder()
+                .setTime(2000L)
+                .setCpu(CpuMetric.getDefaultInstance())
+                .setMemory(MemoryMetric.getDefaultInstance())
+                .setNetwork(NetworkMetric.getDefaultInstance())
+                .build())
+            .build()));
+
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(String.join("\n",
+            "server_monitor_cpu" + SERVICE_TAGS
+                + " idle_percentage=70i,io_wait_percentage=5i,sys_percentage=10i,user_percentage=15i 1000",
+            "server_monitor_memory" + SERVICE_TAGS
+                + " memory_total=8192i,swap_cached=0i,cached=1024i,buffers=256i,memory_used=4096i 1000",
+            "server_monitor_network" + SERVICE_TAGS
+                + " read_bytes_per_second=100i,write_bytes_per_second=200i,read_packages_per_second=3i,"
+                + "write_packages_per_second=4i 1000",
+            "server_monitor_disk_read_rate" + SERVICE_TAGS + " sda=10i,sdb=20i 1000", ""), records.get(0));
+        Assert.assertEquals(String.join("\n",
+            "server_monitor_disk_write_rate" + SERVICE_TAGS + " sda=30i,sdb=40i 1000",
+            "server_monitor_disk_io_spent" + SERVICE_TAGS + " sda=0.0001,sdb=12.5 1000",
+            "server_monitor_cpu" + SERVICE_TAGS
+                + " idle_percentage=0i,io_wait_percentage=0i,sys_percentage=0i,user_percentage=0i 2000",
+            "server_monitor_memory" + SERVICE_TAGS
+                + " memory_total=0i,swap_cached=0i,cached=0i,buffers=0i,memory_used=0i 2000", ""), records.get(1));
+        Assert.assertEquals("server_monitor_network" + SERVICE_TAGS
+            + " read_bytes_per_second=0i,write_bytes_per_second=0i,read_packages_per_second=0i,"
+            + "write_packages_per_second=0i 2000\n", records.get(2));
+    }
+
+    private static ServerMetric metric(long time) {
+        return ServerMetric.newBuilder()
+            .setTime(time)
+            .setCpu(CpuMetric.newBuilder()
+                .setIdlePercentage(70)
+                .setIoWaitPercentage(5)
+                .setSysPercentage(10)
+                .setUserPercentage(15))
+            .setMemory(MemoryMetric.newBuilder()
+                .setMemoryTotal(8192L)
+                .setCached(1024L)
+                .setBuffers(256L)
+                .setMemoryUsed(4096L))
+            .setNetwork(NetworkMetric.newBuilder()
+                .setReadBytesPerSec(100L)
+                .setWriteBytesPerSec(200L)
+                .setReadPackagesPerSec(3L)
+                .setWritePackagesPerSec(4L))
+            .addAllDisks(Arrays.asList(
+                disk("sda", 10L, 30L, 0.0001D),
+                disk("sdb", 20L, 40L, 12.5D)))
+            .build();
+    }
+
+    private static DiskMetric disk(String deviceName, long readBytes, long writeBytes, double ioSpent) {
+        return DiskMetric.newBuilder()
+            .setDeviceName(deviceName)
+            .setReadBytesPerSec(readBytes)
+            .setWriteBytesPerSec(writeBytes)
+            .setIoSpentPercentage(ioSpent)
+            .build();
+    }
+}
@@ -5,7 +5,6 @@
 package com.huawei.javamesh.sample.servermonitor.collector;
 
 import com.huawei.javamesh.sample.servermonitor.command.Command;
-import com.huawei.javamesh.sample.servermonitor.command.CommandExecutor;
 import com.huawei.javamesh.sample.servermonitor.command.CpuCommand;
 import com.huawei.javamesh.sample.servermonitor.entity.CpuMetric;
 
@@ -38,7 +37,7 @@ public class CpuMetricCollector {
      * @return {@link CpuMetric}
      */
     public CpuMetric getCpuMetric() {
-        final CpuCommand.CpuStat currentState = CommandExecutor.execute(Command.CPU);
+        final CpuCommand.CpuStat currentState = Command.CPU.execute();
         return currentState == null ? emptyResult : buildResult(currentState);
     }
 
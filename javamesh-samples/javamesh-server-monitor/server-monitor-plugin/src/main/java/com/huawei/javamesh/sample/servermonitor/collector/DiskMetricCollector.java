@@ -5,7 +5,6 @@
 package com.huawei.javamesh.sample.servermonitor.collector;
 
 import com.huawei.javamesh.sample.servermonitor.command.Command;
-import com.huawei.javamesh.sample.servermonitor.command.CommandExecutor;
 import com.huawei.javamesh.sample.servermonitor.command.DiskCommand;
 import com.huawei.javamesh.sample.servermonitor.entity.DiskMetric;
 
@@ -75,7 +74,7 @@ public class DiskMetricCollector {
      * @return {@link DiskMetric}
      */
     public List<DiskMetric> getDiskMetrics() {
-        final List<DiskCommand.DiskStats> currentDiskStats = CommandExecutor.execute(Command.DISK);
+        final List<DiskCommand.DiskStats> currentDiskStats = Command.DISK.execute();
         if (currentDiskStats != null && !currentDiskStats.isEmpty()) {
             return buildResults(currentDiskStats);
         } else {
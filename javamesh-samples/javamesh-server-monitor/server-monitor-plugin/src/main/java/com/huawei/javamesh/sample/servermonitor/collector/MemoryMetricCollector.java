@@ -5,7 +5,6 @@
 package com.huawei.javamesh.sample.servermonitor.collector;
 
 import com.huawei.javamesh.sample.servermonitor.command.Command;
-import com.huawei.javamesh.sample.servermonitor.command.CommandExecutor;
 import com.huawei.javamesh.sample.servermonitor.command.MemoryCommand;
 import com.huawei.javamesh.sample.servermonitor.entity.MemoryMetric;
 
@@ -27,7 +26,7 @@ public class MemoryMetricCollector {
      * @return {@link MemoryMetric}
      */
     public MemoryMetric getMemoryMetric() {
-        final MemoryCommand.MemInfo memInfo = CommandExecutor.execute(Command.MEMORY);
+        final MemoryCommand.MemInfo memInfo = Command.MEMORY.execute();
         return memInfo == null ? emptyResult : buildResult(memInfo);
     }
 
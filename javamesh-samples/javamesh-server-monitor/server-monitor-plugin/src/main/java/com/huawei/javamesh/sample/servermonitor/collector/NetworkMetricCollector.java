@@ -5,7 +5,6 @@
 package com.huawei.javamesh.sample.servermonitor.collector;
 
 import com.huawei.javamesh.sample.servermonitor.command.Command;
-import com.huawei.javamesh.sample.servermonitor.command.CommandExecutor;
 import com.huawei.javamesh.sample.servermonitor.command.NetworkCommand;
 import com.huawei.javamesh.sample.servermonitor.entity.NetworkMetric;
 
@@ -35,7 +34,7 @@ public class NetworkMetricCollector {
 
     public NetworkMetricCollector(long collectCycle) {
         this.collectCycle = collectCycle;
-        lastNetDev = CommandExecutor.execute(Command.NETWORK);
+        lastNetDev = Command.NETWORK.execute();
     }
 
     /**
@@ -44,7 +43,7 @@ public class NetworkMetricCollector {
      * @return {@link NetworkMetric}
      */
     public NetworkMetric getNetworkMetric() {
-        final NetworkCommand.NetDev currentNetDev = CommandExecutor.execute(Command.NETWORK);
+        final NetworkCommand.NetDev currentNetDev = Command.NETWORK.execute();
         return currentNetDev == null ? emptyResult : buildResult(currentNetDev);
     }
 
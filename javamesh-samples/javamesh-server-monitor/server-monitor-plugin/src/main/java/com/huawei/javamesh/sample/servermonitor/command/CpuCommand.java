@@ -6,15 +6,11 @@ package com.huawei.javamesh.sample.servermonitor.command;
 
 import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
 
-import java.io.InputStream;
-import java.util.List;
 import java.util.logging.Logger;
 
-import static com.huawei.javamesh.sample.servermonitor.common.Constant.REGEX_MULTI_SPACES;
-
 /**
- * 执行指令：cat /proc/stat
- * 输出如下内容：
+ * 读取文件：/proc/stat
+ * 文件内容如下：
  * cpu  86468385 641 21175277 1917542581 11613117 0 6898179 0 0 0
  * cpu0 20962641 163 5213893 477119130 2819032 0 4939906 0 0 0
  * cpu1 21746884 149 5318755 480138892 2947198 0 778316 0 0 0
@@ -31,48 +27,40 @@ import static com.huawei.javamesh.sample.servermonitor.common.Constant.REGEX_MUL
  * softirq 6716778875 8 1115785486 216149 3183822034 150181994 0 77618 1166905650 2069518 1097720418
  * 只取第一行的cpu
  */
-public class CpuCommand extends CommonMonitorCommand<CpuCommand.CpuStat> {
+public class CpuCommand extends ProcFileCommand<CpuCommand.CpuStat> {
 
     private static final Logger LOGGER = LogFactory.getLogger();
 
-    private static final String COMMAND = "cat /proc/stat";
+    private static final String PROC_STAT = "/proc/stat";
 
     /**
      * 采集行前缀
      */
-    private static final String COLLECT_LINE_PREFIX = "cpu ";
+    private static final byte[] COLLECT_LINE_PREFIX = ProcFileReader.bytes("cpu ");
 
-    /**
-     * 各状态列索引
-     */
-    private static final int USER_INDEX = 1;
-    private static final int NICE_INDEX = 2;
-    private static final int SYSTEM_INDEX = 3;
-    private static final int IDLE_INDEX = 4;
-    private static final int IO_WAIT_INDEX = 5;
-
-    @Override
-    public String getCommand() {
-        return COMMAND;
+    public CpuCommand() {
+        super(PROC_STAT);
     }
 
     /**
      * 重构泛PaaS类：com.huawei.apm.plugin.collection.util.CpuParser parse方法
+     * 第一行依次为cpu、user、nice、system、idle、iowait等列
      */
     @Override
-    public CpuStat parseResult(InputStream inputStream) {
-        final List<String> lines = readLines(inputStream);
-        for (String line : lines) {
-            if (line.startsWith(COLLECT_LINE_PREFIX)) {
-                String[] stats = line.split(REGEX_MULTI_SPACES);
-                if (stats.length > IO_WAIT_INDEX) {
-                    return new CpuStat(Long.parseLong(stats[USER_INDEX]),
-                        Long.parseLong(stats[NICE_INDEX]),
-                        Long.parseLong(stats[SYSTEM_INDEX]),
-                        Long.parseLong(stats[IDLE_INDEX]),
-                        Long.parseLong(stats[IO_WAIT_INDEX]));
+    protected CpuStat parse(ProcFileReader reader) {
+        while (reader.hasNextLine()) {
+            if (reader.startsWith(COLLECT_LINE_PREFIX)) {
+                reader.skipField();
+                long user = reader.nextLong();
+                long nice = reader.nextLong();
+                long system = reader.nextLong();
+                long idle = reader.nextLong();
+                long ioWait = reader.nextLong();
+                if (ioWait >= 0 && idle >= 0 && system >= 0 && nice >= 0 && user >= 0) {
+                    return new CpuStat(user, nice, system, idle, ioWait);
                 }
             }
+            reader.nextLine();
         }
         LOGGER.severe("Illegal result.");
         return null;
@@ -4,43 +4,52 @@
 
 package com.huawei.javamesh.sample.servermonitor.command;
 
-import com.huawei.javamesh.sample.servermonitor.common.Constant;
-
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * 执行指令：cat /proc/diskstats
+ * 读取文件：/proc/diskstats
  * <p>文档地址: <a href=https://www.kernel.org/doc/Documentation/ABI/testing/procfs-diskstats>Document</a></p>
  */
-public class DiskCommand extends CommonMonitorCommand<List<DiskCommand.DiskStats>> {
+public class DiskCommand extends ProcFileCommand<List<DiskCommand.DiskStats>> {
 
-    private static final String COMMAND = "cat /proc/diskstats";
+    private static final String PROC_DISKSTATS = "/proc/diskstats";
 
-    private static final int DEVICE_NAME_INDEX = 3;
-    private static final int SECTORS_READ_INDEX = 6;
-    private static final int SECTORS_WRITTEN_INDEX = 10;
-    private static final int IO_SPENT_MILLIS_INDEX = 13;
+    /**
+     * 设备名称之后到各采集列之间需要跳过的列数
+     */
+    private static final int FIELDS_BEFORE_SECTORS_READ = 2;
+    private static final int FIELDS_BEFORE_SECTORS_WRITTEN = 3;
+    private static final int FIELDS_BEFORE_IO_SPENT_MILLIS = 2;
 
-    @Override
-    public String getCommand() {
-        return COMMAND;
+    /**
+     * 设备名称之前的major和minor两列
+     */
+    private static final int FIELDS_BEFORE_DEVICE_NAME = 2;
+
+    public DiskCommand() {
+        super(PROC_DISKSTATS);
     }
 
     /**
      * 重构泛PaaS类：com.huawei.apm.plugin.collection.util.DiskParser parse方法
+     * 采集第3列设备名称，第6列读扇区数，第10列写扇区数，第13列IO耗时
      */
     @Override
-    public List<DiskStats> parseResult(InputStream inputStream) {
-        final List<String> lines = readLines(inputStream);
-        final List<DiskStats> diskStats = new ArrayList<DiskStats>(lines.size());
-        for (String line : lines) {
-            String[] diskStatsText = line.split(Constant.REGEX_MULTI_SPACES);
-            String deviceName = diskStatsText[DEVICE_NAME_INDEX];
-            long sectorsRead = Long.parseLong(diskStatsText[SECTORS_READ_INDEX]);
-            long sectorWritten = Long.parseLong(diskStatsText[SECTORS_WRITTEN_INDEX]);
-            long ioSpentMillis = Long.parseLong(diskStatsText[IO_SPENT_MILLIS_INDEX]);
+    protected List<DiskStats> parse(ProcFileReader reader) {
+        final List<DiskStats> diskStats = new ArrayList<DiskStats>();
+        for (; reader.hasNextLine(); reader.nextLine()) {
+            reader.skipFields(FIELDS_BEFORE_DEVICE_NAME);
+            String deviceName = reader.nextField();
+            reader.skipFields(FIELDS_BEFORE_SECTORS_READ);
+            long sectorsRead = reader.nextLong();
+            reader.skipFields(FIELDS_BEFORE_SECTORS_WRITTEN);
+            long sectorWritten = reader.nextLong();
+            reader.skipFields(FIELDS_BEFORE_IO_SPENT_MILLIS);
+            long ioSpentMillis = reader.nextLong();
+            if (deviceName == null || sectorsRead < 0 || sectorWritten < 0 || ioSpentMillis < 0) {
+                throw new IllegalArgumentException("Illegal line of device " + deviceName);
+            }
             diskStats.add(new DiskStats(deviceName, sectorsRead, sectorWritten, ioSpentMillis));
         }
         return diskStats;
@@ -4,56 +4,45 @@
 
 package com.huawei.javamesh.sample.servermonitor.command;
 
-import com.huawei.javamesh.sample.servermonitor.common.Constant;
-
-import java.io.InputStream;
-import java.util.List;
-
 /**
- * 执行指令：cat /proc/meminfo
+ * 读取文件：/proc/meminfo
  */
-public class MemoryCommand extends CommonMonitorCommand<MemoryCommand.MemInfo> {
+public class MemoryCommand extends ProcFileCommand<MemoryCommand.MemInfo> {
 
-    private static final String COMMAND = "cat /proc/meminfo";
+    private static final String PROC_MEMINFO = "/proc/meminfo";
 
-    private static final String MEMORY_TOTAL = "MemTotal";
-    private static final String MEMORY_FREE = "MemFree";
-    private static final String SWAP_CACHED = "SwapCached";
-    private static final String BUFFERS = "Buffers";
-    private static final String CACHED = "Cached";
+    private static final byte[] MEMORY_TOTAL = ProcFileReader.bytes("MemTotal:");
+    private static final byte[] MEMORY_FREE = ProcFileReader.bytes("MemFree:");
+    private static final byte[] SWAP_CACHED = ProcFileReader.bytes("SwapCached:");
+    private static final byte[] BUFFERS = ProcFileReader.bytes("Buffers:");
+    private static final byte[] CACHED = ProcFileReader.bytes("Cached:");
 
-    @Override
-    public String getCommand() {
-        return COMMAND;
+    public MemoryCommand() {
+        super(PROC_MEMINFO);
     }
 
     /**
      * 原泛PaaS类：com.huawei.apm.plugin.collection.util.MemoryParser parse方法
      */
     @Override
-    public MemInfo parseResult(InputStream inputStream) {
-        final List<String> lines = readLines(inputStream);
-
+    protected MemInfo parse(ProcFileReader reader) {
         long memoryTotal = -1L;
         long memoryFree = -1L;
         long buffers = -1L;
         long cached = -1L;
         long swapCached = -1L;
 
-        for (String line : lines) {
-            String[] memInfo = line.split(Constant.REGEX_MULTI_SPACES);
-            final String category = memInfo[0];
-            final long value = Long.parseLong(memInfo[1]);
-            if (category.startsWith(MEMORY_TOTAL)) {
-                memoryTotal = value;
-            } else if (category.startsWith(MEMORY_FREE)) {
-                memoryFree = value;
-            } else if (category.startsWith(BUFFERS)) {
-                buffers = value;
-            } else if (category.startsWith(CACHED)) {
-                cached = value;
-            } else if (category.startsWith(SWAP_CACHED)) {
-                swapCached = value;
+        for (; reader.hasNextLine(); reader.nextLine()) {
+            if (reader.startsWith(MEMORY_TOTAL)) {
+                memoryTotal = readValue(reader);
+            } else if (reader.startsWith(MEMORY_FREE)) {
+                memoryFree = readValue(reader);
+            } else if (reader.startsWith(BUFFERS)) {
+                buffers = readValue(reader);
+            } else if (reader.startsWith(CACHED)) {
+                cached = readValue(reader);
+            } else if (reader.startsWith(SWAP_CACHED)) {
+                swapCached = readValue(reader);
             }
         }
 
@@ -63,6 +52,11 @@ public class MemoryCommand extends CommonMonitorCommand<MemoryCommand.MemInfo> {
         return new MemInfo(memoryTotal, memoryFree, buffers, cached, swapCached);
     }
 
+    private static long readValue(ProcFileReader reader) {
+        reader.skipField();
+        return reader.nextLong();
+    }
+
 
     public static class MemInfo {
         private final long memoryTotal;
@@ -4,65 +4,62 @@
 
 package com.huawei.javamesh.sample.servermonitor.command;
 
-import com.huawei.javamesh.sample.servermonitor.common.Constant;
-
-import java.io.InputStream;
-import java.util.List;
-
 /**
- * 执行命令：cat /proc/net/dev
- * 输出如下内容：
+ * 读取文件：/proc/net/dev
+ * 文件内容如下：
  * Inter-|   Receive                                                |  Transmit
  * face |bytes  packets errs drop fifo frame compressed multicast|bytes packets errs drop fifo colls carrier compressed
  * docker0: 1020039433 5422029 0 0 0   0          0         0 843916915 8849724    0    0    0     0       0          0
  * flannel.1: 418474084655 189175647 0  0 0  0   0     0 590493894734 311142311    0  360    0     0       0          0
  * eth0: 1640055474394 3397136896 0  0  0  0  0      0 2214532164705 2692212634    0    0    0     0       0          0
  * lo: 338601113239 939979857    0  0  0   0    0      0 338601113239 939979857    0    0    0     0       0          0
- * 可以根据提示的进行对应。
+ * 可以根据提示的进行对应。接口名较长时与冒号后的第一列之间可能没有空格，因此从冒号之后开始解析。
  */
-public class NetworkCommand extends CommonMonitorCommand<NetworkCommand.NetDev> {
+public class NetworkCommand extends ProcFileCommand<NetworkCommand.NetDev> {
 
-    private static final String COMMAND = "cat /proc/net/dev";
+    private static final String PROC_NET_DEV = "/proc/net/dev";
 
-    private static final int RECEIVE_BYTE_INDEX = 2;
-    private static final int RECEIVE_PACKETS_INDEX = 3;
-    private static final int TRANSMIT_BYTE_INDEX = 10;
-    private static final int TRANSMIT_PACKETS_INDEX = 11;
+    /**
+     * 接收包数之后到发送字节数之间的列数：errs drop fifo frame compressed multicast
+     */
+    private static final int FIELDS_BEFORE_TRANSMIT_BYTES = 6;
 
-    private static final String STATE_SEPARATOR = ":";
+    private static final byte STATE_SEPARATOR = ':';
 
-    @Override
-    public String getCommand() {
-        return COMMAND;
+    public NetworkCommand() {
+        super(PROC_NET_DEV);
     }
 
     /**
      * 重构泛PaaS类：com.huawei.apm.plugin.collection.util.NetWorkParser parse方法
      */
     @Override
-    public NetDev parseResult(InputStream inputStream) {
-        final List<String> lines = readLines(inputStream);
-        if (lines.isEmpty()) {
+    protected NetDev parse(ProcFileReader reader) {
+        if (!reader.hasNextLine()) {
             return null;
         }
         long receiveBytes = 0L;
         long transmitBytes = 0L;
         long receivePackets = 0L;
         long transmitPackets = 0L;
-        for (String line : lines) {
-            String[] arr = line.split(STATE_SEPARATOR);
-            if (arr.length > 1) {
-                String[] netDev = line.split(Constant.REGEX_MULTI_SPACES);
-                if (netDev.length < TRANSMIT_PACKETS_INDEX) {
-                    continue;
-                }
-                receiveBytes += Long.parseLong(netDev[RECEIVE_BYTE_INDEX]);
-                transmitBytes += Long.parseLong(netDev[TRANSMIT_BYTE_INDEX]);
-                receivePackets += Long.parseLong(netDev[RECEIVE_PACKETS_INDEX]);
-                transmitPackets += Long.parseLong(netDev[TRANSMIT_PACKETS_INDEX]);
+        for (; reader.hasNextLine(); reader.nextLine()) {
+            if (!reader.skipPast(STATE_SEPARATOR)) {
+                continue;
+            }
+            long lineReceiveBytes = reader.nextLong();
+            long lineReceivePackets = reader.nextLong();
+            reader.skipFields(FIELDS_BEFORE_TRANSMIT_BYTES);
+            long lineTransmitBytes = reader.nextLong();
+            long lineTransmitPackets = reader.nextLong();
+            if (lineReceiveBytes < 0 || lineReceivePackets < 0 || lineTransmitBytes < 0 || lineTransmitPackets < 0) {
+                continue;
             }
+            receiveBytes += lineReceiveBytes;
+            receivePackets += lineReceivePackets;
+            transmitBytes += lineTransmitBytes;
+            transmitPackets += lineTransmitPackets;
         }
-        return new NetDev(receiveBytes, transmitBytes, receivePackets, transmitPackets);
+        return new NetDev(receiveBytes, receivePackets, transmitBytes, transmitPackets);
     }
 
     public static class NetDev {
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.sample.servermonitor.command;
+
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * 读取procfs文件的监控指令
+ *
+ * <p>通过{@link #execute()}在当前进程内读取{@link ProcFileReader}保持打开的procfs文件，
+ * 并由{@link #parse(ProcFileReader)}直接解析读取到的字节，不再通过外部进程执行cat指令。
+ * 同一指令的多次执行复用文件句柄和缓冲区，因此执行过程是同步的。</p>
+ *
+ * @param <T> 解析结果类型
+ */
+public abstract class ProcFileCommand<T> {
+
+    private static final Logger LOGGER = LogFactory.getLogger();
+
+    private final ProcFileReader reader;
+
+    protected ProcFileCommand(String path) {
+        this.reader = new ProcFileReader(path);
+    }
+
+    /**
+     * 读取并解析procfs文件
+     *
+     * @return 解析结果，读取或解析失败时返回null
+     */
+    public synchronized T execute() {
+        try {
+            reader.read();
+        } catch (IOException e) {
+            LOGGER.severe("Failed to read " + reader.getPath() + ", " + e.getMessage());
+            // JDK6 用不了Optional
+            return null;
+        }
+        try {
+            return parse(reader);
+        } catch (RuntimeException e) {
+            LOGGER.severe("Failed to parse " + reader.getPath() + ", " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 结果解析，游标位于文件第一行行首
+     *
+     * @param reader 已读取文件内容的读取器
+     * @return 解析后的结果
+     */
+    protected abstract T parse(ProcFileReader reader);
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.sample.servermonitor.command;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * procfs文件读取器
+ *
+ * <p>文件在首次读取时打开并保持打开，每次{@link #read()}都从文件开头重新读取，内核会重新生成
+ * 文件内容。读取结果保存在可复用的缓冲区中，通过按行移动的游标方法直接从字节中解析数值，
+ * 不创建中间字符串。</p>
+ *
+ * <p>非线程安全，由{@link ProcFileCommand}保证同一时间只有一个线程使用。</p>
+ */
+public class ProcFileReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private final String path;
+
+    private RandomAccessFile file;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private int limit;
+
+    private int position;
+
+    public ProcFileReader(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 重新读取整个文件，游标回到第一行行首
+     *
+     * @throws IOException 打开或读取文件失败，此时文件会被关闭，下次读取时重新打开
+     */
+    public void read() throws IOException {
+        limit = 0;
+        position = 0;
+        try {
+            if (file == null) {
+                file = new RandomAccessFile(path, "r");
+            }
+            file.seek(0);
+            int count;
+            while ((count = file.read(buffer, limit, buffer.length - limit)) >= 0) {
+                limit += count;
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                }
+            }
+        } catch (IOException e) {
+            limit = 0;
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭文件
+     */
+    public void close() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignored
+        }
+        file = null;
+    }
+
+    /**
+     * 是否还有未读取的行
+     *
+     * @return 游标未到达文件末尾时返回true
+     */
+    public boolean hasNextLine() {
+        return position < limit;
+    }
+
+    /**
+     * 游标移动到下一行行首
+     */
+    public void nextLine() {
+        while (position < limit && buffer[position++] != '\n') {
+            // skip
+        }
+    }
+
+    /**
+     * 当前位置是否以指定的ASCII字节开头，不移动游标
+     *
+     * @param prefix 前缀
+     * @return 以前缀开头时返回true
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (limit - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在当前行内把游标移动到指定字节之后
+     *
+     * @param target 目标字节
+     * @return 当前行内不存在该字节时返回false，游标停在行尾
+     */
+    public boolean skipPast(byte target) {
+        while (position < limit && buffer[position] != '\n') {
+            if (buffer[position++] == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 跳过当前行内的下一个字段
+     */
+    public void skipField() {
+        skipBlanks();
+        while (position < limit && !isSeparator(buffer[position])) {
+            position++;
+        }
+    }
+
+    /**
+     * 跳过当前行内的多个字段
+     *
+     * @param count 字段个数
+     */
+    public void skipFields(int count) {
+        for (int i = 0; i < count; i++) {
+            skipField();
+        }
+    }
+
+    /**
+     * 读取当前行内的下一个字段
+     *
+     * @return 字段内容，当前行没有更多字段时返回null
+     */
+    public String nextField() {
+        skipBlanks();
+        int start = position;
+        while (position < limit && !isSeparator(buffer[position])) {
+            position++;
+        }
+        return position == start ? null : new String(buffer, start, position - start, CHARSET);
+    }
+
+    /**
+     * 读取当前行内的下一个非负整数字段
+     *
+     * @return 字段的数值，当前行没有更多字段或字段不是整数时返回-1
+     */
+    public long nextLong() {
+        skipBlanks();
+        long value = 0L;
+        int start = position;
+        while (position < limit && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position++] - '0');
+        }
+        if (position == start || (position < limit && !isSeparator(buffer[position]))) {
+            return -1L;
+        }
+        return value;
+    }
+
+    private void skipBlanks() {
+        while (position < limit && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n';
+    }
+
+    /**
+     * 将ASCII字符串转换为字节，用于{@link #startsWith(byte[])}
+     *
+     * @param text ASCII字符串
+     * @return 字节数组
+     */
+    public static byte[] bytes(String text) {
+        return text.getBytes(CHARSET);
+    }
+}
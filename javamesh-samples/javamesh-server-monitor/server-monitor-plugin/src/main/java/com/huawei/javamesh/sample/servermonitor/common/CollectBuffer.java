@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.sample.servermonitor.common;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 采集数据缓冲区
+ *
+ * <p>预分配容量的环形缓冲区，只允许一个线程（或依次执行的同一个定时任务）调用{@link #add(Object)}
+ * 写入，其他线程可以随时调用{@link #drainTo(List)}取出已写入的数据，写入过程不加锁也不分配对象。
+ * 缓冲区写满后新数据覆盖最早写入的数据。</p>
+ *
+ * <p>每个槽位记录写入数据时的序号，写入前先把序号置为无效值。取出时前后两次读取到的序号都与期望的序号一致
+ * 才认为数据有效，因此正在被覆盖的槽位不会取出新旧混合的数据。</p>
+ *
+ * @param <T> 采集数据类型
+ */
+public class CollectBuffer<T> {
+
+    private static final long WRITING = -1L;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final AtomicReferenceArray<T> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    /**
+     * 下一个写入序号，只由写入线程修改
+     */
+    private final AtomicLong writeIndex = new AtomicLong();
+
+    /**
+     * 下一个取出序号，只在{@link #drainTo(List)}中访问
+     */
+    private long readIndex;
+
+    /**
+     * @param capacity 最少能容纳的数据个数，实际容量为不小于该值的2的幂
+     */
+    public CollectBuffer(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.elements = new AtomicReferenceArray<T>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, WRITING);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 写入一条数据，缓冲区已满时覆盖最早的数据，只允许单个线程调用
+     *
+     * @param element 采集数据
+     */
+    public void add(T element) {
+        final long index = writeIndex.get();
+        final int slot = (int) index & mask;
+        sequences.set(slot, WRITING);
+        elements.set(slot, element);
+        sequences.set(slot, index);
+        writeIndex.set(index + 1);
+    }
+
+    /**
+     * 取出上次取出之后写入的所有数据，按写入顺序添加到target中
+     *
+     * @param target 取出数据的目标集合
+     * @return 上次取出之后因缓冲区已满被覆盖而没有取出的数据个数
+     */
+    public synchronized int drainTo(List<? super T> target) {
+        final long end = writeIndex.get();
+        final long start = Math.max(readIndex, end - elements.length());
+        int overwritten = (int) (start - readIndex);
+        for (long index = start; index < end; index++) {
+            final int slot = (int) index & mask;
+            if (sequences.get(slot) != index) {
+                overwritten++;
+                continue;
+            }
+            final T element = elements.get(slot);
+            if (sequences.get(slot) != index) {
+                overwritten++;
+                continue;
+            }
+
+            // 释放已取出数据的引用，槽位已被重新写入时不做处理
+            elements.compareAndSet(slot, element, null);
+            target.add(element);
+        }
+        readIndex = end;
+        return overwritten;
+    }
+
+    /**
+     * 缓冲区容量
+     *
+     * @return 最多能保存的数据个数
+     */
+    public int capacity() {
+        return elements.length();
+    }
+}
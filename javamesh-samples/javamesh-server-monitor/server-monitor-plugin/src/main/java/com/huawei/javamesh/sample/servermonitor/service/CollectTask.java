@@ -4,15 +4,17 @@
 
 package com.huawei.javamesh.sample.servermonitor.service;
 
+import com.huawei.apm.core.lubanops.bootstrap.log.LogFactory;
+import com.huawei.javamesh.sample.servermonitor.common.CollectBuffer;
 import com.huawei.javamesh.sample.servermonitor.common.Consumer;
 import com.huawei.javamesh.sample.servermonitor.common.Supplier;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
 
 /**
  * 采集任务
@@ -21,12 +23,20 @@ import java.util.concurrent.atomic.AtomicReference;
  * 然后按{@link #consumeInterval}指定的时间间隔批量把数据传递给{@link #consumer}消费（或者可以
  * 写死为发送给服务端）。<p/>
  *
- * <p>从{@link #supplier}采集的数据在消费前会存在{@link #writeBuffer}中</p>
+ * <p>从{@link #supplier}采集的数据在消费前会存在{@link #writeBuffer}中，缓冲区按两个消费周期的
+ * 采集次数预分配，消费不及时的情况下覆盖最早的数据</p>
  * @param <T> 采集数据类型
  */
 public class CollectTask<T> {
 
-    private final AtomicReference<List<T>> writeBuffer;
+    private static final Logger LOGGER = LogFactory.getLogger();
+
+    /**
+     * 缓冲区可容纳的消费周期数
+     */
+    private static final int BUFFERED_CONSUME_CYCLES = 2;
+
+    private final CollectBuffer<T> writeBuffer;
 
     private final Supplier<T> supplier;
 
@@ -44,7 +54,7 @@ public class CollectTask<T> {
         this.consumer = consumer;
         this.collectInterval = TimeUnit.NANOSECONDS.convert(collectInterval, timeUnit);
         this.consumeInterval = TimeUnit.NANOSECONDS.convert(consumeInterval, timeUnit);
-        writeBuffer = new AtomicReference<List<T>>(new LinkedList<T>());
+        writeBuffer = new CollectBuffer<T>(bufferCapacity(this.collectInterval, this.consumeInterval));
     }
 
     public void start() {
@@ -67,14 +77,23 @@ public class CollectTask<T> {
         if (t == null) {
             return;
         }
-        writeBuffer.get().add(t);
+        writeBuffer.add(t);
     }
 
     private void doConsume() {
-        final List<T> readBuffer = writeBuffer.getAndSet(new LinkedList<T>());
+        final List<T> readBuffer = new ArrayList<T>(writeBuffer.capacity());
+        final int overwritten = writeBuffer.drainTo(readBuffer);
+        if (overwritten > 0) {
+            LOGGER.warning("Collect buffer is full, " + overwritten + " samples were overwritten.");
+        }
         consumer.accept(readBuffer);
     }
 
+    private static int bufferCapacity(long collectInterval, long consumeInterval) {
+        final long collectCount = collectInterval > 0 ? consumeInterval / collectInterval : 1;
+        return (int) Math.min(Integer.MAX_VALUE >> 2, Math.max(1, collectCount) * BUFFERED_CONSUME_CYCLES);
+    }
+
     public void stop() {
         scheduler.shutdown();
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2021-2021. All rights reserved.
+ */
+
+package com.huawei.javamesh.sample.servermonitor.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * CollectBuffer单元测试
+ */
+public class CollectBufferTest {
+    /**
+     * 测试容量向上取整为2的幂，以及非法容量
+     */
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(1, new CollectBuffer<Integer>(1).capacity());
+        Assert.assertEquals(8, new CollectBuffer<Integer>(5).capacity());
+        Assert.assertEquals(8, new CollectBuffer<Integer>(8).capacity());
+        try {
+            new CollectBuffer<Integer>(0);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+            // 预期抛出异常
+        }
+    }
+
+    /**
+     * 测试多轮写入取出后写入位置绕回数组开头，数据仍按写入顺序取出
+     */
+    @Test
+    public void testWrapAround() {
+        CollectBuffer<Integer> buffer = new CollectBuffer<Integer>(4);
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < 3; i++) {
+                expected.add(next);
+                buffer.add(next++);
+            }
+            List<Integer> target = new ArrayList<Integer>();
+            Assert.assertEquals(0, buffer.drainTo(target));
+            Assert.assertEquals(expected, target);
+        }
+
+        List<Integer> target = new ArrayList<Integer>();
+        Assert.assertEquals(0, buffer.drainTo(target));
+        Assert.assertTrue(target.isEmpty());
+    }
+
+    /**
+     * 测试缓冲区写满后覆盖最早的数据，并返回被覆盖的数据个数
+     */
+    @Test
+    public void testOverflow() {
+        CollectBuffer<Integer> buffer = new CollectBuffer<Integer>(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i);
+        }
+        List<Integer> target = new ArrayList<Integer>();
+        Assert.assertEquals(6, buffer.drainTo(target));
+        Assert.assertEquals(Arrays.asList(6, 7, 8, 9), target);
+
+        buffer.add(10);
+        target.clear();
+        Assert.assertEquals(0, buffer.drainTo(target));
+        Assert.assertEquals(Collections.singletonList(10), target);
+    }
+
+    /**
+     * 测试一个线程写入、另一个线程并发取出时，取出的数据有序不重复，且取出与被覆盖的个数之和等于写入个数
+     */
+    @Test
+    public void testConcurrentProducerConsumer() throws InterruptedException {
+        final int total = 200000;
+        final CollectBuffer<Integer> buffer = new CollectBuffer<Integer>(64);
+        final AtomicBoolean finished = new AtomicBoolean();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    buffer.add(i);
+                }
+                finished.set(true);
+            }
+        });
+        producer.start();
+
+        List<Integer> drained = new ArrayList<Integer>();
+        long overwritten = 0;
+        while (!finished.get()) {
+            overwritten += buffer.drainTo(drained);
+        }
+        producer.join();
+        overwritten += buffer.drainTo(drained);
+
+        Assert.assertEquals(total, drained.size() + overwritten);
+        int last = -1;
+        for (Integer value : drained) {
+            Assert.assertNotNull(value);
+            Assert.assertTrue(value > last);
+            last = value;
+        }
+        Assert.assertEquals(total - 1, last);
+    }
+}